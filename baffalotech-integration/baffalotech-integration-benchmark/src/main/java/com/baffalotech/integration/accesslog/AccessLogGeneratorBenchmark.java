@@ -0,0 +1,90 @@
+package com.baffalotech.integration.accesslog;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baffalotech.integration.configuration.IntegrationServerProperties;
+
+/**
+ * 比较每个请求新建AccessLogGenerator和共享AccessLogGenerator的开销，内存分配用-prof gc查看
+ * @author chijinhuang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessLogGeneratorBenchmark {
+
+	private final String pattern = new IntegrationServerProperties().getAccesslog().getPattern();
+
+	private final AccessLogElementVistor vistor = new BenchmarkVistor();
+
+	@Benchmark
+	public String perRequest() {
+		//修改前的做法
+		return new AccessLogGenerator(pattern).generateLog(new Date(), 12, vistor);
+	}
+
+	@Benchmark
+	public String shared() {
+		return AccessLogGenerator.getInstance(pattern).generateLog(12, vistor);
+	}
+
+	private static class BenchmarkVistor extends AbstractAccessLogVistorAdapter {
+
+		@Override
+		public String getRemoteAddr() {
+			return "127.0.0.1";
+		}
+
+		@Override
+		public String getHost() {
+			return "127.0.0.1";
+		}
+
+		@Override
+		public String getMethod() {
+			return "POST";
+		}
+
+		@Override
+		public String getRequestURI() {
+			return "/api/transfer";
+		}
+
+		@Override
+		public String getProtocol() {
+			return "HTTP/1.1";
+		}
+
+		@Override
+		public int getStatus() {
+			return 200;
+		}
+
+		@Override
+		public int getBytesWritten() {
+			return 1024;
+		}
+
+		@Override
+		public Enumeration<String> getHeaders(String headerName) {
+			return Collections.enumeration(Collections.singletonList("benchmark"));
+		}
+	}
+}
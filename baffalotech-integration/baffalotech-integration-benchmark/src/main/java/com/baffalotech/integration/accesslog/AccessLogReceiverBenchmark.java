@@ -0,0 +1,112 @@
+package com.baffalotech.integration.accesslog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * 比较DefaultAccessLogReceiver和MappedAccessLogReceiver的写入吞吐量，直接运行main方法。
+ * 多个线程同时写日志，统计从第一条日志到全部写入文件的时间，并检查写入的行数。
+ * DefaultAccessLogReceiver只flush到page cache，不会force到磁盘，所以MappedAccessLogReceiver分别测试默认的group commit和不force两种情况
+ *
+ * <pre>
+ * 	java -cp benchmarks.jar com.baffalotech.integration.accesslog.AccessLogReceiverBenchmark [messages] [threads]
+ * </pre>
+ * @author chijinhuang
+ *
+ */
+public class AccessLogReceiverBenchmark {
+
+	private static final String MESSAGE = "127.0.0.1 - - [18/Oct/2026:10:00:00 +0800] \"POST /api/transfer HTTP/1.1\" 200 1024 \"-\" \"benchmark\" 0.012";
+
+	//队列满时等待而不是丢弃，保证所有日志都写入文件
+	private static final long BLOCK_TIMEOUT = 60000;
+
+	public static void main(String[] args) throws Exception {
+		int messages = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+		ExecutorService logWriteExecutor = Executors.newSingleThreadExecutor();
+		try {
+			for (int round = 0; round < 2; round++) {
+				//第一轮为预热
+				run("default         ", messages, threads, logWriteExecutor, 0, round == 1);
+				run("mapped          ", messages, threads, logWriteExecutor, 1, round == 1);
+				run("mapped, no force", messages, threads, logWriteExecutor, 2, round == 1);
+			}
+		} finally {
+			logWriteExecutor.shutdown();
+		}
+	}
+
+	private static void run(String name, int messages, int threads, ExecutorService logWriteExecutor, int mode,
+			boolean report) throws Exception {
+		Path dir = Files.createTempDirectory("accesslog");
+		try {
+			AccessLogReceiver receiver;
+			boolean mapped = mode != 0;
+			if (mapped) {
+				MappedAccessLogReceiver.Builder builder = MappedAccessLogReceiver.builder()
+						.setLogWriteExecutor(logWriteExecutor).setOutputDirectory(dir).setLogBaseName("access_log")
+						.setLogNameSuffix(".log").setOverflowPolicy(AccessLogRingBuffer.OverflowPolicy.BLOCK)
+						.setBlockTimeout(BLOCK_TIMEOUT);
+				if (mode == 2) {
+					builder.setFlushSize(Integer.MAX_VALUE).setFlushInterval(Long.MAX_VALUE);
+				}
+				receiver = builder.build();
+			} else {
+				receiver = DefaultAccessLogReceiver.builder().setLogWriteExecutor(logWriteExecutor)
+						.setOutputDirectory(dir).setLogBaseName("access_log").setLogNameSuffix(".log")
+						.setOverflowPolicy(AccessLogRingBuffer.OverflowPolicy.BLOCK).setBlockTimeout(BLOCK_TIMEOUT).build();
+			}
+			Thread[] producers = new Thread[threads];
+			int perThread = messages / threads;
+			long beginTime = System.nanoTime();
+			for (int i = 0; i < threads; i++) {
+				producers[i] = new Thread(() -> {
+					for (int j = 0; j < perThread; j++) {
+						receiver.logMessage(MESSAGE);
+					}
+				});
+				producers[i].start();
+			}
+			for (Thread producer : producers) {
+				producer.join();
+			}
+			if (mapped) {
+				((MappedAccessLogReceiver) receiver).awaitWrittenForTest();
+				((MappedAccessLogReceiver) receiver).close();
+				((MappedAccessLogReceiver) receiver).awaitWrittenForTest();
+			} else {
+				((DefaultAccessLogReceiver) receiver).awaitWrittenForTest();
+				((DefaultAccessLogReceiver) receiver).close();
+				((DefaultAccessLogReceiver) receiver).awaitWrittenForTest();
+			}
+			long time = System.nanoTime() - beginTime;
+			List<String> lines = Files.readAllLines(dir.resolve("access_log.log"), StandardCharsets.UTF_8);
+			if (lines.size() != perThread * threads || !MESSAGE.equals(lines.get(lines.size() - 1))) {
+				throw new IllegalStateException(name + " wrote " + lines.size() + " lines");
+			}
+			if (report) {
+				System.out.println(String.format("%s: %,12d msg/s  %,8d ns/msg", name,
+						perThread * threads * 1000000000L / time, time / (perThread * threads)));
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static void delete(Path dir) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			for (Object file : files.toArray()) {
+				Files.delete((Path) file);
+			}
+		}
+		Files.delete(dir);
+	}
+}
@@ -0,0 +1,152 @@
+package com.baffalotech.integration.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.baffalotech.integration.api.impl.NettyContainer;
+import com.baffalotech.integration.configuration.IntegrationServerProperties;
+import com.baffalotech.integration.core.NettyTransport;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+
+/**
+ * 比较不同网络传输实现和SO_REUSEPORT多次绑定时connector每秒能接收的新连接数，直接运行main方法。
+ * 服务端连接建立后写1个字节并关闭，客户端多个线程循环 连接-读1个字节-关闭(SO_LINGER=0, 不留TIME_WAIT)
+ *
+ * <pre>
+ * 	java -cp benchmarks.jar com.baffalotech.integration.api.ConnectorConnectRateBenchmark [seconds] [clientThreads] [acceptors]
+ * </pre>
+ * @author chijinhuang
+ *
+ */
+public class ConnectorConnectRateBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int clientThreads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int acceptors = args.length > 2 ? Integer.parseInt(args[2])
+				: Math.max(2, Runtime.getRuntime().availableProcessors());
+
+		for (NettyTransport transport : NettyTransport.values()) {
+			if (!transport.isAvailable()) {
+				System.out.println(transport + " is not available");
+				continue;
+			}
+			run(transport, 1, seconds, clientThreads);
+			if (transport.reusePortOption() != null) {
+				run(transport, acceptors, seconds, clientThreads);
+			}
+		}
+	}
+
+	private static void run(NettyTransport transport, int acceptors, int seconds, int clientThreads)
+			throws Exception {
+		IntegrationServerProperties properties = new IntegrationServerProperties();
+		properties.setContainerName("benchmark");
+		properties.setServerTransport(transport);
+		properties.setServerAcceptorThreads(acceptors);
+		properties.setMinWorkerThread(1);
+		properties.setMaxWorkerThread(1);
+		NettyContainer container = new NettyContainer(properties);
+		BenchmarkConnector connector = new BenchmarkConnector(container);
+		connector.setName("benchmark");
+		connector.setSchema("TCP");
+		connector.setPort(freePort());
+		connector.setAcceptors(acceptors);
+		connector.setTcpQuickAck(transport.quickAckOption() != null);
+		try {
+			connector.doStart();
+			//等待绑定完成
+			Thread.sleep(500);
+			//第一轮为预热
+			connect(connector.getPort(), 1, clientThreads);
+			long count = connect(connector.getPort(), seconds, clientThreads);
+			System.out.println(String.format("%-8s acceptors=%-2d %,10d connections/s", transport, acceptors,
+					count / seconds));
+		} finally {
+			connector.doStop();
+			container.getServerExecutor().shutdownNow();
+			container.destroy();
+		}
+	}
+
+	private static long connect(int port, int seconds, int clientThreads) throws InterruptedException {
+		InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+		AtomicBoolean running = new AtomicBoolean(true);
+		LongAdder count = new LongAdder();
+		LongAdder errors = new LongAdder();
+		CountDownLatch finished = new CountDownLatch(clientThreads);
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < clientThreads; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					while (running.get()) {
+						try (Socket socket = new Socket()) {
+							socket.setSoLinger(true, 0);
+							socket.connect(address, 1000);
+							InputStream in = socket.getInputStream();
+							if (in.read() >= 0) {
+								count.increment();
+							}
+						} catch (IOException e) {
+							errors.increment();
+						}
+					}
+				} finally {
+					finished.countDown();
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		Thread.sleep(seconds * 1000L);
+		running.set(false);
+		finished.await();
+		if (errors.sum() > 0) {
+			System.out.println("connect errors : " + errors.sum());
+		}
+		return count.sum();
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static class BenchmarkConnector extends AbstractNettyConnector {
+
+		BenchmarkConnector(Container container) {
+			super(container);
+		}
+
+		@Override
+		protected ChannelInitializer<? extends Channel> newInitializerChannelHandler() {
+			return new ChannelInitializer<Channel>() {
+				@Override
+				protected void initChannel(Channel ch) throws Exception {
+					ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+						@Override
+						public void channelActive(ChannelHandlerContext ctx) throws Exception {
+							ctx.writeAndFlush(Unpooled.wrappedBuffer(new byte[] { 1 }))
+									.addListener(ChannelFutureListener.CLOSE);
+						}
+					});
+				}
+			};
+		}
+	}
+}
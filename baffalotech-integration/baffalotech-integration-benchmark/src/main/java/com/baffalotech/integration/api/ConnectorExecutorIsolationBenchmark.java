@@ -0,0 +1,139 @@
+package com.baffalotech.integration.api;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.baffalotech.integration.api.impl.NettyContainer;
+import com.baffalotech.integration.configuration.ConnectorExecutorProperties;
+import com.baffalotech.integration.configuration.ConnectorExecutorProperties.Isolation;
+import com.baffalotech.integration.configuration.IntegrationServerProperties;
+import com.baffalotech.integration.core.ExecutorMetrics;
+
+/**
+ * 一个connector的下游卡住时，比较共享线程池、独占线程池和按权重公平调度对另一个关键connector的影响，直接运行main方法。
+ * slow connector每秒提交slowRate个请求，每个阻塞slowMillis毫秒模拟卡住的下游，
+ * critical connector每秒提交criticalRate个请求，每个5毫秒，统计critical的成功数、拒绝数和耗时分布
+ *
+ * <pre>
+ * 	java -cp benchmarks.jar com.baffalotech.integration.api.ConnectorExecutorIsolationBenchmark [seconds] [slowRate] [slowMillis] [criticalRate]
+ * </pre>
+ * @author chijinhuang
+ *
+ */
+public class ConnectorExecutorIsolationBenchmark {
+
+	private static final long CRITICAL_MILLIS = 5;
+
+	public static void main(String[] args) throws Exception {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int slowRate = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		long slowMillis = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+		int criticalRate = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+		run("shared   ", null, null, seconds, slowRate, slowMillis, criticalRate);
+
+		ConnectorExecutorProperties slow = new ConnectorExecutorProperties();
+		slow.setIsolation(Isolation.DEDICATED);
+		slow.setMaxThreads(180);
+		ConnectorExecutorProperties critical = new ConnectorExecutorProperties();
+		critical.setIsolation(Isolation.DEDICATED);
+		critical.setMaxThreads(20);
+		run("dedicated", slow, critical, seconds, slowRate, slowMillis, criticalRate);
+
+		slow = new ConnectorExecutorProperties();
+		slow.setIsolation(Isolation.WEIGHTED);
+		slow.setWeight(1);
+		critical = new ConnectorExecutorProperties();
+		critical.setIsolation(Isolation.WEIGHTED);
+		critical.setWeight(4);
+		critical.setReservedThreads(20);
+		run("weighted ", slow, critical, seconds, slowRate, slowMillis, criticalRate);
+	}
+
+	private static void run(String name, ConnectorExecutorProperties slowProperties,
+			ConnectorExecutorProperties criticalProperties, int seconds, int slowRate, long slowMillis,
+			int criticalRate) throws InterruptedException {
+		IntegrationServerProperties properties = new IntegrationServerProperties();
+		properties.setContainerName("benchmark");
+		//共享线程池和按权重公平调度的线程池都是200个线程
+		properties.setMinWorkerThread(20);
+		properties.setMaxWorkerThread(200);
+		properties.setFairWorkerThreads(200);
+		NettyContainer container = new NettyContainer(properties);
+		ExecutorService slowExecutor = container.newConnectorExecutor("slow", slowProperties);
+		ExecutorService criticalExecutor = container.newConnectorExecutor("critical", criticalProperties);
+
+		AtomicLongArray histogram = new AtomicLongArray(10001);
+		LongAdder completed = new LongAdder();
+		LongAdder rejected = new LongAdder();
+		LongAdder slowRejected = new LongAdder();
+
+		long begin = System.nanoTime();
+		long end = begin + TimeUnit.SECONDS.toNanos(seconds);
+		long slowSubmitted = 0;
+		long criticalSubmitted = 0;
+		long now;
+		while ((now = System.nanoTime()) < end) {
+			long elapsed = now - begin;
+			for (; slowSubmitted < elapsed * slowRate / TimeUnit.SECONDS.toNanos(1); slowSubmitted++) {
+				try {
+					slowExecutor.execute(() -> sleep(slowMillis));
+				} catch (RejectedExecutionException e) {
+					slowRejected.increment();
+				}
+			}
+			for (; criticalSubmitted < elapsed * criticalRate / TimeUnit.SECONDS.toNanos(1); criticalSubmitted++) {
+				long submitTime = System.nanoTime();
+				try {
+					criticalExecutor.execute(() -> {
+						sleep(CRITICAL_MILLIS);
+						long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitTime);
+						histogram.incrementAndGet((int) Math.min(histogram.length() - 1, latency));
+						completed.increment();
+					});
+				} catch (RejectedExecutionException e) {
+					rejected.increment();
+				}
+			}
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		//等待critical已经接收的请求完成
+		Thread.sleep(500);
+
+		ExecutorMetrics metrics = criticalExecutor instanceof ExecutorMetrics ? (ExecutorMetrics) criticalExecutor : null;
+		System.out.println(String.format("%s : critical completed %5d, rejected %5d, p50 %4d ms, p99 %4d ms%s; slow rejected %6d",
+				name, completed.sum(), rejected.sum(), percentile(histogram, completed.sum(), 50),
+				percentile(histogram, completed.sum(), 99),
+				metrics == null ? "" : String.format(", avg wait %.1f ms", metrics.getAverageWaitMillis()),
+				slowRejected.sum()));
+		if (slowExecutor != container.getServerExecutor()) {
+			slowExecutor.shutdownNow();
+			criticalExecutor.shutdownNow();
+		}
+		container.doStop();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static long percentile(AtomicLongArray histogram, long total, int percent) {
+		long target = (long) Math.ceil(total * percent / 100.0);
+		long count = 0;
+		for (int i = 0; i < histogram.length(); i++) {
+			count += histogram.get(i);
+			if (count >= target && count > 0) {
+				return i;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,118 @@
+package com.baffalotech.integration.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 下游过载时比较有没有并发上限的情况，直接运行main方法。
+ * 下游同时只能处理capacity个请求，每个serviceMillis毫秒，按offeredRate每秒的速度持续提交请求(超过下游的处理能力)，
+ * 统计成功数、拒绝数、成功请求从提交到完成的耗时分布，以及并发上限最后收敛到的值
+ *
+ * <pre>
+ * 	java -cp benchmarks.jar com.baffalotech.integration.core.AdaptiveConcurrencyLimiterBenchmark [seconds] [offeredRate] [capacity] [serviceMillis] [latencyThresholdMillis]
+ * </pre>
+ * @author chijinhuang
+ *
+ */
+public class AdaptiveConcurrencyLimiterBenchmark {
+
+	//耗时分布按毫秒统计, 超过的记在最后一格
+	private static final int MAX_LATENCY_MILLIS = 10000;
+
+	public static void main(String[] args) throws Exception {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int offeredRate = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+		int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		long serviceMillis = args.length > 3 ? Long.parseLong(args[3]) : 10;
+		long latencyThresholdMillis = args.length > 4 ? Long.parseLong(args[4]) : 50;
+
+		run("no limit   ", null, seconds, offeredRate, capacity, serviceMillis);
+		run("aimd limit ", new AdaptiveConcurrencyLimiter(100, 1, 500, latencyThresholdMillis), seconds, offeredRate,
+				capacity, serviceMillis);
+	}
+
+	private static void run(String name, AdaptiveConcurrencyLimiter limiter, int seconds, int offeredRate,
+			int capacity, long serviceMillis) throws InterruptedException {
+		//容器默认的线程池
+		ExecutorService executor = new StandardThreadExecutor(40, 500, 0);
+		Semaphore downstream = new Semaphore(capacity, true);
+		AtomicLongArray histogram = new AtomicLongArray(MAX_LATENCY_MILLIS + 1);
+		LongAdder completed = new LongAdder();
+		LongAdder rejected = new LongAdder();
+		AtomicInteger running = new AtomicInteger();
+
+		long begin = System.nanoTime();
+		long end = begin + TimeUnit.SECONDS.toNanos(seconds);
+		long submitted = 0;
+		long now;
+		//按固定速率提交, 不等待前面的请求完成
+		while ((now = System.nanoTime()) < end) {
+			long expected = (now - begin) * offeredRate / TimeUnit.SECONDS.toNanos(1);
+			for (; submitted < expected; submitted++) {
+				long submitTime = System.nanoTime();
+				if (limiter != null && !limiter.tryAcquire()) {
+					rejected.increment();
+					continue;
+				}
+				try {
+					running.incrementAndGet();
+					executor.execute(() -> {
+						try {
+							downstream.acquire();
+							try {
+								Thread.sleep(serviceMillis);
+							} finally {
+								downstream.release();
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						long latency = System.nanoTime() - submitTime;
+						if (limiter != null) {
+							limiter.release(latency);
+						}
+						histogram.incrementAndGet((int) Math.min(MAX_LATENCY_MILLIS, TimeUnit.NANOSECONDS.toMillis(latency)));
+						completed.increment();
+						running.decrementAndGet();
+					});
+				} catch (RejectedExecutionException e) {
+					running.decrementAndGet();
+					if (limiter != null) {
+						limiter.releaseDropped();
+					}
+					rejected.increment();
+				}
+			}
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		//等待已经接收的请求处理完
+		while (running.get() > 0) {
+			Thread.sleep(10);
+		}
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+
+		System.out.println(String.format("%s : submitted %6d, completed %6d (%5d/s), rejected %6d, p50 %5d ms, p99 %5d ms%s",
+				name, submitted, completed.sum(), completed.sum() / seconds, rejected.sum(),
+				percentile(histogram, completed.sum(), 50), percentile(histogram, completed.sum(), 99),
+				limiter == null ? "" : ", limit " + limiter.getLimit()));
+	}
+
+	private static long percentile(AtomicLongArray histogram, long total, int percent) {
+		long target = (long) Math.ceil(total * percent / 100.0);
+		long count = 0;
+		for (int i = 0; i < histogram.length(); i++) {
+			count += histogram.get(i);
+			if (count >= target && count > 0) {
+				return i;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,104 @@
+package com.baffalotech.integration.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 比较线程池和虚拟线程处理大量阻塞请求的情况，直接运行main方法，虚拟线程需要jdk21及以上。
+ * 同时提交requests个请求，每个请求阻塞sleepMillis毫秒模拟调用下游的SOAP和数据库，
+ * 统计全部完成的时间、拒绝数、请求从提交到完成的耗时分布和平台线程数。
+ * 最后在synchronized中阻塞，检查pinned检测能否发现
+ *
+ * <pre>
+ * 	java -cp benchmarks.jar com.baffalotech.integration.core.ServerExecutorBenchmark [requests] [sleepMillis]
+ * </pre>
+ * @author chijinhuang
+ *
+ */
+public class ServerExecutorBenchmark {
+
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		int requests = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		long sleepMillis = args.length > 1 ? Long.parseLong(args[1]) : 200;
+
+		//容器默认的配置：40~500个线程，没有队列
+		run("pool 40-500, queue 0   ", new StandardThreadExecutor(40, 500, 0), requests, sleepMillis, false);
+		run("pool 40-500, queue " + requests, new StandardThreadExecutor(40, 500, requests), requests, sleepMillis, false);
+		if (!VirtualThreadExecutor.isSupported()) {
+			System.out.println("virtual threads require jdk21 or later, current is " + System.getProperty("java.version"));
+			return;
+		}
+		run("virtual, max 10000     ", new VirtualThreadExecutor("benchmark", 10000, 0), requests, sleepMillis, false);
+
+		run("virtual, synchronized  ", new VirtualThreadExecutor("pinned", 10000, 20),
+				Runtime.getRuntime().availableProcessors() * 4, sleepMillis, true);
+	}
+
+	private static void run(String name, ExecutorService executor, int requests, long sleepMillis,
+			boolean holdMonitor) throws InterruptedException {
+		long[] latencies = new long[requests];
+		AtomicInteger completed = new AtomicInteger();
+		CountDownLatch finished = new CountDownLatch(requests);
+		int rejected = 0;
+		int threadsBefore = THREAD_MX_BEAN.getThreadCount();
+		THREAD_MX_BEAN.resetPeakThreadCount();
+		long begin = System.nanoTime();
+		for (int i = 0; i < requests; i++) {
+			long submitTime = System.nanoTime();
+			Object monitor = new Object();
+			Runnable task = () -> {
+				try {
+					if (holdMonitor) {
+						synchronized (monitor) {
+							Thread.sleep(sleepMillis);
+						}
+					} else {
+						Thread.sleep(sleepMillis);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				latencies[completed.getAndIncrement()] = System.nanoTime() - submitTime;
+				finished.countDown();
+			};
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				rejected++;
+				finished.countDown();
+			}
+		}
+		finished.await();
+		long elapsed = System.nanoTime() - begin;
+		int peakThreads = THREAD_MX_BEAN.getPeakThreadCount() - threadsBefore;
+		if (holdMonitor) {
+			//JFR事件是异步推送的, 关闭执行器之前等一会
+			Thread.sleep(3000);
+			System.out.println("pinned events : " + ((VirtualThreadExecutor) executor).getPinnedCount());
+		}
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+
+		long[] done = Arrays.copyOf(latencies, completed.get());
+		Arrays.sort(done);
+		System.out.println(String.format("%s : total %6d ms, completed %5d, rejected %5d, p50 %6d ms, p99 %6d ms, platform threads +%d",
+				name, TimeUnit.NANOSECONDS.toMillis(elapsed), done.length, rejected, percentile(done, 50),
+				percentile(done, 99), peakThreads));
+	}
+
+	private static long percentile(long[] sorted, int percent) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percent / 100.0) - 1);
+		return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+	}
+}
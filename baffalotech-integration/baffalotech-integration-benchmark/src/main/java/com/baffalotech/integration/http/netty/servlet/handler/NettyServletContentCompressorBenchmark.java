@@ -0,0 +1,126 @@
+package com.baffalotech.integration.http.netty.servlet.handler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * 比较不同压缩级别每个响应的耗时，开始前打印压缩后的字节数和压缩率
+ * @author chijinhuang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NettyServletContentCompressorBenchmark {
+
+	private static final String[] MIME_TYPES = { "application/json", "application/xml" };
+
+	@Param({ "application/json", "application/xml" })
+	private String contentType;
+
+	@Param({ "1", "6", "9" })
+	private int level;
+
+	@Param({ "16384" })
+	private int bodyLength;
+
+	private byte[] body;
+
+	private EmbeddedChannel channel;
+
+	@Setup
+	public void setup() {
+		body = contentType.endsWith("json") ? newJson(bodyLength) : newXml(bodyLength);
+		channel = new EmbeddedChannel(new NettyServletContentCompressor(level, 0, MIME_TYPES));
+		long gzipped = compress();
+		System.out.println(String.format("%s level %d: %d -> %d bytes (%.1f%%)", contentType, level, body.length,
+				gzipped, gzipped * 100.0 / body.length));
+	}
+
+	@TearDown
+	public void tearDown() {
+		channel.finishAndReleaseAll();
+	}
+
+	/**
+	 * @return 压缩后的字节数
+	 */
+	@Benchmark
+	public long compress() {
+		DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+		request.headers().set(HttpHeaderNames.ACCEPT_ENCODING, "gzip, deflate");
+		channel.writeInbound(request);
+		ReferenceCountUtil.release(channel.readInbound());
+
+		//和NettyServletOutputStream一样, 先写响应头, 再写内容
+		HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+		response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType + ";charset=UTF-8");
+		response.headers().set(HttpHeaderNames.CONTENT_LENGTH, body.length);
+		channel.writeOutbound(response, new DefaultHttpContent(Unpooled.wrappedBuffer(body)),
+				LastHttpContent.EMPTY_LAST_CONTENT);
+		long outBytes = 0;
+		Object msg;
+		while ((msg = channel.readOutbound()) != null) {
+			if (msg instanceof HttpContent) {
+				outBytes += ((HttpContent) msg).content().readableBytes();
+			}
+			ReferenceCountUtil.release(msg);
+		}
+		return outBytes;
+	}
+
+	private static byte[] newJson(int length) {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; sb.length() < length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"tranCode\":\"1002").append(i % 100).append("\",\"accountNo\":\"62220200")
+					.append(1000000 + i * 7919 % 1000000).append("\",\"amount\":").append(i * 31 % 100000)
+					.append(".").append(i % 100).append(",\"currency\":\"CNY\",\"status\":\"")
+					.append(i % 3 == 0 ? "SUCCESS" : "PENDING").append("\"}");
+		}
+		return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] newXml(int length) {
+		StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><records>");
+		for (int i = 0; sb.length() < length; i++) {
+			sb.append("<record><tranCode>1002").append(i % 100).append("</tranCode><accountNo>62220200")
+					.append(1000000 + i * 7919 % 1000000).append("</accountNo><amount>").append(i * 31 % 100000)
+					.append(".").append(i % 100).append("</amount><currency>CNY</currency><status>")
+					.append(i % 3 == 0 ? "SUCCESS" : "PENDING").append("</status></record>");
+		}
+		return sb.append("</records>").toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
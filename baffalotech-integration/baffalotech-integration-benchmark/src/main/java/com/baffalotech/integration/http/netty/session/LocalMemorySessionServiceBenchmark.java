@@ -0,0 +1,148 @@
+package com.baffalotech.integration.http.netty.session;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地内存会话的过期检查, 直接运行main方法。
+ * 打印每个session占用的堆内存, 原来每20秒遍历所有session一次的耗时, 时间轮每个过期session的耗时和过期的延迟
+ *
+ * <pre>
+ * 	java -cp benchmarks.jar com.baffalotech.integration.http.netty.session.LocalMemorySessionServiceBenchmark [sessions]
+ * </pre>
+ * @author chijinhuang
+ *
+ */
+public class LocalMemorySessionServiceBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		memory(sessions);
+		for (int round = 0; round < 3; round++) {
+			sweep(sessions);
+			wheel(sessions);
+		}
+		lateness(Math.min(sessions, 100000));
+	}
+
+	private static Session newSession(long lastAccessedTime, int maxInactiveInterval) {
+		Session session = new Session(Long.toHexString(ThreadLocalRandom.current().nextLong()) + Long.toHexString(System.nanoTime()));
+		session.setCreationTime(lastAccessedTime);
+		session.setLastAccessedTime(lastAccessedTime);
+		session.setMaxInactiveInterval(maxInactiveInterval);
+		return session;
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * 放入时间轮不创建额外的对象, 只有Session上的两个字段
+	 */
+	private static void memory(int sessions) throws InterruptedException {
+		long before = usedHeap();
+		Map<String, Session> map = new ConcurrentHashMap<String, Session>(256);
+		SessionExpiryWheel wheel = new SessionExpiryWheel(map);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < sessions; i++) {
+			Session session = newSession(now, 1200);
+			map.put(session.getId(), session);
+			wheel.schedule(session);
+		}
+		long after = usedHeap();
+		System.out.println(String.format("memory : %d sessions, %.1f bytes/session (map entry, id, session)", map.size(),
+				(double) (after - before) / sessions));
+	}
+
+	/**
+	 * 原来的检查线程每次遍历所有session
+	 */
+	private static void sweep(int sessions) {
+		Map<String, Session> map = new ConcurrentHashMap<String, Session>(256);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < sessions; i++) {
+			Session session = newSession(now, 1200);
+			map.put(session.getId(), session);
+		}
+		long begin = System.nanoTime();
+		int expired = 0;
+		for (Session session : map.values()) {
+			if (!session.isValid()) {
+				map.remove(session.getId());
+				expired++;
+			}
+		}
+		long nanos = System.nanoTime() - begin;
+		System.out.println(String.format("sweep  : %.2f ms per pass, %d expired, every pass visits all sessions",
+				nanos / 1000000D, expired));
+	}
+
+	/**
+	 * 时间轮只检查到期的格子, 1毫秒一格, 所有session的过期时间分散在接下来的2秒内
+	 */
+	private static void wheel(int sessions) {
+		Map<String, Session> map = new ConcurrentHashMap<String, Session>(256);
+		for (int i = 0; i < sessions; i++) {
+			Session session = newSession(0, 1);
+			map.put(session.getId(), session);
+		}
+		SessionExpiryWheel wheel = new SessionExpiryWheel(map, 1, 4096);
+		long now = System.currentTimeMillis();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (Session session : map.values()) {
+			// 过期时间 = 最后访问时间 + 1秒
+			session.setLastAccessedTime(now + random.nextInt(1000));
+			wheel.schedule(session);
+		}
+		long runNanos = 0;
+		long ticks = 0;
+		long maxTickNanos = 0;
+		while (!map.isEmpty()) {
+			long begin = System.nanoTime();
+			wheel.run();
+			long nanos = System.nanoTime() - begin;
+			runNanos += nanos;
+			maxTickNanos = Math.max(maxTickNanos, nanos);
+			ticks++;
+			if (System.currentTimeMillis() - now > 10000) {
+				break;
+			}
+		}
+		System.out.println(String.format(
+				"wheel  : %.1f ns per expired session, %d runs, max run %.2f ms, remaining %d", (double) runNanos / sessions,
+				ticks, maxTickNanos / 1000000D, map.size()));
+	}
+
+	/**
+	 * 在调度线程上按默认的1秒一格运行, 最后一个session过期到从map中删除的时间
+	 */
+	private static void lateness(int sessions) throws InterruptedException {
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+		LocalMemorySessionServiceImpl sessionService = new LocalMemorySessionServiceImpl(
+				new ConcurrentHashMap<String, Session>(256), scheduler);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < sessions; i++) {
+			sessionService.saveSession(newSession(now, 2));
+		}
+		long expiryTime = now + 2000;
+		while (sessionService.count() > 0) {
+			Thread.sleep(5);
+		}
+		long removed = System.currentTimeMillis();
+		System.out.println(String.format("expiry : %d sessions removed %d ms after expiry time (tick %d ms)", sessions,
+				removed - expiryTime, SessionExpiryWheel.DEFAULT_TICK_MILLIS));
+		sessionService.shutdown();
+		scheduler.shutdown();
+		scheduler.awaitTermination(1, TimeUnit.SECONDS);
+	}
+}
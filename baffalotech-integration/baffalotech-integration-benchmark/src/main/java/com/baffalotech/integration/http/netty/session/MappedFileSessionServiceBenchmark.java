@@ -0,0 +1,127 @@
+package com.baffalotech.integration.http.netty.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.baffalotech.integration.http.netty.servlet.support.ResourceManager;
+
+/**
+ * 比较原来每个session一个文件的LocalFileSessionServiceImpl和MappedFileSessionServiceImpl, 直接运行main方法。
+ * 打印保存和读取的吞吐量, 以及重启时重建索引的耗时(原来的实现没有索引, 按过期检查线程读取所有文件的耗时计算)
+ *
+ * <pre>
+ * 	java -cp benchmarks.jar com.baffalotech.integration.http.netty.session.MappedFileSessionServiceBenchmark [sessions] [directory]
+ * </pre>
+ * @author chijinhuang
+ *
+ */
+@SuppressWarnings("deprecation")
+public class MappedFileSessionServiceBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		File root = args.length > 1 ? new File(args[1]) : Files.createTempDirectory("session-benchmark").toFile();
+
+		List<Session> list = new ArrayList<Session>(sessions);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < sessions; i++) {
+			Session session = new Session(String.format("%032x", i));
+			session.setCreationTime(now);
+			session.setLastAccessedTime(now);
+			session.setMaxInactiveInterval(1200);
+			Map<String, Object> attributeMap = new ConcurrentHashMap<String, Object>(6);
+			attributeMap.put("userId", Long.valueOf(i));
+			attributeMap.put("userName", "user-" + i);
+			attributeMap.put("roles", new ArrayList<String>(Arrays.asList("admin", "operator")));
+			session.setAttributeMap(attributeMap);
+			list.add(session);
+		}
+
+		for (int round = 0; round < 3; round++) {
+			File fileDir = new File(root, "file-" + round);
+			File mappedDir = new File(root, "mapped-" + round);
+			localFile(list, fileDir);
+			mappedFile(list, mappedDir);
+			delete(fileDir);
+			delete(mappedDir);
+		}
+	}
+
+	private static void localFile(List<Session> list, File dir) throws Exception {
+		ResourceManager resourceManager = new ResourceManager(dir.getAbsolutePath(), "", null);
+		LocalFileSessionServiceImpl sessionService = new LocalFileSessionServiceImpl(resourceManager);
+		sessionService.getSessionInvalidThread().interrupt();
+
+		long begin = System.nanoTime();
+		for (Session session : list) {
+			sessionService.saveSession(session);
+		}
+		long saveNanos = System.nanoTime() - begin;
+
+		begin = System.nanoTime();
+		for (Session session : list) {
+			sessionService.getSession(session.getId());
+		}
+		long loadNanos = System.nanoTime() - begin;
+
+		// 原来没有索引, 过期检查线程每次都读取所有文件
+		begin = System.nanoTime();
+		int count = 0;
+		Set<String> fileNames = resourceManager.getResourcePaths("/session");
+		for (String fileName : fileNames) {
+			if (sessionService.getSessionByFileName(fileName) != null) {
+				count++;
+			}
+		}
+		long scanNanos = System.nanoTime() - begin;
+		print("local file ", list.size(), saveNanos, loadNanos, scanNanos, count);
+	}
+
+	private static void mappedFile(List<Session> list, File dir) throws Exception {
+		MappedFileSessionServiceImpl sessionService = new MappedFileSessionServiceImpl(dir,
+				MappedFileSessionServiceImpl.DEFAULT_SEGMENT_SIZE, null);
+
+		long begin = System.nanoTime();
+		for (Session session : list) {
+			sessionService.saveSession(session);
+		}
+		long saveNanos = System.nanoTime() - begin;
+
+		begin = System.nanoTime();
+		for (Session session : list) {
+			sessionService.getSession(session.getId());
+		}
+		long loadNanos = System.nanoTime() - begin;
+
+		// 不调用shutdown, 按进程退出后重启恢复
+		begin = System.nanoTime();
+		MappedFileSessionServiceImpl recovered = new MappedFileSessionServiceImpl(dir,
+				MappedFileSessionServiceImpl.DEFAULT_SEGMENT_SIZE, null);
+		long recoverNanos = System.nanoTime() - begin;
+		print("mapped file", list.size(), saveNanos, loadNanos, recoverNanos, recovered.count());
+		recovered.shutdown();
+		sessionService.shutdown();
+	}
+
+	private static void print(String name, int sessions, long saveNanos, long loadNanos, long recoverNanos, int count) {
+		System.out.println(String.format("%s : save %8.0f/s, load %8.0f/s, recover %7.1f ms (%d sessions)", name,
+				sessions * 1e9 / saveNanos, sessions * 1e9 / loadNanos, recoverNanos / 1e6, count));
+	}
+
+	private static void delete(File file) throws IOException {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		Files.deleteIfExists(file.toPath());
+	}
+}
@@ -0,0 +1,93 @@
+package com.baffalotech.integration.metrics;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 多线程同时记录耗时, 比较原来的AtomicLong累加毫秒数和LatencyRecorder的写入开销, 线程数用-t修改。
+ * 模拟的耗时大部分在1毫秒以内, 1%在5~50毫秒, 每轮结束时打印LatencyRecorder统计出来的分布
+ * @author chijinhuang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class LatencyRecorderBenchmark {
+
+	private final long[] latencies = new long[1 << 16];
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong totalMillis = new AtomicLong();
+
+	private LatencyRecorder recorder;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[i] = random.nextInt(100) == 0 ? TimeUnit.MILLISECONDS.toNanos(5 + random.nextInt(45))
+					: 200000 + random.nextInt(600000);
+		}
+		recorder = new LatencyRecorder("benchmark", Collections.<String, String>emptyMap());
+	}
+
+	@TearDown(Level.Iteration)
+	public void print() {
+		if (recorder.getCount() == 0) {
+			return;
+		}
+		LatencySnapshot snapshot = recorder.snapshot();
+		System.out.println(String.format("latency recorder: avg %.3f ms, p50 %.3f ms, p99 %.3f ms, p999 %.3f ms, max %.3f ms",
+				snapshot.getTotalTime(TimeUnit.MILLISECONDS) / snapshot.getCount(),
+				snapshot.getValueAtPercentile(50, TimeUnit.MILLISECONDS),
+				snapshot.getValueAtPercentile(99, TimeUnit.MILLISECONDS),
+				snapshot.getValueAtPercentile(99.9, TimeUnit.MILLISECONDS),
+				snapshot.getMax(TimeUnit.MILLISECONDS)));
+	}
+
+	@Benchmark
+	public void atomicMillis(Cursor cursor) {
+		//修改前的做法
+		totalMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(latencies[cursor.next()]));
+		count.incrementAndGet();
+	}
+
+	@Benchmark
+	public void latencyRecorder(Cursor cursor) {
+		recorder.record(latencies[cursor.next()]);
+	}
+
+	/**
+	 * 每个线程从不同的位置开始读取模拟的耗时
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private int index = ThreadLocalRandom.current().nextInt();
+
+		int next() {
+			return index++ & ((1 << 16) - 1);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.baffalotech.integration.mvc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baffalotech.integration.mvc.annotation.DiscriminatorValue;
+import com.baffalotech.integration.util.PropertyPathAccessor;
+
+/**
+ * 比较反射调用处理方法、MethodHandle和LambdaMetafactory生成的调用器，
+ * 以及PropertyUtils和PropertyPathAccessor读取discriminator的开销
+ * @author chijinhuang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerMethodInvokerBenchmark {
+
+	private static final String PATH = "head.tranCode";
+
+	private TransferController controller;
+	private Method method;
+	private HandlerMethod handlerMethod;
+	private HandlerMethodInvoker methodHandle;
+	private PropertyPathAccessor accessor;
+	private Request request;
+
+	@Setup
+	public void setup() throws Exception {
+		controller = new TransferController();
+		method = TransferController.class.getMethod("transfer", Request.class);
+		handlerMethod = new HandlerMethod(controller, method);
+		methodHandle = HandlerMethodInvokers.methodHandle(method, MethodHandles.lookup().unreflect(method));
+		accessor = PropertyPathAccessor.compile(Request.class, PATH);
+		request = new Request("100201");
+	}
+
+	@Benchmark
+	public Object invokeReflection() throws Exception {
+		return method.invoke(controller, request);
+	}
+
+	@Benchmark
+	public Object invokeMethodHandle() throws Throwable {
+		return methodHandle.invoke(controller, request);
+	}
+
+	@Benchmark
+	public Object invokeLambda() throws Throwable {
+		return handlerMethod.invoke(request);
+	}
+
+	@Benchmark
+	public Object propertyUtils() throws Exception {
+		return PropertyUtils.getProperty(request, PATH);
+	}
+
+	@Benchmark
+	public Object propertyCompiled() throws Exception {
+		return accessor.getValue(request);
+	}
+
+	public static class TransferController {
+
+		@DiscriminatorValue("transfer")
+		public String transfer(Request request) {
+			return request.getHead().getTranCode();
+		}
+	}
+
+	public static class Request {
+
+		private Head head = new Head();
+
+		public Request(String tranCode) {
+			head.setTranCode(tranCode);
+		}
+
+		public Head getHead() {
+			return head;
+		}
+	}
+
+	public static class Head {
+
+		private String tranCode;
+
+		public String getTranCode() {
+			return tranCode;
+		}
+
+		public void setTranCode(String tranCode) {
+			this.tranCode = tranCode;
+		}
+	}
+}
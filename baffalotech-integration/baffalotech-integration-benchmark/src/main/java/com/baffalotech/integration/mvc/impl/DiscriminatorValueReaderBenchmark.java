@@ -0,0 +1,142 @@
+package com.baffalotech.integration.mvc.impl;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.baffalotech.integration.mvc.ContentType;
+import com.baffalotech.integration.mvc.IContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 比较生成DOM/JsonNode树和流式读取discriminator的开销，报文头在前，报文体有rows条记录。
+ * 开始前先检查两种方式读取的结果一致
+ * @author chijinhuang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiscriminatorValueReaderBenchmark {
+
+	private static final String PATH = "head.tranCode";
+
+	@Param({ "100" })
+	private int rows;
+
+	private byte[] xml;
+
+	private byte[] json;
+
+	private IContext xmlContext;
+
+	private IContext jsonContext;
+
+	private final XmlDiscriminatorValueReader xmlReader = new XmlDiscriminatorValueReader();
+
+	private final JsonDiscriminatorValueReader jsonReader = new JsonDiscriminatorValueReader();
+
+	@Setup
+	public void setup() throws Exception {
+		xml = newXml(rows).getBytes(StandardCharsets.UTF_8);
+		json = newJson(rows).getBytes(StandardCharsets.UTF_8);
+		xmlContext = DefaultContext.Builder.newBuilder().payload(xml).contentType(ContentType.XML).build();
+		jsonContext = DefaultContext.Builder.newBuilder().payload(json).contentType(ContentType.JSON).build();
+
+		check(xmlReader.parseDiscriminatorValue(xmlContext, PATH), readDom(xml, PATH));
+		check(jsonReader.parseDiscriminatorValue(jsonContext, PATH), readTree(json, PATH));
+		check(xmlReader.parseDiscriminatorValue(xmlContext, "body"), readDom(xml, "body"));
+		check(jsonReader.parseDiscriminatorValue(jsonContext, "head"), readTree(json, "head"));
+	}
+
+	@Benchmark
+	public String xmlDom() throws Exception {
+		return readDom(xml, PATH);
+	}
+
+	@Benchmark
+	public String xmlStreaming() {
+		return xmlReader.parseDiscriminatorValue(xmlContext, PATH);
+	}
+
+	@Benchmark
+	public String jsonTree() throws Exception {
+		return readTree(json, PATH);
+	}
+
+	@Benchmark
+	public String jsonStreaming() {
+		return jsonReader.parseDiscriminatorValue(jsonContext, PATH);
+	}
+
+	//之前的实现：每次新建DocumentBuilder并生成DOM
+	private static String readDom(byte[] payload, String path) throws Exception {
+		Element current = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(new ByteArrayInputStream(payload)).getDocumentElement();
+		for (String name : path.split("\\.")) {
+			Node child = current.getFirstChild();
+			while (child != null && !(child instanceof Element && child.getNodeName().equals(name))) {
+				child = child.getNextSibling();
+			}
+			current = (Element) child;
+		}
+		return current.getTextContent();
+	}
+
+	//之前的实现：每次新建ObjectMapper并生成JsonNode树
+	private static String readTree(byte[] payload, String path) throws Exception {
+		JsonNode current = new ObjectMapper().readTree(new String(payload, StandardCharsets.UTF_8));
+		for (String name : path.split("\\.")) {
+			current = current.get(name);
+		}
+		return current.asText();
+	}
+
+	private static String newXml(int rows) {
+		StringBuilder builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><request>");
+		builder.append("<head><channel>mobile</channel><tranCode>transfer</tranCode><seqNo>20261018000001</seqNo></head><body>");
+		for (int i = 0; i < rows; i++) {
+			builder.append("<row><account>62220000").append(i).append("</account><name>张三</name><amount>")
+					.append(i).append(".50</amount></row>");
+		}
+		return builder.append("</body></request>").toString();
+	}
+
+	private static String newJson(int rows) {
+		StringBuilder builder = new StringBuilder("{\"head\":{\"channel\":\"mobile\",\"tranCode\":\"transfer\",\"seqNo\":\"20261018000001\"},\"body\":[");
+		for (int i = 0; i < rows; i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			builder.append("{\"account\":\"62220000").append(i).append("\",\"name\":\"张三\",\"amount\":").append(i)
+					.append(".50}");
+		}
+		return builder.append("]}").toString();
+	}
+
+	private static void check(String actual, String expected) {
+		if (!expected.equals(actual)) {
+			throw new IllegalStateException("expected " + expected + " but was " + actual);
+		}
+	}
+}
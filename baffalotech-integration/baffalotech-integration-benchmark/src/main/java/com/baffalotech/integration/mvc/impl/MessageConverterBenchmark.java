@@ -0,0 +1,149 @@
+package com.baffalotech.integration.mvc.impl;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * 比较每次新建ObjectMapper/JAXBContext和使用缓存的转换器的开销，每次调用decode一次、encode一次。
+ * xmlCachedContended用8个线程并发, 池的上限为4, 超过的Marshaller用完后丢弃
+ * @author chijinhuang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageConverterBenchmark {
+
+	private final DefaultJsonMessageConverter jsonConverter = new DefaultJsonMessageConverter();
+
+	private final DefaultXmlMessageConverter xmlConverter = new DefaultXmlMessageConverter();
+
+	private final DefaultXmlMessageConverter smallPoolConverter = new DefaultXmlMessageConverter(false, 4);
+
+	private final String json = jsonConverter.encode(newMessage());
+
+	private final String xml = xmlConverter.encode(newMessage());
+
+	@Benchmark
+	public String jsonPerCall() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		Object value = mapper.readValue(json, TransferMessage.class);
+		mapper = new ObjectMapper();
+		mapper.enable(SerializationFeature.INDENT_OUTPUT);
+		return mapper.writeValueAsString(value);
+	}
+
+	@Benchmark
+	public String jsonCached() {
+		return jsonConverter.encode(jsonConverter.decode(json, type(TransferMessage.class)));
+	}
+
+	@Benchmark
+	public String xmlPerCall() throws Exception {
+		//JAXBContext.newInstance非常慢
+		Object value = JAXBContext.newInstance(TransferMessage.class).createUnmarshaller().unmarshal(new StringReader(xml));
+		Marshaller marshaller = JAXBContext.newInstance(TransferMessage.class).createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+		StringWriter writer = new StringWriter();
+		marshaller.marshal(value, writer);
+		return writer.toString();
+	}
+
+	@Benchmark
+	public String xmlCached() {
+		return xmlConverter.encode(xmlConverter.decode(xml, type(TransferMessage.class)));
+	}
+
+	@Benchmark
+	@Threads(8)
+	public String xmlCachedContended() {
+		return smallPoolConverter.encode(smallPoolConverter.decode(xml, type(TransferMessage.class)));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Class<Object> type(Class type) {
+		return type;
+	}
+
+	private static TransferMessage newMessage() {
+		TransferMessage message = new TransferMessage();
+		message.setTranCode("100201");
+		message.setFromAccount("6222020200112233445");
+		message.setToAccount("6222020200998877665");
+		message.setAmount(12345L);
+		message.setRemark("benchmark");
+		return message;
+	}
+
+	@XmlRootElement
+	public static class TransferMessage {
+
+		private String tranCode;
+		private String fromAccount;
+		private String toAccount;
+		private long amount;
+		private String remark;
+
+		public String getTranCode() {
+			return tranCode;
+		}
+
+		public void setTranCode(String tranCode) {
+			this.tranCode = tranCode;
+		}
+
+		public String getFromAccount() {
+			return fromAccount;
+		}
+
+		public void setFromAccount(String fromAccount) {
+			this.fromAccount = fromAccount;
+		}
+
+		public String getToAccount() {
+			return toAccount;
+		}
+
+		public void setToAccount(String toAccount) {
+			this.toAccount = toAccount;
+		}
+
+		public long getAmount() {
+			return amount;
+		}
+
+		public void setAmount(long amount) {
+			this.amount = amount;
+		}
+
+		public String getRemark() {
+			return remark;
+		}
+
+		public void setRemark(String remark) {
+			this.remark = remark;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.baffalotech.integration.mvc.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.InputStreamSource;
+
+import com.baffalotech.integration.mvc.ContentType;
+import com.baffalotech.integration.mvc.IContext;
+import com.baffalotech.integration.mvc.MessageConverter;
+import com.baffalotech.integration.mvc.impl.MessageConverterBenchmark.TransferMessage;
+
+/**
+ * 比较按字符串和按字节流处理大报文的开销，内存分配用-prof gc查看。
+ * 字符串方式模拟之前IDispatchServlet的处理：复制请求体、解码成字符串、转换、编码成字节写出；
+ * 字节流方式直接从请求缓冲区解析，结果直接写入输出流。开始前先检查两种方式的输出一致
+ * @author chijinhuang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadStreamBenchmark {
+
+	private static final OutputStream DISCARD = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	@Param({ "JSON", "XML" })
+	private ContentType contentType;
+
+	@Param({ "UTF-8", "GBK" })
+	private String encoding;
+
+	@Param({ "300" })
+	private int payloadKB;
+
+	@SuppressWarnings("rawtypes")
+	private MessageConverter converter;
+
+	private byte[] request;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() throws Exception {
+		converter = contentType == ContentType.XML ? new DefaultXmlMessageConverter() : new DefaultJsonMessageConverter();
+		byte[] body = converter.encode(newMessage(payloadKB)).getBytes(encoding);
+		if (contentType == ContentType.XML) {
+			//去掉UTF-8的xml声明，由上下文指定编码
+			body = new String(body, encoding).replaceFirst("<\\?xml[^>]*\\?>", "").getBytes(encoding);
+		}
+		request = body;
+
+		//之前的方式xml声明中的编码总是UTF-8，比较时去掉声明
+		check(stripDeclaration(stringPath(converter, request, encoding, contentType), encoding).equals(stripDeclaration(
+				(byte[]) streamPath(converter, request, encoding, contentType, new ByteArrayOutputStream()), encoding)),
+				contentType + " " + encoding);
+	}
+
+	@Benchmark
+	public byte[] string() throws Exception {
+		return stringPath(converter, request, encoding, contentType);
+	}
+
+	@Benchmark
+	public Object stream() throws Exception {
+		return streamPath(converter, request, encoding, contentType, DISCARD);
+	}
+
+	//之前的处理方式
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static byte[] stringPath(MessageConverter converter, byte[] request, String encoding,
+			ContentType contentType) throws Exception {
+		InputStream inputStream = new ByteArrayInputStream(request);
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int len;
+		while ((len = inputStream.read(buf)) != -1) {
+			byteArrayOutputStream.write(buf, 0, len);
+		}
+		IContext context = DefaultContext.Builder.newBuilder().payload(byteArrayOutputStream.toByteArray())
+				.encoding(encoding).contentType(contentType).build();
+		Object value = converter.decode(context.getPayloadString(), TransferMessage.class);
+		context.setPayload(converter.encode(value));
+		return context.getPayloadString().getBytes(encoding);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object streamPath(MessageConverter converter, byte[] request, String encoding,
+			ContentType contentType, OutputStream out) throws Exception {
+		IContext context = DefaultContext.Builder.newBuilder()
+				.payload((InputStreamSource) () -> new ByteArrayInputStream(request)).encoding(encoding)
+				.contentType(contentType).outputStream(out).build();
+		Object value;
+		try (InputStream inputStream = context.getPayloadInputStream()) {
+			value = converter.decode(inputStream, encoding, TransferMessage.class);
+		}
+		converter.encode(value, context.getOutputStream(), encoding);
+		return out instanceof ByteArrayOutputStream ? ((ByteArrayOutputStream) out).toByteArray() : value;
+	}
+
+	private static TransferMessage newMessage(int payloadKB) {
+		TransferMessage message = new TransferMessage();
+		message.setTranCode("100201");
+		message.setFromAccount("6222020200112233445");
+		message.setToAccount("6222020200998877665");
+		message.setAmount(12345L);
+		StringBuilder remark = new StringBuilder();
+		while (remark.length() < payloadKB * 1024) {
+			remark.append("转账附言 benchmark ");
+		}
+		message.setRemark(remark.toString());
+		return message;
+	}
+
+	private static String stripDeclaration(byte[] payload, String encoding) throws Exception {
+		return new String(payload, encoding).replaceFirst("<\\?xml[^>]*\\?>", "");
+	}
+
+	private static void check(boolean condition, String name) {
+		if (!condition) {
+			throw new IllegalStateException(name + ": string and stream output differ");
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.baffalotech.integration.tcp.connector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baffalotech.integration.tcp.FillDirection;
+import com.baffalotech.integration.tcp.FixedLengthField;
+import com.baffalotech.integration.tcp.LengthField;
+import com.baffalotech.integration.tcp.TCPProtocal;
+import com.baffalotech.integration.tcp.TCPRequest;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * 比较TCPFixedLengthDecoder两种解析方式的耗时，内存分配用-prof gc查看
+ *
+ * <pre>
+ * 	java -jar benchmarks.jar TCPFixedLengthDecoderBenchmark -prof gc
+ * </pre>
+ * @author chijinhuang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TCPFixedLengthDecoderBenchmark {
+
+	@Param({ "false", "true" })
+	private boolean zeroCopy;
+
+	@Param({ "512" })
+	private int bodyLength;
+
+	private TCPFixedLengthDecoder decoder;
+	private ByteBuf message;
+	private List<Object> out = new ArrayList<Object>(2);
+
+	@Setup
+	public void setup() {
+		TCPProtocal protocal = new TCPProtocal();
+		protocal.addField(new FixedLengthField("tranCode", null, 8));
+		protocal.addField(new FixedLengthField("bankNo", null, 12, '0', FillDirection.LEFT));
+		protocal.addField(new FixedLengthField("channel", null, 6, ' ', FillDirection.RIGHT));
+		protocal.addField(new LengthField("length", 0, 8, '0', FillDirection.LEFT));
+		decoder = new TCPFixedLengthDecoder(protocal, zeroCopy);
+
+		StringBuilder sb = new StringBuilder("  100201000000123456ATM   ");
+		String length = String.valueOf(bodyLength);
+		for (int i = length.length(); i < 8; i++) {
+			sb.append('0');
+		}
+		sb.append(length);
+		for (int i = 0; i < bodyLength; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		byte[] bytes = sb.toString().getBytes();
+		message = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length);
+		message.writeBytes(bytes);
+	}
+
+	@TearDown
+	public void tearDown() {
+		message.release();
+	}
+
+	@Benchmark
+	public String decode() throws Exception {
+		message.readerIndex(0);
+		//header和报文体分两次decode，与ByteToMessageDecoder的调用方式一致
+		while (message.isReadable() && out.isEmpty()) {
+			decoder.decode(null, message, out);
+		}
+		TCPRequest request = (TCPRequest) out.get(0);
+		String tranCode = request.getHeader("tranCode");
+		request.release();
+		out.clear();
+		return tranCode;
+	}
+}
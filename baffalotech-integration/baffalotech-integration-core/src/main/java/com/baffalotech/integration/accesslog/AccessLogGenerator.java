@@ -2,9 +2,30 @@ package com.baffalotech.integration.accesslog;
 
 import java.io.CharArrayWriter;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * 按pattern解析后的access log生成器，本身不可变，可以在所有线程之间共享。
+ * 请通过getInstance获取，同一个pattern只解析一次；生成日志时使用线程本地的缓冲区，
+ * 每条日志只生成最终的字符串
+ * @author chijinhuang
+ *
+ */
 public class AccessLogGenerator {
 	
+	//单条日志超过这个长度后不再保留线程本地缓冲区，避免长期占用内存
+	private static final int MAX_CACHED_BUFFER_SIZE = 8192;
+	
+	private static final ConcurrentMap<String, AccessLogGenerator> GENERATORS = new ConcurrentHashMap<String, AccessLogGenerator>();
+	
+	private static final ThreadLocal<LogBuffer> LOCAL_BUFFER = new ThreadLocal<LogBuffer>() {
+		@Override
+		protected LogBuffer initialValue() {
+			return new LogBuffer();
+		}
+	};
+	
 	private final AccessLogElement[] accessLogElements;
 	
 	public AccessLogGenerator(String pattern)
@@ -12,13 +33,58 @@ public class AccessLogGenerator {
 		this.accessLogElements = AccessLogElementParser.parsePattern(pattern);
 	}
 	
-	public String generateLog(Date date,long time,AccessLogElementVistor vistor)
+	/**
+	 * 获取pattern对应的共享生成器，pattern只在第一次使用时解析
+	 * @param pattern
+	 * @return
+	 */
+	public static AccessLogGenerator getInstance(String pattern)
 	{
-		CharArrayWriter buf = new CharArrayWriter();
-		for(AccessLogElement element : accessLogElements)
+		AccessLogGenerator generator = GENERATORS.get(pattern);
+		if(generator == null)
 		{
-			element.addElement(buf, date, time, vistor);
+			generator = GENERATORS.computeIfAbsent(pattern, AccessLogGenerator::new);
 		}
-		return buf.toString();
+		return generator;
+	}
+	
+	public String generateLog(Date date,long time,AccessLogElementVistor vistor)
+	{
+		LogBuffer logBuffer = LOCAL_BUFFER.get();
+		CharArrayWriter buf = logBuffer.buf;
+		try {
+			for(AccessLogElement element : accessLogElements)
+			{
+				element.addElement(buf, date, time, vistor);
+			}
+			return buf.toString();
+		} finally {
+			if(buf.size() > MAX_CACHED_BUFFER_SIZE)
+			{
+				logBuffer.buf = new CharArrayWriter();
+			}else {
+				buf.reset();
+			}
+		}
+	}
+	
+	/**
+	 * 以当前时间生成日志，使用线程本地的Date，不再为每条日志创建Date
+	 * @param time
+	 * @param vistor
+	 * @return
+	 */
+	public String generateLog(long time,AccessLogElementVistor vistor)
+	{
+		Date date = LOCAL_BUFFER.get().date;
+		date.setTime(System.currentTimeMillis());
+		return generateLog(date, time, vistor);
+	}
+	
+	private static class LogBuffer {
+		
+		private CharArrayWriter buf = new CharArrayWriter(256);
+		
+		private final Date date = new Date();
 	}
 }
@@ -29,4 +29,18 @@ public interface AccessLogReceiver {
 
     void logMessage(final String message);
 
+    /**
+     * 因队列满或者采样被丢弃的日志条数, 不丢弃日志的实现返回0
+     */
+    default long getDroppedCount() {
+        return 0;
+    }
+
+    /**
+     * 还没有写入文件的日志条数, 没有队列的实现返回0
+     */
+    default int getBacklog() {
+        return 0;
+    }
+
 }
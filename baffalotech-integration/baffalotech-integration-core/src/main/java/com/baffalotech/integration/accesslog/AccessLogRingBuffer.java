@@ -0,0 +1,188 @@
+package com.baffalotech.integration.accesslog;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * access log的有界队列，多个请求线程写入，写日志的线程单独读取（MPSC）。
+ * <p>
+ * 槽位数组在创建时分配好，容量向上取2的幂，写入和读取都不加锁，每个槽位用序号标记是否可读写。
+ * 队列满时按OverflowPolicy处理，丢弃的条数和当前积压的条数可以用来做监控告警，
+ * 请求线程不会因为写日志慢而无限占用内存
+ * @author chijinhuang
+ *
+ */
+public class AccessLogRingBuffer {
+
+	public static final int DEFAULT_CAPACITY = 65536;
+	public static final long DEFAULT_BLOCK_TIMEOUT = 10;
+	public static final int DEFAULT_SAMPLE_RATE = 10;
+
+	//BLOCK策略下每次等待的时间
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	public enum OverflowPolicy {
+		/**
+		 * 队列满时直接丢弃并计数
+		 */
+		DROP,
+		/**
+		 * 积压超过容量的3/4后只保留1/sampleRate的日志，队列满时丢弃
+		 */
+		SAMPLE,
+		/**
+		 * 队列满时最多等待blockTimeout毫秒，仍然没有空位则丢弃
+		 */
+		BLOCK
+	}
+
+	private final int mask;
+	private final AtomicReferenceArray<String> messages;
+	//槽位序号：等于tail表示可写，等于head+1表示可读
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	//只有读取线程修改
+	private volatile long head;
+
+	private final OverflowPolicy overflowPolicy;
+	private final long blockTimeoutNanos;
+	private final int sampleRate;
+	private final int sampleThreshold;
+
+	private final LongAdder dropped = new LongAdder();
+
+	public AccessLogRingBuffer() {
+		this(DEFAULT_CAPACITY, OverflowPolicy.DROP, DEFAULT_BLOCK_TIMEOUT, DEFAULT_SAMPLE_RATE);
+	}
+
+	/**
+	 * @param capacity 队列容量，向上取2的幂，最小为2
+	 * @param overflowPolicy 队列满时的处理方式
+	 * @param blockTimeout BLOCK策略下最多等待的毫秒数
+	 * @param sampleRate SAMPLE策略下积压时每sampleRate条保留一条
+	 */
+	public AccessLogRingBuffer(int capacity, OverflowPolicy overflowPolicy, long blockTimeout, int sampleRate) {
+		if (capacity <= 0 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("capacity must be in (0, 2^30]: " + capacity);
+		}
+		if (sampleRate <= 0) {
+			throw new IllegalArgumentException("sampleRate must be positive: " + sampleRate);
+		}
+		//只有一个槽位时，可读的序号和下一次可写的序号相同，无法区分
+		int size = 2;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.mask = size - 1;
+		this.messages = new AtomicReferenceArray<String>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.DROP : overflowPolicy;
+		this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+		this.sampleRate = sampleRate;
+		this.sampleThreshold = size - size / 4;
+	}
+
+	/**
+	 * 写入一条日志，被丢弃时返回false
+	 * @param message
+	 * @return
+	 */
+	public boolean offer(String message) {
+		if (overflowPolicy == OverflowPolicy.SAMPLE && size() >= sampleThreshold
+				&& ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+			dropped.increment();
+			return false;
+		}
+		if (tryOffer(message)) {
+			return true;
+		}
+		if (overflowPolicy == OverflowPolicy.BLOCK) {
+			long deadline = System.nanoTime() + blockTimeoutNanos;
+			while (System.nanoTime() - deadline < 0) {
+				LockSupport.parkNanos(PARK_NANOS);
+				if (tryOffer(message)) {
+					return true;
+				}
+			}
+		}
+		dropped.increment();
+		return false;
+	}
+
+	private boolean tryOffer(String message) {
+		long position = tail.get();
+		for (;;) {
+			int index = (int) position & mask;
+			long diff = sequences.get(index) - position;
+			if (diff == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					messages.lazySet(index, message);
+					sequences.set(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (diff < 0) {
+				//队列已满
+				return false;
+			} else {
+				//其他线程已经写入了这个位置
+				position = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * 读取一条日志，没有可读的日志时返回null，只能由一个线程调用
+	 * @return
+	 */
+	public String poll() {
+		long position = head;
+		int index = (int) position & mask;
+		if (sequences.get(index) != position + 1) {
+			//队列为空，或者写入线程还没有写完这个位置
+			return null;
+		}
+		String message = messages.get(index);
+		messages.lazySet(index, null);
+		sequences.set(index, position + mask + 1);
+		head = position + 1;
+		return message;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * 当前积压的日志条数
+	 * @return
+	 */
+	public int size() {
+		long size = tail.get() - head;
+		return size <= 0 ? 0 : (int) Math.min(size, mask + 1);
+	}
+
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * 因队列满或者采样被丢弃的日志条数
+	 * @return
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+}
@@ -30,10 +30,8 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
@@ -57,7 +55,8 @@ public class DefaultAccessLogReceiver implements AccessLogReceiver, Runnable, Cl
 
     private final Executor logWriteExecutor;
 
-    private final Deque<String> pendingMessages;
+    //有界队列，满了之后按overflowPolicy处理
+    private final AccessLogRingBuffer pendingMessages;
 
     //0 = not running
     //1 = queued
@@ -104,12 +103,17 @@ public class DefaultAccessLogReceiver implements AccessLogReceiver, Runnable, Cl
     }
 
     private DefaultAccessLogReceiver(final Executor logWriteExecutor, final Path outputDirectory, final String logBaseName, final String logNameSuffix, boolean rotate) {
+        this(logWriteExecutor, outputDirectory, logBaseName, logNameSuffix, rotate, new AccessLogRingBuffer());
+    }
+
+    private DefaultAccessLogReceiver(final Executor logWriteExecutor, final Path outputDirectory, final String logBaseName, final String logNameSuffix, boolean rotate,
+            final AccessLogRingBuffer pendingMessages) {
         this.logWriteExecutor = logWriteExecutor;
         this.outputDirectory = outputDirectory;
         this.logBaseName = logBaseName;
         this.rotate = rotate;
         this.logNameSuffix = (logNameSuffix != null) ? logNameSuffix : DEFAULT_LOG_SUFFIX;
-        this.pendingMessages = new ConcurrentLinkedDeque<>();
+        this.pendingMessages = pendingMessages;
         this.defaultLogFile = outputDirectory.resolve(logBaseName + this.logNameSuffix);
         calculateChangeOverPoint();
     }
@@ -135,7 +139,9 @@ public class DefaultAccessLogReceiver implements AccessLogReceiver, Runnable, Cl
 
     @Override
     public void logMessage(final String message) {
-        this.pendingMessages.add(message);
+        if (!this.pendingMessages.offer(message)) {
+            return;
+        }
         int state = stateUpdater.get(this);
         if (state == 0) {
             if (stateUpdater.compareAndSet(this, 0, 1)) {
@@ -287,6 +293,22 @@ public class DefaultAccessLogReceiver implements AccessLogReceiver, Runnable, Cl
         }
     }
 
+    /**
+     * 因队列满或者采样被丢弃的日志条数
+     */
+    @Override
+    public long getDroppedCount() {
+        return pendingMessages.getDroppedCount();
+    }
+
+    /**
+     * 还没有写入文件的日志条数
+     */
+    @Override
+    public int getBacklog() {
+        return pendingMessages.size();
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -297,6 +319,10 @@ public class DefaultAccessLogReceiver implements AccessLogReceiver, Runnable, Cl
         private String logBaseName;
         private String logNameSuffix;
         private boolean rotate;
+        private int queueCapacity = AccessLogRingBuffer.DEFAULT_CAPACITY;
+        private AccessLogRingBuffer.OverflowPolicy overflowPolicy = AccessLogRingBuffer.OverflowPolicy.DROP;
+        private long blockTimeout = AccessLogRingBuffer.DEFAULT_BLOCK_TIMEOUT;
+        private int sampleRate = AccessLogRingBuffer.DEFAULT_SAMPLE_RATE;
 
         public Executor getLogWriteExecutor() {
             return logWriteExecutor;
@@ -343,8 +369,45 @@ public class DefaultAccessLogReceiver implements AccessLogReceiver, Runnable, Cl
             return this;
         }
 
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public Builder setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public AccessLogRingBuffer.OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public Builder setOverflowPolicy(AccessLogRingBuffer.OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        public long getBlockTimeout() {
+            return blockTimeout;
+        }
+
+        public Builder setBlockTimeout(long blockTimeout) {
+            this.blockTimeout = blockTimeout;
+            return this;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public Builder setSampleRate(int sampleRate) {
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
         public DefaultAccessLogReceiver build() {
-            return new DefaultAccessLogReceiver(logWriteExecutor, outputDirectory, logBaseName, logNameSuffix, rotate);
+            return new DefaultAccessLogReceiver(logWriteExecutor, outputDirectory, logBaseName, logNameSuffix, rotate,
+                    new AccessLogRingBuffer(queueCapacity, overflowPolicy, blockTimeout, sampleRate));
         }
     }
 }
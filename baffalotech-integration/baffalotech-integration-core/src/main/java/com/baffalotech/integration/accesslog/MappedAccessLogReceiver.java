@@ -0,0 +1,667 @@
+package com.baffalotech.integration.accesslog;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baffalotech.integration.util.MappedBufferUtil;
+
+/**
+ * 基于内存映射文件的access log接收器，可以替换DefaultAccessLogReceiver。
+ * <p>
+ * 日志直接按UTF-8编码写入当前映射的文件段，不经过BufferedWriter，也不是每批都flush。
+ * 未落盘的字节数达到flushSize或距离上次落盘超过flushInterval时才force一次（group commit），
+ * 设置了flushScheduler时，没有新日志写入也会在flushInterval之后force。
+ * 一个段写满并落盘后立即解除映射。关闭或滚动时解除映射后把文件截断到实际写入的长度，
+ * 异常退出后文件末尾可能留有0字节，重新打开时从最后一个非0字节之后继续写。
+ * <p>
+ * 文件命名、按天滚动以及调用方式和DefaultAccessLogReceiver一致
+ * @author chijinhuang
+ *
+ */
+public class MappedAccessLogReceiver implements AccessLogReceiver, Runnable, Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MappedAccessLogReceiver.class);
+	private static final String DEFAULT_LOG_SUFFIX = "log";
+
+	public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+	public static final int DEFAULT_FLUSH_SIZE = 1024 * 1024;
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+	//每次最多处理的日志条数，处理完后让出线程
+	private static final int MAX_BATCH_SIZE = 10000;
+
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+	private final Executor logWriteExecutor;
+
+	//按时间force的定时器，为null时只在写入日志时检查时间
+	private final ScheduledExecutorService flushScheduler;
+
+	//有界队列，满了之后按overflowPolicy处理
+	private final AccessLogRingBuffer pendingMessages;
+
+	//0 = not running
+	//1 = queued
+	//2 = running
+	@SuppressWarnings("unused")
+	private volatile int state = 0;
+
+	private static final AtomicIntegerFieldUpdater<MappedAccessLogReceiver> stateUpdater = AtomicIntegerFieldUpdater.newUpdater(MappedAccessLogReceiver.class, "state");
+
+	private long changeOverPoint;
+	private String currentDateString;
+	private boolean forceLogRotation;
+	//定时force的时间到了，由写日志的线程执行force
+	private volatile boolean forceRequested;
+
+	private final Path outputDirectory;
+	private final Path defaultLogFile;
+
+	private final String logBaseName;
+	private final String logNameSuffix;
+
+	private final int segmentSize;
+	private final int flushSize;
+	private final long flushInterval;
+
+	//以下状态只在写日志的线程中访问
+	//先编码到堆内缓冲区再整块拷贝到映射段，避免逐字节写MappedByteBuffer
+	private final ByteBuffer staging = ByteBuffer.allocate(64 * 1024);
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	//已经写满、但还没有落盘的段，下次commit时一起force
+	private final List<MappedByteBuffer> unflushedSegments = new ArrayList<>();
+	//当前段在文件中的起始位置
+	private long segmentPosition;
+	private long unflushedBytes;
+	private long lastForceTime;
+	private ScheduledFuture<?> forceFuture;
+
+	private volatile boolean closed = false;
+	private boolean initialRun = true;
+	private final boolean rotate;
+
+	public MappedAccessLogReceiver(final Executor logWriteExecutor, final File outputDirectory, final String logBaseName) {
+		this(logWriteExecutor, outputDirectory.toPath(), logBaseName, null);
+	}
+
+	public MappedAccessLogReceiver(final Executor logWriteExecutor, final File outputDirectory, final String logBaseName, final String logNameSuffix) {
+		this(logWriteExecutor, outputDirectory.toPath(), logBaseName, logNameSuffix, true);
+	}
+
+	public MappedAccessLogReceiver(final Executor logWriteExecutor, final File outputDirectory, final String logBaseName, final String logNameSuffix, boolean rotate) {
+		this(logWriteExecutor, outputDirectory.toPath(), logBaseName, logNameSuffix, rotate);
+	}
+
+	public MappedAccessLogReceiver(final Executor logWriteExecutor, final Path outputDirectory, final String logBaseName) {
+		this(logWriteExecutor, outputDirectory, logBaseName, null);
+	}
+
+	public MappedAccessLogReceiver(final Executor logWriteExecutor, final Path outputDirectory, final String logBaseName, final String logNameSuffix) {
+		this(logWriteExecutor, outputDirectory, logBaseName, logNameSuffix, true);
+	}
+
+	private MappedAccessLogReceiver(final Executor logWriteExecutor, final Path outputDirectory, final String logBaseName, final String logNameSuffix, boolean rotate) {
+		this(logWriteExecutor, null, outputDirectory, logBaseName, logNameSuffix, rotate, DEFAULT_SEGMENT_SIZE, DEFAULT_FLUSH_SIZE, DEFAULT_FLUSH_INTERVAL,
+				new AccessLogRingBuffer());
+	}
+
+	private MappedAccessLogReceiver(final Executor logWriteExecutor, final ScheduledExecutorService flushScheduler, final Path outputDirectory, final String logBaseName,
+			final String logNameSuffix, boolean rotate, int segmentSize, int flushSize, long flushInterval, final AccessLogRingBuffer pendingMessages) {
+		if (segmentSize < 1024) {
+			throw new IllegalArgumentException("segmentSize must be at least 1024: " + segmentSize);
+		}
+		this.logWriteExecutor = logWriteExecutor;
+		this.flushScheduler = flushScheduler;
+		this.outputDirectory = outputDirectory;
+		this.logBaseName = logBaseName;
+		this.rotate = rotate;
+		this.logNameSuffix = (logNameSuffix != null) ? logNameSuffix : DEFAULT_LOG_SUFFIX;
+		this.segmentSize = segmentSize;
+		this.flushSize = flushSize;
+		this.flushInterval = flushInterval;
+		this.pendingMessages = pendingMessages;
+		this.defaultLogFile = outputDirectory.resolve(logBaseName + this.logNameSuffix);
+		calculateChangeOverPoint();
+	}
+
+	private void calculateChangeOverPoint() {
+		Calendar calendar = Calendar.getInstance();
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.add(Calendar.DATE, 1);
+		SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+		currentDateString = df.format(new Date());
+		// if there is an existing default log file, use the date last modified instead of the current date
+		if (Files.exists(defaultLogFile)) {
+			try {
+				currentDateString = df.format(new Date(Files.getLastModifiedTime(defaultLogFile).toMillis()));
+			} catch (IOException e) {
+				// ignore. use the current date if exception happens.
+			}
+		}
+		changeOverPoint = calendar.getTimeInMillis();
+	}
+
+	@Override
+	public void logMessage(final String message) {
+		if (!this.pendingMessages.offer(message)) {
+			return;
+		}
+		int state = stateUpdater.get(this);
+		if (state == 0) {
+			if (stateUpdater.compareAndSet(this, 0, 1)) {
+				logWriteExecutor.execute(this);
+			}
+		}
+	}
+
+	/**
+	 * processes all queued log messages
+	 */
+	@Override
+	public void run() {
+		if (!stateUpdater.compareAndSet(this, 1, 2)) {
+			return;
+		}
+		if (forceLogRotation) {
+			doRotate();
+		} else if (initialRun && Files.exists(defaultLogFile)) {
+			//if there is an existing log file check if it should be rotated
+			long lm = 0;
+			try {
+				lm = Files.getLastModifiedTime(defaultLogFile).toMillis();
+			} catch (IOException e) {
+				LOGGER.error("Error rotating access log", e);
+			}
+			Calendar c = Calendar.getInstance();
+			c.setTimeInMillis(changeOverPoint);
+			c.add(Calendar.DATE, -1);
+			if (lm <= c.getTimeInMillis()) {
+				doRotate();
+			}
+		}
+		initialRun = false;
+		try {
+			if (!pendingMessages.isEmpty()) {
+				writeMessages();
+			}
+			if (forceRequested) {
+				forceRequested = false;
+				//定时任务已经触发，还有没force的数据时重新调度
+				forceFuture = null;
+				if (channel != null) {
+					commit();
+				}
+			}
+		} finally {
+			stateUpdater.set(this, 0);
+			//check to see if there is still more messages
+			//if so then run this again
+			if (!pendingMessages.isEmpty() || forceLogRotation || forceRequested) {
+				if (stateUpdater.compareAndSet(this, 0, 1)) {
+					logWriteExecutor.execute(this);
+				}
+			} else if (closed) {
+				closeFile();
+			}
+		}
+	}
+
+	/**
+	 * For tests only. Blocks the current thread until all messages are written
+	 * Just does a busy wait.
+	 * <p>
+	 * DO NOT USE THIS OUTSIDE OF A TEST
+	 */
+	void awaitWrittenForTest() throws InterruptedException {
+		while (!pendingMessages.isEmpty() || forceLogRotation) {
+			Thread.sleep(10);
+		}
+		while (state != 0) {
+			Thread.sleep(10);
+		}
+	}
+
+	private void writeMessages() {
+		//滚动只在每批开始时检查一次
+		if (System.currentTimeMillis() > changeOverPoint) {
+			doRotate();
+		}
+		try {
+			if (channel == null) {
+				openFile();
+			}
+			String message;
+			for (int i = 0; i < MAX_BATCH_SIZE && (message = pendingMessages.poll()) != null; i++) {
+				write(message);
+				write(LINE_SEPARATOR);
+			}
+			drain();
+			commit();
+		} catch (IOException e) {
+			LOGGER.error("Error writing access log,{}", e);
+			closeFile();
+		}
+	}
+
+	private void openFile() throws IOException {
+		channel = FileChannel.open(defaultLogFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		map(findLogicalEnd(channel.size()));
+		lastForceTime = System.currentTimeMillis();
+	}
+
+	private void map(long position) throws IOException {
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, position, segmentSize);
+		segmentPosition = position;
+	}
+
+	/**
+	 * 异常退出时映射过的区域没有被截断，末尾是0字节，找到最后一个非0字节的位置
+	 */
+	private long findLogicalEnd(long size) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(8192);
+		long end = size;
+		while (end > 0) {
+			int length = (int) Math.min(buf.capacity(), end);
+			long position = end - length;
+			buf.clear();
+			buf.limit(length);
+			while (buf.hasRemaining()) {
+				if (channel.read(buf, position + buf.position()) < 0) {
+					break;
+				}
+			}
+			for (int i = buf.position() - 1; i >= 0; i--) {
+				if (buf.get(i) != 0) {
+					return position + i + 1;
+				}
+			}
+			end = position;
+		}
+		return 0;
+	}
+
+	/**
+	 * access log基本都是ASCII，直接按字符写入缓冲区；包含非ASCII字符时再按UTF-8编码
+	 */
+	private void write(String message) throws IOException {
+		int length = message.length();
+		if (staging.remaining() < length) {
+			drain();
+		}
+		if (staging.remaining() >= length) {
+			byte[] array = staging.array();
+			int position = staging.position();
+			int i = 0;
+			for (; i < length; i++) {
+				char c = message.charAt(i);
+				if (c >= 0x80) {
+					break;
+				}
+				array[position + i] = (byte) c;
+			}
+			if (i == length) {
+				staging.position(position + length);
+				return;
+			}
+		}
+		write(message.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		int offset = 0;
+		while (offset < bytes.length) {
+			if (!staging.hasRemaining()) {
+				drain();
+			}
+			int length = Math.min(staging.remaining(), bytes.length - offset);
+			staging.put(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+	/**
+	 * 把缓冲区中已编码的字节拷贝到映射段，段写满时映射下一段
+	 */
+	private void drain() throws IOException {
+		staging.flip();
+		while (staging.hasRemaining()) {
+			if (!segment.hasRemaining()) {
+				nextSegment();
+			}
+			int length = Math.min(staging.remaining(), segment.remaining());
+			segment.put(staging.array(), staging.position(), length);
+			staging.position(staging.position() + length);
+			unflushedBytes += length;
+		}
+		staging.clear();
+	}
+
+	/**
+	 * 当前段写满，在文件末尾映射下一段，写满的段落盘后解除映射
+	 */
+	private void nextSegment() throws IOException {
+		if (unflushedBytes > 0) {
+			unflushedSegments.add(segment);
+		} else {
+			MappedBufferUtil.unmap(segment);
+		}
+		map(segmentPosition + segment.position());
+	}
+
+	private void force() {
+		for (MappedByteBuffer unflushedSegment : unflushedSegments) {
+			unflushedSegment.force();
+			MappedBufferUtil.unmap(unflushedSegment);
+		}
+		unflushedSegments.clear();
+		segment.force();
+		unflushedBytes = 0;
+	}
+
+	/**
+	 * group commit：未落盘的数据达到flushSize或超过flushInterval时才force，
+	 * 没有force的数据由定时任务在flushInterval之后force
+	 */
+	private void commit() {
+		if (unflushedBytes == 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (unflushedBytes >= flushSize || now - lastForceTime >= flushInterval) {
+			force();
+			lastForceTime = now;
+		} else {
+			scheduleForce(lastForceTime + flushInterval - now);
+		}
+	}
+
+	private void scheduleForce(long delay) {
+		if (flushScheduler == null || (forceFuture != null && !forceFuture.isDone())) {
+			return;
+		}
+		try {
+			forceFuture = flushScheduler.schedule(this::requestForce, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			//定时器已经关闭，只能在下一批日志写入时force
+			LOGGER.debug("flush scheduler is shutdown, force on next write");
+		}
+	}
+
+	private void requestForce() {
+		forceRequested = true;
+		if (stateUpdater.compareAndSet(this, 0, 1)) {
+			logWriteExecutor.execute(this);
+		}
+	}
+
+	/**
+	 * 落盘，解除映射后把文件截断到实际写入的长度
+	 */
+	private void closeFile() {
+		if (channel == null) {
+			return;
+		}
+		try {
+			if (segment != null) {
+				force();
+				long length = segmentPosition + segment.position();
+				MappedBufferUtil.unmap(segment);
+				segment = null;
+				channel.truncate(length);
+			}
+		} catch (IOException e) {
+			LOGGER.error("Error writing access log,{}", e);
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOGGER.error("Error closing access log,{}", e);
+			}
+			channel = null;
+			if (segment != null) {
+				MappedBufferUtil.unmap(segment);
+				segment = null;
+			}
+			for (MappedByteBuffer unflushedSegment : unflushedSegments) {
+				MappedBufferUtil.unmap(unflushedSegment);
+			}
+			staging.clear();
+			unflushedSegments.clear();
+			unflushedBytes = 0;
+			if (forceFuture != null) {
+				forceFuture.cancel(false);
+				forceFuture = null;
+			}
+		}
+	}
+
+	private void doRotate() {
+		forceLogRotation = false;
+		if (!rotate) {
+			return;
+		}
+		try {
+			closeFile();
+			if (!Files.exists(defaultLogFile)) {
+				return;
+			}
+			Path newFile = outputDirectory.resolve(logBaseName + currentDateString + "." + logNameSuffix);
+			int count = 0;
+			while (Files.exists(newFile)) {
+				++count;
+				newFile = outputDirectory.resolve(logBaseName + currentDateString + "-" + count + "." + logNameSuffix);
+			}
+			Files.move(defaultLogFile, newFile);
+		} catch (IOException e) {
+			LOGGER.error("Error rotating access log,{}", e);
+		} finally {
+			calculateChangeOverPoint();
+		}
+	}
+
+	/**
+	 * forces a log rotation. This rotation is performed in an async manner, you cannot rely on the rotation
+	 * being performed immediately after this method returns.
+	 */
+	public void rotate() {
+		forceLogRotation = true;
+		if (stateUpdater.compareAndSet(this, 0, 1)) {
+			logWriteExecutor.execute(this);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		if (stateUpdater.compareAndSet(this, 0, 1)) {
+			logWriteExecutor.execute(this);
+		}
+	}
+
+	/**
+	 * 因队列满或者采样被丢弃的日志条数
+	 */
+	@Override
+	public long getDroppedCount() {
+		return pendingMessages.getDroppedCount();
+	}
+
+	/**
+	 * 还没有写入文件的日志条数
+	 */
+	@Override
+	public int getBacklog() {
+		return pendingMessages.size();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static class Builder {
+		private Executor logWriteExecutor;
+		private ScheduledExecutorService flushScheduler;
+		private Path outputDirectory;
+		private String logBaseName;
+		private String logNameSuffix;
+		private boolean rotate;
+		private int queueCapacity = AccessLogRingBuffer.DEFAULT_CAPACITY;
+		private AccessLogRingBuffer.OverflowPolicy overflowPolicy = AccessLogRingBuffer.OverflowPolicy.DROP;
+		private long blockTimeout = AccessLogRingBuffer.DEFAULT_BLOCK_TIMEOUT;
+		private int sampleRate = AccessLogRingBuffer.DEFAULT_SAMPLE_RATE;
+		private int segmentSize = DEFAULT_SEGMENT_SIZE;
+		private int flushSize = DEFAULT_FLUSH_SIZE;
+		private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+		public Executor getLogWriteExecutor() {
+			return logWriteExecutor;
+		}
+
+		public Builder setLogWriteExecutor(Executor logWriteExecutor) {
+			this.logWriteExecutor = logWriteExecutor;
+			return this;
+		}
+
+		public ScheduledExecutorService getFlushScheduler() {
+			return flushScheduler;
+		}
+
+		/**
+		 * 没有新日志写入时按flushInterval force的定时器，不设置时只在写入日志时检查
+		 */
+		public Builder setFlushScheduler(ScheduledExecutorService flushScheduler) {
+			this.flushScheduler = flushScheduler;
+			return this;
+		}
+
+		public Path getOutputDirectory() {
+			return outputDirectory;
+		}
+
+		public Builder setOutputDirectory(Path outputDirectory) {
+			this.outputDirectory = outputDirectory;
+			return this;
+		}
+
+		public String getLogBaseName() {
+			return logBaseName;
+		}
+
+		public Builder setLogBaseName(String logBaseName) {
+			this.logBaseName = logBaseName;
+			return this;
+		}
+
+		public String getLogNameSuffix() {
+			return logNameSuffix;
+		}
+
+		public Builder setLogNameSuffix(String logNameSuffix) {
+			this.logNameSuffix = logNameSuffix;
+			return this;
+		}
+
+		public boolean isRotate() {
+			return rotate;
+		}
+
+		public Builder setRotate(boolean rotate) {
+			this.rotate = rotate;
+			return this;
+		}
+
+		public int getSegmentSize() {
+			return segmentSize;
+		}
+
+		public Builder setSegmentSize(int segmentSize) {
+			this.segmentSize = segmentSize;
+			return this;
+		}
+
+		public int getFlushSize() {
+			return flushSize;
+		}
+
+		public Builder setFlushSize(int flushSize) {
+			this.flushSize = flushSize;
+			return this;
+		}
+
+		public long getFlushInterval() {
+			return flushInterval;
+		}
+
+		public Builder setFlushInterval(long flushInterval) {
+			this.flushInterval = flushInterval;
+			return this;
+		}
+
+		public int getQueueCapacity() {
+			return queueCapacity;
+		}
+
+		public Builder setQueueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+			return this;
+		}
+
+		public AccessLogRingBuffer.OverflowPolicy getOverflowPolicy() {
+			return overflowPolicy;
+		}
+
+		public Builder setOverflowPolicy(AccessLogRingBuffer.OverflowPolicy overflowPolicy) {
+			this.overflowPolicy = overflowPolicy;
+			return this;
+		}
+
+		public long getBlockTimeout() {
+			return blockTimeout;
+		}
+
+		public Builder setBlockTimeout(long blockTimeout) {
+			this.blockTimeout = blockTimeout;
+			return this;
+		}
+
+		public int getSampleRate() {
+			return sampleRate;
+		}
+
+		public Builder setSampleRate(int sampleRate) {
+			this.sampleRate = sampleRate;
+			return this;
+		}
+
+		public MappedAccessLogReceiver build() {
+			return new MappedAccessLogReceiver(logWriteExecutor, flushScheduler, outputDirectory, logBaseName, logNameSuffix, rotate,
+					segmentSize, flushSize, flushInterval, new AccessLogRingBuffer(queueCapacity, overflowPolicy, blockTimeout, sampleRate));
+		}
+	}
+}
@@ -2,22 +2,36 @@ package com.baffalotech.integration.api;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.baffalotech.integration.configuration.ConnectorExecutorProperties;
 import com.baffalotech.integration.configuration.IntegrationServerProperties;
+import com.baffalotech.integration.core.BulkheadThreadExecutor;
 import com.baffalotech.integration.core.DefaultThreadFactory;
 import com.baffalotech.integration.core.StandardThreadExecutor;
+import com.baffalotech.integration.core.VirtualThreadExecutor;
+import com.baffalotech.integration.core.WeightedFairExecutor;
 
 public abstract class AbstractContainer extends AbstractLifeCycle implements Container {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(AbstractContainer.class);
 
-	private StandardThreadExecutor serverExecutor;
+	private ExecutorService serverExecutor;
 	
 	private StandardThreadExecutor accessLogExecutor;
 	
+	//connector按权重公平共享的线程池，第一个WEIGHTED模式的connector创建时才创建
+	private WeightedFairExecutor weightedFairExecutor;
+	
+	//定时任务共用的调度线程，第一次使用时创建
+	private ScheduledThreadPoolExecutor scheduledExecutor;
+	
 	private List<Connector> connectorList = new ArrayList<Connector>();
 
 	private String name;
@@ -28,21 +42,79 @@ public abstract class AbstractContainer extends AbstractLifeCycle implements Con
 	{
 		this.name = name;
 		this.serverProperties = serverProperties;
-		this.serverExecutor = new StandardThreadExecutor(serverProperties.getMinWorkerThread(), 
-														serverProperties.getMaxWorkerThread(), 
-														serverProperties.getWorkerQueueSize(), 
-														new DefaultThreadFactory("Netty-server-"+name,true));
-		this.serverExecutor.prestartAllCoreThreads();
+		this.serverExecutor = newServerExecutor(name, serverProperties);
 		
 		this.accessLogExecutor = new StandardThreadExecutor(2,2,2, 
 				new DefaultThreadFactory("access-log-"+name,true));
 	}
 	
-	public StandardThreadExecutor getServerExecutor() {
+	/**
+	 * 创建处理请求的执行器，开启虚拟线程且jdk支持时每个请求一个虚拟线程，否则使用线程池
+	 * @param name
+	 * @param serverProperties
+	 * @return
+	 */
+	protected ExecutorService newServerExecutor(String name,IntegrationServerProperties serverProperties)
+	{
+		if(serverProperties.isVirtualThreads())
+		{
+			if(VirtualThreadExecutor.isSupported())
+			{
+				LOGGER.info("container {} handles requests on virtual threads, maxVirtualThreads={}",name,serverProperties.getMaxVirtualThreads());
+				return new VirtualThreadExecutor("Netty-server-"+name, 
+												serverProperties.getMaxVirtualThreads(), 
+												serverProperties.getVirtualThreadPinnedThreshold());
+			}
+			LOGGER.warn("virtual threads require jdk21 or later, container {} uses thread pool, java.version={}",name,System.getProperty("java.version"));
+		}
+		StandardThreadExecutor executor = new StandardThreadExecutor(serverProperties.getMinWorkerThread(), 
+														serverProperties.getMaxWorkerThread(), 
+														serverProperties.getWorkerQueueSize(), 
+														new DefaultThreadFactory("Netty-server-"+name,true));
+		executor.prestartAllCoreThreads();
+		return executor;
+	}
+	
+	@Override
+	public synchronized ExecutorService newConnectorExecutor(String connectorName,ConnectorExecutorProperties properties)
+	{
+		if(properties == null)
+		{
+			return serverExecutor;
+		}
+		switch (properties.getIsolation()) {
+		case DEDICATED:
+			LOGGER.info("connector {} uses dedicated thread pool, threads={}~{}, queueSize={}",connectorName,
+					properties.getCoreThreads(),properties.getMaxThreads(),properties.getQueueSize());
+			return new BulkheadThreadExecutor(connectorName, 
+											properties.getCoreThreads(), 
+											properties.getMaxThreads(), 
+											properties.getQueueSize(), 
+											new DefaultThreadFactory("Netty-server-"+name+"-"+connectorName,true), 
+											new ThreadPoolExecutor.AbortPolicy());
+		case WEIGHTED:
+			if(weightedFairExecutor == null)
+			{
+				weightedFairExecutor = new WeightedFairExecutor("Netty-fair-"+name, 
+																serverProperties.getFairWorkerThreads(), 
+																new DefaultThreadFactory("Netty-fair-"+name,true));
+			}
+			LOGGER.info("connector {} uses weighted fair thread pool, weight={}, reservedThreads={}",connectorName,
+					properties.getWeight(),properties.getReservedThreads());
+			return weightedFairExecutor.newLane(connectorName, 
+												properties.getWeight(), 
+												properties.getReservedThreads(), 
+												properties.getQueueSize());
+		default:
+			return serverExecutor;
+		}
+	}
+	
+	public ExecutorService getServerExecutor() {
 		return serverExecutor;
 	}
 	
-	public void setServerExecutor(StandardThreadExecutor serverExecutor) {
+	public void setServerExecutor(ExecutorService serverExecutor) {
 		this.serverExecutor = serverExecutor;
 	}
 	
@@ -75,6 +147,18 @@ public abstract class AbstractContainer extends AbstractLifeCycle implements Con
 			LOGGER.info("{} connector has bean stopped", connector.getName());
 		});
 		this.serverExecutor.shutdownNow();
+		if(weightedFairExecutor != null)
+		{
+			weightedFairExecutor.shutdown();
+		}
+		synchronized (this) {
+			if(scheduledExecutor != null)
+			{
+				scheduledExecutor.shutdownNow();
+				//再次启动时重新创建
+				scheduledExecutor = null;
+			}
+		}
 		//子类做一些关闭的事情
 		destroy();
 	}
@@ -121,4 +205,15 @@ public abstract class AbstractContainer extends AbstractLifeCycle implements Con
 	public StandardThreadExecutor getAccessLogExecutor() {
 		return accessLogExecutor;
 	}
+	
+	@Override
+	public synchronized ScheduledExecutorService getScheduledExecutor() {
+		if(scheduledExecutor == null)
+		{
+			scheduledExecutor = new ScheduledThreadPoolExecutor(1, new DefaultThreadFactory("scheduler-"+name,true));
+			//取消的任务立即从队列中删除
+			scheduledExecutor.setRemoveOnCancelPolicy(true);
+		}
+		return scheduledExecutor;
+	}
 }
@@ -2,12 +2,19 @@ package com.baffalotech.integration.api;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.baffalotech.integration.api.impl.NettyContainer;
-import com.baffalotech.integration.core.StandardThreadExecutor;
+import com.baffalotech.integration.configuration.ConnectorExecutorProperties;
+import com.baffalotech.integration.core.AdaptiveConcurrencyLimiter;
+import com.baffalotech.integration.core.ExecutorMetrics;
+import com.baffalotech.integration.core.NettyTransport;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
@@ -15,8 +22,6 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 
 public abstract class AbstractNettyConnector extends AbstractConnector {
 	
@@ -28,17 +33,47 @@ public abstract class AbstractNettyConnector extends AbstractConnector {
 	
 	private EventLoopGroup workerEventLoopGroup;
 	
-	private StandardThreadExecutor serverExecutor;
+	//处理请求的执行器，第一次使用时按executorProperties创建，停止时关闭并清空，重新启动后再创建
+	private volatile ExecutorService serverExecutor;
 	
-	private ChannelFuture channelFuture ;
+	//每次提交时查找当前的执行器，交给handler保存，connector重新启动后不会提交到已经关闭的执行器
+	private final Executor dispatchExecutor = new Executor() {
+		
+		@Override
+		public void execute(Runnable command) {
+			getServerExecutor().execute(command);
+		}
+		
+		@Override
+		public String toString() {
+			return String.valueOf(getServerExecutor());
+		}
+	};
+	
+	//执行器的配置，为null时使用容器的线程池
+	private ConnectorExecutorProperties executorProperties;
+	
+	//每次绑定端口对应一个ChannelFuture
+	private List<ChannelFuture> channelFutures = new ArrayList<>();
 	
 	//是否使用公共IO线程池
 	private boolean isPublicIOThreadPool = false;
 	
+	//同一端口绑定的次数，大于1时通过SO_REUSEPORT让内核把新连接分散到每次绑定的ServerChannel上，只有epoll和io_uring支持
+	private int acceptors = 1;
+	
+	//是否开启TCP_QUICKACK，立即回复ack而不是延迟到和响应一起发送，只有epoll和io_uring支持
+	private boolean tcpQuickAck = false;
+	
+	//TCP_FASTOPEN等待队列的长度，0表示不开启，只有epoll和io_uring支持
+	private int tcpFastOpen = 0;
+	
+	//按处理耗时自动调整的并发上限，为null时不限制，超过上限的请求由各协议的handler返回繁忙
+	private AdaptiveConcurrencyLimiter concurrencyLimiter;
+	
 	public AbstractNettyConnector(Container container)
 	{
 		setContainer(container);
-		this.serverExecutor = container.getServerExecutor();
 		bootstrap = new ServerBootstrap();
 		if(container instanceof NettyContainer)
 		{
@@ -47,9 +82,8 @@ public abstract class AbstractNettyConnector extends AbstractConnector {
 			this.workerEventLoopGroup = nettyContainer.getWorker();
 			this.isPublicIOThreadPool = true;
 		}else {
-			//非netty容器，自行创建
-			this.bossEventLoopGroup = new NioEventLoopGroup();
-			this.workerEventLoopGroup = new NioEventLoopGroup();
+			//非netty容器，自行创建，在doStart时按acceptors创建boss线程
+			this.workerEventLoopGroup = NettyTransport.select(null).newEventLoopGroup(0, null);
 		}
 	}
 	
@@ -58,8 +92,16 @@ public abstract class AbstractNettyConnector extends AbstractConnector {
 	@Override
 	public void doStart() {
 		// TODO Auto-generated method stub
+		//ServerChannel必须和EventLoopGroup是同一种实现
+		NettyTransport transport = NettyTransport.of(this.workerEventLoopGroup);
+		//启动时就创建connector单独的执行器，而不是在第一个请求时
+		getServerExecutor();
+		if(this.bossEventLoopGroup == null)
+		{
+			this.bossEventLoopGroup = transport.newEventLoopGroup(Math.max(1, acceptors), null);
+		}
 		bootstrap.group(this.bossEventLoopGroup, this.workerEventLoopGroup)
-				 .channel(NioServerSocketChannel.class)
+				 .channel(transport.serverChannelClass())
 				  //允许在同一端口上启动同一服务器的多个实例，只要每个实例捆绑一个不同的本地IP地址即可
                  .option(ChannelOption.SO_REUSEADDR, true)
                  //用于构造服务端套接字ServerSocket对象，标识当服务器请求处理线程全满时，用于临时存放已完成三次握手的请求的队列的最大长度
@@ -70,11 +112,51 @@ public abstract class AbstractNettyConnector extends AbstractConnector {
                  //开启TCP/IP协议实现的心跳机制
                  .childOption(ChannelOption.SO_KEEPALIVE, true)
                  .childHandler(newInitializerChannelHandler());
+		int bindCount = Math.max(1, acceptors);
+		if(bindCount > 1)
+		{
+			if(transport.reusePortOption() != null)
+			{
+				bootstrap.option(transport.reusePortOption(), true);
+			}else {
+				LOGGER.warn("connector {} : {} transport does not support SO_REUSEPORT, bind port {} once",getName(),transport,getPort());
+				bindCount = 1;
+			}
+		}
+		if(tcpFastOpen > 0)
+		{
+			if(transport.fastOpenOption() != null)
+			{
+				bootstrap.option(transport.fastOpenOption(), tcpFastOpen);
+			}else {
+				LOGGER.warn("connector {} : {} transport does not support TCP_FASTOPEN",getName(),transport);
+			}
+		}
+		if(tcpQuickAck)
+		{
+			if(transport.quickAckOption() != null)
+			{
+				bootstrap.childOption(transport.quickAckOption(), true);
+			}else {
+				LOGGER.warn("connector {} : {} transport does not support TCP_QUICKACK",getName(),transport);
+			}
+		}
 		try {
 			InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(),getPort());
-			channelFuture = bootstrap.bind(getPort());
+			//每次bind都注册一个新的ServerChannel，依次分配到boss的不同线程
+			for(int i = 0; i < bindCount; i++)
+			{
+				ChannelFuture channelFuture = bootstrap.bind(getPort());
+				channelFuture.addListener(future -> {
+					if(!future.isSuccess())
+					{
+						LOGGER.error("connector {} failed to bind port {}",getName(),getPort(),future.cause());
+					}
+				});
+				channelFutures.add(channelFuture);
+			}
 //			channelFuture = bootstrap.bind(serverAddress).sync();
-			LOGGER.info("connector {} started at port {},protocal is {}",getName(),getPort(),getSchema());
+			LOGGER.info("connector {} started at port {},protocal is {},transport is {},acceptors is {}",getName(),getPort(),getSchema(),transport,bindCount);
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			LOGGER.error("error happen when connector {} starting",getName());
@@ -86,19 +168,114 @@ public abstract class AbstractNettyConnector extends AbstractConnector {
 		// TODO Auto-generated method stub
 		//只有使用自己创建的线程池才需要关闭，否则在container中关闭
 		try {
-			channelFuture.channel().closeFuture().sync();
+			for(ChannelFuture channelFuture : channelFutures)
+			{
+				channelFuture.channel().close().sync();
+			}
+			channelFutures.clear();
 		} catch (InterruptedException e) {
 			// TODO Auto-generated catch block
 			LOGGER.error("error happen when connector {} close",getName());
 		}
 		if(!isPublicIOThreadPool)
 		{
-			this.bossEventLoopGroup.shutdownGracefully();
+			if(this.bossEventLoopGroup != null)
+			{
+				this.bossEventLoopGroup.shutdownGracefully();
+			}
 			this.workerEventLoopGroup.shutdownGracefully();
 		}
+		//connector单独的执行器在这里关闭，容器的线程池在container中关闭
+		ExecutorService executor;
+		synchronized (this) {
+			executor = this.serverExecutor;
+			this.serverExecutor = null;
+		}
+		if(executor != null && executor != getContainer().getServerExecutor())
+		{
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * 处理请求的执行器，按executorProperties创建，没有配置时为容器的线程池
+	 * @return
+	 */
+	public ExecutorService getServerExecutor() {
+		ExecutorService executor = serverExecutor;
+		if(executor == null)
+		{
+			synchronized (this) {
+				executor = serverExecutor;
+				if(executor == null)
+				{
+					executor = getContainer().newConnectorExecutor(getName(), executorProperties);
+					serverExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+	
+	/**
+	 * 提交请求的执行器，每次提交时调用{@link #getServerExecutor()}
+	 * @return
+	 */
+	public Executor getDispatchExecutor() {
+		return dispatchExecutor;
+	}
+	
+	/**
+	 * connector单独的执行器的队列长度、等待时间等统计，使用容器的线程池或者还没有创建执行器(未启动、已停止)时为null。
+	 * 只读取当前的执行器，不会创建新的执行器
+	 * @return
+	 */
+	public ExecutorMetrics getExecutorMetrics() {
+		ExecutorService executor = serverExecutor;
+		return executor instanceof ExecutorMetrics ? (ExecutorMetrics) executor : null;
+	}
+	
+	public ConnectorExecutorProperties getExecutorProperties() {
+		return executorProperties;
+	}
+	
+	/**
+	 * 设置执行器的配置，需要在第一次调用getServerExecutor之前设置
+	 * @param executorProperties
+	 */
+	public void setExecutorProperties(ConnectorExecutorProperties executorProperties) {
+		this.executorProperties = executorProperties;
+	}
+	
+	public int getAcceptors() {
+		return acceptors;
+	}
+	
+	public void setAcceptors(int acceptors) {
+		this.acceptors = acceptors;
+	}
+	
+	public boolean isTcpQuickAck() {
+		return tcpQuickAck;
+	}
+	
+	public void setTcpQuickAck(boolean tcpQuickAck) {
+		this.tcpQuickAck = tcpQuickAck;
+	}
+	
+	public int getTcpFastOpen() {
+		return tcpFastOpen;
+	}
+	
+	public void setTcpFastOpen(int tcpFastOpen) {
+		this.tcpFastOpen = tcpFastOpen;
+	}
+	
+	public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
 	}
 	
-	protected StandardThreadExecutor getServerExecutor() {
-		return serverExecutor;
+	public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
 	}
 }
@@ -1,7 +1,10 @@
 package com.baffalotech.integration.api;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
+import com.baffalotech.integration.configuration.ConnectorExecutorProperties;
 import com.baffalotech.integration.configuration.IntegrationServerProperties;
 import com.baffalotech.integration.core.StandardThreadExecutor;
 
@@ -29,11 +32,26 @@ public interface Container extends LifeCycle{
 	public List<Connector> getConnectorList();
 	
 	//返回接口执行的线程池
-	public StandardThreadExecutor getServerExecutor();
+	public ExecutorService getServerExecutor();
+	
+	/**
+	 * 按connector的配置创建处理请求的执行器
+	 * @param connectorName
+	 * @param properties 为null或者SHARED时返回容器的线程池
+	 * @return
+	 */
+	public ExecutorService newConnectorExecutor(String connectorName, ConnectorExecutorProperties properties);
 	
 	//access log 线程池
 	public StandardThreadExecutor getAccessLogExecutor();
 	
+	/**
+	 * 容器内定时任务共用的调度线程，例如session过期，任务需要很快执行完，不能阻塞。
+	 * 容器停止时关闭，再次获取时重新创建，使用方不要长期持有
+	 * @return
+	 */
+	public ScheduledExecutorService getScheduledExecutor();
+	
 	//获取参数配置
 	public IntegrationServerProperties getServerProperties();
 }
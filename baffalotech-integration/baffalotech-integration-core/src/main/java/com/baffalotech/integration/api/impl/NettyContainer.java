@@ -5,9 +5,9 @@ import org.slf4j.LoggerFactory;
 
 import com.baffalotech.integration.api.AbstractContainer;
 import com.baffalotech.integration.configuration.IntegrationServerProperties;
+import com.baffalotech.integration.core.NettyTransport;
 
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.epoll.Epoll;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 
@@ -25,8 +25,9 @@ public class NettyContainer extends AbstractContainer{
 
 	private EventLoopGroup worker = null;
 
-	private boolean enableEpoll;
+	private NettyTransport transport;
 	private int ioThreadCount = 0;
+	private int acceptorThreadCount = 1;
 	private int ioRatio = 100;
 
 	public NettyContainer(IntegrationServerProperties serverProperties) {
@@ -49,28 +50,26 @@ public class NettyContainer extends AbstractContainer{
     }
 
 	protected EventLoopGroup newWorkerEventLoopGroup() {
-        EventLoopGroup worker;
-        if(enableEpoll){
-            worker = new EpollEventLoopGroup(ioThreadCount);
-        }else {
-            worker = new NioEventLoopGroup(ioThreadCount);
-        }
-        return worker;
+        return transport.newEventLoopGroup(ioThreadCount, null);
     }
 
     protected EventLoopGroup newBossEventLoopGroup() {
-        EventLoopGroup boss;
-        if(enableEpoll){
-            EpollEventLoopGroup epollBoss = new EpollEventLoopGroup(1);
-            epollBoss.setIoRatio(ioRatio);
-            boss = epollBoss;
-        }else {
-            NioEventLoopGroup jdkBoss = new NioEventLoopGroup(1);
-            jdkBoss.setIoRatio(ioRatio);
-            boss = jdkBoss;
+        EventLoopGroup boss = transport.newEventLoopGroup(Math.max(1, acceptorThreadCount), null);
+        if(boss instanceof NioEventLoopGroup){
+            ((NioEventLoopGroup) boss).setIoRatio(ioRatio);
+        }else if(boss instanceof EpollEventLoopGroup){
+            ((EpollEventLoopGroup) boss).setIoRatio(ioRatio);
         }
         return boss;
     }
+
+    /**
+     * boss和worker使用的网络传输实现, connector据此选择ServerChannel
+     * @return
+     */
+    public NettyTransport getTransport() {
+		return transport;
+	}
     
     public EventLoopGroup getBoss() {
 		return boss;
@@ -84,11 +83,13 @@ public class NettyContainer extends AbstractContainer{
 	@Override
 	public void init() {
 		// TODO Auto-generated method stub
-		this.enableEpoll = Epoll.isAvailable();
+		this.transport = NettyTransport.select(getServerProperties().getServerTransport());
 		this.ioThreadCount = getServerProperties().getServerIoThreads();
+		this.acceptorThreadCount = getServerProperties().getServerAcceptorThreads();
 		this.ioRatio = getServerProperties().getServerIoRatio();
 		this.boss = newBossEventLoopGroup();
 		this.worker = newWorkerEventLoopGroup();
+		LOGGER.info("container {} uses {} transport", getName(), transport);
 	}
 
 	@Override
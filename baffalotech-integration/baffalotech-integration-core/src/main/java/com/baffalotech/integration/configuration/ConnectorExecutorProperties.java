@@ -0,0 +1,96 @@
+package com.baffalotech.integration.configuration;
+
+/**
+ * 单个connector处理请求的执行器配置, 默认和其他connector共享容器的线程池
+ * @author chijinhuang
+ *
+ */
+public class ConnectorExecutorProperties {
+
+	/**
+	 * 和其他connector的隔离方式
+	 */
+	public enum Isolation {
+		/**
+		 * 使用容器的线程池
+		 */
+		SHARED,
+		/**
+		 * 独占的线程池, 使用coreThreads, maxThreads, queueSize
+		 */
+		DEDICATED,
+		/**
+		 * 容器中按权重公平调度的共享线程池的一个通道, 使用weight, reservedThreads, queueSize
+		 */
+		WEIGHTED
+	}
+
+	private Isolation isolation = Isolation.SHARED;
+
+	private int coreThreads = 10;
+
+	private int maxThreads = 100;
+
+	/**
+	 * 线程都被占用时最多排队的任务数, 线程和队列都满时拒绝, 由connector返回繁忙(http 503, tcp繁忙响应或者关闭连接)
+	 */
+	private int queueSize = 0;
+
+	/**
+	 * WEIGHTED模式的权重, 多个connector都有任务排队时按权重比例分配线程
+	 */
+	private int weight = 1;
+
+	/**
+	 * WEIGHTED模式预留的线程数, 其他connector不能占用
+	 */
+	private int reservedThreads = 0;
+
+	public Isolation getIsolation() {
+		return isolation;
+	}
+
+	public void setIsolation(Isolation isolation) {
+		this.isolation = isolation;
+	}
+
+	public int getCoreThreads() {
+		return coreThreads;
+	}
+
+	public void setCoreThreads(int coreThreads) {
+		this.coreThreads = coreThreads;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+	public void setWeight(int weight) {
+		this.weight = weight;
+	}
+
+	public int getReservedThreads() {
+		return reservedThreads;
+	}
+
+	public void setReservedThreads(int reservedThreads) {
+		this.reservedThreads = reservedThreads;
+	}
+}
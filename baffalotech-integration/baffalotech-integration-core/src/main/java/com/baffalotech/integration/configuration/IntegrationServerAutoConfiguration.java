@@ -3,15 +3,22 @@ package com.baffalotech.integration.configuration;
 import java.io.File;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import com.baffalotech.integration.accesslog.AccessLogReceiver;
 import com.baffalotech.integration.accesslog.DefaultAccessLogReceiver;
+import com.baffalotech.integration.accesslog.MappedAccessLogReceiver;
 import com.baffalotech.integration.api.Container;
 import com.baffalotech.integration.api.ContainerFactory;
 import com.baffalotech.integration.api.impl.NettyContainerFactory;
+import com.baffalotech.integration.metrics.AccessLogMeterBinder;
+import com.baffalotech.integration.metrics.ConcurrencyLimiterMeterBinder;
+import com.baffalotech.integration.metrics.ConnectorExecutorMeterBinder;
+import com.baffalotech.integration.metrics.LatencyMeterBinder;
+import com.baffalotech.integration.metrics.LatencyRegistry;
 import com.baffalotech.integration.mvc.MessageConverter;
 import com.baffalotech.integration.mvc.impl.DefaultJsonMessageConverter;
 import com.baffalotech.integration.mvc.impl.DefaultXmlMessageConverter;
@@ -45,12 +52,41 @@ public class IntegrationServerAutoConfiguration {
 	@Bean
 	public AccessLogReceiver defaultAccessLogReceiver(Container container)
 	{
-		File dir = new File(properties.getAccesslog().getDirectory());
+		IntegrationServerProperties.Accesslog accesslog = properties.getAccesslog();
+		File dir = new File(accesslog.getDirectory());
 		if(!dir.exists())
 		{
 			dir.mkdir();
 		}
-		DefaultAccessLogReceiver defaultAccessLogReceiver = new DefaultAccessLogReceiver(container.getAccessLogExecutor(), dir,properties.getAccesslog().getPrefix(),properties.getAccesslog().getSuffix(),true);
+		if(accesslog.isMapped())
+		{
+			return MappedAccessLogReceiver.builder()
+					.setLogWriteExecutor(container.getAccessLogExecutor())
+					.setFlushScheduler(container.getScheduledExecutor())
+					.setOutputDirectory(dir.toPath())
+					.setLogBaseName(accesslog.getPrefix())
+					.setLogNameSuffix(accesslog.getSuffix())
+					.setRotate(accesslog.isRotate())
+					.setSegmentSize(accesslog.getSegmentSize())
+					.setFlushSize(accesslog.getFlushSize())
+					.setFlushInterval(accesslog.getFlushInterval())
+					.setQueueCapacity(accesslog.getQueueCapacity())
+					.setOverflowPolicy(accesslog.getOverflowPolicy())
+					.setBlockTimeout(accesslog.getBlockTimeout())
+					.setSampleRate(accesslog.getSampleRate())
+					.build();
+		}
+		DefaultAccessLogReceiver defaultAccessLogReceiver = DefaultAccessLogReceiver.builder()
+				.setLogWriteExecutor(container.getAccessLogExecutor())
+				.setOutputDirectory(dir.toPath())
+				.setLogBaseName(accesslog.getPrefix())
+				.setLogNameSuffix(accesslog.getSuffix())
+				.setRotate(accesslog.isRotate())
+				.setQueueCapacity(accesslog.getQueueCapacity())
+				.setOverflowPolicy(accesslog.getOverflowPolicy())
+				.setBlockTimeout(accesslog.getBlockTimeout())
+				.setSampleRate(accesslog.getSampleRate())
+				.build();
 		return defaultAccessLogReceiver;
 	}
 	
@@ -69,12 +105,45 @@ public class IntegrationServerAutoConfiguration {
 	@Bean
 	public MessageConverter defaultXmlMessageConverter()
 	{
-		return new DefaultXmlMessageConverter();
+		return new DefaultXmlMessageConverter(properties.isPrettyPrint());
 	}
 	
 	@Bean
 	public MessageConverter defaultJsonMessageConverter()
 	{
-		return new DefaultJsonMessageConverter();
+		return new DefaultJsonMessageConverter(properties.isPrettyPrint());
+	}
+	
+	/**
+	 * 引入了micrometer时把耗时分布导出为timer，access log队列和connector并发上限的状态导出为counter和gauge，
+	 * MeterRegistry由spring boot actuator绑定
+	 */
+	@Configuration
+	@ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+	static class LatencyMetricsConfiguration {
+		
+		@Bean
+		public LatencyMeterBinder latencyMeterBinder()
+		{
+			return new LatencyMeterBinder(LatencyRegistry.getDefaultInstance());
+		}
+		
+		@Bean
+		public AccessLogMeterBinder accessLogMeterBinder(AccessLogReceiver accessLogReceiver)
+		{
+			return new AccessLogMeterBinder(accessLogReceiver);
+		}
+		
+		@Bean
+		public ConcurrencyLimiterMeterBinder concurrencyLimiterMeterBinder(Container container)
+		{
+			return new ConcurrencyLimiterMeterBinder(container);
+		}
+		
+		@Bean
+		public ConnectorExecutorMeterBinder connectorExecutorMeterBinder(Container container)
+		{
+			return new ConnectorExecutorMeterBinder(container);
+		}
 	}
 }
@@ -5,6 +5,11 @@ import java.util.concurrent.Executor;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
+import com.baffalotech.integration.accesslog.AccessLogRingBuffer;
+import com.baffalotech.integration.accesslog.MappedAccessLogReceiver;
+import com.baffalotech.integration.core.NettyTransport;
+import com.baffalotech.integration.core.VirtualThreadExecutor;
+
 @ConfigurationProperties(prefix = "server.int", ignoreUnknownFields = true)
 public class IntegrationServerProperties {
 	
@@ -28,6 +33,16 @@ public class IntegrationServerProperties {
 	 */
 	private int serverIoRatio = 100;
 
+	/**
+	 * 服务端-网络传输实现(io_uring, epoll, nio) 注: (不设置时按io_uring, epoll, nio的顺序选择第一个可用的)
+	 */
+	private NettyTransport serverTransport;
+
+	/**
+	 * 服务端-接收连接的线程数, connector用SO_REUSEPORT多次绑定同一端口时, 设置为绑定次数才能让每次绑定由不同的线程接收连接
+	 */
+	private int serverAcceptorThreads = 1;
+
 	/**
 	 * 每次调用servlet的 OutputStream.Writer()方法写入的最大堆字节,超出后用堆外内存
 	 */
@@ -39,6 +54,31 @@ public class IntegrationServerProperties {
 	
 	private int workerQueueSize = 0;
 	
+	/**
+	 * 是否用虚拟线程处理请求(每个请求一个虚拟线程), 需要jdk21及以上, 开启后minWorkerThread,maxWorkerThread,workerQueueSize不再生效
+	 */
+	private boolean virtualThreads = false;
+	
+	/**
+	 * 虚拟线程模式下最多同时处理的请求数, 超过后拒绝请求, 0表示不限制
+	 */
+	private int maxVirtualThreads = VirtualThreadExecutor.DEFAULT_MAX_CONCURRENCY;
+	
+	/**
+	 * 虚拟线程被synchronized等占住载体线程超过这个毫秒数时打印警告, 0表示不检测
+	 */
+	private long virtualThreadPinnedThreshold = VirtualThreadExecutor.DEFAULT_PINNED_THRESHOLD_MILLIS;
+	
+	/**
+	 * connector按权重公平共享的线程池(ConnectorExecutorProperties.Isolation.WEIGHTED)的最大线程数, 有connector使用时才创建
+	 */
+	private int fairWorkerThreads = 200;
+	
+	/**
+	 * mvc消息转换器输出的json/xml是否格式化，默认不格式化
+	 */
+	private boolean prettyPrint = false;
+	
 	//access log pattern
 	@NestedConfigurationProperty
 	private Accesslog accesslog = new Accesslog();
@@ -67,6 +107,22 @@ public class IntegrationServerProperties {
 		this.serverIoRatio = serverIoRatio;
 	}
 
+	public NettyTransport getServerTransport() {
+		return serverTransport;
+	}
+
+	public void setServerTransport(NettyTransport serverTransport) {
+		this.serverTransport = serverTransport;
+	}
+
+	public int getServerAcceptorThreads() {
+		return serverAcceptorThreads;
+	}
+
+	public void setServerAcceptorThreads(int serverAcceptorThreads) {
+		this.serverAcceptorThreads = serverAcceptorThreads;
+	}
+
 	public Executor getServerHandlerExecutor() {
 		return serverHandlerExecutor;
 	}
@@ -107,6 +163,46 @@ public class IntegrationServerProperties {
 		this.workerQueueSize = workerQueueSize;
 	}
 	
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	public int getMaxVirtualThreads() {
+		return maxVirtualThreads;
+	}
+
+	public void setMaxVirtualThreads(int maxVirtualThreads) {
+		this.maxVirtualThreads = maxVirtualThreads;
+	}
+
+	public long getVirtualThreadPinnedThreshold() {
+		return virtualThreadPinnedThreshold;
+	}
+
+	public void setVirtualThreadPinnedThreshold(long virtualThreadPinnedThreshold) {
+		this.virtualThreadPinnedThreshold = virtualThreadPinnedThreshold;
+	}
+	
+	public int getFairWorkerThreads() {
+		return fairWorkerThreads;
+	}
+
+	public void setFairWorkerThreads(int fairWorkerThreads) {
+		this.fairWorkerThreads = fairWorkerThreads;
+	}
+	
+	public boolean isPrettyPrint() {
+		return prettyPrint;
+	}
+
+	public void setPrettyPrint(boolean prettyPrint) {
+		this.prettyPrint = prettyPrint;
+	}
+
 	public Accesslog getAccesslog() {
 		return accesslog;
 	}
@@ -154,6 +250,46 @@ public class IntegrationServerProperties {
 		 */
 		private boolean rotate = true;
 
+		/**
+		 * Whether to write access logs through a memory-mapped file instead of a BufferedWriter.
+		 */
+		private boolean mapped = false;
+
+		/**
+		 * Size in bytes of each mapped file segment.
+		 */
+		private int segmentSize = MappedAccessLogReceiver.DEFAULT_SEGMENT_SIZE;
+
+		/**
+		 * Bytes written to the mapped file before they are forced to disk.
+		 */
+		private int flushSize = MappedAccessLogReceiver.DEFAULT_FLUSH_SIZE;
+
+		/**
+		 * Milliseconds after which written bytes are forced to disk.
+		 */
+		private long flushInterval = MappedAccessLogReceiver.DEFAULT_FLUSH_INTERVAL;
+
+		/**
+		 * Maximum number of access log messages waiting to be written.
+		 */
+		private int queueCapacity = AccessLogRingBuffer.DEFAULT_CAPACITY;
+
+		/**
+		 * What to do when the queue is full: drop, sample or block.
+		 */
+		private AccessLogRingBuffer.OverflowPolicy overflowPolicy = AccessLogRingBuffer.OverflowPolicy.DROP;
+
+		/**
+		 * Milliseconds a request thread waits for a free slot with the block policy.
+		 */
+		private long blockTimeout = AccessLogRingBuffer.DEFAULT_BLOCK_TIMEOUT;
+
+		/**
+		 * With the sample policy, keep one of every sample-rate messages once the queue is 3/4 full.
+		 */
+		private int sampleRate = AccessLogRingBuffer.DEFAULT_SAMPLE_RATE;
+
 		public boolean isEnabled() {
 			return this.enabled;
 		}
@@ -201,5 +337,69 @@ public class IntegrationServerProperties {
 		public void setRotate(boolean rotate) {
 			this.rotate = rotate;
 		}
+
+		public boolean isMapped() {
+			return mapped;
+		}
+
+		public void setMapped(boolean mapped) {
+			this.mapped = mapped;
+		}
+
+		public int getSegmentSize() {
+			return segmentSize;
+		}
+
+		public void setSegmentSize(int segmentSize) {
+			this.segmentSize = segmentSize;
+		}
+
+		public int getFlushSize() {
+			return flushSize;
+		}
+
+		public void setFlushSize(int flushSize) {
+			this.flushSize = flushSize;
+		}
+
+		public long getFlushInterval() {
+			return flushInterval;
+		}
+
+		public void setFlushInterval(long flushInterval) {
+			this.flushInterval = flushInterval;
+		}
+
+		public int getQueueCapacity() {
+			return queueCapacity;
+		}
+
+		public void setQueueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+		}
+
+		public AccessLogRingBuffer.OverflowPolicy getOverflowPolicy() {
+			return overflowPolicy;
+		}
+
+		public void setOverflowPolicy(AccessLogRingBuffer.OverflowPolicy overflowPolicy) {
+			this.overflowPolicy = overflowPolicy;
+		}
+
+		public long getBlockTimeout() {
+			return blockTimeout;
+		}
+
+		public void setBlockTimeout(long blockTimeout) {
+			this.blockTimeout = blockTimeout;
+		}
+
+		public int getSampleRate() {
+			return sampleRate;
+		}
+
+		public void setSampleRate(int sampleRate) {
+			this.sampleRate = sampleRate;
+		}
 	}
 }
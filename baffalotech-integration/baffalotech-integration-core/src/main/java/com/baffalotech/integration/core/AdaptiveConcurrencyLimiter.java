@@ -0,0 +1,181 @@
+package com.baffalotech.integration.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * 按处理耗时自动调整的并发上限 (AIMD, 每个connector一个实例)
+ *
+ * 每个请求处理完成后根据耗时调整上限：
+ * 		耗时超过阈值或者被执行器拒绝 : 上限乘以backoffRatio (乘性减)
+ * 		耗时正常并且正在处理的请求数达到上限的一半 : 上限加1 (加性增), 请求少的时候上限不会无限增长
+ * 上限在[minLimit, maxLimit]之间, 正在处理的请求数达到上限时新的请求直接拒绝, 由connector按协议返回繁忙
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	public static final int DEFAULT_INITIAL_LIMIT = 100;
+	public static final int DEFAULT_MIN_LIMIT = 10;
+	public static final int DEFAULT_MAX_LIMIT = 1000;
+	public static final long DEFAULT_LATENCY_THRESHOLD_MILLIS = 1000;
+	public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+	//统计拒绝率的时间窗口
+	private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long latencyThresholdNanos;
+	private final double backoffRatio;
+
+	// 当前上限, 调整时加锁, 读取不加锁
+	private volatile double limit;
+	// 正在处理的请求数
+	private final AtomicInteger inflight = new AtomicInteger();
+	private final LongAdder acceptedCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+
+	// 上一个完整时间窗口的拒绝率
+	private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+	private final LongAdder windowAccepted = new LongAdder();
+	private final LongAdder windowRejected = new LongAdder();
+	private volatile double rejectionRate;
+
+	public AdaptiveConcurrencyLimiter() {
+		this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_LATENCY_THRESHOLD_MILLIS);
+	}
+
+	/**
+	 * @param initialLimit 初始上限
+	 * @param minLimit 最小上限
+	 * @param maxLimit 最大上限
+	 * @param latencyThresholdMillis 处理耗时超过这个毫秒数时减小上限
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMillis) {
+		this(initialLimit, minLimit, maxLimit, latencyThresholdMillis, DEFAULT_BACKOFF_RATIO);
+	}
+
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMillis,
+			double backoffRatio) {
+		if (minLimit < 1 || maxLimit < minLimit) {
+			throw new IllegalArgumentException("invalid limit range [" + minLimit + ", " + maxLimit + "]");
+		}
+		if (backoffRatio <= 0 || backoffRatio >= 1) {
+			throw new IllegalArgumentException("backoffRatio must be between 0 and 1 : " + backoffRatio);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+		this.backoffRatio = backoffRatio;
+		this.limit = Math.min(maxLimit, Math.max(minLimit, initialLimit));
+	}
+
+	/**
+	 * 获取一个处理名额, 成功后必须调用{@link #release(long)}或{@link #releaseDropped()}
+	 * @return false=正在处理的请求数已经达到上限
+	 */
+	public boolean tryAcquire() {
+		rollWindow();
+		int current;
+		do {
+			current = inflight.get();
+			if (current >= (int) limit) {
+				rejectedCount.increment();
+				windowRejected.increment();
+				return false;
+			}
+		} while (!inflight.compareAndSet(current, current + 1));
+		acceptedCount.increment();
+		windowAccepted.increment();
+		return true;
+	}
+
+	/**
+	 * 请求处理完成
+	 * @param latencyNanos 从获取名额到处理完成的纳秒数, 包括在队列中等待的时间
+	 */
+	public void release(long latencyNanos) {
+		int current = inflight.getAndDecrement();
+		synchronized (this) {
+			if (latencyNanos > latencyThresholdNanos) {
+				limit = Math.max(minLimit, limit * backoffRatio);
+			} else if (current * 2 >= limit) {
+				limit = Math.min(maxLimit, limit + 1);
+			}
+		}
+	}
+
+	/**
+	 * 获取名额后被执行器拒绝, 说明下游已经处理不过来, 按超时处理
+	 */
+	public void releaseDropped() {
+		inflight.decrementAndGet();
+		synchronized (this) {
+			limit = Math.max(minLimit, limit * backoffRatio);
+		}
+	}
+
+	private void rollWindow() {
+		long start = windowStart.get();
+		long now = System.nanoTime();
+		if (now - start >= RATE_WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+			long accepted = windowAccepted.sumThenReset();
+			long rejected = windowRejected.sumThenReset();
+			long total = accepted + rejected;
+			rejectionRate = total == 0 ? 0 : (double) rejected / total;
+		}
+	}
+
+	/**
+	 * 当前的并发上限
+	 * @return
+	 */
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	/**
+	 * 正在处理的请求数
+	 * @return
+	 */
+	public int getInflight() {
+		return inflight.get();
+	}
+
+	public long getAcceptedCount() {
+		return acceptedCount.sum();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	/**
+	 * 最近一秒被拒绝的请求比例, 0~1
+	 * @return
+	 */
+	public double getRejectionRate() {
+		rollWindow();
+		return rejectionRate;
+	}
+
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	@Override
+	public String toString() {
+		return "AdaptiveConcurrencyLimiter[limit=" + getLimit() + ", inflight=" + getInflight() + ", accepted="
+				+ getAcceptedCount() + ", rejected=" + getRejectedCount() + "]";
+	}
+}
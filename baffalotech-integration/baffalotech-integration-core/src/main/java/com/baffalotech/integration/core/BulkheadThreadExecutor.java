@@ -0,0 +1,101 @@
+package com.baffalotech.integration.core;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * connector独占的线程池(隔离舱), 一个connector的下游变慢时只会占满自己的线程, 不影响其他connector
+ *
+ * 执行策略和StandardThreadExecutor相同, 另外统计任务在队列中的等待时间和拒绝次数
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+public class BulkheadThreadExecutor extends StandardThreadExecutor implements ExecutorMetrics {
+
+	private final String name;
+	private final WaitTimeStats waitTimeStats = new WaitTimeStats();
+	private final LongAdder rejectedTaskCount;
+
+	public BulkheadThreadExecutor(String name, int coreThreads, int maxThreads, int queueCapacity,
+			ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+		this(name, coreThreads, maxThreads, queueCapacity, threadFactory, handler, new LongAdder());
+	}
+
+	private BulkheadThreadExecutor(String name, int coreThreads, int maxThreads, int queueCapacity,
+			ThreadFactory threadFactory, RejectedExecutionHandler handler, LongAdder rejectedTaskCount) {
+		super(coreThreads, maxThreads, DEFAULT_MAX_IDLE_TIME, TimeUnit.MILLISECONDS, queueCapacity, threadFactory,
+				(r, executor) -> {
+					rejectedTaskCount.increment();
+					handler.rejectedExecution(r, executor);
+				});
+		this.name = name;
+		this.rejectedTaskCount = rejectedTaskCount;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		super.execute(new TimedTask(command));
+	}
+
+	@Override
+	protected void beforeExecute(Thread t, Runnable r) {
+		if (r instanceof TimedTask) {
+			waitTimeStats.record(System.nanoTime() - ((TimedTask) r).submitTime);
+		}
+		super.beforeExecute(t, r);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getQueueSize() {
+		return getQueue().size();
+	}
+
+	@Override
+	public long getRejectedTaskCount() {
+		return rejectedTaskCount.sum();
+	}
+
+	@Override
+	public double getAverageWaitMillis() {
+		return waitTimeStats.getAverageMillis();
+	}
+
+	@Override
+	public long getMaxWaitMillis() {
+		return waitTimeStats.getMaxMillis();
+	}
+
+	@Override
+	public String toString() {
+		return "BulkheadThreadExecutor[" + name + ", pool=" + getPoolSize() + "/" + getMaximumPoolSize() + ", active="
+				+ getActiveCount() + ", queued=" + getQueueSize() + ", rejected=" + getRejectedTaskCount()
+				+ ", avgWait=" + String.format("%.1f", getAverageWaitMillis()) + "ms, maxWait=" + getMaxWaitMillis()
+				+ "ms]";
+	}
+
+	/**
+	 * 记录提交时间的任务
+	 */
+	private static class TimedTask implements Runnable {
+		private final Runnable task;
+		private final long submitTime = System.nanoTime();
+
+		TimedTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			task.run();
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.baffalotech.integration.core;
+
+/**
+ * connector单独的执行器的统计数据
+ * @author chijinhuang
+ *
+ */
+public interface ExecutorMetrics {
+
+	/**
+	 * 在队列中等待的任务数
+	 * @return
+	 */
+	public int getQueueSize();
+
+	/**
+	 * 正在执行的任务数
+	 * @return
+	 */
+	public int getActiveCount();
+
+	public long getCompletedTaskCount();
+
+	public long getRejectedTaskCount();
+
+	/**
+	 * 任务从提交到开始执行的平均等待毫秒数
+	 * @return
+	 */
+	public double getAverageWaitMillis();
+
+	/**
+	 * 任务从提交到开始执行的最大等待毫秒数
+	 * @return
+	 */
+	public long getMaxWaitMillis();
+}
@@ -0,0 +1,270 @@
+package com.baffalotech.integration.core;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+/**
+ * netty的网络传输实现, EventLoopGroup和ServerChannel必须是同一种实现
+ *
+ * io_uring在独立的netty-incubator-transport-io_uring包中, 这里通过反射加载, classpath中没有时不可用
+ * @author chijinhuang
+ *
+ */
+public enum NettyTransport {
+
+	IO_URING {
+		@Override
+		public boolean isAvailable() {
+			return IoUring.AVAILABLE;
+		}
+
+		@Override
+		public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+			try {
+				return (EventLoopGroup) IoUring.eventLoopGroupConstructor.newInstance(threads, threadFactory);
+			} catch (Exception e) {
+				throw new IllegalStateException("创建io_uring EventLoopGroup失败", e);
+			}
+		}
+
+		@Override
+		public Class<? extends ServerChannel> serverChannelClass() {
+			return IoUring.serverChannelClass;
+		}
+
+		@Override
+		public boolean isCompatible(EventLoopGroup group) {
+			return IoUring.AVAILABLE && IoUring.eventLoopGroupClass.isInstance(group);
+		}
+
+		@Override
+		public ChannelOption<Boolean> reusePortOption() {
+			return IoUring.reusePort;
+		}
+
+		@Override
+		public ChannelOption<Boolean> quickAckOption() {
+			return IoUring.quickAck;
+		}
+
+		@Override
+		public ChannelOption<Integer> fastOpenOption() {
+			return IoUring.fastOpen;
+		}
+	},
+
+	EPOLL {
+		@Override
+		public boolean isAvailable() {
+			return Epoll.isAvailable();
+		}
+
+		@Override
+		public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+			return new EpollEventLoopGroup(threads, threadFactory);
+		}
+
+		@Override
+		public Class<? extends ServerChannel> serverChannelClass() {
+			return EpollServerSocketChannel.class;
+		}
+
+		@Override
+		public boolean isCompatible(EventLoopGroup group) {
+			return group instanceof EpollEventLoopGroup;
+		}
+
+		@Override
+		public ChannelOption<Boolean> reusePortOption() {
+			return EpollChannelOption.SO_REUSEPORT;
+		}
+
+		@Override
+		public ChannelOption<Boolean> quickAckOption() {
+			return EpollChannelOption.TCP_QUICKACK;
+		}
+
+		@Override
+		public ChannelOption<Integer> fastOpenOption() {
+			return EpollChannelOption.TCP_FASTOPEN;
+		}
+	},
+
+	NIO {
+		@Override
+		public boolean isAvailable() {
+			return true;
+		}
+
+		@Override
+		public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+			return new NioEventLoopGroup(threads, threadFactory);
+		}
+
+		@Override
+		public Class<? extends ServerChannel> serverChannelClass() {
+			return NioServerSocketChannel.class;
+		}
+
+		@Override
+		public boolean isCompatible(EventLoopGroup group) {
+			return group instanceof NioEventLoopGroup;
+		}
+
+		//jdk8的nio不支持SO_REUSEPORT, TCP_QUICKACK和TCP_FASTOPEN
+		@Override
+		public ChannelOption<Boolean> reusePortOption() {
+			return null;
+		}
+
+		@Override
+		public ChannelOption<Boolean> quickAckOption() {
+			return null;
+		}
+
+		@Override
+		public ChannelOption<Integer> fastOpenOption() {
+			return null;
+		}
+	};
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(NettyTransport.class);
+
+	/**
+	 * 当前系统是否可以使用
+	 * @return
+	 */
+	public abstract boolean isAvailable();
+
+	/**
+	 * 新建EventLoopGroup
+	 * @param threads 线程数, 0为cpu核数 * 2
+	 * @param threadFactory 为null时使用netty默认的线程工厂
+	 * @return
+	 */
+	public abstract EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory);
+
+	public abstract Class<? extends ServerChannel> serverChannelClass();
+
+	/**
+	 * group是否是当前实现创建的
+	 * @param group
+	 * @return
+	 */
+	public abstract boolean isCompatible(EventLoopGroup group);
+
+	/**
+	 * SO_REUSEPORT, 不支持时为null
+	 * @return
+	 */
+	public abstract ChannelOption<Boolean> reusePortOption();
+
+	/**
+	 * TCP_QUICKACK, 不支持时为null
+	 * @return
+	 */
+	public abstract ChannelOption<Boolean> quickAckOption();
+
+	/**
+	 * TCP_FASTOPEN(服务端, 值为等待队列长度), 不支持时为null
+	 * @return
+	 */
+	public abstract ChannelOption<Integer> fastOpenOption();
+
+	/**
+	 * 选择网络传输实现
+	 * @param preferred 指定的实现, 为null或者不可用时按io_uring, epoll, nio的顺序选择第一个可用的
+	 * @return
+	 */
+	public static NettyTransport select(NettyTransport preferred) {
+		if (preferred != null) {
+			if (preferred.isAvailable()) {
+				return preferred;
+			}
+			LOGGER.warn("transport {} is not available, select automatically", preferred);
+		}
+		for (NettyTransport transport : values()) {
+			if (transport.isAvailable()) {
+				return transport;
+			}
+		}
+		return NIO;
+	}
+
+	/**
+	 * 根据EventLoopGroup找到对应的实现, 用于选择ServerChannel
+	 * @param group
+	 * @return
+	 */
+	public static NettyTransport of(EventLoopGroup group) {
+		for (NettyTransport transport : values()) {
+			if (transport.isCompatible(group)) {
+				return transport;
+			}
+		}
+		throw new IllegalArgumentException("unsupported EventLoopGroup " + group.getClass().getName());
+	}
+
+	/**
+	 * 反射加载io_uring
+	 */
+	private static final class IoUring {
+		private static final String PACKAGE = "io.netty.incubator.channel.uring.";
+
+		static final boolean AVAILABLE;
+		static Class<?> eventLoopGroupClass;
+		static Constructor<?> eventLoopGroupConstructor;
+		static Class<? extends ServerChannel> serverChannelClass;
+		static ChannelOption<Boolean> reusePort;
+		static ChannelOption<Boolean> quickAck;
+		static ChannelOption<Integer> fastOpen;
+
+		static {
+			boolean available = false;
+			try {
+				ClassLoader classLoader = NettyTransport.class.getClassLoader();
+				Class<?> ioUring = Class.forName(PACKAGE + "IOUring", true, classLoader);
+				if ((Boolean) ioUring.getMethod("isAvailable").invoke(null)) {
+					eventLoopGroupClass = Class.forName(PACKAGE + "IOUringEventLoopGroup", true, classLoader);
+					eventLoopGroupConstructor = eventLoopGroupClass.getConstructor(int.class, ThreadFactory.class);
+					serverChannelClass = Class.forName(PACKAGE + "IOUringServerSocketChannel", true, classLoader)
+							.asSubclass(ServerChannel.class);
+					Class<?> optionClass = Class.forName(PACKAGE + "IOUringChannelOption", true, classLoader);
+					reusePort = option(optionClass, "SO_REUSEPORT");
+					quickAck = option(optionClass, "TCP_QUICKACK");
+					fastOpen = option(optionClass, "TCP_FASTOPEN");
+					available = true;
+				}
+			} catch (ClassNotFoundException e) {
+				// classpath中没有io_uring
+			} catch (Throwable e) {
+				LOGGER.debug("io_uring is not available", e);
+			}
+			AVAILABLE = available;
+		}
+
+		@SuppressWarnings("unchecked")
+		private static <T> ChannelOption<T> option(Class<?> optionClass, String name) {
+			try {
+				Field field = optionClass.getField(name);
+				return (ChannelOption<T>) field.get(null);
+			} catch (ReflectiveOperationException e) {
+				return null;
+			}
+		}
+	}
+}
@@ -104,6 +104,8 @@ public class StandardThreadExecutor extends ThreadPoolExecutor {
 		if (count > maxSubmittedTaskCount) {
 			submittedTasksCount.decrementAndGet();
 			getRejectedExecutionHandler().rejectedExecution(command, this);
+			// CallerRunsPolicy等不抛异常的策略已经处理了任务, 不能再提交
+			return;
 		}
 
 		try {
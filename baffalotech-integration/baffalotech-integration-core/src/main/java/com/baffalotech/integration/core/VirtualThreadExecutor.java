@@ -0,0 +1,265 @@
+package com.baffalotech.integration.core;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <pre>
+ * 每个任务一个虚拟线程的执行器, 需要jdk21及以上. 项目按jdk8编译, 虚拟线程通过反射创建
+ *
+ * 和StandardThreadExecutor的区别：不复用线程, 也没有队列, 阻塞在远程调用上的任务只占用很少的内存,
+ * 同时处理的任务数超过上限时直接reject
+ *
+ * 虚拟线程在synchronized代码块中阻塞时会占住载体线程(pinned), 载体线程默认只有cpu核数个,
+ * 开启检测后通过JFR的jdk.VirtualThreadPinned事件统计次数并打印堆栈
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+	public static final int DEFAULT_MAX_CONCURRENCY = 10000;
+	public static final long DEFAULT_PINNED_THRESHOLD_MILLIS = 20;
+
+	private static final String PINNED_EVENT_NAME = "jdk.VirtualThreadPinned";
+	//两次打印pinned堆栈的最小间隔
+	private static final long PINNED_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final ThreadFactory threadFactory;
+	// 最大允许同时处理的任务数, 小于等于0时不限制
+	private final int maxConcurrency;
+	// 正在处理的任务数
+	private final AtomicInteger runningTasksCount = new AtomicInteger();
+	private final LongAdder completedTaskCount = new LongAdder();
+	private final LongAdder rejectedTaskCount = new LongAdder();
+	private final LongAdder pinnedCount = new LongAdder();
+	private final AtomicLong lastPinnedLogTime = new AtomicLong(System.nanoTime() - PINNED_LOG_INTERVAL_NANOS);
+	// 正在运行的线程, shutdownNow时中断
+	private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+	private final Object terminationLock = new Object();
+	private volatile boolean shutdown;
+	private AutoCloseable pinnedEventStream;
+
+	/**
+	 * @param namePrefix 线程名前缀
+	 * @param maxConcurrency 最大同时处理的任务数, 小于等于0时不限制
+	 * @param pinnedThresholdMillis pinned超过这个时间才统计, 小于等于0时不检测
+	 */
+	public VirtualThreadExecutor(String namePrefix, int maxConcurrency, long pinnedThresholdMillis) {
+		if (!isSupported()) {
+			throw new UnsupportedOperationException("virtual threads require jdk21 or later, current is " + System.getProperty("java.version"));
+		}
+		this.threadFactory = newVirtualThreadFactory(namePrefix + "-virtual-");
+		this.maxConcurrency = maxConcurrency;
+		if (pinnedThresholdMillis > 0) {
+			this.pinnedEventStream = startPinnedEventStream(pinnedThresholdMillis);
+		}
+	}
+
+	/**
+	 * 当前jdk是否支持虚拟线程
+	 * @return
+	 */
+	public static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Thread.ofVirtual().name(namePrefix, 1).factory()
+	 */
+	private static ThreadFactory newVirtualThreadFactory(String namePrefix) {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("failed to create virtual thread factory", e);
+		}
+	}
+
+	/**
+	 * 订阅JFR的pinned事件, jdk的JFR不可用时只打印警告
+	 * <pre>
+	 * RecordingStream stream = new RecordingStream();
+	 * stream.enable("jdk.VirtualThreadPinned").withThreshold(threshold).withStackTrace();
+	 * stream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+	 * stream.startAsync();
+	 * </pre>
+	 */
+	private AutoCloseable startPinnedEventStream(long thresholdMillis) {
+		try {
+			Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+			Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings");
+			Object stream = streamClass.getConstructor().newInstance();
+			Object settings = streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT_NAME);
+			settings = settingsClass.getMethod("withThreshold", Duration.class).invoke(settings, Duration.ofMillis(thresholdMillis));
+			settingsClass.getMethod("withStackTrace").invoke(settings);
+			Consumer<Object> consumer = this::onPinned;
+			streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(stream, PINNED_EVENT_NAME, consumer);
+			streamClass.getMethod("startAsync").invoke(stream);
+			return (AutoCloseable) stream;
+		} catch (Throwable e) {
+			LOGGER.warn("virtual thread pinned detection is not available : {}", e.toString());
+			return null;
+		}
+	}
+
+	private void onPinned(Object event) {
+		pinnedCount.increment();
+		long now = System.nanoTime();
+		long last = lastPinnedLogTime.get();
+		if (now - last >= PINNED_LOG_INTERVAL_NANOS && lastPinnedLogTime.compareAndSet(last, now)) {
+			//事件的toString包含持续时间, 线程和堆栈
+			LOGGER.warn("virtual thread pinned while blocking, avoid blocking I/O inside synchronized, pinnedCount={}\n{}",
+					pinnedCount.sum(), event);
+		}
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if (command == null) {
+			throw new NullPointerException();
+		}
+		if (shutdown) {
+			rejectedTaskCount.increment();
+			throw new RejectedExecutionException("Executor not running, can't execute a command");
+		}
+		int count = runningTasksCount.incrementAndGet();
+		// 超过最大的并发任务限制，进行 reject
+		if (maxConcurrency > 0 && count > maxConcurrency) {
+			finishTask();
+			rejectedTaskCount.increment();
+			throw new RejectedExecutionException("too many running tasks, maxConcurrency=" + maxConcurrency);
+		}
+		try {
+			Thread thread = threadFactory.newThread(() -> {
+				Thread current = Thread.currentThread();
+				threads.add(current);
+				try {
+					command.run();
+				} finally {
+					threads.remove(current);
+					completedTaskCount.increment();
+					finishTask();
+				}
+			});
+			thread.start();
+		} catch (RuntimeException | Error e) {
+			finishTask();
+			throw e;
+		}
+	}
+
+	private void finishTask() {
+		if (runningTasksCount.decrementAndGet() == 0 && shutdown) {
+			synchronized (terminationLock) {
+				terminationLock.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		if (pinnedEventStream != null) {
+			try {
+				pinnedEventStream.close();
+			} catch (Exception e) {
+				LOGGER.debug("failed to close pinned event stream", e);
+			}
+			pinnedEventStream = null;
+		}
+		synchronized (terminationLock) {
+			terminationLock.notifyAll();
+		}
+	}
+
+	/**
+	 * 没有队列, 返回空列表
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown();
+		threads.forEach(Thread::interrupt);
+		return Collections.emptyList();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return shutdown && runningTasksCount.get() == 0;
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (terminationLock) {
+			while (!isTerminated()) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
+			}
+			return true;
+		}
+	}
+
+	public int getRunningTasksCount() {
+		return runningTasksCount.get();
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	public long getCompletedTaskCount() {
+		return completedTaskCount.sum();
+	}
+
+	public long getRejectedTaskCount() {
+		return rejectedTaskCount.sum();
+	}
+
+	/**
+	 * 超过阈值的pinned次数, 没有开启检测时为0
+	 * @return
+	 */
+	public long getPinnedCount() {
+		return pinnedCount.sum();
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + "[running=" + runningTasksCount.get() + ", maxConcurrency=" + maxConcurrency
+				+ ", completed=" + completedTaskCount.sum() + ", rejected=" + rejectedTaskCount.sum() + ", pinned="
+				+ pinnedCount.sum() + (shutdown ? ", shutdown" : "") + "]";
+	}
+}
@@ -0,0 +1,35 @@
+package com.baffalotech.integration.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 任务在队列中等待时间的统计
+ * @author chijinhuang
+ *
+ */
+class WaitTimeStats {
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	void record(long waitNanos) {
+		count.increment();
+		totalNanos.add(waitNanos);
+		long max;
+		while (waitNanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, waitNanos)) {
+			// 其他线程更新了最大值, 重新比较
+		}
+	}
+
+	double getAverageMillis() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) totalNanos.sum() / n / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	long getMaxMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+	}
+}
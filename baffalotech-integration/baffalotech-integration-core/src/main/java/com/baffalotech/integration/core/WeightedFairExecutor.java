@@ -0,0 +1,495 @@
+package com.baffalotech.integration.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <pre>
+ * 多个connector共享的线程池, 每个connector一个通道(Lane), 按权重公平调度
+ *
+ * 多个通道都有任务排队时, 线程按权重的比例执行各通道的任务(stride调度)
+ * 通道可以预留线程(reservedThreads), 其他通道不能占用这些线程,
+ * 一个connector的下游变慢占满线程时, 关键的connector仍然有预留的线程可用
+ * 线程按需创建, 最多maxThreads个
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+public class WeightedFairExecutor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WeightedFairExecutor.class);
+
+	private final String name;
+	private final int maxThreads;
+	private final ThreadFactory threadFactory;
+	private final ReentrantLock lock = new ReentrantLock();
+	// 有新任务或者关闭时唤醒空闲线程
+	private final Condition taskAvailable = lock.newCondition();
+	// 通道的任务全部完成时唤醒awaitTermination
+	private final Condition laneIdle = lock.newCondition();
+
+	//以下状态都在lock中访问
+	private final List<Lane> lanes = new ArrayList<>();
+	private int threads;
+	private int idleThreads;
+	private int running;
+	private int queued;
+	// 最近一次调度的通道的pass, 空闲的通道重新有任务时从这里开始, 不累积空闲期间的份额
+	private double virtualTime;
+	private boolean shutdown;
+
+	/**
+	 * @param name 名字, 用于日志
+	 * @param maxThreads 最大线程数
+	 * @param threadFactory
+	 */
+	public WeightedFairExecutor(String name, int maxThreads, ThreadFactory threadFactory) {
+		if (maxThreads < 1) {
+			throw new IllegalArgumentException("maxThreads must be positive : " + maxThreads);
+		}
+		this.name = name;
+		this.maxThreads = maxThreads;
+		this.threadFactory = threadFactory;
+	}
+
+	/**
+	 * 新建一个通道
+	 * @param laneName 通道的名字, 一般是connector的名字
+	 * @param weight 权重, 都有任务排队时按权重比例分配线程
+	 * @param reservedThreads 预留的线程数, 所有通道的预留线程数之和不能超过maxThreads
+	 * @param queueCapacity 线程都被占用时最多排队的任务数, 超过后抛出RejectedExecutionException
+	 * @return
+	 */
+	public Lane newLane(String laneName, int weight, int reservedThreads, int queueCapacity) {
+		if (weight < 1) {
+			throw new IllegalArgumentException("weight must be positive : " + weight);
+		}
+		lock.lock();
+		try {
+			int totalReserved = reservedThreads;
+			for (Lane lane : lanes) {
+				totalReserved += lane.reservedThreads;
+			}
+			if (reservedThreads < 0 || totalReserved > maxThreads) {
+				throw new IllegalArgumentException("total reservedThreads " + totalReserved + " exceeds maxThreads "
+						+ maxThreads + " of " + name);
+			}
+			Lane lane = new Lane(laneName, weight, reservedThreads, queueCapacity);
+			lane.pass = virtualTime;
+			lanes.add(lane);
+			return lane;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 不再接收新的任务, 丢弃排队中的任务, 正在执行的任务执行完后线程退出
+	 */
+	public void shutdown() {
+		lock.lock();
+		try {
+			if (shutdown) {
+				return;
+			}
+			shutdown = true;
+			if (queued > 0) {
+				LOGGER.warn("{} is shutting down, drop {} queued tasks", name, queued);
+			}
+			for (Lane lane : lanes) {
+				lane.queue.clear();
+			}
+			queued = 0;
+			taskAvailable.signalAll();
+			laneIdle.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 选择下一个执行的通道, 在lock中调用
+	 * @return 没有可以执行的任务时为null
+	 */
+	private Lane pick() {
+		// 其他通道没有用完的预留线程
+		int unusedReserve = 0;
+		for (Lane lane : lanes) {
+			unusedReserve += Math.max(0, lane.reservedThreads - lane.running);
+		}
+		int free = maxThreads - running;
+		Lane selected = null;
+		for (Lane lane : lanes) {
+			if (lane.queue.isEmpty()) {
+				continue;
+			}
+			// 在自己的预留线程内, 或者用掉一个线程后剩下的线程还够其他通道的预留
+			boolean eligible = lane.running < lane.reservedThreads || free - 1 >= unusedReserve;
+			if (eligible && (selected == null || lane.pass < selected.pass)) {
+				selected = lane;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * 在lock中调用
+	 */
+	private void startWorker() {
+		Thread thread = threadFactory.newThread(this::runWorker);
+		threads++;
+		try {
+			thread.start();
+		} catch (RuntimeException | Error e) {
+			threads--;
+			throw e;
+		}
+	}
+
+	private void runWorker() {
+		Lane lane = null;
+		try {
+			while (true) {
+				TimedTask task;
+				lock.lock();
+				try {
+					if (lane != null) {
+						lane.finishTask();
+						lane = null;
+					}
+					Lane next;
+					while ((next = shutdown ? null : pick()) == null) {
+						if (shutdown) {
+							return;
+						}
+						idleThreads++;
+						try {
+							taskAvailable.await();
+						} catch (InterruptedException e) {
+							// 只在关闭时退出
+						} finally {
+							idleThreads--;
+						}
+					}
+					task = next.queue.poll();
+					next.removeIfDrained();
+					queued--;
+					next.running++;
+					running++;
+					virtualTime = next.pass;
+					next.pass += next.stride;
+					lane = next;
+				} finally {
+					lock.unlock();
+				}
+				lane.waitTimeStats.record(System.nanoTime() - task.submitTime);
+				try {
+					task.task.run();
+				} catch (Throwable e) {
+					LOGGER.error("task of lane " + lane.name + " failed", e);
+				}
+			}
+		} finally {
+			lock.lock();
+			try {
+				if (lane != null) {
+					lane.finishTask();
+				}
+				threads--;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * 当前的通道数, 关闭的通道在排队的任务执行完后删除
+	 * @return
+	 */
+	public int getLaneCount() {
+		lock.lock();
+		try {
+			return lanes.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 当前的线程数
+	 * @return
+	 */
+	public int getPoolSize() {
+		lock.lock();
+		try {
+			return threads;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		lock.lock();
+		try {
+			return "WeightedFairExecutor[" + name + ", pool=" + threads + "/" + maxThreads + ", active=" + running
+					+ ", queued=" + queued + ", lanes=" + lanes.size() + (shutdown ? ", shutdown" : "") + "]";
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 记录提交时间的任务
+	 */
+	private static class TimedTask {
+		private final Runnable task;
+		private final long submitTime = System.nanoTime();
+
+		TimedTask(Runnable task) {
+			this.task = task;
+		}
+	}
+
+	/**
+	 * 一个connector使用的通道, 作为connector的执行器
+	 */
+	public class Lane extends AbstractExecutorService implements ExecutorMetrics {
+
+		private final String name;
+		private final int weight;
+		private final int reservedThreads;
+		private final int queueCapacity;
+		// 每执行一个任务pass增加的值, 权重越大增加得越少, 被调度的次数越多
+		private final double stride;
+		private final WaitTimeStats waitTimeStats = new WaitTimeStats();
+		private final LongAdder completedTaskCount = new LongAdder();
+		private final LongAdder rejectedTaskCount = new LongAdder();
+
+		//以下状态都在lock中访问
+		private final ArrayDeque<TimedTask> queue = new ArrayDeque<>();
+		private int running;
+		private double pass;
+		private boolean laneShutdown;
+
+		Lane(String name, int weight, int reservedThreads, int queueCapacity) {
+			this.name = name;
+			this.weight = weight;
+			this.reservedThreads = reservedThreads;
+			this.queueCapacity = queueCapacity;
+			this.stride = 1.0 / weight;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			if (command == null) {
+				throw new NullPointerException();
+			}
+			boolean rejected;
+			lock.lock();
+			try {
+				rejected = shutdown || laneShutdown || queue.size() + running >= queueCapacity + maxRunning();
+				if (!rejected) {
+					if (queue.isEmpty() && running == 0) {
+						pass = Math.max(pass, virtualTime);
+					}
+					queue.offer(new TimedTask(command));
+					queued++;
+					if (queued > idleThreads && threads < maxThreads) {
+						startWorker();
+					}
+					taskAvailable.signal();
+				}
+			} finally {
+				lock.unlock();
+			}
+			if (rejected) {
+				// 不在提交任务的IO线程中执行, 由connector返回繁忙
+				rejectedTaskCount.increment();
+				throw new RejectedExecutionException("lane " + name + " of " + WeightedFairExecutor.this.name
+						+ " is full or shutdown");
+			}
+		}
+
+		/**
+		 * 最多同时执行的任务数 : 线程总数减去其他通道的预留, 在lock中调用
+		 */
+		private int maxRunning() {
+			int max = maxThreads;
+			for (Lane lane : lanes) {
+				if (lane != this) {
+					max -= lane.reservedThreads;
+				}
+			}
+			return max;
+		}
+
+		/**
+		 * 在lock中调用
+		 */
+		private void finishTask() {
+			running--;
+			WeightedFairExecutor.this.running--;
+			completedTaskCount.increment();
+			if (running == 0 && queue.isEmpty()) {
+				laneIdle.signalAll();
+			}
+		}
+
+		/**
+		 * 关闭并且没有排队的任务时从线程池中删除, 释放预留的线程, 在lock中调用
+		 */
+		private void removeIfDrained() {
+			if (laneShutdown && queue.isEmpty() && lanes.remove(this)) {
+				// 预留的线程可以给其他通道使用
+				taskAvailable.signalAll();
+			}
+		}
+
+		@Override
+		public void shutdown() {
+			lock.lock();
+			try {
+				laneShutdown = true;
+				removeIfDrained();
+				laneIdle.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			lock.lock();
+			try {
+				laneShutdown = true;
+				List<Runnable> tasks = new ArrayList<>(queue.size());
+				queue.forEach(task -> tasks.add(task.task));
+				queued -= queue.size();
+				queue.clear();
+				removeIfDrained();
+				laneIdle.signalAll();
+				return tasks;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public boolean isShutdown() {
+			lock.lock();
+			try {
+				return laneShutdown || shutdown;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public boolean isTerminated() {
+			lock.lock();
+			try {
+				return (laneShutdown || shutdown) && running == 0 && queue.isEmpty();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			long nanos = unit.toNanos(timeout);
+			lock.lock();
+			try {
+				while (!isTerminated()) {
+					if (nanos <= 0) {
+						return false;
+					}
+					nanos = laneIdle.awaitNanos(nanos);
+				}
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getWeight() {
+			return weight;
+		}
+
+		public int getReservedThreads() {
+			return reservedThreads;
+		}
+
+		@Override
+		public int getQueueSize() {
+			lock.lock();
+			try {
+				return queue.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public int getActiveCount() {
+			lock.lock();
+			try {
+				return running;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public long getCompletedTaskCount() {
+			return completedTaskCount.sum();
+		}
+
+		@Override
+		public long getRejectedTaskCount() {
+			return rejectedTaskCount.sum();
+		}
+
+		@Override
+		public double getAverageWaitMillis() {
+			return waitTimeStats.getAverageMillis();
+		}
+
+		@Override
+		public long getMaxWaitMillis() {
+			return waitTimeStats.getMaxMillis();
+		}
+
+		@Override
+		public String toString() {
+			return "Lane[" + name + " of " + WeightedFairExecutor.this.name + ", weight=" + weight + ", reserved="
+					+ reservedThreads + ", active=" + getActiveCount() + ", queued=" + getQueueSize() + ", rejected="
+					+ getRejectedTaskCount() + ", avgWait=" + String.format("%.1f", getAverageWaitMillis())
+					+ "ms, maxWait=" + getMaxWaitMillis() + "ms]";
+		}
+	}
+}
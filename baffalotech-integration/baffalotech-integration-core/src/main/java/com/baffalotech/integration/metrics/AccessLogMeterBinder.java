@@ -0,0 +1,40 @@
+package com.baffalotech.integration.metrics;
+
+import com.baffalotech.integration.accesslog.AccessLogReceiver;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * <pre>
+ * 把{@link AccessLogReceiver}的队列状态导出到micrometer：
+ * 		integration.accesslog.dropped : 因队列满或者采样被丢弃的日志条数
+ * 		integration.accesslog.backlog : 还没有写入文件的日志条数
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+public class AccessLogMeterBinder implements MeterBinder {
+
+	public static final String DROPPED = "integration.accesslog.dropped";
+	public static final String BACKLOG = "integration.accesslog.backlog";
+
+	private final AccessLogReceiver accessLogReceiver;
+
+	public AccessLogMeterBinder(AccessLogReceiver accessLogReceiver) {
+		this.accessLogReceiver = accessLogReceiver;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder(DROPPED, accessLogReceiver, AccessLogReceiver::getDroppedCount)
+				.description("access log messages dropped because the queue was full")
+				.register(registry);
+		Gauge.builder(BACKLOG, accessLogReceiver, AccessLogReceiver::getBacklog)
+				.description("access log messages not yet written")
+				.register(registry);
+	}
+}
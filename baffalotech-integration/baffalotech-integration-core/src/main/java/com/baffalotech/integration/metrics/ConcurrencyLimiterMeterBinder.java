@@ -0,0 +1,89 @@
+package com.baffalotech.integration.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import com.baffalotech.integration.api.AbstractNettyConnector;
+import com.baffalotech.integration.api.Connector;
+import com.baffalotech.integration.api.Container;
+import com.baffalotech.integration.core.AdaptiveConcurrencyLimiter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * <pre>
+ * 把每个connector的{@link AdaptiveConcurrencyLimiter}导出到micrometer, 标签connector：
+ * 		integration.connector.concurrency.limit : 当前的并发上限
+ * 		integration.connector.concurrency.inflight : 正在处理的请求数
+ * 		integration.connector.concurrency.rejection.rate : 最近一秒被拒绝的请求比例
+ * 		integration.connector.concurrency.rejected : 被拒绝的请求总数
+ * 绑定时还没有加入容器的connector在容器刷新后注册
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+public class ConcurrencyLimiterMeterBinder implements MeterBinder, ApplicationListener<ContextRefreshedEvent> {
+
+	public static final String LIMIT = "integration.connector.concurrency.limit";
+	public static final String INFLIGHT = "integration.connector.concurrency.inflight";
+	public static final String REJECTION_RATE = "integration.connector.concurrency.rejection.rate";
+	public static final String REJECTED = "integration.connector.concurrency.rejected";
+
+	private final Container container;
+	private final List<MeterRegistry> registries = new CopyOnWriteArrayList<MeterRegistry>();
+
+	public ConcurrencyLimiterMeterBinder(Container container) {
+		this.container = container;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		registries.add(registry);
+		bindConnectors(registry);
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		for (MeterRegistry registry : registries) {
+			bindConnectors(registry);
+		}
+	}
+
+	private void bindConnectors(MeterRegistry registry) {
+		for (Connector connector : container.getConnectorList()) {
+			if (connector instanceof AbstractNettyConnector) {
+				AdaptiveConcurrencyLimiter limiter = ((AbstractNettyConnector) connector).getConcurrencyLimiter();
+				if (limiter != null) {
+					bind(registry, connector.getName(), limiter);
+				}
+			}
+		}
+	}
+
+	// 重复注册时micrometer返回已经存在的meter
+	private void bind(MeterRegistry registry, String connectorName, AdaptiveConcurrencyLimiter limiter) {
+		Gauge.builder(LIMIT, limiter, AdaptiveConcurrencyLimiter::getLimit)
+				.description("current concurrency limit of the connector")
+				.tag(LatencyRegistry.TAG_CONNECTOR, connectorName)
+				.register(registry);
+		Gauge.builder(INFLIGHT, limiter, AdaptiveConcurrencyLimiter::getInflight)
+				.description("requests being processed by the connector")
+				.tag(LatencyRegistry.TAG_CONNECTOR, connectorName)
+				.register(registry);
+		Gauge.builder(REJECTION_RATE, limiter, AdaptiveConcurrencyLimiter::getRejectionRate)
+				.description("ratio of requests rejected in the last second")
+				.tag(LatencyRegistry.TAG_CONNECTOR, connectorName)
+				.register(registry);
+		FunctionCounter.builder(REJECTED, limiter, AdaptiveConcurrencyLimiter::getRejectedCount)
+				.description("requests rejected because the concurrency limit was reached")
+				.tag(LatencyRegistry.TAG_CONNECTOR, connectorName)
+				.register(registry);
+	}
+}
@@ -0,0 +1,107 @@
+package com.baffalotech.integration.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import com.baffalotech.integration.api.AbstractNettyConnector;
+import com.baffalotech.integration.api.Connector;
+import com.baffalotech.integration.api.Container;
+import com.baffalotech.integration.configuration.ConnectorExecutorProperties;
+import com.baffalotech.integration.core.ExecutorMetrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * <pre>
+ * 把每个connector单独的执行器的{@link ExecutorMetrics}导出到micrometer, 标签connector：
+ * 		integration.connector.executor.queue.size : 在队列中等待的任务数
+ * 		integration.connector.executor.active : 正在执行的任务数
+ * 		integration.connector.executor.rejected : 被拒绝的任务数
+ * 		integration.connector.executor.wait.avg : 任务从提交到开始执行的平均等待时间
+ * 		integration.connector.executor.wait.max : 任务从提交到开始执行的最大等待时间
+ * 只注册配置了单独执行器的connector, 使用容器线程池的不注册.
+ * 每次取值时读取connector当前的执行器, 重启后换成新的执行器, 停止后为NaN, 不会因为取值创建执行器.
+ * 执行器重启后计数从0开始, 所以被拒绝的任务数也用Gauge.
+ * 绑定时还没有加入容器的connector在容器刷新后注册
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+public class ConnectorExecutorMeterBinder implements MeterBinder, ApplicationListener<ContextRefreshedEvent> {
+
+	public static final String QUEUE_SIZE = "integration.connector.executor.queue.size";
+	public static final String ACTIVE = "integration.connector.executor.active";
+	public static final String REJECTED = "integration.connector.executor.rejected";
+	public static final String WAIT_AVG = "integration.connector.executor.wait.avg";
+	public static final String WAIT_MAX = "integration.connector.executor.wait.max";
+
+	private final Container container;
+	private final List<MeterRegistry> registries = new CopyOnWriteArrayList<MeterRegistry>();
+
+	public ConnectorExecutorMeterBinder(Container container) {
+		this.container = container;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		registries.add(registry);
+		bindConnectors(registry);
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		for (MeterRegistry registry : registries) {
+			bindConnectors(registry);
+		}
+	}
+
+	private void bindConnectors(MeterRegistry registry) {
+		for (Connector connector : container.getConnectorList()) {
+			if (connector instanceof AbstractNettyConnector) {
+				AbstractNettyConnector nettyConnector = (AbstractNettyConnector) connector;
+				ConnectorExecutorProperties properties = nettyConnector.getExecutorProperties();
+				if (properties != null && properties.getIsolation() != ConnectorExecutorProperties.Isolation.SHARED) {
+					bind(registry, connector.getName(), nettyConnector);
+				}
+			}
+		}
+	}
+
+	// 重复注册时micrometer返回已经存在的meter
+	private void bind(MeterRegistry registry, String connectorName, AbstractNettyConnector connector) {
+		Gauge.builder(QUEUE_SIZE, connector, c -> value(c, ExecutorMetrics::getQueueSize))
+				.description("tasks waiting in the queue of the connector executor")
+				.tag(LatencyRegistry.TAG_CONNECTOR, connectorName)
+				.register(registry);
+		Gauge.builder(ACTIVE, connector, c -> value(c, ExecutorMetrics::getActiveCount))
+				.description("tasks being executed by the connector executor")
+				.tag(LatencyRegistry.TAG_CONNECTOR, connectorName)
+				.register(registry);
+		Gauge.builder(REJECTED, connector, c -> value(c, ExecutorMetrics::getRejectedTaskCount))
+				.description("tasks rejected by the connector executor since it was started")
+				.tag(LatencyRegistry.TAG_CONNECTOR, connectorName)
+				.register(registry);
+		TimeGauge.builder(WAIT_AVG, connector, TimeUnit.MILLISECONDS, c -> value(c, ExecutorMetrics::getAverageWaitMillis))
+				.description("average time tasks waited in the queue of the connector executor")
+				.tag(LatencyRegistry.TAG_CONNECTOR, connectorName)
+				.register(registry);
+		TimeGauge.builder(WAIT_MAX, connector, TimeUnit.MILLISECONDS, c -> value(c, ExecutorMetrics::getMaxWaitMillis))
+				.description("max time tasks waited in the queue of the connector executor")
+				.tag(LatencyRegistry.TAG_CONNECTOR, connectorName)
+				.register(registry);
+	}
+
+	private static double value(AbstractNettyConnector connector, ToDoubleFunction<ExecutorMetrics> function) {
+		ExecutorMetrics metrics = connector.getExecutorMetrics();
+		return metrics == null ? Double.NaN : function.applyAsDouble(metrics);
+	}
+}
@@ -0,0 +1,77 @@
+package com.baffalotech.integration.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * <pre>
+ * 把{@link LatencyRegistry}中的耗时分布导出到micrometer, 每个recorder导出为：
+ * 		name : FunctionTimer, 次数和总耗时
+ * 		name.max : 最近时间窗口的最大值
+ * 		name.percentile : 最近时间窗口的百分位, 标签phi, 和micrometer的Timer发布百分位时的命名一致
+ * 之后创建的recorder也会自动注册
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+public class LatencyMeterBinder implements MeterBinder {
+
+	private static final double[] DEFAULT_PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private final LatencyRegistry latencyRegistry;
+	private final double[] percentiles;
+
+	public LatencyMeterBinder() {
+		this(LatencyRegistry.getDefaultInstance());
+	}
+
+	public LatencyMeterBinder(LatencyRegistry latencyRegistry) {
+		this(latencyRegistry, DEFAULT_PERCENTILES);
+	}
+
+	/**
+	 * @param latencyRegistry
+	 * @param percentiles 导出的百分位, 0~1, 例如0.99
+	 */
+	public LatencyMeterBinder(LatencyRegistry latencyRegistry, double... percentiles) {
+		this.latencyRegistry = latencyRegistry;
+		this.percentiles = percentiles;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		latencyRegistry.addListener(recorder -> bind(registry, recorder));
+	}
+
+	private void bind(MeterRegistry registry, LatencyRecorder recorder) {
+		List<Tag> tags = new ArrayList<Tag>();
+		for (Map.Entry<String, String> entry : recorder.getTags().entrySet()) {
+			tags.add(Tag.of(entry.getKey(), entry.getValue()));
+		}
+		// 重复注册时micrometer返回已经存在的meter
+		FunctionTimer.builder(recorder.getName(), recorder, LatencyRecorder::getCount,
+				r -> r.getTotalTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS)
+				.tags(tags)
+				.register(registry);
+		TimeGauge.builder(recorder.getName() + ".max", recorder, TimeUnit.NANOSECONDS,
+				r -> r.snapshot().getMax(TimeUnit.NANOSECONDS))
+				.tags(tags)
+				.register(registry);
+		for (double percentile : percentiles) {
+			TimeGauge.builder(recorder.getName() + ".percentile", recorder, TimeUnit.NANOSECONDS,
+					r -> r.snapshot().getValueAtPercentile(percentile * 100, TimeUnit.NANOSECONDS))
+					.tags(tags)
+					.tag("phi", String.valueOf(percentile))
+					.register(registry);
+		}
+	}
+}
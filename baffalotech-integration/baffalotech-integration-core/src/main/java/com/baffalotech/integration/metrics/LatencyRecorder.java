@@ -0,0 +1,183 @@
+package com.baffalotech.integration.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * <pre>
+ * 一个耗时指标的分布, 按System.nanoTime()计时, 以微秒记录到HdrHistogram中, 1微秒以上的误差在1%以内
+ *
+ * 写入不加锁：按线程id分段, 每段一个Recorder, 工作线程基本上各自写自己的段.
+ * 虚拟线程没有固定的数量, 所以不用ThreadLocal; 段在第一次写入时创建, 访问少的指标只占很少的内存
+ *
+ * 读取时把各段的增量合并到当前的时间窗口：
+ * 		次数和总耗时 : 从启动开始累计
+ * 		百分位和最大值 : 最近两个时间窗口, 只反映最近的情况
+ * 合并的结果缓存1秒, 同一时间多个指标读取同一个recorder时只合并一次
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+public class LatencyRecorder {
+
+	public static final long DEFAULT_WINDOW_SECONDS = 60;
+
+	// 2位有效数字
+	private static final int SIGNIFICANT_DIGITS = 2;
+	private static final int STRIPES = stripes();
+	private static final long SNAPSHOT_CACHE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final String name;
+	private final Map<String, String> tags;
+	private final long windowNanos;
+
+	private final AtomicReferenceArray<Recorder> recorders = new AtomicReferenceArray<Recorder>(STRIPES);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+
+	// 以下只在持有锁时访问
+	private final Histogram interval = new Histogram(SIGNIFICANT_DIGITS);
+	private Histogram current = new Histogram(SIGNIFICANT_DIGITS);
+	private Histogram previous = new Histogram(SIGNIFICANT_DIGITS);
+	private long windowStart = System.nanoTime();
+
+	private volatile LatencySnapshot snapshot;
+
+	public LatencyRecorder(String name, Map<String, String> tags) {
+		this(name, tags, DEFAULT_WINDOW_SECONDS);
+	}
+
+	/**
+	 * @param name 指标名
+	 * @param tags 标签, 不会被修改
+	 * @param windowSeconds 百分位的时间窗口
+	 */
+	public LatencyRecorder(String name, Map<String, String> tags, long windowSeconds) {
+		this.name = name;
+		this.tags = Collections.unmodifiableMap(tags);
+		this.windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+	}
+
+	/**
+	 * 段数是cpu核数向上取2的幂, 最多64段
+	 */
+	private static int stripes() {
+		int cpus = Math.min(64, Runtime.getRuntime().availableProcessors());
+		int stripes = 1;
+		while (stripes < cpus) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+
+	/**
+	 * 记录一次耗时
+	 * @param nanos 纳秒数
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		count.increment();
+		totalNanos.add(nanos);
+		recorder().recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+	}
+
+	/**
+	 * 记录从startNanos到现在的耗时
+	 * @param startNanos 开始时的System.nanoTime()
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	private Recorder recorder() {
+		int index = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+		Recorder recorder = recorders.get(index);
+		if (recorder == null) {
+			recorder = new Recorder(SIGNIFICANT_DIGITS);
+			if (!recorders.compareAndSet(index, null, recorder)) {
+				recorder = recorders.get(index);
+			}
+		}
+		return recorder;
+	}
+
+	/**
+	 * 合并各段的数据, 返回最近时间窗口的分布, 1秒内重复调用返回同一个结果
+	 * @return
+	 */
+	public LatencySnapshot snapshot() {
+		LatencySnapshot last = snapshot;
+		if (last != null && System.nanoTime() - last.getTimestamp() < SNAPSHOT_CACHE_NANOS) {
+			return last;
+		}
+		synchronized (this) {
+			last = snapshot;
+			long now = System.nanoTime();
+			if (last != null && now - last.getTimestamp() < SNAPSHOT_CACHE_NANOS) {
+				return last;
+			}
+			if (now - windowStart >= windowNanos) {
+				// 切换窗口, 两个窗口都没有读取过时上一个窗口也已经过期
+				Histogram expired = previous;
+				if (now - windowStart >= windowNanos * 2) {
+					current.reset();
+				}
+				previous = current;
+				current = expired;
+				current.reset();
+				windowStart = now;
+			}
+			for (int i = 0; i < STRIPES; i++) {
+				Recorder recorder = recorders.get(i);
+				if (recorder != null) {
+					recorder.getIntervalHistogramInto(interval);
+					current.add(interval);
+				}
+			}
+			Histogram histogram = previous.copy();
+			histogram.add(current);
+			last = new LatencySnapshot(now, count.sum(), totalNanos.sum(), histogram);
+			snapshot = last;
+			return last;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Map<String, String> getTags() {
+		return tags;
+	}
+
+	/**
+	 * 从启动开始累计的次数
+	 * @return
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * 从启动开始累计的总耗时
+	 * @param unit
+	 * @return
+	 */
+	public double getTotalTime(TimeUnit unit) {
+		return (double) totalNanos.sum() / unit.toNanos(1);
+	}
+
+	@Override
+	public String toString() {
+		return name + tags;
+	}
+}
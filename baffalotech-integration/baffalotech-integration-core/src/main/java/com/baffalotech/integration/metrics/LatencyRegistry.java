@@ -0,0 +1,118 @@
+package com.baffalotech.integration.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ * 按指标名和标签管理{@link LatencyRecorder}, 同一个指标名和标签只有一个实例
+ *
+ * 查找需要拼接key, 调用方在初始化或者第一次使用时获取一次并缓存起来, 不要每个请求都查找
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+public class LatencyRegistry {
+
+	/** 请求在线程池队列中等待的时间, 标签connector */
+	public static final String CONNECTOR_QUEUE = "integration.connector.queue";
+	/** 请求的处理时间, 不包括排队, 标签connector */
+	public static final String CONNECTOR_SERVICE = "integration.connector.service";
+	/** servlet的service方法的耗时, 标签connector, servlet */
+	public static final String SERVLET = "integration.servlet";
+	/** 执行到servlet之前所有filter的耗时, 标签connector */
+	public static final String FILTER_CHAIN = "integration.filter.chain";
+	/** 一个filter的耗时, 包括后面的filter和servlet, 标签connector, filter */
+	public static final String FILTER = "integration.filter";
+	/** 一个filter自身的耗时, 不包括后面的filter和servlet, 标签connector, filter */
+	public static final String FILTER_SELF = "integration.filter.self";
+	/** mvc处理方法的耗时, 包括报文的解析和生成, 标签connector, discriminator */
+	public static final String MVC_HANDLER = "integration.mvc.handler";
+
+	public static final String TAG_CONNECTOR = "connector";
+	public static final String TAG_SERVLET = "servlet";
+	public static final String TAG_FILTER = "filter";
+	public static final String TAG_DISCRIMINATOR = "discriminator";
+
+	private static final LatencyRegistry DEFAULT_INSTANCE = new LatencyRegistry();
+
+	private final ConcurrentMap<String, LatencyRecorder> recorders = new ConcurrentHashMap<String, LatencyRecorder>();
+	private final List<Consumer<LatencyRecorder>> listeners = new CopyOnWriteArrayList<Consumer<LatencyRecorder>>();
+
+	public static LatencyRegistry getDefaultInstance() {
+		return DEFAULT_INSTANCE;
+	}
+
+	/**
+	 * 获取指标, 不存在时创建
+	 * @param name 指标名
+	 * @param tags 标签, key和value交替
+	 * @return
+	 */
+	public LatencyRecorder recorder(String name, String... tags) {
+		if (tags.length % 2 != 0) {
+			throw new IllegalArgumentException("tags must be key value pairs : " + name);
+		}
+		Map<String, String> tagMap = new LinkedHashMap<String, String>();
+		for (int i = 0; i < tags.length; i += 2) {
+			tagMap.put(tags[i], tags[i + 1] == null ? "none" : tags[i + 1]);
+		}
+		String key = name + tagMap;
+		LatencyRecorder recorder = recorders.get(key);
+		if (recorder == null) {
+			LatencyRecorder created = new LatencyRecorder(name, tagMap);
+			recorder = recorders.putIfAbsent(key, created);
+			if (recorder == null) {
+				recorder = created;
+				for (Consumer<LatencyRecorder> listener : listeners) {
+					listener.accept(created);
+				}
+			}
+		}
+		return recorder;
+	}
+
+	public Collection<LatencyRecorder> getRecorders() {
+		return Collections.unmodifiableCollection(recorders.values());
+	}
+
+	/**
+	 * 指定指标名的所有recorder
+	 * @param name
+	 * @return
+	 */
+	public List<LatencyRecorder> getRecorders(String name) {
+		List<LatencyRecorder> list = new ArrayList<LatencyRecorder>();
+		for (LatencyRecorder recorder : recorders.values()) {
+			if (recorder.getName().equals(name)) {
+				list.add(recorder);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * 添加监听, 已经存在的recorder立即通知, 之后新建的recorder在创建时通知.
+	 * 和创建同时发生时同一个recorder可能通知两次, 监听需要能重复处理
+	 * @param listener
+	 */
+	public void addListener(Consumer<LatencyRecorder> listener) {
+		listeners.add(listener);
+		for (LatencyRecorder recorder : recorders.values()) {
+			listener.accept(recorder);
+		}
+	}
+
+	public void removeListener(Consumer<LatencyRecorder> listener) {
+		listeners.remove(listener);
+	}
+}
@@ -0,0 +1,74 @@
+package com.baffalotech.integration.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * {@link LatencyRecorder}某一时刻的分布, 不可变.
+ * 次数和总耗时从启动开始累计, 百分位、平均值和最大值只包括最近的时间窗口
+ *
+ * @author chijinhuang
+ *
+ */
+public class LatencySnapshot {
+
+	private final long timestamp;
+	private final long count;
+	private final long totalNanos;
+	// 单位是微秒
+	private final Histogram histogram;
+
+	LatencySnapshot(long timestamp, long count, long totalNanos, Histogram histogram) {
+		this.timestamp = timestamp;
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.histogram = histogram;
+	}
+
+	/**
+	 * 生成时的System.nanoTime()
+	 * @return
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getTotalTime(TimeUnit unit) {
+		return (double) totalNanos / unit.toNanos(1);
+	}
+
+	/**
+	 * 时间窗口内的次数
+	 * @return
+	 */
+	public long getWindowCount() {
+		return histogram.getTotalCount();
+	}
+
+	/**
+	 * 时间窗口内的百分位
+	 * @param percentile 0~100, 例如99.9
+	 * @param unit
+	 * @return
+	 */
+	public double getValueAtPercentile(double percentile, TimeUnit unit) {
+		return toUnit(histogram.getValueAtPercentile(percentile), unit);
+	}
+
+	public double getMean(TimeUnit unit) {
+		return histogram.getTotalCount() == 0 ? 0 : toUnit(histogram.getMean(), unit);
+	}
+
+	public double getMax(TimeUnit unit) {
+		return histogram.getTotalCount() == 0 ? 0 : toUnit(histogram.getMaxValue(), unit);
+	}
+
+	private static double toUnit(double micros, TimeUnit unit) {
+		return unit == TimeUnit.NANOSECONDS ? micros * 1000 : micros / unit.toMicros(1);
+	}
+}
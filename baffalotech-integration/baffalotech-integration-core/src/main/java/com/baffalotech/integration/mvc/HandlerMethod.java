@@ -39,6 +39,7 @@ import org.springframework.util.ClassUtils;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
+import com.baffalotech.integration.metrics.LatencyRecorder;
 import com.baffalotech.integration.mvc.annotation.DiscriminatorValue;
 
 /**
@@ -78,12 +79,18 @@ public class HandlerMethod {
 
 	private final MethodParameter[] parameters;
 
+	private final HandlerMethodInvoker invoker;
+
 	@Nullable
 	private HandlerMethod resolvedFromHandlerMethod;
 
 	@Nullable
 	private volatile List<Annotation[][]> interfaceParameterAnnotations;
 
+	//注册到connector时设置, 统计这个discriminator的处理耗时
+	@Nullable
+	private LatencyRecorder latencyRecorder;
+
 
 	/**
 	 * Create an instance from a bean instance and a method.
@@ -98,6 +105,7 @@ public class HandlerMethod {
 		this.bridgedMethod = BridgeMethodResolver.findBridgedMethod(method);
 		this.parameters = initMethodParameters();
 		this.discriminatorValue = getMethodAnnotation(DiscriminatorValue.class).value();
+		this.invoker = HandlerMethodInvokers.create(this.bridgedMethod);
 	}
 
 	/**
@@ -114,6 +122,7 @@ public class HandlerMethod {
 		this.bridgedMethod = BridgeMethodResolver.findBridgedMethod(this.method);
 		this.parameters = initMethodParameters();
 		this.discriminatorValue = getMethodAnnotation(DiscriminatorValue.class).value();
+		this.invoker = HandlerMethodInvokers.create(this.bridgedMethod);
 	}
 
 	/**
@@ -136,6 +145,7 @@ public class HandlerMethod {
 		this.bridgedMethod = BridgeMethodResolver.findBridgedMethod(method);
 		this.parameters = initMethodParameters();
 		this.discriminatorValue = getMethodAnnotation(DiscriminatorValue.class).value();
+		this.invoker = HandlerMethodInvokers.create(this.bridgedMethod);
 	}
 
 	/**
@@ -151,6 +161,7 @@ public class HandlerMethod {
 		this.parameters = handlerMethod.parameters;
 		this.resolvedFromHandlerMethod = handlerMethod.resolvedFromHandlerMethod;
 		this.discriminatorValue = handlerMethod.discriminatorValue;
+		this.invoker = handlerMethod.invoker;
 	}
 
 	/**
@@ -167,6 +178,7 @@ public class HandlerMethod {
 		this.parameters = handlerMethod.parameters;
 		this.resolvedFromHandlerMethod = handlerMethod;
 		this.discriminatorValue = handlerMethod.discriminatorValue;
+		this.invoker = handlerMethod.invoker;
 	}
 
 	private MethodParameter[] initMethodParameters() {
@@ -212,6 +224,21 @@ public class HandlerMethod {
 		return this.bridgedMethod;
 	}
 
+	/**
+	 * Return the invoker created for the bridged method at construction time.
+	 */
+	public HandlerMethodInvoker getInvoker() {
+		return this.invoker;
+	}
+
+	/**
+	 * Invoke the bridged method on the bean with the given argument, without
+	 * reflection. Exceptions thrown by the method are propagated as is.
+	 */
+	public Object invoke(@Nullable Object argument) throws Throwable {
+		return this.invoker.invoke(this.bean, argument);
+	}
+
 	/**
 	 * Return the method parameters for this handler method.
 	 */
@@ -348,6 +375,15 @@ public class HandlerMethod {
 		return discriminatorValue;
 	}
 
+	@Nullable
+	public LatencyRecorder getLatencyRecorder() {
+		return latencyRecorder;
+	}
+
+	public void setLatencyRecorder(@Nullable LatencyRecorder latencyRecorder) {
+		this.latencyRecorder = latencyRecorder;
+	}
+
 	@Override
 	public int hashCode() {
 		return (this.bean.hashCode() * 31 + this.method.hashCode());
@@ -0,0 +1,18 @@
+package com.baffalotech.integration.mvc;
+
+/**
+ * 处理方法的调用器，注册时生成，每次请求直接调用而不经过反射
+ * @author chijinhuang
+ *
+ */
+@FunctionalInterface
+public interface HandlerMethodInvoker {
+
+	/**
+	 * @param bean controller实例，静态方法时忽略
+	 * @param argument 请求对象，没有参数的方法时忽略
+	 * @return 返回值，void方法返回null
+	 * @throws Throwable 处理方法抛出的异常，不会包装成InvocationTargetException
+	 */
+	Object invoke(Object bean,Object argument) throws Throwable;
+}
@@ -0,0 +1,130 @@
+package com.baffalotech.integration.mvc;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ClassUtils;
+
+/**
+ * 生成HandlerMethodInvoker。
+ * <p>
+ * 有一个参数、有返回值的public方法用LambdaMetafactory生成实现类，JIT可以像普通的接口调用一样内联；
+ * 其他public方法（没有参数、void、静态方法）使用适配成(Object,Object)Object的MethodHandle；
+ * 非public的方法或者多个参数的方法仍然使用反射
+ * @author chijinhuang
+ *
+ */
+final class HandlerMethodInvokers {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(HandlerMethodInvokers.class);
+	
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object.class);
+	
+	private HandlerMethodInvokers()
+	{
+		
+	}
+	
+	static HandlerMethodInvoker create(Method method)
+	{
+		if(method.getParameterCount() > 1 || !isPublic(method))
+		{
+			return reflective(method);
+		}
+		MethodHandle handle;
+		try {
+			handle = LOOKUP.unreflect(method);
+		} catch (IllegalAccessException e) {
+			return reflective(method);
+		}
+		if(canUseLambda(method))
+		{
+			try {
+				return lambda(method, handle);
+			} catch (Throwable e) {
+				LOGGER.debug("can not generate invoker for {}, use method handle: {}", method, e.toString());
+			}
+		}
+		return methodHandle(method, handle);
+	}
+	
+	static HandlerMethodInvoker lambda(Method method,MethodHandle handle) throws Throwable
+	{
+		Class<?> parameterType = method.getParameterTypes()[0];
+		CallSite callSite = LambdaMetafactory.metafactory(LOOKUP, "invoke",
+				MethodType.methodType(HandlerMethodInvoker.class), INVOKER_TYPE, handle,
+				MethodType.methodType(ClassUtils.resolvePrimitiveIfNecessary(method.getReturnType()),
+						method.getDeclaringClass(), ClassUtils.resolvePrimitiveIfNecessary(parameterType)));
+		return (HandlerMethodInvoker) callSite.getTarget().invokeExact();
+	}
+	
+	static HandlerMethodInvoker methodHandle(Method method,MethodHandle handle)
+	{
+		MethodHandle adapted = handle;
+		if(Modifier.isStatic(method.getModifiers()))
+		{
+			adapted = MethodHandles.dropArguments(adapted, 0, Object.class);
+		}
+		if(method.getParameterCount() == 0)
+		{
+			adapted = MethodHandles.dropArguments(adapted, 1, Object.class);
+		}
+		//void方法返回null，基本类型装箱
+		MethodHandle invoker = adapted.asType(INVOKER_TYPE);
+		return (bean, argument) -> (Object) invoker.invokeExact(bean, argument);
+	}
+	
+	static HandlerMethodInvoker reflective(Method method)
+	{
+		return (bean, argument) -> {
+			try {
+				return method.getParameterCount() == 0 ? method.invoke(bean) : method.invoke(bean, argument);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		};
+	}
+	
+	/**
+	 * 生成的实现类由本类的ClassLoader加载，用到的类型都要能从这里访问到
+	 */
+	private static boolean canUseLambda(Method method)
+	{
+		if(method.getParameterCount() != 1 || method.getReturnType() == void.class || Modifier.isStatic(method.getModifiers()))
+		{
+			return false;
+		}
+		ClassLoader classLoader = HandlerMethodInvokers.class.getClassLoader();
+		return isAccessible(method.getDeclaringClass(), classLoader)
+				&& isAccessible(method.getParameterTypes()[0], classLoader)
+				&& isAccessible(method.getReturnType(), classLoader);
+	}
+	
+	private static boolean isAccessible(Class<?> type,ClassLoader classLoader)
+	{
+		if(type.isPrimitive())
+		{
+			return true;
+		}
+		if(type.isArray())
+		{
+			return isAccessible(type.getComponentType(), classLoader);
+		}
+		return Modifier.isPublic(type.getModifiers()) && ClassUtils.isVisible(type, classLoader);
+	}
+	
+	private static boolean isPublic(Method method)
+	{
+		return Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers());
+	}
+}
@@ -1,7 +1,15 @@
 package com.baffalotech.integration.mvc;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+
 public interface IContext {
 
+	/**
+	 * 请求报文，可以是字节数组、字符串，或者直接引用接收缓冲区的InputStreamSource；
+	 * 处理完成后为响应报文
+	 * @return
+	 */
 	public Object getPayload();
 	
 	public Object getRequest();
@@ -19,4 +27,22 @@ public interface IContext {
 	 * @return
 	 */
 	public String getPayloadString();
+	
+	/**
+	 * 对于输入请求，以字节流的方式读取报文，每次调用都从报文开头读取，不复制报文。
+	 * payload是字符串等非字节形式时返回null，默认返回null，调用方按getPayloadString处理
+	 * @return
+	 */
+	public default InputStream getPayloadInputStream() {
+		return null;
+	}
+	
+	/**
+	 * 响应报文的输出流。不为空时处理结果直接按编码写入该流，payload不再保存响应报文；
+	 * 默认返回null，响应报文通过setPayload保存
+	 * @return
+	 */
+	public default OutputStream getOutputStream() {
+		return null;
+	}
 }
@@ -1,8 +1,48 @@
 package com.baffalotech.integration.mvc;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import org.springframework.util.StreamUtils;
+
 public interface MessageConverter<T> {
 
 	public T decode(String payload,Class<T> convertType);
 	
 	public String encode(T value);
+	
+	/**
+	 * 直接从字节流解析报文，不生成中间的字符串，流由调用方关闭。
+	 * 默认实现按编码读成字符串后调用decode(String,Class)，转换器应尽量覆盖
+	 * @param payload
+	 * @param encoding 报文编码
+	 * @param convertType
+	 * @return
+	 */
+	public default T decode(InputStream payload,String encoding,Class<T> convertType)
+	{
+		try {
+			return decode(StreamUtils.copyToString(payload, Charset.forName(encoding)), convertType);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * 直接把报文按编码写入输出流，不生成中间的字符串，流由调用方关闭。
+	 * 默认实现调用encode(Object)后按编码写入，转换器应尽量覆盖
+	 * @param value
+	 * @param out
+	 * @param encoding 报文编码
+	 */
+	public default void encode(T value,OutputStream out,String encoding)
+	{
+		try {
+			out.write(encode(value).getBytes(encoding));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
 }
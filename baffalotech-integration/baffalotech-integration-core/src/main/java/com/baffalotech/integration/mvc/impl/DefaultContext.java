@@ -1,9 +1,16 @@
 package com.baffalotech.integration.mvc.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.util.StreamUtils;
 
 import com.baffalotech.integration.mvc.ContentType;
 import com.baffalotech.integration.mvc.IContext;
@@ -22,6 +29,8 @@ public class DefaultContext implements IContext {
 	
 	private ContentType contentType;
 	
+	private OutputStream outputStream;
+	
 	private DefaultContext()
 	{
 		
@@ -35,7 +44,8 @@ public class DefaultContext implements IContext {
 	@Override
 	public void setPayload(Object payload) {
 		// TODO Auto-generated method stub
-		this.payload = payload.toString();
+		//保留原始类型，字节数组不再转成字符串
+		this.payload = payload;
 	}
 
 	@Override
@@ -76,12 +86,38 @@ public class DefaultContext implements IContext {
 			}
 		}else if (payload instanceof String) {
 			return (String)payload;
+		}else if (payload instanceof InputStreamSource) {
+			try (InputStream inputStream = ((InputStreamSource)payload).getInputStream()) {
+				return StreamUtils.copyToString(inputStream, Charset.forName(encoding));
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
 		}else {
 			LOGGER.warn("payload is not instance of byte[] or String class,please check");
 		}
 		return null;
 	}
 	
+	@Override
+	public InputStream getPayloadInputStream() {
+		if(payload instanceof byte[])
+		{
+			return new ByteArrayInputStream((byte[])payload);
+		}else if (payload instanceof InputStreamSource) {
+			try {
+				return ((InputStreamSource)payload).getInputStream();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+	
 	public static class Builder{
 		private Object payload;
 		
@@ -93,6 +129,8 @@ public class DefaultContext implements IContext {
 		
 		private ContentType contentType = ContentType.XML;
 		
+		private OutputStream outputStream;
+		
 		private Builder()
 		{
 		
@@ -131,6 +169,17 @@ public class DefaultContext implements IContext {
 			return this;
 		}
 		
+		/**
+		 * 设置后响应报文直接写入该输出流
+		 * @param outputStream
+		 * @return
+		 */
+		public Builder outputStream(OutputStream outputStream)
+		{
+			this.outputStream = outputStream;
+			return this;
+		}
+		
 		public DefaultContext build()
 		{
 			DefaultContext context  = new DefaultContext();
@@ -139,6 +188,7 @@ public class DefaultContext implements IContext {
 			context.encoding = encoding;
 			context.request = request;
 			context.contentType = contentType;
+			context.outputStream = outputStream;
 			return context;
 		}
 	}
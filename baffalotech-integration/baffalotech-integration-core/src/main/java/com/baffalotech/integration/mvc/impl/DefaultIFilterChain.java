@@ -1,11 +1,13 @@
 package com.baffalotech.integration.mvc.impl;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.baffalotech.integration.metrics.LatencyRecorder;
 import com.baffalotech.integration.mvc.ContentType;
 import com.baffalotech.integration.mvc.DiscriminatorValueReader;
 import com.baffalotech.integration.mvc.HandlerMethod;
@@ -16,74 +18,101 @@ import com.baffalotech.integration.mvc.IFilterChain;
 import com.baffalotech.integration.mvc.MessageConverter;
 import com.baffalotech.integration.mvc.annotation.DiscriminatorValue;
 
+/**
+ * 一次请求的过滤器链，只保存当前执行到的位置，过滤器、转换器和discriminator路径都来自预先生成的模板
+ * @author chijinhuang
+ *
+ */
 public class DefaultIFilterChain implements IFilterChain {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultIFilterChain.class);
 	
-	private MessageConverter messageConverter;
+	//reader没有状态，所有请求共享
+	private static final DiscriminatorValueReader XML_DISCRIMINATOR_VALUE_READER = new XmlDiscriminatorValueReader();
 	
-	private List<IFilter> filterList = new ArrayList<IFilter>();
+	private static final DiscriminatorValueReader JSON_DISCRIMINATOR_VALUE_READER = new JsonDiscriminatorValueReader();
 	
-	private HandlerMethodMapping handlerMethodMapping;
+	private final IFilter[] filters;
 	
-	private int i = 0;
+	private final MessageConverter messageConverter;
 	
-	public void setFilterList(List<IFilter> filterList) {
-		this.filterList = filterList;
-	}
+	private final HandlerMethodMapping handlerMethodMapping;
 	
-	public void addFilter(IFilter filter)
-	{
-		this.filterList.add(filter);
-	}
+	private final String discriminator;
 	
-	public List<IFilter> getFilterList() {
-		return filterList;
-	}
+	private int i = 0;
 	
-	public void setMessageConverter(MessageConverter messageConverter) {
+	/**
+	 * @param filters 排好序的过滤器，不会被修改，可以在请求之间共享
+	 * @param messageConverter
+	 * @param handlerMethodMapping
+	 * @param discriminator discriminator的路径
+	 */
+	public DefaultIFilterChain(IFilter[] filters,MessageConverter messageConverter,HandlerMethodMapping handlerMethodMapping,String discriminator)
+	{
+		this.filters = filters;
 		this.messageConverter = messageConverter;
-	}
-	
-	public void setHandlerMethodMapping(HandlerMethodMapping handlerMethodMapping) {
 		this.handlerMethodMapping = handlerMethodMapping;
+		this.discriminator = discriminator;
 	}
 
 	@Override
 	public void doFilter(IContext context) {
 		// TODO Auto-generated method stub
-		if(i<filterList.size())
+		if(i<filters.length)
 		{
-			filterList.get(i++).doFilter(context, this);
+			filters[i++].doFilter(context, this);
 			return;
-		}else if (i++==filterList.size()) {
-			//convert payload to object
-			String payload = context.getPayloadString();
-			
+		}else if (i++==filters.length) {
 			DiscriminatorValueReader discriminatorValueReader = null;
 			if(context.getContentType() == ContentType.XML)
 			{
-				discriminatorValueReader = new XmlDiscriminatorValueReader();
+				discriminatorValueReader = XML_DISCRIMINATOR_VALUE_READER;
 			}else if (context.getContentType() == ContentType.JSON) {
-				discriminatorValueReader = new JsonDiscriminatorValueReader();
+				discriminatorValueReader = JSON_DISCRIMINATOR_VALUE_READER;
 			}
 			
-			String discriminatorValue = discriminatorValueReader.parseDiscriminatorValue(context, handlerMethodMapping.getDiscriminator(context.getConnectorName()));
+			String discriminatorValue = discriminatorValueReader.parseDiscriminatorValue(context, discriminator);
 			
 			HandlerMethod handlerMethod = handlerMethodMapping.getHandlerMethod(context.getConnectorName(), discriminatorValue);
+			//处理耗时包括报文的解析和生成
+			long beginTime = System.nanoTime();
 			
 			Class parameterType = handlerMethod.getMethodParameters()[0].getParameterType();
-			Class returnType = handlerMethod.getReturnType().getParameterType();
-			Object args = messageConverter.decode(payload, parameterType);
-			
+			//convert payload to object，字节形式的报文直接从流解析
+			Object args;
+			InputStream payloadInputStream = context.getPayloadInputStream();
+			if(payloadInputStream != null)
+			{
+				try (InputStream inputStream = payloadInputStream) {
+					args = messageConverter.decode(inputStream, context.getEncoding(), parameterType);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}else {
+				args = messageConverter.decode(context.getPayloadString(), parameterType);
+			}
 			
 			try {
-				Object returnValue = handlerMethod.getBridgedMethod().invoke(handlerMethod.getBean(), args);
-				context.setPayload(messageConverter.encode(returnValue));
-			} catch (Exception e) {
+				//注册时生成的调用器，不经过反射
+				Object returnValue = handlerMethod.invoke(args);
+				OutputStream outputStream = context.getOutputStream();
+				if(outputStream != null)
+				{
+					messageConverter.encode(returnValue, outputStream, context.getEncoding());
+				}else {
+					context.setPayload(messageConverter.encode(returnValue));
+				}
+			} catch (Throwable e) {
 				// TODO Auto-generated catch block
 				LOGGER.error("invoke error");
 				throw new IllegalStateException(e);
+			} finally {
+				LatencyRecorder latencyRecorder = handlerMethod.getLatencyRecorder();
+				if(latencyRecorder != null)
+				{
+					latencyRecorder.recordSince(beginTime);
+				}
 			}
 		}
 	}
@@ -1,23 +1,70 @@
 package com.baffalotech.integration.mvc.impl;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.baffalotech.integration.mvc.MessageConverter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
+/**
+ * json转换器，ObjectMapper在所有请求之间共享，每个类型的ObjectReader/ObjectWriter只创建一次
+ * @author chijinhuang
+ *
+ */
 public class DefaultJsonMessageConverter implements MessageConverter<Object> {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultJsonMessageConverter.class);
+	
+	private final ObjectMapper mapper;
+	
+	//输出是否格式化，默认不格式化
+	private final boolean prettyPrint;
+	
+	private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+	
+	private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+	
+	public DefaultJsonMessageConverter()
+	{
+		this(false);
+	}
+	
+	public DefaultJsonMessageConverter(boolean prettyPrint)
+	{
+		this(new ObjectMapper(), prettyPrint);
+	}
+	
+	/**
+	 * mapper创建后不应再修改配置
+	 * @param mapper
+	 * @param prettyPrint
+	 */
+	public DefaultJsonMessageConverter(ObjectMapper mapper,boolean prettyPrint)
+	{
+		this.mapper = mapper;
+		this.prettyPrint = prettyPrint;
+	}
 
 	@Override
 	public Object decode(String payload, Class<Object> convertType) {
 		// TODO Auto-generated method stub
-		ObjectMapper mapper = new ObjectMapper();
 		try {
-			return mapper.readValue(payload, convertType);
+			return getReader(convertType).readValue(payload);
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			LOGGER.error("parse json error");
@@ -28,14 +75,77 @@ public class DefaultJsonMessageConverter implements MessageConverter<Object> {
 	@Override
 	public String encode(Object value) {
 		// TODO Auto-generated method stub
-		ObjectMapper mapper = new ObjectMapper();
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
 		try {
-			return mapper.writeValueAsString(value);
+			if(value == null)
+			{
+				return getWriter(Object.class).writeValueAsString(value);
+			}
+			return getWriter(value.getClass()).writeValueAsString(value);
 		} catch (JsonProcessingException e) {
 			// TODO Auto-generated catch block
 			LOGGER.error("convert to json error");
 			throw new IllegalStateException(e);
 		}
 	}
+	
+	@Override
+	public Object decode(InputStream payload, String encoding, Class<Object> convertType) {
+		try {
+			if(StandardCharsets.UTF_8.name().equalsIgnoreCase(encoding))
+			{
+				//jackson直接解析字节
+				return getReader(convertType).readValue(payload);
+			}
+			return getReader(convertType).readValue(new InputStreamReader(payload, encoding));
+		} catch (Exception e) {
+			LOGGER.error("parse json error");
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	@Override
+	public void encode(Object value, OutputStream out, String encoding) {
+		try {
+			ObjectWriter writer = getWriter(value == null ? Object.class : value.getClass());
+			if(StandardCharsets.UTF_8.name().equalsIgnoreCase(encoding))
+			{
+				writer.writeValue(out, value);
+				return;
+			}
+			Writer outputWriter = new OutputStreamWriter(out, encoding);
+			writer.writeValue(outputWriter, value);
+			outputWriter.flush();
+		} catch (Exception e) {
+			LOGGER.error("convert to json error");
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	public boolean isPrettyPrint() {
+		return prettyPrint;
+	}
+	
+	protected ObjectReader getReader(Class<?> type)
+	{
+		ObjectReader reader = readers.get(type);
+		if(reader == null)
+		{
+			//流由调用方关闭
+			reader = readers.computeIfAbsent(type, key -> mapper.readerFor(key).without(JsonParser.Feature.AUTO_CLOSE_SOURCE));
+		}
+		return reader;
+	}
+	
+	protected ObjectWriter getWriter(Class<?> type)
+	{
+		ObjectWriter writer = writers.get(type);
+		if(writer == null)
+		{
+			writer = writers.computeIfAbsent(type, key -> {
+				ObjectWriter objectWriter = mapper.writerFor(key).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+				return prettyPrint ? objectWriter.with(SerializationFeature.INDENT_OUTPUT) : objectWriter;
+			});
+		}
+		return writer;
+	}
 }
@@ -1,41 +1,81 @@
 package com.baffalotech.integration.mvc.impl;
 
-import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
-import com.baffalotech.integration.mvc.ContentType;
 import com.baffalotech.integration.mvc.MessageConverter;
 
+/**
+ * xml转换器，每个类型的JAXBContext只创建一次。
+ * Marshaller和Unmarshaller不是线程安全的，用完后放回该类型的池中复用。
+ * 每个池最多保留poolSize个，并发超过时临时创建，用完后池已满就丢弃
+ * @author chijinhuang
+ *
+ */
 public class DefaultXmlMessageConverter implements MessageConverter<Object> {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultXmlMessageConverter.class);
+	
+	public static final int DEFAULT_POOL_SIZE = 16;
+	
+	//输出是否格式化，默认不格式化
+	private final boolean prettyPrint;
+	
+	//每个类型的Marshaller和Unmarshaller各自最多保留的数量
+	private final int poolSize;
+	
+	private final ConcurrentMap<Class<?>, JaxbHolder> holders = new ConcurrentHashMap<Class<?>, JaxbHolder>();
+	
+	public DefaultXmlMessageConverter()
+	{
+		this(false);
+	}
+	
+	public DefaultXmlMessageConverter(boolean prettyPrint)
+	{
+		this(prettyPrint, DEFAULT_POOL_SIZE);
+	}
+	
+	public DefaultXmlMessageConverter(boolean prettyPrint,int poolSize)
+	{
+		if(poolSize <= 0)
+		{
+			throw new IllegalArgumentException("poolSize must be positive: " + poolSize);
+		}
+		this.prettyPrint = prettyPrint;
+		this.poolSize = poolSize;
+	}
 
 	@Override
 	public Object decode(String payload, Class<Object> convertType) {
 		// TODO Auto-generated method stub
-		JAXBContext jaxbContext;
 		try {
-			jaxbContext = JAXBContext.newInstance(convertType);
-
-			Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
-
-			return jaxbUnmarshaller.unmarshal(new StringReader(payload));
+			JaxbHolder holder = getHolder(convertType);
+			Unmarshaller jaxbUnmarshaller = holder.unmarshallers.poll();
+			if(jaxbUnmarshaller == null)
+			{
+				jaxbUnmarshaller = holder.context.createUnmarshaller();
+			}
+			Object value = jaxbUnmarshaller.unmarshal(new StringReader(payload));
+			holder.unmarshallers.offer(jaxbUnmarshaller);
+			return value;
 		} catch (JAXBException e) {
 			LOGGER.error("convert xml error:{}", e);
 			throw new IllegalStateException(e);
@@ -46,16 +86,119 @@ public class DefaultXmlMessageConverter implements MessageConverter<Object> {
 	public String encode(Object value) {
 		// TODO Auto-generated method stub
 		try {
-			JAXBContext context = JAXBContext.newInstance(value.getClass());
-			Marshaller m = context.createMarshaller();
-			// for pretty-print XML in JAXB
-			m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+			JaxbHolder holder = getHolder(value.getClass());
+			Marshaller m = holder.marshallers.poll();
+			if(m == null)
+			{
+				m = holder.context.createMarshaller();
+				// for pretty-print XML in JAXB
+				m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, prettyPrint);
+			}
+			//池中的Marshaller可能被设置过其他编码
+			m.setProperty(Marshaller.JAXB_ENCODING, StandardCharsets.UTF_8.name());
 			StringWriter stringWriter = new StringWriter();
 			m.marshal(value, stringWriter);
+			holder.marshallers.offer(m);
 			return stringWriter.toString();
 		} catch (JAXBException e) {
 			LOGGER.error("convert xml error:{}", e);
 			throw new IllegalStateException(e);
 		}
 	}
+	
+	@Override
+	public Object decode(InputStream payload, String encoding, Class<Object> convertType) {
+		try {
+			JaxbHolder holder = getHolder(convertType);
+			Unmarshaller jaxbUnmarshaller = holder.unmarshallers.poll();
+			if(jaxbUnmarshaller == null)
+			{
+				jaxbUnmarshaller = holder.context.createUnmarshaller();
+			}
+			Object value;
+			if(StandardCharsets.UTF_8.name().equalsIgnoreCase(encoding))
+			{
+				//按xml声明识别编码
+				value = jaxbUnmarshaller.unmarshal(payload);
+			}else {
+				value = jaxbUnmarshaller.unmarshal(new InputStreamReader(payload, encoding));
+			}
+			holder.unmarshallers.offer(jaxbUnmarshaller);
+			return value;
+		} catch (JAXBException | UnsupportedEncodingException e) {
+			LOGGER.error("convert xml error:{}", e);
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	@Override
+	public void encode(Object value, OutputStream out, String encoding) {
+		try {
+			JaxbHolder holder = getHolder(value.getClass());
+			Marshaller m = holder.marshallers.poll();
+			if(m == null)
+			{
+				m = holder.context.createMarshaller();
+				// for pretty-print XML in JAXB
+				m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, prettyPrint);
+			}
+			//xml声明中的编码与输出的编码一致
+			m.setProperty(Marshaller.JAXB_ENCODING, encoding);
+			m.marshal(value, out);
+			holder.marshallers.offer(m);
+		} catch (JAXBException e) {
+			LOGGER.error("convert xml error:{}", e);
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	public boolean isPrettyPrint() {
+		return prettyPrint;
+	}
+	
+	public int getPoolSize() {
+		return poolSize;
+	}
+	
+	/**
+	 * 池中当前空闲的Marshaller和Unmarshaller数量
+	 */
+	int getPooledCount(Class<?> type)
+	{
+		JaxbHolder holder = holders.get(type);
+		return holder == null ? 0 : holder.marshallers.size() + holder.unmarshallers.size();
+	}
+	
+	private JaxbHolder getHolder(Class<?> type) throws JAXBException
+	{
+		JaxbHolder holder = holders.get(type);
+		if(holder == null)
+		{
+			//JAXBContext.newInstance比较耗时，并发时可能重复创建，以先放入的为准
+			holder = new JaxbHolder(JAXBContext.newInstance(type), poolSize);
+			JaxbHolder existing = holders.putIfAbsent(type, holder);
+			if(existing != null)
+			{
+				holder = existing;
+			}
+		}
+		return holder;
+	}
+	
+	private static class JaxbHolder {
+		
+		private final JAXBContext context;
+		
+		//有界队列，池满时offer返回false，多出的对象直接丢弃
+		private final Queue<Marshaller> marshallers;
+		
+		private final Queue<Unmarshaller> unmarshallers;
+		
+		private JaxbHolder(JAXBContext context,int poolSize)
+		{
+			this.context = context;
+			this.marshallers = new ArrayBlockingQueue<Marshaller>(poolSize);
+			this.unmarshallers = new ArrayBlockingQueue<Unmarshaller>(poolSize);
+		}
+	}
 }
@@ -1,6 +1,9 @@
 package com.baffalotech.integration.mvc.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -8,37 +11,90 @@ import org.slf4j.LoggerFactory;
 
 import com.baffalotech.integration.mvc.DiscriminatorValueReader;
 import com.baffalotech.integration.mvc.IContext;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
+/**
+ * 按token流式读取discriminator的值，找到后立即停止，不生成JsonNode树。本身无状态，可以共享
+ * @author chijinhuang
+ *
+ */
 public class JsonDiscriminatorValueReader implements DiscriminatorValueReader {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(JsonDiscriminatorValueReader.class);
+	
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
 
 	@Override
 	public String parseDiscriminatorValue(IContext context, String path) {
 		// TODO Auto-generated method stub
-		ObjectMapper mapper = new ObjectMapper();
-		try {
-			JsonNode root = mapper.readTree(context.getPayloadString());
-			String[] paths = StringUtils.split(path,".");
-			JsonNode currentNode  = root;
+		String[] paths = StringUtils.split(path,".");
+		try (JsonParser parser = createParser(context)) {
+			JsonToken token = parser.nextToken();
 			for(String pathString : paths)
 			{
-				JsonNode node = currentNode.get(pathString);
-				if(node != null)
+				if(token != JsonToken.START_OBJECT || !moveToField(parser, pathString))
 				{
-					currentNode = node;
-				}else {
 					throw new IllegalStateException("can not find discriminator value in payload");
 				}
+				token = parser.nextToken();
 			}
-			return currentNode.asText();
+			return valueAsText(parser, token);
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
-			LOGGER.error("parse xml node error");
+			LOGGER.error("parse json node error");
 			throw new IllegalStateException(e);
 		}
 	}
+	
+	private JsonParser createParser(IContext context) throws IOException
+	{
+		InputStream payloadInputStream = context.getPayloadInputStream();
+		if(payloadInputStream == null)
+		{
+			return JSON_FACTORY.createParser(context.getPayloadString());
+		}
+		//jackson按字节解析时自动识别UTF-8/16/32，其他编码按字符读取，parser关闭时关闭流
+		if(StandardCharsets.UTF_8.name().equalsIgnoreCase(context.getEncoding()))
+		{
+			return JSON_FACTORY.createParser(payloadInputStream);
+		}
+		return JSON_FACTORY.createParser(new InputStreamReader(payloadInputStream, context.getEncoding()));
+	}
+	
+	/**
+	 * 在当前对象中查找字段，找到后parser停在字段名上，其他字段的值直接跳过
+	 */
+	private boolean moveToField(JsonParser parser,String name) throws IOException
+	{
+		JsonToken token;
+		while((token = parser.nextToken()) == JsonToken.FIELD_NAME)
+		{
+			if(name.equals(parser.getCurrentName()))
+			{
+				return true;
+			}
+			parser.nextToken();
+			parser.skipChildren();
+		}
+		return false;
+	}
+	
+	/**
+	 * 与JsonNode.asText()一致，对象和数组返回空字符串
+	 */
+	private String valueAsText(JsonParser parser,JsonToken token) throws IOException
+	{
+		if(token == null || token.isStructStart())
+		{
+			return "";
+		}
+		if(token == JsonToken.VALUE_NULL)
+		{
+			return "null";
+		}
+		return parser.getText();
+	}
 
 }
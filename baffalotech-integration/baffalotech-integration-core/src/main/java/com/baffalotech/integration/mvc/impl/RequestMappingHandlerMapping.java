@@ -1,25 +1,27 @@
 package com.baffalotech.integration.mvc.impl;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.BeanFactoryUtils;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.core.MethodIntrospector;
 import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.util.ClassUtils;
 import org.springframework.web.context.support.WebApplicationObjectSupport;
 
 import com.baffalotech.integration.annotation.Connector;
+import com.baffalotech.integration.metrics.LatencyRegistry;
 import com.baffalotech.integration.mvc.ContentType;
 import com.baffalotech.integration.mvc.HandlerMethod;
 import com.baffalotech.integration.mvc.HandlerMethodMapping;
@@ -27,15 +29,17 @@ import com.baffalotech.integration.mvc.IContext;
 import com.baffalotech.integration.mvc.IFilter;
 import com.baffalotech.integration.mvc.IFilterChain;
 import com.baffalotech.integration.mvc.MessageConverter;
+import com.baffalotech.integration.mvc.annotation.DiscriminatorValue;
 import com.baffalotech.integration.mvc.annotation.IController;
 import com.baffalotech.integration.util.ApplicationContextUtil;
+import com.baffalotech.integration.util.PropertyPathAccessor;
 
 /**
  * 
  * @author chijinhuang
  *
  */
-public class RequestMappingHandlerMapping extends WebApplicationObjectSupport implements HandlerMethodMapping{
+public class RequestMappingHandlerMapping extends WebApplicationObjectSupport implements HandlerMethodMapping,ApplicationListener<ContextRefreshedEvent>{
 	
 	/**
 	 * Bean name prefix for target beans behind scoped proxies. Used to exclude those
@@ -50,6 +54,9 @@ public class RequestMappingHandlerMapping extends WebApplicationObjectSupport im
 	private static final String SCOPED_TARGET_NAME_PREFIX = "scopedTarget.";
 	
 	private MappingRegistry registry = new MappingRegistry();
+	
+	//connector name -> 排好序的过滤器、转换器和discriminator路径
+	private final ConcurrentMap<String, ChainTemplate> chainTemplates = new ConcurrentHashMap<String, ChainTemplate>();
 
 	@Override
 	public HandlerMethod getHandlerMethod(String name, String value) {
@@ -59,29 +66,16 @@ public class RequestMappingHandlerMapping extends WebApplicationObjectSupport im
 	
 	@Override
 	public HandlerMethod getHandlerMethod(String name,Object value) {
-		Object bean = registry.lookupBean(name);
-		if(bean != null)
+		ConnectorMapping mapping = registry.lookupMapping(name);
+		if(mapping != null && mapping.discriminator != null && value != null)
 		{
-			IController controller = AnnotatedElementUtils.findMergedAnnotation(bean.getClass(), IController.class);
-			if(controller != null)
-			{
-				String discriminator = controller.discriminator();
-				//get discriminator property value by commons beanutils library
-				try {
-					Object discriminatorValue = PropertyUtils.getProperty(value, discriminator);
-					//convert discriminator value to String
-					return getHandlerMethod(name, discriminatorValue.toString());
-				} catch (IllegalAccessException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (InvocationTargetException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (NoSuchMethodException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-				
+			//通过注册时生成的accessor读取discriminator的值
+			try {
+				Object discriminatorValue = mapping.getAccessor(value.getClass()).getValue(value);
+				//convert discriminator value to String
+				return discriminatorValue == null ? null : mapping.handlerMethods.get(discriminatorValue.toString());
+			} catch (Exception e) {
+				logger.error("Could not read discriminator '" + mapping.discriminator + "' of " + value.getClass().getName(), e);
 			}
 		}
 		return null;
@@ -90,16 +84,20 @@ public class RequestMappingHandlerMapping extends WebApplicationObjectSupport im
 	@Override
 	public String getDiscriminator(String name) {
 		// TODO Auto-generated method stub
-		Object bean = registry.lookupBean(name);
-		if(bean != null)
-		{
-			IController controller = AnnotatedElementUtils.findMergedAnnotation(bean.getClass(), IController.class);
-			if(controller != null)
-			{
-				return controller.discriminator();
-			}
-		}
-		return null;
+		//discriminator在注册时从@IController中读取并缓存
+		ConnectorMapping mapping = registry.lookupMapping(name);
+		return mapping == null ? null : mapping.discriminator;
+	}
+	
+	/**
+	 * 注册一个controller实例的所有处理方法，可以在运行时调用（热加载），
+	 * 与正在处理的请求之间不需要额外的同步
+	 * @param handler
+	 */
+	public void registerHandler(Object handler) {
+		detectHandlerMethods(handler);
+		//discriminator可能发生变化
+		chainTemplates.clear();
 	}
 	
 	@Override
@@ -107,6 +105,12 @@ public class RequestMappingHandlerMapping extends WebApplicationObjectSupport im
 		initHandlerMethods();
 	}
 	
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		//过滤器和转换器的bean可能发生变化，重新生成
+		chainTemplates.clear();
+	}
+	
 	/**
 	 * Scan beans in the ApplicationContext, detect and register handler methods.
 	 * @see #getCandidateBeanNames()
@@ -164,20 +168,23 @@ public class RequestMappingHandlerMapping extends WebApplicationObjectSupport im
 
 		if (handlerType != null) {
 			Class<?> userType = ClassUtils.getUserClass(handlerType);
-			Map<Method, Object> methods = MethodIntrospector.selectMethods(userType,
-					(MethodIntrospector.MetadataLookup<Object>) method -> {
+			//只有标注了@DiscriminatorValue的方法才是处理方法
+			Map<Method, DiscriminatorValue> methods = MethodIntrospector.selectMethods(userType,
+					(MethodIntrospector.MetadataLookup<DiscriminatorValue>) method -> {
 						try {
-							return handler;
+							return AnnotatedElementUtils.findMergedAnnotation(method, DiscriminatorValue.class);
 						}
 						catch (Throwable ex) {
 							throw new IllegalStateException("Invalid mapping on handler class [" +
 									userType.getName() + "]: " + method, ex);
 						}
 					});
+			Object bean = (handler instanceof String ? obtainApplicationContext().getBean((String) handler) : handler);
+			List<Method> invocableMethods = new ArrayList<Method>(methods.size());
 			methods.forEach((method, mapping) -> {
-				Method invocableMethod = AopUtils.selectInvocableMethod(method, userType);
-				registry.register(obtainApplicationContext().getBean((String)handler),invocableMethod);
+				invocableMethods.add(AopUtils.selectInvocableMethod(method, userType));
 			});
+			registry.register(bean, invocableMethods);
 		}
 	}
 	
@@ -185,87 +192,183 @@ public class RequestMappingHandlerMapping extends WebApplicationObjectSupport im
 		return AnnotatedElementUtils.hasAnnotation(beanType, IController.class);
 	}
 	
+	/**
+	 * connector name -> discriminator value -> HandlerMethod 两级索引。
+	 * 每个connector的映射是不可变的快照，注册时复制一份再整体替换，查找不加锁也不产生对象
+	 */
 	class MappingRegistry {
-		Map<String, List<HandlerMethod>> lookupMap = new HashMap<String, List<HandlerMethod>>();
-		Map<String,Object> beanMap = new HashMap<String, Object>();
+		private final ConcurrentMap<String, ConnectorMapping> connectorMap = new ConcurrentHashMap<String, ConnectorMapping>();
 		
 		HandlerMethod lookupHandlerMethod(String name,String value)
 		{
-			for(Entry<String, List<HandlerMethod>> entry : lookupMap.entrySet())
+			ConnectorMapping mapping = connectorMap.get(name);
+			if(mapping == null || value == null)
 			{
-				if(entry.getKey().equals(name))
-				{
-					if(entry.getValue() != null)
-					{
-						for(HandlerMethod handlerMethod : entry.getValue())
-						{
-							if(value.equals(handlerMethod.getDiscriminatorValue()))
-							{
-								return handlerMethod;
-							}
-						}
-					}
-				}
+				return null;
 			}
-			return null;
+			return mapping.handlerMethods.get(value);
 		}
 		
 		Object lookupBean(String name)
 		{
-			return beanMap.get(name);
+			ConnectorMapping mapping = connectorMap.get(name);
+			return mapping == null ? null : mapping.bean;
 		}
 		
-		void register(Object handler,Method method)
+		ConnectorMapping lookupMapping(String name)
+		{
+			return connectorMap.get(name);
+		}
+		
+		/**
+		 * 注册同一个controller的多个方法，写操作之间串行，只生成一次新的快照。
+		 * 同一个controller类之前注册的方法先全部去掉（热加载时替换为新的实例，删掉的方法不再保留）
+		 */
+		synchronized void register(Object handler,List<Method> methods)
 		{
 			IController controller = AnnotatedElementUtils.findMergedAnnotation(handler.getClass(), IController.class);
-			List<HandlerMethod> handlerMethods = lookupMap.get(controller.name());
-			if (handlerMethods == null) {
-				handlerMethods = new ArrayList<HandlerMethod>();
-				lookupMap.put(controller.name(), handlerMethods);
+			ConnectorMapping current = connectorMap.get(controller.name());
+			Map<String, HandlerMethod> handlerMethods = current == null ? new HashMap<String, HandlerMethod>()
+					: new HashMap<String, HandlerMethod>(current.handlerMethods);
+			//按类名比较，重新加载的类可能来自新的ClassLoader
+			String userTypeName = ClassUtils.getUserClass(handler).getName();
+			handlerMethods.values().removeIf(existing -> existing.getBeanType().getName().equals(userTypeName));
+			for(Method method : methods)
+			{
+				HandlerMethod handlerMethod = new HandlerMethod(handler, method);
+				HandlerMethod existing = handlerMethods.get(handlerMethod.getDiscriminatorValue());
+				if(existing != null && !existing.equals(handlerMethod))
+				{
+					//和之前一样，先注册的方法优先
+					logger.warn("Ambiguous discriminator value '" + handlerMethod.getDiscriminatorValue()
+							+ "' on connector '" + controller.name() + "': " + existing + " and " + handlerMethod
+							+ ", keep the first one");
+					continue;
+				}
+				handlerMethod.setLatencyRecorder(LatencyRegistry.getDefaultInstance().recorder(LatencyRegistry.MVC_HANDLER,
+						LatencyRegistry.TAG_CONNECTOR, controller.name(), LatencyRegistry.TAG_DISCRIMINATOR, handlerMethod.getDiscriminatorValue()));
+				handlerMethods.put(handlerMethod.getDiscriminatorValue(), handlerMethod);
+			}
+			//discriminator没有变化时保留已经生成的accessor
+			Map<Class<?>, PropertyPathAccessor> accessors = current == null || !StringUtils.equals(current.discriminator, controller.discriminator())
+					? new HashMap<Class<?>, PropertyPathAccessor>() : new HashMap<Class<?>, PropertyPathAccessor>(current.accessors);
+			for(HandlerMethod handlerMethod : handlerMethods.values())
+			{
+				if(handlerMethod.getMethodParameters().length > 0)
+				{
+					accessors.computeIfAbsent(handlerMethod.getMethodParameters()[0].getParameterType(),
+							type -> PropertyPathAccessor.compile(type, controller.discriminator()));
+				}
+			}
+			connectorMap.put(controller.name(), new ConnectorMapping(handler, controller.discriminator(), handlerMethods, accessors));
+		}
+	}
+	
+	static class ConnectorMapping {
+		private final Object bean;
+		//discriminator的路径，来自@IController
+		private final String discriminator;
+		private final Map<String, HandlerMethod> handlerMethods;
+		//请求对象的类型 -> discriminator的accessor，注册时为处理方法的参数类型生成，其他类型第一次使用时生成
+		private final ConcurrentMap<Class<?>, PropertyPathAccessor> accessors;
+		
+		ConnectorMapping(Object bean,String discriminator,Map<String, HandlerMethod> handlerMethods,Map<Class<?>, PropertyPathAccessor> accessors)
+		{
+			this.bean = bean;
+			this.discriminator = discriminator;
+			this.handlerMethods = handlerMethods;
+			this.accessors = new ConcurrentHashMap<Class<?>, PropertyPathAccessor>(accessors);
+		}
+		
+		PropertyPathAccessor getAccessor(Class<?> type)
+		{
+			PropertyPathAccessor accessor = accessors.get(type);
+			if(accessor == null)
+			{
+				accessor = accessors.computeIfAbsent(type, key -> PropertyPathAccessor.compile(key, discriminator));
 			}
-			handlerMethods.add(new HandlerMethod(handler, method));
-			beanMap.put(controller.name(),handler);
+			return accessor;
 		}
 	}
 
+	/**
+	 * 每个connector的过滤器链模板只在第一次使用时从spring中查找并排序，之后每个请求只创建一个DefaultIFilterChain
+	 */
 	@Override
 	public IFilterChain getFilterChain(IContext context) {
 		// TODO Auto-generated method stub
-		DefaultIFilterChain filterChain = new DefaultIFilterChain();
-		List<IFilter> filterBeanList = ApplicationContextUtil.getBeansOfType(IFilter.class);
-		filterBeanList.forEach(filterBean ->{
+		ChainTemplate template = chainTemplates.get(context.getConnectorName());
+		if(template == null)
+		{
+			template = chainTemplates.computeIfAbsent(context.getConnectorName(), this::buildChainTemplate);
+		}
+		return new DefaultIFilterChain(template.filters, template.getMessageConverter(context.getContentType()), this, template.discriminator);
+	}
+	
+	private ChainTemplate buildChainTemplate(String name) {
+		List<IFilter> filters = new ArrayList<IFilter>();
+		for(IFilter filterBean : ApplicationContextUtil.getBeansOfType(IFilter.class))
+		{
 			Connector connector = AnnotatedElementUtils.findMergedAnnotation(filterBean.getClass(),Connector.class);
-			if(StringUtils.equals(context.getConnectorName(), connector.name()))
+			//与TCP的处理器一致，*适用于所有的connector
+			if(connector != null && (StringUtils.equals("*", connector.name()) || StringUtils.equals(name, connector.name())))
 			{
-				filterChain.addFilter(filterBean);
+				filters.add(filterBean);
 			}
-		});
-		Collections.sort(filterChain.getFilterList(), (one,other)->{return one.getOrder()-other.getOrder();});
-		filterChain.setHandlerMethodMapping(this);
-		List<MessageConverter> messageConverterBeanList = ApplicationContextUtil.getBeansOfType(MessageConverter.class);
-		MessageConverter connecterConverter = null;
-		for(MessageConverter messageConverter : messageConverterBeanList)
+		}
+		Collections.sort(filters, (one,other)->{return one.getOrder()-other.getOrder();});
+		
+		MessageConverter connectorConverter = null;
+		for(MessageConverter messageConverter : ApplicationContextUtil.getBeansOfType(MessageConverter.class))
 		{
 			Connector connector = AnnotatedElementUtils.findMergedAnnotation(messageConverter.getClass(),Connector.class);
-			if(connector != null && StringUtils.equals(connector.name(),context.getConnectorName()))
+			if(connector != null && StringUtils.equals(connector.name(),name))
 			{
-				connecterConverter = messageConverter;
+				connectorConverter = messageConverter;
 			}
 		}
-		if(connecterConverter == null)
+		//没有为connector指定转换器时按请求的数据类型选择默认的转换器
+		MessageConverter[] messageConverters = new MessageConverter[ContentType.values().length];
+		for(ContentType contentType : ContentType.values())
 		{
-			switch (context.getContentType()) {
+			if(connectorConverter != null)
+			{
+				messageConverters[contentType.ordinal()] = connectorConverter;
+				continue;
+			}
+			switch (contentType) {
 			case XML:
-				connecterConverter = ApplicationContextUtil.getBean(DefaultXmlMessageConverter.class);
+				messageConverters[contentType.ordinal()] = ApplicationContextUtil.getBean(DefaultXmlMessageConverter.class);
 				break;
 
 			default:
-				connecterConverter = ApplicationContextUtil.getBean(DefaultJsonMessageConverter.class);
+				messageConverters[contentType.ordinal()] = ApplicationContextUtil.getBean(DefaultJsonMessageConverter.class);
 				break;
 			}
 		}
-		filterChain.setMessageConverter(connecterConverter);
-		return filterChain;
+		return new ChainTemplate(filters.toArray(new IFilter[filters.size()]), messageConverters, getDiscriminator(name));
+	}
+	
+	private static class ChainTemplate {
+		
+		private final IFilter[] filters;
+		
+		//按ContentType.ordinal()索引
+		private final MessageConverter[] messageConverters;
+		
+		private final String discriminator;
+		
+		private ChainTemplate(IFilter[] filters,MessageConverter[] messageConverters,String discriminator)
+		{
+			this.filters = filters;
+			this.messageConverters = messageConverters;
+			this.discriminator = discriminator;
+		}
+		
+		private MessageConverter getMessageConverter(ContentType contentType)
+		{
+			return messageConverters[contentType.ordinal()];
+		}
 	}
 
 }
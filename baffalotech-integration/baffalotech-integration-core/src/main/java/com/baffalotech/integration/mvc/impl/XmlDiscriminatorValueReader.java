@@ -1,71 +1,154 @@
 package com.baffalotech.integration.mvc.impl;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import com.baffalotech.integration.mvc.DiscriminatorValueReader;
 import com.baffalotech.integration.mvc.IContext;
 
+/**
+ * 用StAX流式读取discriminator的值，找到后立即停止，不生成DOM。本身无状态，可以共享。
+ * path不包含根元素，每一级取第一个同名的子元素，与之前DOM的查找方式一致
+ * @author chijinhuang
+ *
+ */
 public class XmlDiscriminatorValueReader implements DiscriminatorValueReader {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(XmlDiscriminatorValueReader.class);
+	
+	//配置完成后XMLInputFactory是线程安全的
+	private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+	
+	private static XMLInputFactory createInputFactory()
+	{
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		return factory;
+	}
 
 	@Override
 	public String parseDiscriminatorValue(IContext context, String path) {
 		// TODO Auto-generated method stub
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		String[] paths = StringUtils.split(path, ".");
+		InputStream payloadInputStream = context.getPayloadInputStream();
+		XMLStreamReader reader = null;
 		try {
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			Document doc = null;
-			if(context.getPayload() instanceof byte[])
-			{
-				doc = builder.parse(new ByteArrayInputStream((byte[])context.getPayload()));
-			}else if (context.getPayload() instanceof String) {
-				String payload = (String)context.getPayload();
-				doc = builder.parse(new ByteArrayInputStream(payload.getBytes(context.getEncoding())));
-			}
-			Element root = doc.getDocumentElement();
-			Element currentNode = root;
-			String[] paths = StringUtils.split(path, ".");
-			for(String pathstring : paths)
+			//按xml声明识别编码
+			reader = payloadInputStream == null ? XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(context.getPayloadString()))
+					: XML_INPUT_FACTORY.createXMLStreamReader(payloadInputStream);
+			//根元素的深度为1，paths[i]对应的元素深度为i+2
+			int depth = 0;
+			int matched = 0;
+			while(reader.hasNext())
 			{
-				NodeList childrenNodeList = currentNode.getChildNodes();
-				boolean founded = false;
-				for(int i = 0;i<childrenNodeList.getLength();i++)
+				int event = reader.next();
+				if(event == XMLStreamConstants.START_ELEMENT)
 				{
-					Node node = childrenNodeList.item(i);
-					if(node instanceof Element)
+					depth++;
+					if(depth == 1 && paths.length == 0)
+					{
+						return readText(reader);
+					}
+					if(depth == matched + 2 && paths[matched].equals(qualifiedName(reader)))
 					{
-						Element childElement = (Element)node;
-						if(childElement.getNodeName().equals(pathstring))
+						matched++;
+						if(matched == paths.length)
 						{
-							currentNode = childElement;
-							founded = true;
-							break;
+							return readText(reader);
 						}
 					}
-				}
-				if(!founded)
-				{
-					throw new IllegalStateException("can not find discriminator value in payload");
+				}else if (event == XMLStreamConstants.END_ELEMENT) {
+					//第一个同名元素中没有找到下一级
+					if(depth == matched + 1)
+					{
+						break;
+					}
+					depth--;
 				}
 			}
-			return currentNode.getTextContent();
-		} catch (Exception e) {
+			throw new IllegalStateException("can not find discriminator value in payload");
+		} catch (XMLStreamException e) {
 			// TODO Auto-generated catch block
 			LOGGER.error("parse xml node error");
 			throw new IllegalStateException(e);
+		} finally {
+			if(reader != null)
+			{
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// ignore
+				}
+			}
+			//XMLStreamReader不会关闭底层的流
+			if(payloadInputStream != null)
+			{
+				try {
+					payloadInputStream.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+	
+	//与DOM的getNodeName()一致，有前缀时带上前缀
+	private String qualifiedName(XMLStreamReader reader)
+	{
+		String prefix = reader.getPrefix();
+		if(prefix == null || prefix.isEmpty())
+		{
+			return reader.getLocalName();
+		}
+		return prefix + ":" + reader.getLocalName();
+	}
+	
+	/**
+	 * 读取当前元素下所有的文本，与DOM的getTextContent()一致
+	 */
+	private String readText(XMLStreamReader reader) throws XMLStreamException
+	{
+		StringBuilder text = null;
+		String firstText = null;
+		int depth = 1;
+		while(depth > 0)
+		{
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT)
+			{
+				depth++;
+			}else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+					|| event == XMLStreamConstants.SPACE) {
+				if(firstText == null)
+				{
+					firstText = reader.getText();
+				}else {
+					if(text == null)
+					{
+						text = new StringBuilder(firstText);
+					}
+					text.append(reader.getText());
+				}
+			}
+		}
+		if(text != null)
+		{
+			return text.toString();
 		}
+		return firstText == null ? "" : firstText;
 	}
 
 }
@@ -0,0 +1,27 @@
+package com.baffalotech.integration.util;
+
+import java.nio.MappedByteBuffer;
+
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * 内存映射的释放。MappedByteBuffer要等GC时才解除映射，文件在此之前无法可靠地截断或删除，
+ * 这里通过netty调用buffer的Cleaner立即解除映射
+ * @author chijinhuang
+ *
+ */
+public final class MappedBufferUtil {
+
+	private MappedBufferUtil() {
+	}
+
+	/**
+	 * 立即解除映射，之后不能再访问这个buffer和它的duplicate、slice，否则JVM会崩溃
+	 * @param buffer 为null时什么也不做
+	 */
+	public static void unmap(MappedByteBuffer buffer) {
+		if (buffer != null) {
+			PlatformDependent.freeDirectBuffer(buffer);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.baffalotech.integration.util;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.BeanUtils;
+
+/**
+ * 按路径读取对象的属性，例如head.code，用于从请求对象中读取discriminator的值。
+ * <p>
+ * 创建时按声明的类型找到每一级的getter，连接成一个MethodHandle，读取时不再查找属性也不产生对象，
+ * 中间某一级为null时返回null。路径中有下标、Map、非public的getter，或者声明的类型上找不到下一级属性时，
+ * 退回到commons beanutils的PropertyUtils.getProperty
+ * @author chijinhuang
+ *
+ */
+public final class PropertyPathAccessor {
+	
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	
+	private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+	
+	private static final MethodHandle IS_NULL;
+	
+	static {
+		try {
+			IS_NULL = LOOKUP.findStatic(Objects.class, "isNull", MethodType.methodType(boolean.class, Object.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
+	private final String path;
+	
+	//为null时使用PropertyUtils
+	private final MethodHandle accessor;
+	
+	private PropertyPathAccessor(String path,MethodHandle accessor)
+	{
+		this.path = path;
+		this.accessor = accessor;
+	}
+	
+	/**
+	 * @param type 对象声明的类型
+	 * @param path 用.分隔的属性路径
+	 * @return
+	 */
+	public static PropertyPathAccessor compile(Class<?> type,String path)
+	{
+		return new PropertyPathAccessor(path, compileAccessor(type, path));
+	}
+	
+	public Object getValue(Object target) throws Exception
+	{
+		if(target == null)
+		{
+			return null;
+		}
+		if(accessor == null)
+		{
+			return PropertyUtils.getProperty(target, path);
+		}
+		try {
+			return (Object) accessor.invokeExact(target);
+		} catch (Exception | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * 是否生成了MethodHandle，否则使用PropertyUtils
+	 * @return
+	 */
+	public boolean isCompiled()
+	{
+		return accessor != null;
+	}
+	
+	public String getPath() {
+		return path;
+	}
+	
+	private static MethodHandle compileAccessor(Class<?> type,String path)
+	{
+		String[] names = StringUtils.split(path, ".");
+		if(names == null || names.length == 0)
+		{
+			return null;
+		}
+		Class<?> currentType = type;
+		MethodHandle accessor = null;
+		for(String name : names)
+		{
+			if(Map.class.isAssignableFrom(currentType) || StringUtils.containsAny(name, "[]()"))
+			{
+				return null;
+			}
+			PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(currentType, name);
+			Method readMethod = descriptor == null ? null : descriptor.getReadMethod();
+			if(readMethod == null || !Modifier.isPublic(readMethod.getModifiers())
+					|| !Modifier.isPublic(readMethod.getDeclaringClass().getModifiers()))
+			{
+				return null;
+			}
+			MethodHandle getter;
+			try {
+				getter = LOOKUP.unreflect(readMethod).asType(ACCESSOR_TYPE);
+			} catch (IllegalAccessException e) {
+				return null;
+			}
+			//上一级为null时直接返回null
+			accessor = accessor == null ? getter
+					: MethodHandles.filterReturnValue(accessor, MethodHandles.guardWithTest(IS_NULL, MethodHandles.identity(Object.class), getter));
+			currentType = readMethod.getReturnType();
+		}
+		return accessor;
+	}
+}
@@ -0,0 +1,104 @@
+package com.baffalotech.integration.accesslog;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+
+import com.baffalotech.integration.configuration.IntegrationServerProperties;
+
+import junit.framework.TestCase;
+
+/**
+ * 共享的生成器和每次新建的生成器输出一致，线程本地的缓冲区不会残留上一条日志
+ * @author chijinhuang
+ *
+ */
+public class AccessLogGeneratorTest extends TestCase {
+
+	private static final String PATTERN = new IntegrationServerProperties().getAccesslog().getPattern();
+
+	public void testSharedInstancePerPattern() {
+		assertSame(AccessLogGenerator.getInstance(PATTERN), AccessLogGenerator.getInstance(PATTERN));
+		assertNotSame(AccessLogGenerator.getInstance(PATTERN), AccessLogGenerator.getInstance("%h"));
+	}
+
+	public void testSameOutputAsNewGenerator() {
+		Date date = new Date(1500000000000L);
+		TestVistor vistor = new TestVistor("/api/transfer");
+		String expected = new AccessLogGenerator(PATTERN).generateLog(date, 12, vistor);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(expected, AccessLogGenerator.getInstance(PATTERN).generateLog(date, 12, vistor));
+		}
+	}
+
+	public void testSimpleElements() {
+		assertEquals("127.0.0.1 POST /api/transfer 200 1024 \"test\"", AccessLogGenerator
+				.getInstance("%h %m %U %s %b \"%{User-Agent}i\"").generateLog(5, new TestVistor("/api/transfer")));
+	}
+
+	public void testLongLineDoesNotAffectNextLine() {
+		AccessLogGenerator generator = AccessLogGenerator.getInstance("%U");
+		StringBuilder uri = new StringBuilder("/");
+		for (int i = 0; i < 10000; i++) {
+			uri.append('a');
+		}
+		assertEquals(uri.toString(), generator.generateLog(0, new TestVistor(uri.toString())));
+		assertEquals("/short", generator.generateLog(0, new TestVistor("/short")));
+	}
+
+	public void testCurrentTime() {
+		long begin = System.currentTimeMillis() / 1000;
+		String log = AccessLogGenerator.getInstance("%{sec}t").generateLog(0, new TestVistor("/"));
+		long seconds = Long.parseLong(log);
+		assertTrue(seconds >= begin && seconds <= System.currentTimeMillis() / 1000);
+	}
+
+	private static class TestVistor extends AbstractAccessLogVistorAdapter {
+
+		private final String uri;
+
+		TestVistor(String uri) {
+			this.uri = uri;
+		}
+
+		@Override
+		public String getRemoteAddr() {
+			return "127.0.0.1";
+		}
+
+		@Override
+		public String getHost() {
+			return "127.0.0.1";
+		}
+
+		@Override
+		public String getMethod() {
+			return "POST";
+		}
+
+		@Override
+		public String getRequestURI() {
+			return uri;
+		}
+
+		@Override
+		public String getProtocol() {
+			return "HTTP/1.1";
+		}
+
+		@Override
+		public int getStatus() {
+			return 200;
+		}
+
+		@Override
+		public int getBytesWritten() {
+			return 1024;
+		}
+
+		@Override
+		public Enumeration<String> getHeaders(String headerName) {
+			return Collections.enumeration(Collections.singletonList("test"));
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.baffalotech.integration.accesslog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import com.baffalotech.integration.accesslog.AccessLogRingBuffer.OverflowPolicy;
+
+import junit.framework.TestCase;
+
+/**
+ * 队列满时三种处理方式、丢弃计数，以及多个线程同时写入
+ * @author chijinhuang
+ *
+ */
+public class AccessLogRingBufferTest extends TestCase {
+
+	public void testCapacityRoundedUp() {
+		assertEquals(16, new AccessLogRingBuffer(10, OverflowPolicy.DROP, 0, 1).getCapacity());
+		assertEquals(2, new AccessLogRingBuffer(1, OverflowPolicy.DROP, 0, 1).getCapacity());
+		try {
+			new AccessLogRingBuffer(0, OverflowPolicy.DROP, 0, 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testDropWhenFull() {
+		AccessLogRingBuffer buffer = new AccessLogRingBuffer(4, OverflowPolicy.DROP, 0, 1);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.offer("m" + i));
+		}
+		assertFalse(buffer.offer("m4"));
+		assertEquals(4, buffer.size());
+		assertEquals(1, buffer.getDroppedCount());
+
+		//读取后空出的位置可以继续写入，按写入顺序读取
+		assertEquals("m0", buffer.poll());
+		assertTrue(buffer.offer("m5"));
+		for (String expected : new String[] { "m1", "m2", "m3", "m5" }) {
+			assertEquals(expected, buffer.poll());
+		}
+		assertNull(buffer.poll());
+		assertTrue(buffer.isEmpty());
+	}
+
+	public void testBlockUntilSpace() throws Exception {
+		AccessLogRingBuffer buffer = new AccessLogRingBuffer(2, OverflowPolicy.BLOCK, 5000, 1);
+		assertTrue(buffer.offer("first"));
+		assertTrue(buffer.offer("second"));
+		Thread consumer = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				return;
+			}
+			buffer.poll();
+		});
+		consumer.start();
+		assertTrue(buffer.offer("third"));
+		consumer.join();
+		assertEquals("second", buffer.poll());
+		assertEquals("third", buffer.poll());
+		assertEquals(0, buffer.getDroppedCount());
+	}
+
+	public void testBlockTimeout() {
+		AccessLogRingBuffer buffer = new AccessLogRingBuffer(2, OverflowPolicy.BLOCK, 20, 1);
+		assertTrue(buffer.offer("first"));
+		assertTrue(buffer.offer("second"));
+		long begin = System.nanoTime();
+		assertFalse(buffer.offer("third"));
+		assertTrue(System.nanoTime() - begin >= 20000000L);
+		assertEquals(1, buffer.getDroppedCount());
+	}
+
+	public void testSampleWhenBacklogged() {
+		//16个位置，积压达到12条后只保留极少数
+		AccessLogRingBuffer buffer = new AccessLogRingBuffer(16, OverflowPolicy.SAMPLE, 0, Integer.MAX_VALUE);
+		for (int i = 0; i < 12; i++) {
+			assertTrue(buffer.offer("m" + i));
+		}
+		for (int i = 0; i < 100; i++) {
+			buffer.offer("sampled");
+		}
+		assertTrue(buffer.size() < 16);
+		assertEquals(112 - buffer.size(), buffer.getDroppedCount());
+	}
+
+	public void testMultipleProducers() throws Exception {
+		final int producers = 4;
+		final int messages = 20000;
+		AccessLogRingBuffer buffer = new AccessLogRingBuffer(1024, OverflowPolicy.BLOCK, 60000, 1);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < messages; i++) {
+					buffer.offer(producer + ":" + i);
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		//每个生产者的日志按写入顺序读出
+		int[] next = new int[producers];
+		int received = 0;
+		long deadline = System.currentTimeMillis() + 30000;
+		while (received < producers * messages && System.currentTimeMillis() < deadline) {
+			String message = buffer.poll();
+			if (message == null) {
+				Thread.yield();
+				continue;
+			}
+			int colon = message.indexOf(':');
+			int producer = Integer.parseInt(message.substring(0, colon));
+			assertEquals(next[producer]++, Integer.parseInt(message.substring(colon + 1)));
+			received++;
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(producers * messages, received);
+		assertEquals(0, buffer.getDroppedCount());
+		assertTrue(buffer.isEmpty());
+	}
+}
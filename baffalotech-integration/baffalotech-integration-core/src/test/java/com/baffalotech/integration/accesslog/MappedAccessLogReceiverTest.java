@@ -0,0 +1,145 @@
+package com.baffalotech.integration.accesslog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import junit.framework.TestCase;
+
+/**
+ * 跨段写入、关闭截断、异常退出后续写、滚动以及没有新日志时的定时force
+ * @author chijinhuang
+ *
+ */
+public class MappedAccessLogReceiverTest extends TestCase {
+
+	//在调用线程中直接写日志
+	private static final Executor DIRECT = Runnable::run;
+
+	private Path directory;
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = Files.createTempDirectory("mapped-access-log");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(file -> file.toFile().delete());
+		}
+		Files.delete(directory);
+	}
+
+	public void testWriteAcrossSegmentsAndTruncateOnClose() throws Exception {
+		MappedAccessLogReceiver receiver = builder().build();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			//超过一个段的长度，包含非ASCII字符
+			String message = "GET /transfer/" + i + (i % 10 == 0 ? " 转账" : "");
+			expected.add(message);
+			receiver.logMessage(message);
+		}
+		receiver.close();
+		receiver.awaitWrittenForTest();
+
+		Path file = directory.resolve("access.log");
+		assertEquals(expected, Files.readAllLines(file, StandardCharsets.UTF_8));
+		//截断到实际写入的长度，末尾没有0字节
+		assertEquals(lines(expected).length, Files.size(file));
+	}
+
+	public void testAppendAfterUnclosedFile() throws Exception {
+		//异常退出时映射过的区域没有截断，末尾是0字节
+		Path file = directory.resolve("access.log");
+		byte[] existing = lines(Collections.singletonList("before crash"));
+		byte[] content = new byte[4096];
+		System.arraycopy(existing, 0, content, 0, existing.length);
+		Files.write(file, content);
+
+		MappedAccessLogReceiver receiver = builder().build();
+		receiver.logMessage("after restart");
+		receiver.close();
+		receiver.awaitWrittenForTest();
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertEquals(2, lines.size());
+		assertEquals("before crash", lines.get(0));
+		assertEquals("after restart", lines.get(1));
+	}
+
+	public void testRotate() throws Exception {
+		MappedAccessLogReceiver receiver = builder().setRotate(true).build();
+		receiver.logMessage("first");
+		receiver.rotate();
+		receiver.awaitWrittenForTest();
+		receiver.logMessage("second");
+		receiver.close();
+		receiver.awaitWrittenForTest();
+
+		List<String> names = new ArrayList<String>();
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(path -> names.add(path.getFileName().toString()));
+		}
+		assertEquals(2, names.size());
+		for (String name : names) {
+			List<String> lines = Files.readAllLines(directory.resolve(name), StandardCharsets.UTF_8);
+			if (name.equals("access.log")) {
+				assertEquals(Collections.singletonList("second"), lines);
+			} else {
+				//滚动的文件已经截断
+				assertEquals(Collections.singletonList("first"), lines);
+				assertEquals(lines(lines).length, Files.size(directory.resolve(name)));
+			}
+		}
+	}
+
+	public void testForceWithoutNewMessages() throws Exception {
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+		scheduler.setRemoveOnCancelPolicy(true);
+		try {
+			MappedAccessLogReceiver receiver = builder().setFlushScheduler(scheduler).setFlushInterval(50).build();
+			receiver.logMessage("first");
+			receiver.awaitWrittenForTest();
+			//刚打开文件，未达到flushInterval，等待定时force
+			assertEquals(1, scheduler.getQueue().size());
+			long deadline = System.currentTimeMillis() + 5000;
+			while (scheduler.getCompletedTaskCount() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, scheduler.getCompletedTaskCount());
+			//已经force，没有再调度
+			assertEquals(0, scheduler.getQueue().size());
+
+			receiver.logMessage("second");
+			receiver.awaitWrittenForTest();
+			receiver.close();
+			receiver.awaitWrittenForTest();
+			//关闭时取消没有执行的定时任务
+			assertTrue(scheduler.getQueue().isEmpty());
+		} finally {
+			scheduler.shutdownNow();
+			scheduler.awaitTermination(1, TimeUnit.SECONDS);
+		}
+	}
+
+	private MappedAccessLogReceiver.Builder builder() {
+		return MappedAccessLogReceiver.builder().setLogWriteExecutor(DIRECT).setOutputDirectory(directory)
+				.setLogBaseName("access.").setSegmentSize(1024).setFlushSize(1 << 20);
+	}
+
+	private static byte[] lines(List<String> messages) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (String message : messages) {
+			sb.append(message).append(System.lineSeparator());
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,210 @@
+package com.baffalotech.integration.api;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.baffalotech.integration.api.impl.NettyContainer;
+import com.baffalotech.integration.configuration.ConnectorExecutorProperties;
+import com.baffalotech.integration.configuration.IntegrationServerProperties;
+import com.baffalotech.integration.core.NettyTransport;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import junit.framework.TestCase;
+
+/**
+ * connector按容器的网络传输实现绑定端口, acceptors大于1时通过SO_REUSEPORT多次绑定, 停止时关闭绑定的端口
+ * @author chijinhuang
+ *
+ */
+public class AbstractNettyConnectorTest extends TestCase {
+
+	private NettyContainer container;
+
+	private TestConnector connector;
+
+	private int port;
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (connector != null) {
+			connector.doStop();
+		}
+		if (container != null) {
+			container.getServerExecutor().shutdownNow();
+			container.destroy();
+		}
+	}
+
+	public void testNio() throws Exception {
+		start(NettyTransport.NIO, 2);
+		//nio不支持SO_REUSEPORT, 只绑定一次
+		assertEquals(1, acceptedBy(20));
+	}
+
+	public void testEpollReusePort() throws Exception {
+		if (!NettyTransport.EPOLL.isAvailable()) {
+			return;
+		}
+		start(NettyTransport.EPOLL, 2);
+		//内核按四元组把新连接分散到两个ServerChannel上
+		assertEquals(2, acceptedBy(50));
+	}
+
+	public void testStopClosesPort() throws Exception {
+		start(NettyTransport.select(null), 1);
+		assertEquals(1, acceptedBy(1));
+		connector.doStop();
+		connector = null;
+		try (Socket socket = new Socket()) {
+			socket.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+			fail("port should be closed");
+		} catch (ConnectException e) {
+		}
+	}
+
+	public void testStopResetsExecutor() throws Exception {
+		newContainer(NettyTransport.NIO, 1);
+		connector = new TestConnector(container);
+		connector.setName("executor-test");
+		ConnectorExecutorProperties executorProperties = new ConnectorExecutorProperties();
+		executorProperties.setIsolation(ConnectorExecutorProperties.Isolation.DEDICATED);
+		executorProperties.setCoreThreads(1);
+		executorProperties.setMaxThreads(1);
+		connector.setExecutorProperties(executorProperties);
+
+		//还没有创建执行器时读取统计不会创建
+		assertNull(connector.getExecutorMetrics());
+		ExecutorService first = connector.getServerExecutor();
+		assertNotNull(connector.getExecutorMetrics());
+		assertNotSame(container.getServerExecutor(), first);
+		assertSame(first, connector.getServerExecutor());
+		connector.doStop();
+		assertTrue(first.isShutdown());
+		//停止后读取统计不会重新创建执行器
+		assertNull(connector.getExecutorMetrics());
+		assertNull(connector.getExecutorMetrics());
+
+		//重新启动后提交到新建的执行器
+		CountDownLatch done = new CountDownLatch(1);
+		connector.getDispatchExecutor().execute(done::countDown);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		ExecutorService second = connector.getServerExecutor();
+		assertNotSame(first, second);
+		assertFalse(second.isShutdown());
+	}
+
+	public void testStopResetsScheduledExecutor() throws Exception {
+		newContainer(NettyTransport.NIO, 1);
+		ScheduledExecutorService first = container.getScheduledExecutor();
+		assertSame(first, container.getScheduledExecutor());
+		container.doStop();
+		assertTrue(first.isShutdown());
+
+		//停止后再获取时重新创建, 不会返回已经关闭的调度线程
+		ScheduledExecutorService second = container.getScheduledExecutor();
+		assertNotSame(first, second);
+		CountDownLatch done = new CountDownLatch(1);
+		second.schedule(done::countDown, 1, TimeUnit.MILLISECONDS);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		container.doStop();
+		assertTrue(second.isShutdown());
+	}
+
+	private void newContainer(NettyTransport transport, int acceptors) {
+		IntegrationServerProperties properties = new IntegrationServerProperties();
+		properties.setContainerName("connector-test");
+		properties.setServerTransport(transport);
+		properties.setServerAcceptorThreads(acceptors);
+		properties.setMinWorkerThread(1);
+		properties.setMaxWorkerThread(1);
+		container = new NettyContainer(properties);
+		assertSame(transport, container.getTransport());
+	}
+
+	private void start(NettyTransport transport, int acceptors) throws Exception {
+		newContainer(transport, acceptors);
+		connector = new TestConnector(container);
+		connector.setName("connector-test");
+		connector.setSchema("TCP");
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		connector.setPort(port);
+		connector.setAcceptors(acceptors);
+		connector.setTcpQuickAck(true);
+		connector.doStart();
+	}
+
+	/**
+	 * 连接count次, 每次读取服务端写的1个字节
+	 * @return 接收连接的ServerChannel个数
+	 */
+	private int acceptedBy(int count) throws IOException, InterruptedException {
+		for (int i = 0; i < count; i++) {
+			try (Socket socket = connect()) {
+				assertEquals(1, socket.getInputStream().read());
+			}
+		}
+		return connector.serverChannels.size();
+	}
+
+	/**
+	 * 绑定是异步的, 没有完成时重试
+	 */
+	private Socket connect() throws IOException, InterruptedException {
+		for (int retry = 0;; retry++) {
+			Socket socket = new Socket();
+			try {
+				socket.setSoLinger(true, 0);
+				socket.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+				return socket;
+			} catch (ConnectException e) {
+				socket.close();
+				if (retry >= 50) {
+					throw e;
+				}
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	private static class TestConnector extends AbstractNettyConnector {
+
+		private final Set<Channel> serverChannels = ConcurrentHashMap.newKeySet();
+
+		TestConnector(Container container) {
+			super(container);
+		}
+
+		@Override
+		protected ChannelInitializer<? extends Channel> newInitializerChannelHandler() {
+			return new ChannelInitializer<Channel>() {
+				@Override
+				protected void initChannel(Channel ch) throws Exception {
+					serverChannels.add(ch.parent());
+					ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+						@Override
+						public void channelActive(ChannelHandlerContext ctx) throws Exception {
+							ctx.writeAndFlush(Unpooled.wrappedBuffer(new byte[] { 1 }))
+									.addListener(ChannelFutureListener.CLOSE);
+						}
+					});
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.baffalotech.integration.core;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * 并发上限的获取和拒绝, 按耗时乘性减、加性增, 以及上下限
+ * @author chijinhuang
+ *
+ */
+public class AdaptiveConcurrencyLimiterTest extends TestCase {
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+	public void testRejectAtLimit() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 100);
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		assertFalse(limiter.tryAcquire());
+		assertEquals(2, limiter.getInflight());
+		assertEquals(2, limiter.getAcceptedCount());
+		assertEquals(1, limiter.getRejectedCount());
+
+		limiter.release(FAST);
+		assertEquals(1, limiter.getInflight());
+		assertTrue(limiter.tryAcquire());
+	}
+
+	public void testBackoffOnSlowRequest() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 10, 1000, 100, 0.5);
+		assertTrue(limiter.tryAcquire());
+		limiter.release(SLOW);
+		assertEquals(50, limiter.getLimit());
+		//执行器拒绝时也减小上限
+		assertTrue(limiter.tryAcquire());
+		limiter.releaseDropped();
+		assertEquals(25, limiter.getLimit());
+		assertEquals(0, limiter.getInflight());
+		//不低于最小上限
+		for (int i = 0; i < 10; i++) {
+			assertTrue(limiter.tryAcquire());
+			limiter.release(SLOW);
+		}
+		assertEquals(10, limiter.getLimit());
+	}
+
+	public void testGrowOnlyWhenBusy() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 5, 100);
+		//只有一个请求时上限不增长
+		assertTrue(limiter.tryAcquire());
+		limiter.release(FAST);
+		assertEquals(4, limiter.getLimit());
+
+		//正在处理的请求数达到上限的一半时加1
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		limiter.release(FAST);
+		assertEquals(5, limiter.getLimit());
+		//不超过最大上限
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		limiter.release(FAST);
+		assertEquals(5, limiter.getLimit());
+	}
+
+	public void testRejectionRate() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 100);
+		assertTrue(limiter.tryAcquire());
+		assertFalse(limiter.tryAcquire());
+		assertFalse(limiter.tryAcquire());
+		assertFalse(limiter.tryAcquire());
+		//时间窗口结束后才更新
+		assertEquals(0.0, limiter.getRejectionRate());
+		Thread.sleep(1100);
+		assertEquals(0.75, limiter.getRejectionRate());
+	}
+
+	public void testInvalidArguments() {
+		try {
+			new AdaptiveConcurrencyLimiter(10, 0, 10, 100);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			new AdaptiveConcurrencyLimiter(10, 20, 10, 100);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			new AdaptiveConcurrencyLimiter(10, 1, 10, 100, 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		//初始上限限制在范围内
+		assertEquals(10, new AdaptiveConcurrencyLimiter(100, 1, 10, 100).getLimit());
+	}
+}
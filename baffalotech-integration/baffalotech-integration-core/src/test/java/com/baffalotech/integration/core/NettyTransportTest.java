@@ -0,0 +1,89 @@
+package com.baffalotech.integration.core;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import junit.framework.TestCase;
+
+/**
+ * 网络传输实现的选择, EventLoopGroup和ServerChannel的对应关系
+ * @author chijinhuang
+ *
+ */
+public class NettyTransportTest extends TestCase {
+
+	public void testSelect() {
+		NettyTransport selected = NettyTransport.select(null);
+		assertTrue(selected.isAvailable());
+		//按io_uring, epoll, nio的顺序选择第一个可用的
+		for (NettyTransport transport : NettyTransport.values()) {
+			if (transport == selected) {
+				break;
+			}
+			assertFalse(transport.isAvailable());
+		}
+		assertSame(NettyTransport.NIO, NettyTransport.select(NettyTransport.NIO));
+	}
+
+	public void testSelectUnavailable() {
+		for (NettyTransport transport : NettyTransport.values()) {
+			if (!transport.isAvailable()) {
+				//不可用时自动选择
+				assertSame(NettyTransport.select(null), NettyTransport.select(transport));
+			}
+		}
+	}
+
+	public void testNio() throws Exception {
+		NettyTransport transport = NettyTransport.NIO;
+		assertTrue(transport.isAvailable());
+		assertSame(NioServerSocketChannel.class, transport.serverChannelClass());
+		//jdk8的nio不支持这些选项
+		assertNull(transport.reusePortOption());
+		assertNull(transport.quickAckOption());
+		assertNull(transport.fastOpenOption());
+		assertOf(transport);
+	}
+
+	public void testEpoll() throws Exception {
+		NettyTransport transport = NettyTransport.EPOLL;
+		if (!transport.isAvailable()) {
+			return;
+		}
+		assertSame(EpollServerSocketChannel.class, transport.serverChannelClass());
+		assertNotNull(transport.reusePortOption());
+		assertNotNull(transport.quickAckOption());
+		assertNotNull(transport.fastOpenOption());
+		assertOf(transport);
+	}
+
+	public void testIoUringWithoutJar() {
+		//classpath中没有netty-incubator-transport-io_uring
+		assertFalse(NettyTransport.IO_URING.isAvailable());
+		assertFalse(NettyTransport.IO_URING.isCompatible(new DefaultEventLoopGroup(1)));
+	}
+
+	public void testUnsupportedGroup() throws Exception {
+		EventLoopGroup group = new DefaultEventLoopGroup(1);
+		try {
+			NettyTransport.of(group);
+			fail();
+		} catch (IllegalArgumentException e) {
+		} finally {
+			group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+		}
+	}
+
+	private static void assertOf(NettyTransport transport) throws Exception {
+		EventLoopGroup group = transport.newEventLoopGroup(1, null);
+		try {
+			assertTrue(transport.isCompatible(group));
+			assertSame(transport, NettyTransport.of(group));
+		} finally {
+			group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+		}
+	}
+}
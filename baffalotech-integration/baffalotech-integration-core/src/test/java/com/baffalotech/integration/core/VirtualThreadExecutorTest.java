@@ -0,0 +1,134 @@
+package com.baffalotech.integration.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.baffalotech.integration.api.impl.NettyContainer;
+import com.baffalotech.integration.configuration.IntegrationServerProperties;
+
+import junit.framework.TestCase;
+
+/**
+ * 虚拟线程执行器的并发上限、关闭和中断, jdk21以下时容器退回线程池
+ * @author chijinhuang
+ *
+ */
+public class VirtualThreadExecutorTest extends TestCase {
+
+	public void testContainerExecutor() {
+		IntegrationServerProperties properties = new IntegrationServerProperties();
+		properties.setContainerName("virtual-test");
+		properties.setVirtualThreads(true);
+		properties.setMinWorkerThread(1);
+		properties.setMaxWorkerThread(1);
+		NettyContainer container = new NettyContainer(properties);
+		try {
+			ExecutorService executor = container.getServerExecutor();
+			if (VirtualThreadExecutor.isSupported()) {
+				assertTrue(executor instanceof VirtualThreadExecutor);
+			} else {
+				assertTrue(executor instanceof StandardThreadExecutor);
+			}
+		} finally {
+			container.getServerExecutor().shutdownNow();
+			container.destroy();
+		}
+	}
+
+	public void testUnsupported() {
+		if (VirtualThreadExecutor.isSupported()) {
+			return;
+		}
+		try {
+			new VirtualThreadExecutor("test", 1, 0);
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	public void testExecute() throws Exception {
+		if (!VirtualThreadExecutor.isSupported()) {
+			return;
+		}
+		VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 0, 0);
+		try {
+			AtomicReference<Thread> thread = new AtomicReference<>();
+			CountDownLatch done = new CountDownLatch(1);
+			executor.execute(() -> {
+				thread.set(Thread.currentThread());
+				done.countDown();
+			});
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertTrue(thread.get().getName().startsWith("test-virtual-"));
+			assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread.get()));
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(1, executor.getCompletedTaskCount());
+	}
+
+	public void testMaxConcurrency() throws Exception {
+		if (!VirtualThreadExecutor.isSupported()) {
+			return;
+		}
+		VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 2, 0);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			executor.execute(() -> await(release));
+			executor.execute(() -> await(release));
+			//和没有队列的线程池一样, 超过上限直接拒绝
+			try {
+				executor.execute(() -> {
+				});
+				fail();
+			} catch (RejectedExecutionException e) {
+			}
+			assertEquals(2, executor.getRunningTasksCount());
+			assertEquals(1, executor.getRejectedTaskCount());
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(0, executor.getRunningTasksCount());
+	}
+
+	public void testShutdownNow() throws Exception {
+		if (!VirtualThreadExecutor.isSupported()) {
+			return;
+		}
+		VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 0, 0);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch interrupted = new CountDownLatch(1);
+		executor.execute(() -> {
+			started.countDown();
+			try {
+				Thread.sleep(60000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertTrue(executor.shutdownNow().isEmpty());
+		assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		try {
+			executor.execute(() -> {
+			});
+			fail();
+		} catch (RejectedExecutionException e) {
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package com.baffalotech.integration.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import junit.framework.TestCase;
+
+/**
+ * 按权重分配线程, 预留线程不被其他通道占用, 满了直接拒绝, 关闭的通道释放预留
+ * @author chijinhuang
+ *
+ */
+public class WeightedFairExecutorTest extends TestCase {
+
+	private WeightedFairExecutor executor;
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Override
+	protected void tearDown() throws Exception {
+		release.countDown();
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	public void testRejectWhenFull() throws Exception {
+		executor = newExecutor(1);
+		WeightedFairExecutor.Lane lane = executor.newLane("full", 1, 0, 1);
+		CountDownLatch started = new CountDownLatch(1);
+		lane.execute(() -> block(started));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		lane.execute(() -> {
+		});
+		Thread caller = Thread.currentThread();
+		List<Thread> ranIn = Collections.synchronizedList(new ArrayList<Thread>());
+		try {
+			lane.execute(() -> ranIn.add(Thread.currentThread()));
+			fail();
+		} catch (RejectedExecutionException e) {
+		}
+		//不在提交任务的线程中执行
+		assertFalse(ranIn.contains(caller));
+		assertEquals(1, lane.getRejectedTaskCount());
+		assertEquals(1, lane.getQueueSize());
+	}
+
+	public void testReservedThreads() throws Exception {
+		executor = newExecutor(2);
+		WeightedFairExecutor.Lane critical = executor.newLane("critical", 1, 1, 0);
+		WeightedFairExecutor.Lane slow = executor.newLane("slow", 1, 0, 10);
+		for (int i = 0; i < 3; i++) {
+			slow.execute(() -> block(null));
+		}
+		//预留给critical的线程不会被slow占用
+		waitUntil(() -> slow.getActiveCount() == 1);
+		assertEquals(2, slow.getQueueSize());
+
+		CountDownLatch done = new CountDownLatch(1);
+		critical.execute(done::countDown);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(1, slow.getActiveCount());
+	}
+
+	public void testLaneShutdownReleasesReservation() throws Exception {
+		executor = newExecutor(2);
+		WeightedFairExecutor.Lane critical = executor.newLane("critical", 1, 2, 0);
+		WeightedFairExecutor.Lane other = executor.newLane("other", 1, 0, 0);
+		try {
+			other.execute(() -> {
+			});
+			fail();
+		} catch (RejectedExecutionException e) {
+		}
+		try {
+			executor.newLane("restarted", 1, 1, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+		critical.shutdown();
+		assertTrue(critical.awaitTermination(1, TimeUnit.SECONDS));
+		assertEquals(1, executor.getLaneCount());
+		CountDownLatch done = new CountDownLatch(1);
+		other.execute(done::countDown);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		//connector重新启动时可以再预留
+		executor.newLane("restarted", 1, 2, 0);
+	}
+
+	public void testLaneShutdownRunsQueuedTasks() throws Exception {
+		executor = newExecutor(1);
+		WeightedFairExecutor.Lane lane = executor.newLane("draining", 1, 1, 5);
+		CountDownLatch started = new CountDownLatch(1);
+		lane.execute(() -> block(started));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		lane.execute(() -> {
+		});
+		lane.execute(() -> {
+		});
+		lane.shutdown();
+		try {
+			lane.execute(() -> {
+			});
+			fail();
+		} catch (RejectedExecutionException e) {
+		}
+		//排队的任务执行完之前保留通道
+		assertEquals(1, executor.getLaneCount());
+		assertFalse(lane.awaitTermination(100, TimeUnit.MILLISECONDS));
+
+		release.countDown();
+		assertTrue(lane.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(3, lane.getCompletedTaskCount());
+		assertEquals(0, executor.getLaneCount());
+	}
+
+	public void testWeights() throws Exception {
+		executor = newExecutor(1);
+		WeightedFairExecutor.Lane heavy = executor.newLane("heavy", 3, 0, 100);
+		WeightedFairExecutor.Lane light = executor.newLane("light", 1, 0, 100);
+		CountDownLatch started = new CountDownLatch(1);
+		heavy.execute(() -> block(started));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		for (int i = 0; i < 40; i++) {
+			heavy.execute(() -> order.add("heavy"));
+			light.execute(() -> order.add("light"));
+		}
+		release.countDown();
+		waitUntil(() -> order.size() == 80);
+		//两个通道都有任务排队时按3:1执行
+		int heavyCount = Collections.frequency(order.subList(0, 40), "heavy");
+		assertTrue("heavy " + heavyCount, heavyCount >= 29 && heavyCount <= 31);
+	}
+
+	private static WeightedFairExecutor newExecutor(int maxThreads) {
+		return new WeightedFairExecutor("fair-test", maxThreads, new DefaultThreadFactory("fair-test", true));
+	}
+
+	private void block(CountDownLatch started) {
+		if (started != null) {
+			started.countDown();
+		}
+		try {
+			release.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(condition.getAsBoolean());
+	}
+}
@@ -0,0 +1,40 @@
+package com.baffalotech.integration.metrics;
+
+import java.nio.file.Paths;
+
+import com.baffalotech.integration.accesslog.AccessLogReceiver;
+import com.baffalotech.integration.accesslog.DefaultAccessLogReceiver;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.TestCase;
+
+/**
+ * 丢弃和积压的日志条数通过AccessLogReceiver接口导出
+ * @author chijinhuang
+ *
+ */
+public class AccessLogMeterBinderTest extends TestCase {
+
+	public void testDroppedAndBacklog() {
+		//写日志的任务不执行，日志一直积压在队列中
+		AccessLogReceiver receiver = DefaultAccessLogReceiver.builder().setLogWriteExecutor(command -> {
+		}).setOutputDirectory(Paths.get(System.getProperty("java.io.tmpdir"))).setLogBaseName("meter.")
+				.setQueueCapacity(4).build();
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new AccessLogMeterBinder(receiver).bindTo(registry);
+
+		for (int i = 0; i < 6; i++) {
+			receiver.logMessage("message " + i);
+		}
+		assertEquals(4.0, registry.get(AccessLogMeterBinder.BACKLOG).gauge().value());
+		assertEquals(2.0, registry.get(AccessLogMeterBinder.DROPPED).functionCounter().count());
+	}
+
+	public void testReceiverWithoutQueue() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new AccessLogMeterBinder(message -> {
+		}).bindTo(registry);
+		assertEquals(0.0, registry.get(AccessLogMeterBinder.BACKLOG).gauge().value());
+		assertEquals(0.0, registry.get(AccessLogMeterBinder.DROPPED).functionCounter().count());
+	}
+}
@@ -0,0 +1,90 @@
+package com.baffalotech.integration.metrics;
+
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.baffalotech.integration.api.AbstractNettyConnector;
+import com.baffalotech.integration.api.Container;
+import com.baffalotech.integration.api.impl.NettyContainer;
+import com.baffalotech.integration.configuration.IntegrationServerProperties;
+import com.baffalotech.integration.core.AdaptiveConcurrencyLimiter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import junit.framework.TestCase;
+
+/**
+ * 每个connector的并发上限、正在处理的请求数和拒绝率按connector标签导出, 没有限流的connector不导出
+ * @author chijinhuang
+ *
+ */
+public class ConcurrencyLimiterMeterBinderTest extends TestCase {
+
+	private NettyContainer container;
+
+	@Override
+	protected void setUp() throws Exception {
+		IntegrationServerProperties properties = new IntegrationServerProperties();
+		properties.setContainerName("limiter-meter-test");
+		properties.setMinWorkerThread(1);
+		properties.setMaxWorkerThread(1);
+		container = new NettyContainer(properties);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		container.getServerExecutor().shutdownNow();
+		container.destroy();
+	}
+
+	public void testGauges() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 1000);
+		container.addConnector(newConnector("limited", limiter));
+		container.addConnector(newConnector("unlimited", null));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new ConcurrencyLimiterMeterBinder(container).bindTo(registry);
+
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		assertFalse(limiter.tryAcquire());
+		assertEquals(2.0, registry.get(ConcurrencyLimiterMeterBinder.LIMIT).tag("connector", "limited").gauge().value());
+		assertEquals(2.0, registry.get(ConcurrencyLimiterMeterBinder.INFLIGHT).tag("connector", "limited").gauge().value());
+		assertEquals(1.0, registry.get(ConcurrencyLimiterMeterBinder.REJECTED).tag("connector", "limited").functionCounter().count());
+		assertEquals(0.0, registry.get(ConcurrencyLimiterMeterBinder.REJECTION_RATE).tag("connector", "limited").gauge().value());
+		assertNull(registry.find(ConcurrencyLimiterMeterBinder.LIMIT).tag("connector", "unlimited").gauge());
+	}
+
+	public void testConnectorAddedAfterBind() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		ConcurrencyLimiterMeterBinder binder = new ConcurrencyLimiterMeterBinder(container);
+		binder.bindTo(registry);
+		container.addConnector(newConnector("late", new AdaptiveConcurrencyLimiter(5, 1, 10, 1000)));
+		assertNull(registry.find(ConcurrencyLimiterMeterBinder.LIMIT).gauge());
+
+		//容器刷新后注册, 重复刷新不会重复注册
+		binder.onApplicationEvent(new ContextRefreshedEvent(new StaticApplicationContext()));
+		binder.onApplicationEvent(new ContextRefreshedEvent(new StaticApplicationContext()));
+		assertEquals(5.0, registry.get(ConcurrencyLimiterMeterBinder.LIMIT).tag("connector", "late").gauge().value());
+		assertEquals(1, registry.find(ConcurrencyLimiterMeterBinder.LIMIT).gauges().size());
+	}
+
+	private AbstractNettyConnector newConnector(String name, AdaptiveConcurrencyLimiter limiter) {
+		AbstractNettyConnector connector = new TestConnector(container);
+		connector.setName(name);
+		connector.setConcurrencyLimiter(limiter);
+		return connector;
+	}
+
+	private static class TestConnector extends AbstractNettyConnector {
+
+		TestConnector(Container container) {
+			super(container);
+		}
+
+		@Override
+		protected ChannelInitializer<? extends Channel> newInitializerChannelHandler() {
+			return null;
+		}
+	}
+}
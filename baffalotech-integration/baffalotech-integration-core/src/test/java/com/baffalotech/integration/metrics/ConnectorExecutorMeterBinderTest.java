@@ -0,0 +1,142 @@
+package com.baffalotech.integration.metrics;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.baffalotech.integration.api.AbstractNettyConnector;
+import com.baffalotech.integration.api.Container;
+import com.baffalotech.integration.api.impl.NettyContainer;
+import com.baffalotech.integration.configuration.ConnectorExecutorProperties;
+import com.baffalotech.integration.configuration.IntegrationServerProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import junit.framework.TestCase;
+
+/**
+ * connector单独的执行器的队列长度、正在执行的任务数、拒绝数和等待时间按connector标签导出,
+ * 使用容器线程池的connector不导出, 停止后取值不会重新创建执行器
+ * @author chijinhuang
+ *
+ */
+public class ConnectorExecutorMeterBinderTest extends TestCase {
+
+	private NettyContainer container;
+
+	@Override
+	protected void setUp() throws Exception {
+		IntegrationServerProperties properties = new IntegrationServerProperties();
+		properties.setContainerName("executor-meter-test");
+		properties.setMinWorkerThread(1);
+		properties.setMaxWorkerThread(1);
+		container = new NettyContainer(properties);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		container.getServerExecutor().shutdownNow();
+		container.destroy();
+	}
+
+	public void testGauges() throws Exception {
+		AbstractNettyConnector dedicated = newConnector("dedicated", ConnectorExecutorProperties.Isolation.DEDICATED);
+		container.addConnector(dedicated);
+		container.addConnector(newConnector("shared", null));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new ConnectorExecutorMeterBinder(container).bindTo(registry);
+		assertNull(registry.find(ConnectorExecutorMeterBinder.QUEUE_SIZE).tag("connector", "shared").gauge());
+
+		//一个任务占用唯一的线程, 一个任务排队, 再提交时被拒绝
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(2);
+		Executor executor = dedicated.getDispatchExecutor();
+		executor.execute(() -> {
+			started.countDown();
+			await(release);
+			done.countDown();
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		executor.execute(done::countDown);
+		try {
+			executor.execute(done::countDown);
+			fail();
+		} catch (RejectedExecutionException e) {
+		}
+		assertEquals(1.0, registry.get(ConnectorExecutorMeterBinder.ACTIVE).tag("connector", "dedicated").gauge().value());
+		assertEquals(1.0, registry.get(ConnectorExecutorMeterBinder.QUEUE_SIZE).tag("connector", "dedicated").gauge().value());
+		assertEquals(1.0, registry.get(ConnectorExecutorMeterBinder.REJECTED).tag("connector", "dedicated").gauge().value());
+
+		Thread.sleep(50);
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(registry.get(ConnectorExecutorMeterBinder.WAIT_MAX).tag("connector", "dedicated").timeGauge()
+				.value(TimeUnit.MILLISECONDS) >= 50);
+		assertTrue(registry.get(ConnectorExecutorMeterBinder.WAIT_AVG).tag("connector", "dedicated").timeGauge()
+				.value(TimeUnit.MILLISECONDS) > 0);
+
+		//停止后为NaN, 取值不会重新创建执行器
+		dedicated.doStop();
+		assertTrue(Double.isNaN(registry.get(ConnectorExecutorMeterBinder.QUEUE_SIZE).tag("connector", "dedicated").gauge().value()));
+		assertNull(dedicated.getExecutorMetrics());
+
+		//重新启动后读取新的执行器
+		dedicated.getServerExecutor();
+		assertEquals(0.0, registry.get(ConnectorExecutorMeterBinder.REJECTED).tag("connector", "dedicated").gauge().value());
+		dedicated.doStop();
+	}
+
+	public void testConnectorAddedAfterBind() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		ConnectorExecutorMeterBinder binder = new ConnectorExecutorMeterBinder(container);
+		binder.bindTo(registry);
+		container.addConnector(newConnector("late", ConnectorExecutorProperties.Isolation.WEIGHTED));
+		assertNull(registry.find(ConnectorExecutorMeterBinder.QUEUE_SIZE).gauge());
+
+		//容器刷新后注册, 重复刷新不会重复注册; 还没有创建执行器时为NaN
+		binder.onApplicationEvent(new ContextRefreshedEvent(new StaticApplicationContext()));
+		binder.onApplicationEvent(new ContextRefreshedEvent(new StaticApplicationContext()));
+		assertTrue(Double.isNaN(registry.get(ConnectorExecutorMeterBinder.QUEUE_SIZE).tag("connector", "late").gauge().value()));
+		assertEquals(1, registry.find(ConnectorExecutorMeterBinder.QUEUE_SIZE).gauges().size());
+	}
+
+	private AbstractNettyConnector newConnector(String name, ConnectorExecutorProperties.Isolation isolation) {
+		AbstractNettyConnector connector = new TestConnector(container);
+		connector.setName(name);
+		if (isolation != null) {
+			ConnectorExecutorProperties executorProperties = new ConnectorExecutorProperties();
+			executorProperties.setIsolation(isolation);
+			executorProperties.setCoreThreads(1);
+			executorProperties.setMaxThreads(1);
+			executorProperties.setQueueSize(1);
+			connector.setExecutorProperties(executorProperties);
+		}
+		return connector;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class TestConnector extends AbstractNettyConnector {
+
+		TestConnector(Container container) {
+			super(container);
+		}
+
+		@Override
+		protected ChannelInitializer<? extends Channel> newInitializerChannelHandler() {
+			return null;
+		}
+	}
+}
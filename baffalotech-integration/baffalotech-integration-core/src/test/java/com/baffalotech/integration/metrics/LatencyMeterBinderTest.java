@@ -0,0 +1,40 @@
+package com.baffalotech.integration.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.TestCase;
+
+/**
+ * recorder按指标名和标签导出为FunctionTimer和max、percentile两个TimeGauge, 之后创建的recorder自动注册
+ * @author chijinhuang
+ *
+ */
+public class LatencyMeterBinderTest extends TestCase {
+
+	public void testBind() {
+		LatencyRegistry latencyRegistry = new LatencyRegistry();
+		LatencyRecorder existing = latencyRegistry.recorder(LatencyRegistry.SERVLET, LatencyRegistry.TAG_CONNECTOR,
+				"default");
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new LatencyMeterBinder(latencyRegistry, 0.5, 0.99).bindTo(registry);
+
+		existing.record(TimeUnit.MILLISECONDS.toNanos(2));
+		existing.record(TimeUnit.MILLISECONDS.toNanos(4));
+		FunctionTimer timer = registry.get(LatencyRegistry.SERVLET).tag(LatencyRegistry.TAG_CONNECTOR, "default")
+				.functionTimer();
+		assertEquals(2.0, timer.count());
+		assertEquals(6.0, timer.totalTime(TimeUnit.MILLISECONDS), 0.001);
+		assertEquals(4.0, registry.get(LatencyRegistry.SERVLET + ".max").timeGauge().value(TimeUnit.MILLISECONDS), 0.05);
+		assertEquals(2, registry.find(LatencyRegistry.SERVLET + ".percentile").timeGauges().size());
+		assertEquals(4.0, registry.get(LatencyRegistry.SERVLET + ".percentile").tag("phi", "0.99").timeGauge()
+				.value(TimeUnit.MILLISECONDS), 0.05);
+
+		//之后创建的recorder
+		latencyRegistry.recorder(LatencyRegistry.FILTER, LatencyRegistry.TAG_CONNECTOR, "default",
+				LatencyRegistry.TAG_FILTER, "auth").record(1000);
+		assertEquals(1.0, registry.get(LatencyRegistry.FILTER).tag(LatencyRegistry.TAG_FILTER, "auth").functionTimer()
+				.count());
+	}
+}
@@ -0,0 +1,80 @@
+package com.baffalotech.integration.metrics;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * 分段写入合并后的次数、总耗时和百分位, 快照的缓存和时间窗口的过期
+ * @author chijinhuang
+ *
+ */
+public class LatencyRecorderTest extends TestCase {
+
+	public void testDistribution() {
+		LatencyRecorder recorder = newRecorder(60);
+		for (int i = 0; i < 99; i++) {
+			recorder.record(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		recorder.record(TimeUnit.MILLISECONDS.toNanos(100));
+		//负数按0记录
+		recorder.record(-1);
+
+		LatencySnapshot snapshot = recorder.snapshot();
+		assertEquals(101, snapshot.getCount());
+		assertEquals(101, snapshot.getWindowCount());
+		assertEquals(199.0, snapshot.getTotalTime(TimeUnit.MILLISECONDS), 0.001);
+		//2位有效数字, 误差在1%以内
+		assertEquals(1.0, snapshot.getValueAtPercentile(50, TimeUnit.MILLISECONDS), 0.01);
+		assertEquals(100.0, snapshot.getMax(TimeUnit.MILLISECONDS), 1.0);
+		assertEquals(199.0 / 101, snapshot.getMean(TimeUnit.MILLISECONDS), 0.02);
+	}
+
+	public void testConcurrentRecord() throws Exception {
+		LatencyRecorder recorder = newRecorder(60);
+		int threads = 8;
+		int records = 10000;
+		CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			new Thread(() -> {
+				for (int i = 0; i < records; i++) {
+					recorder.record(TimeUnit.MICROSECONDS.toNanos(500));
+				}
+				done.countDown();
+			}).start();
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(threads * records, recorder.getCount());
+		assertEquals(threads * records, recorder.snapshot().getWindowCount());
+		assertEquals(threads * records * 0.5, recorder.getTotalTime(TimeUnit.MILLISECONDS), 0.001);
+	}
+
+	public void testSnapshotCached() {
+		LatencyRecorder recorder = newRecorder(60);
+		recorder.record(1000);
+		LatencySnapshot snapshot = recorder.snapshot();
+		recorder.record(1000);
+		//1秒内返回同一个快照, 累计的次数不受缓存影响
+		assertSame(snapshot, recorder.snapshot());
+		assertEquals(1, snapshot.getCount());
+		assertEquals(2, recorder.getCount());
+	}
+
+	public void testWindowExpired() throws Exception {
+		LatencyRecorder recorder = newRecorder(1);
+		recorder.record(TimeUnit.MILLISECONDS.toNanos(5));
+		assertEquals(1, recorder.snapshot().getWindowCount());
+		//超过两个时间窗口后百分位不再包含以前的数据, 次数和总耗时继续累计
+		Thread.sleep(2100);
+		LatencySnapshot snapshot = recorder.snapshot();
+		assertEquals(0, snapshot.getWindowCount());
+		assertEquals(0.0, snapshot.getMax(TimeUnit.MILLISECONDS));
+		assertEquals(1, snapshot.getCount());
+	}
+
+	private static LatencyRecorder newRecorder(long windowSeconds) {
+		return new LatencyRecorder("test", Collections.<String, String>emptyMap(), windowSeconds);
+	}
+}
@@ -0,0 +1,59 @@
+package com.baffalotech.integration.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import junit.framework.TestCase;
+
+/**
+ * 同一个指标名和标签只有一个recorder, 监听在创建时通知
+ * @author chijinhuang
+ *
+ */
+public class LatencyRegistryTest extends TestCase {
+
+	private final LatencyRegistry registry = new LatencyRegistry();
+
+	public void testSameNameAndTags() {
+		LatencyRecorder recorder = registry.recorder(LatencyRegistry.SERVLET, LatencyRegistry.TAG_CONNECTOR, "default",
+				LatencyRegistry.TAG_SERVLET, "echo");
+		assertSame(recorder, registry.recorder(LatencyRegistry.SERVLET, LatencyRegistry.TAG_CONNECTOR, "default",
+				LatencyRegistry.TAG_SERVLET, "echo"));
+		assertNotSame(recorder, registry.recorder(LatencyRegistry.SERVLET, LatencyRegistry.TAG_CONNECTOR, "other",
+				LatencyRegistry.TAG_SERVLET, "echo"));
+		assertNotSame(recorder, registry.recorder(LatencyRegistry.FILTER, LatencyRegistry.TAG_CONNECTOR, "default"));
+		assertEquals("echo", recorder.getTags().get(LatencyRegistry.TAG_SERVLET));
+
+		assertEquals(2, registry.getRecorders(LatencyRegistry.SERVLET).size());
+		assertEquals(3, registry.getRecorders().size());
+	}
+
+	public void testNullTagValue() {
+		LatencyRecorder recorder = registry.recorder(LatencyRegistry.CONNECTOR_SERVICE, LatencyRegistry.TAG_CONNECTOR, null);
+		assertEquals("none", recorder.getTags().get(LatencyRegistry.TAG_CONNECTOR));
+		try {
+			registry.recorder(LatencyRegistry.CONNECTOR_SERVICE, LatencyRegistry.TAG_CONNECTOR);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testListener() {
+		LatencyRecorder existing = registry.recorder(LatencyRegistry.CONNECTOR_QUEUE);
+		List<LatencyRecorder> notified = new ArrayList<LatencyRecorder>();
+		Consumer<LatencyRecorder> listener = notified::add;
+		registry.addListener(listener);
+		assertEquals(1, notified.size());
+		assertSame(existing, notified.get(0));
+
+		LatencyRecorder created = registry.recorder(LatencyRegistry.MVC_HANDLER, LatencyRegistry.TAG_DISCRIMINATOR, "transfer");
+		registry.recorder(LatencyRegistry.MVC_HANDLER, LatencyRegistry.TAG_DISCRIMINATOR, "transfer");
+		assertEquals(2, notified.size());
+		assertSame(created, notified.get(1));
+
+		registry.removeListener(listener);
+		registry.recorder(LatencyRegistry.FILTER_CHAIN);
+		assertEquals(2, notified.size());
+	}
+}
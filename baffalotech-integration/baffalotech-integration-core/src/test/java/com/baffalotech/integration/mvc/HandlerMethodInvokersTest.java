@@ -0,0 +1,167 @@
+package com.baffalotech.integration.mvc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+
+import com.baffalotech.integration.mvc.annotation.DiscriminatorValue;
+import com.baffalotech.integration.util.PropertyPathAccessor;
+
+import junit.framework.TestCase;
+
+/**
+ * 各种处理方法（void、没有参数、静态、基本类型）的调用器和属性路径的结果
+ * @author chijinhuang
+ *
+ */
+public class HandlerMethodInvokersTest extends TestCase {
+
+	private static final String PATH = "head.tranCode";
+
+	private TransferController controller;
+
+	private Request request;
+
+	@Override
+	protected void setUp() throws Exception {
+		controller = new TransferController();
+		request = new Request("100201");
+	}
+
+	public void testLambdaInvoker() throws Throwable {
+		HandlerMethod handlerMethod = handlerMethod("transfer");
+		assertTrue(handlerMethod.getInvoker().getClass().getName().contains("Lambda"));
+		assertEquals("100201", handlerMethod.invoke(request));
+	}
+
+	public void testMethodHandleAndReflectiveInvoker() throws Throwable {
+		Method method = TransferController.class.getMethod("transfer", Request.class);
+		HandlerMethodInvoker methodHandle = HandlerMethodInvokers.methodHandle(method,
+				MethodHandles.lookup().unreflect(method));
+		assertEquals("100201", methodHandle.invoke(controller, request));
+		assertEquals("100201", HandlerMethodInvokers.reflective(method).invoke(controller, request));
+	}
+
+	public void testVoidMethod() throws Throwable {
+		assertNull(handlerMethod("ignore").invoke(request));
+		assertSame(request, controller.ignored);
+	}
+
+	public void testNoArgumentMethod() throws Throwable {
+		assertEquals("pong", handlerMethod("ping").invoke(request));
+	}
+
+	public void testStaticMethod() throws Throwable {
+		assertEquals("static-100201", handlerMethod("staticTransfer").invoke(request));
+	}
+
+	public void testPrimitiveMethod() throws Throwable {
+		assertEquals(Long.valueOf(43), handlerMethod("increment").invoke(42L));
+	}
+
+	public void testExceptionNotWrapped() throws Throwable {
+		try {
+			handlerMethod("fail").invoke(request);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			//处理方法的异常不包装
+		}
+	}
+
+	public void testCompiledPropertyPath() throws Exception {
+		PropertyPathAccessor accessor = PropertyPathAccessor.compile(Request.class, PATH);
+		assertTrue(accessor.isCompiled());
+		assertEquals("100201", accessor.getValue(request));
+		assertNull(accessor.getValue(new Request(null, null)));
+		assertNull(accessor.getValue(null));
+	}
+
+	public void testMapPropertyPath() throws Exception {
+		PropertyPathAccessor accessor = PropertyPathAccessor.compile(Map.class, PATH);
+		assertFalse(accessor.isCompiled());
+		assertEquals("100201",
+				accessor.getValue(Collections.singletonMap("head", Collections.singletonMap("tranCode", "100201"))));
+	}
+
+	private HandlerMethod handlerMethod(String name) throws NoSuchMethodException {
+		for (Method method : TransferController.class.getMethods()) {
+			if (method.getName().equals(name)) {
+				return new HandlerMethod(controller, method);
+			}
+		}
+		throw new NoSuchMethodException(name);
+	}
+
+	public static class TransferController {
+
+		private Object ignored;
+
+		@DiscriminatorValue("transfer")
+		public String transfer(Request request) {
+			return request.getHead().getTranCode();
+		}
+
+		@DiscriminatorValue("ignore")
+		public void ignore(Request request) {
+			this.ignored = request;
+		}
+
+		@DiscriminatorValue("ping")
+		public String ping() {
+			return "pong";
+		}
+
+		@DiscriminatorValue("static")
+		public static String staticTransfer(Request request) {
+			return "static-" + request.getHead().getTranCode();
+		}
+
+		@DiscriminatorValue("increment")
+		public long increment(long value) {
+			return value + 1;
+		}
+
+		@DiscriminatorValue("fail")
+		public String fail(Request request) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	public static class Request {
+
+		private Head head;
+
+		public Request(String tranCode) {
+			this(new Head(), tranCode);
+		}
+
+		public Request(Head head, String tranCode) {
+			this.head = head;
+			if (head != null) {
+				head.setTranCode(tranCode);
+			}
+		}
+
+		public Head getHead() {
+			return head;
+		}
+
+		public void setHead(Head head) {
+			this.head = head;
+		}
+	}
+
+	public static class Head {
+
+		private String tranCode;
+
+		public String getTranCode() {
+			return tranCode;
+		}
+
+		public void setTranCode(String tranCode) {
+			this.tranCode = tranCode;
+		}
+	}
+}
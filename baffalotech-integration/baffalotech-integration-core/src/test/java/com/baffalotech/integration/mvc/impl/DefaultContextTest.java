@@ -0,0 +1,118 @@
+package com.baffalotech.integration.mvc.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.util.StreamUtils;
+
+import com.baffalotech.integration.mvc.ContentType;
+import com.baffalotech.integration.mvc.IContext;
+
+import junit.framework.TestCase;
+
+/**
+ * 上下文中各种类型的报文按字符串和按字节流读取
+ * @author chijinhuang
+ *
+ */
+public class DefaultContextTest extends TestCase {
+
+	public void testBytePayload() throws Exception {
+		byte[] payload = "转账".getBytes("GBK");
+		IContext context = DefaultContext.Builder.newBuilder().payload(payload).encoding("GBK").build();
+		assertEquals("转账", context.getPayloadString());
+		//每次返回新的流
+		assertEquals(payload.length, StreamUtils.copyToByteArray(context.getPayloadInputStream()).length);
+		assertEquals(payload.length, StreamUtils.copyToByteArray(context.getPayloadInputStream()).length);
+	}
+
+	public void testStringPayload() {
+		IContext context = DefaultContext.Builder.newBuilder().payload("转账").build();
+		assertEquals("转账", context.getPayloadString());
+		//字符串报文没有字节流, 调用方按字符串处理
+		assertNull(context.getPayloadInputStream());
+	}
+
+	public void testInputStreamSourcePayload() throws Exception {
+		byte[] payload = "转账".getBytes("UTF-8");
+		AtomicInteger opened = new AtomicInteger();
+		InputStreamSource source = () -> {
+			opened.incrementAndGet();
+			return new ByteArrayInputStream(payload);
+		};
+		IContext context = DefaultContext.Builder.newBuilder().payload(source).build();
+		assertEquals("转账", context.getPayloadString());
+		try (InputStream inputStream = context.getPayloadInputStream()) {
+			assertEquals("转账", new String(StreamUtils.copyToByteArray(inputStream), "UTF-8"));
+		}
+		assertEquals(2, opened.get());
+	}
+
+	public void testSetPayloadKeepsType() {
+		IContext context = DefaultContext.Builder.newBuilder().payload("request").build();
+		byte[] response = new byte[] { 1, 2 };
+		context.setPayload(response);
+		assertSame(response, context.getPayload());
+	}
+
+	public void testOutputStream() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertSame(out, DefaultContext.Builder.newBuilder().outputStream(out).build().getOutputStream());
+		assertNull(DefaultContext.Builder.newBuilder().build().getOutputStream());
+	}
+
+	public void testContextWithoutStreams() {
+		//应用自己实现的IContext不需要实现字节流的方法, 按字符串读取报文
+		IContext context = new StringContext("{\"head\":{\"tranCode\":\"transfer\"}}");
+		assertNull(context.getPayloadInputStream());
+		assertNull(context.getOutputStream());
+		assertEquals("transfer", new JsonDiscriminatorValueReader().parseDiscriminatorValue(context, "head.tranCode"));
+	}
+
+	private static class StringContext implements IContext {
+
+		private Object payload;
+
+		StringContext(String payload) {
+			this.payload = payload;
+		}
+
+		@Override
+		public Object getPayload() {
+			return payload;
+		}
+
+		@Override
+		public Object getRequest() {
+			return null;
+		}
+
+		@Override
+		public void setPayload(Object payload) {
+			this.payload = payload;
+		}
+
+		@Override
+		public String getConnectorName() {
+			return "string";
+		}
+
+		@Override
+		public ContentType getContentType() {
+			return ContentType.JSON;
+		}
+
+		@Override
+		public String getEncoding() {
+			return "UTF-8";
+		}
+
+		@Override
+		public String getPayloadString() {
+			return (String) payload;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.baffalotech.integration.mvc.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.core.io.InputStreamSource;
+
+import com.baffalotech.integration.mvc.ContentType;
+import com.baffalotech.integration.mvc.IContext;
+import com.baffalotech.integration.mvc.IFilter;
+import com.baffalotech.integration.mvc.IFilterChain;
+import com.baffalotech.integration.mvc.annotation.DiscriminatorValue;
+import com.baffalotech.integration.mvc.annotation.IController;
+
+import junit.framework.TestCase;
+
+/**
+ * 过滤器链按顺序执行过滤器, 字节报文直接从流解析, 设置了输出流时结果直接写入输出流
+ * @author chijinhuang
+ *
+ */
+public class DefaultIFilterChainTest extends TestCase {
+
+	private static final String CONNECTOR = "chain-test";
+
+	private static final String REQUEST = "{\"code\":\"echo\",\"remark\":\"转账\"}";
+
+	private RequestMappingHandlerMapping handlerMapping;
+
+	private final DefaultJsonMessageConverter converter = new DefaultJsonMessageConverter();
+
+	@Override
+	protected void setUp() throws Exception {
+		handlerMapping = new RequestMappingHandlerMapping();
+		handlerMapping.registerHandler(new EchoController());
+	}
+
+	public void testStringPayload() {
+		IContext context = DefaultContext.Builder.newBuilder().connectorName(CONNECTOR).contentType(ContentType.JSON)
+				.payload(REQUEST).build();
+		newChain().doFilter(context);
+		assertEquals("{\"code\":\"echo\",\"remark\":\"转账-echo\"}", context.getPayload());
+	}
+
+	public void testStreamPayloadAndOutputStream() throws Exception {
+		byte[] request = REQUEST.getBytes("GBK");
+		AtomicInteger opened = new AtomicInteger();
+		InputStreamSource source = () -> {
+			opened.incrementAndGet();
+			return new ByteArrayInputStream(request);
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		IContext context = DefaultContext.Builder.newBuilder().connectorName(CONNECTOR).contentType(ContentType.JSON)
+				.encoding("GBK").payload(source).outputStream(out).build();
+		newChain().doFilter(context);
+
+		//discriminator和请求对象各读取一次, 不生成字符串
+		assertEquals(2, opened.get());
+		assertEquals("{\"code\":\"echo\",\"remark\":\"转账-echo\"}", new String(out.toByteArray(), "GBK"));
+		//结果已经写入输出流, 不再放回上下文
+		assertSame(source, context.getPayload());
+	}
+
+	public void testFiltersInOrder() {
+		StringBuilder trace = new StringBuilder();
+		IFilter first = new TraceFilter("1", trace);
+		IFilter second = new TraceFilter("2", trace);
+		IContext context = DefaultContext.Builder.newBuilder().connectorName(CONNECTOR).contentType(ContentType.JSON)
+				.payload(REQUEST).build();
+		new DefaultIFilterChain(new IFilter[] { first, second }, converter, handlerMapping, "code").doFilter(context);
+		assertEquals("1>2>2<1<", trace.toString());
+		assertEquals("{\"code\":\"echo\",\"remark\":\"转账-echo\"}", context.getPayload());
+	}
+
+	private DefaultIFilterChain newChain() {
+		return new DefaultIFilterChain(new IFilter[0], converter, handlerMapping, "code");
+	}
+
+	private static class TraceFilter implements IFilter {
+
+		private final String name;
+
+		private final StringBuilder trace;
+
+		TraceFilter(String name, StringBuilder trace) {
+			this.name = name;
+			this.trace = trace;
+		}
+
+		@Override
+		public void doFilter(IContext context, IFilterChain filterChain) {
+			trace.append(name).append('>');
+			filterChain.doFilter(context);
+			trace.append(name).append('<');
+		}
+
+		@Override
+		public int getOrder() {
+			return 0;
+		}
+	}
+
+	@IController(name = CONNECTOR, discriminator = "code")
+	public static class EchoController {
+
+		@DiscriminatorValue("echo")
+		public DefaultJsonMessageConverterTest.Message echo(DefaultJsonMessageConverterTest.Message request) {
+			request.setRemark(request.getRemark() + "-echo");
+			return request;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.baffalotech.integration.mvc.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import com.baffalotech.integration.mvc.MessageConverter;
+
+import junit.framework.TestCase;
+
+/**
+ * json转换器按字节流编解码, 以及MessageConverter字节流方法的默认实现
+ * @author chijinhuang
+ *
+ */
+public class DefaultJsonMessageConverterTest extends TestCase {
+
+	private final DefaultJsonMessageConverter converter = new DefaultJsonMessageConverter();
+
+	public void testStreamRoundTrip() throws Exception {
+		for (String encoding : new String[] { "UTF-8", "GBK" }) {
+			ClosedStream out = new ClosedStream();
+			converter.encode(new Message("100201", "转账"), out, encoding);
+			//流由调用方关闭
+			assertFalse(out.closed);
+			assertEquals(converter.encode(new Message("100201", "转账")), new String(out.toByteArray(), encoding));
+
+			ClosedInputStream in = new ClosedInputStream(out.toByteArray());
+			Message message = (Message) converter.decode(in, encoding, type(Message.class));
+			assertFalse(in.closed);
+			assertEquals("100201", message.getCode());
+			assertEquals("转账", message.getRemark());
+		}
+	}
+
+	public void testStreamNull() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		converter.encode(null, out, "UTF-8");
+		assertEquals("null", new String(out.toByteArray()));
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void testDefaultStreamMethods() throws Exception {
+		//只实现字符串方法的转换器
+		MessageConverter upperCase = new MessageConverter<String>() {
+			@Override
+			public String decode(String payload, Class<String> convertType) {
+				return payload.toUpperCase();
+			}
+
+			@Override
+			public String encode(String value) {
+				return value + "!";
+			}
+		};
+		assertEquals("转账ABC", upperCase.decode(new ByteArrayInputStream("转账abc".getBytes("GBK")), "GBK", String.class));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		upperCase.encode("转账", out, "GBK");
+		assertEquals("转账!", new String(out.toByteArray(), "GBK"));
+	}
+
+	public void testInvalidPayload() {
+		try {
+			converter.decode(new ByteArrayInputStream("{".getBytes()), "UTF-8", type(Map.class));
+			fail();
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Class<Object> type(Class type) {
+		return type;
+	}
+
+	private static class ClosedStream extends ByteArrayOutputStream {
+		private boolean closed;
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	private static class ClosedInputStream extends ByteArrayInputStream {
+		private boolean closed;
+
+		ClosedInputStream(byte[] bytes) {
+			super(bytes);
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	public static class Message {
+
+		private String code;
+		private String remark;
+
+		public Message() {
+		}
+
+		public Message(String code, String remark) {
+			this.code = code;
+			this.remark = remark;
+		}
+
+		public String getCode() {
+			return code;
+		}
+
+		public void setCode(String code) {
+			this.code = code;
+		}
+
+		public String getRemark() {
+			return remark;
+		}
+
+		public void setRemark(String remark) {
+			this.remark = remark;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.baffalotech.integration.mvc.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import junit.framework.TestCase;
+
+/**
+ * xml转换器的编解码和Marshaller/Unmarshaller池的上限
+ * @author chijinhuang
+ *
+ */
+public class DefaultXmlMessageConverterTest extends TestCase {
+
+	public void testRoundTrip() {
+		DefaultXmlMessageConverter converter = new DefaultXmlMessageConverter();
+		String xml = converter.encode(new Message("100201", "转账"));
+		Message message = (Message) converter.decode(xml, type(Message.class));
+		assertEquals("100201", message.getCode());
+		assertEquals("转账", message.getRemark());
+		//用完后放回池中, 各保留一个
+		assertEquals(2, converter.getPooledCount(Message.class));
+	}
+
+	public void testStreamWithEncoding() {
+		DefaultXmlMessageConverter converter = new DefaultXmlMessageConverter();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		converter.encode(new Message("100201", "转账"), out, "GBK");
+		assertTrue(new String(out.toByteArray()).contains("encoding=\"GBK\""));
+
+		Message message = (Message) converter.decode(new ByteArrayInputStream(out.toByteArray()), "GBK", type(Message.class));
+		assertEquals("转账", message.getRemark());
+		//之前设置的GBK不影响以后的输出
+		assertTrue(converter.encode(message).contains("encoding=\"UTF-8\""));
+	}
+
+	public void testPoolSizeBound() throws Exception {
+		final DefaultXmlMessageConverter converter = new DefaultXmlMessageConverter(false, 2);
+		final String xml = converter.encode(new Message("100201", "bound"));
+		int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					for (int j = 0; j < 200; j++) {
+						converter.encode(converter.decode(xml, type(Message.class)));
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		//并发时多创建的对象放不回池中, 每种最多保留2个
+		int pooled = converter.getPooledCount(Message.class);
+		assertTrue("pooled " + pooled, pooled > 0 && pooled <= 4);
+	}
+
+	public void testInvalidPoolSize() {
+		try {
+			new DefaultXmlMessageConverter(false, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Class<Object> type(Class type) {
+		return type;
+	}
+
+	@XmlRootElement
+	public static class Message {
+
+		private String code;
+		private String remark;
+
+		public Message() {
+		}
+
+		public Message(String code, String remark) {
+			this.code = code;
+			this.remark = remark;
+		}
+
+		public String getCode() {
+			return code;
+		}
+
+		public void setCode(String code) {
+			this.code = code;
+		}
+
+		public String getRemark() {
+			return remark;
+		}
+
+		public void setRemark(String remark) {
+			this.remark = remark;
+		}
+	}
+}
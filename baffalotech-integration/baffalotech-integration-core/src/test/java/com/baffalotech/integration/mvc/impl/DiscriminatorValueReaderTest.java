@@ -0,0 +1,132 @@
+package com.baffalotech.integration.mvc.impl;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.core.io.InputStreamSource;
+
+import com.baffalotech.integration.mvc.ContentType;
+import com.baffalotech.integration.mvc.IContext;
+
+import junit.framework.TestCase;
+
+/**
+ * 流式读取discriminator的结果与之前DOM/JsonNode树的查找方式一致
+ * @author chijinhuang
+ *
+ */
+public class DiscriminatorValueReaderTest extends TestCase {
+
+	private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><request>"
+			+ "<body><tranCode>wrong</tranCode></body>"
+			+ "<head><channel>mobile</channel><tranCode>transfer</tranCode><tranCode>second</tranCode></head>"
+			+ "<head><tranCode>other</tranCode></head></request>";
+
+	private static final String JSON = "{\"body\":[{\"tranCode\":\"wrong\"}],\"skip\":{\"head\":{\"tranCode\":\"wrong\"}},"
+			+ "\"head\":{\"channel\":\"mobile\",\"tranCode\":\"transfer\",\"amount\":12.50,\"empty\":null,\"nested\":{\"a\":1}}}";
+
+	private final XmlDiscriminatorValueReader xmlReader = new XmlDiscriminatorValueReader();
+
+	private final JsonDiscriminatorValueReader jsonReader = new JsonDiscriminatorValueReader();
+
+	public void testXmlFirstMatchingChild() {
+		IContext context = context(XML, ContentType.XML, "UTF-8");
+		assertEquals("transfer", xmlReader.parseDiscriminatorValue(context, "head.tranCode"));
+		//只查找第一个head
+		try {
+			xmlReader.parseDiscriminatorValue(context, "head.missing");
+			fail();
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	public void testXmlTextContent() {
+		IContext context = context("<request><head><a>x<b>y</b><![CDATA[<z>]]></a></head></request>", ContentType.XML, "UTF-8");
+		assertEquals("xy<z>", xmlReader.parseDiscriminatorValue(context, "head.a"));
+		assertEquals("xy<z>", xmlReader.parseDiscriminatorValue(context, ""));
+		assertEquals("", xmlReader.parseDiscriminatorValue(context("<request><head/></request>", ContentType.XML, "UTF-8"), "head"));
+	}
+
+	public void testXmlPrefixedName() {
+		IContext context = context("<r:request xmlns:r=\"urn:r\"><r:head><r:code>100201</r:code></r:head></r:request>",
+				ContentType.XML, "UTF-8");
+		assertEquals("100201", xmlReader.parseDiscriminatorValue(context, "r:head.r:code"));
+	}
+
+	public void testXmlStreamEncodingAndClose() {
+		String xml = "<?xml version=\"1.0\" encoding=\"GBK\"?><request><head><tranCode>转账</tranCode></head></request>";
+		AtomicBoolean closed = new AtomicBoolean();
+		IContext context = streamContext(xml, ContentType.XML, "GBK", closed);
+		assertEquals("转账", xmlReader.parseDiscriminatorValue(context, "head.tranCode"));
+		assertTrue(closed.get());
+	}
+
+	public void testXmlExternalEntityNotResolved() {
+		String xml = "<?xml version=\"1.0\"?><!DOCTYPE request [<!ENTITY secret SYSTEM \"file:///etc/passwd\">]>"
+				+ "<request><head><tranCode>&secret;</tranCode></head></request>";
+		try {
+			String value = xmlReader.parseDiscriminatorValue(context(xml, ContentType.XML, "UTF-8"), "head.tranCode");
+			assertFalse(value.contains("root"));
+		} catch (IllegalStateException e) {
+			//未解析的实体也可能直接报错
+		}
+	}
+
+	public void testJsonSkipsOtherFields() {
+		IContext context = context(JSON, ContentType.JSON, "UTF-8");
+		assertEquals("transfer", jsonReader.parseDiscriminatorValue(context, "head.tranCode"));
+		assertEquals("mobile", jsonReader.parseDiscriminatorValue(context, "head.channel"));
+	}
+
+	public void testJsonValueAsText() {
+		IContext context = context(JSON, ContentType.JSON, "UTF-8");
+		//与JsonNode.asText()一致
+		assertEquals("12.50", jsonReader.parseDiscriminatorValue(context, "head.amount"));
+		assertEquals("null", jsonReader.parseDiscriminatorValue(context, "head.empty"));
+		assertEquals("", jsonReader.parseDiscriminatorValue(context, "head.nested"));
+		assertEquals("", jsonReader.parseDiscriminatorValue(context, "body"));
+	}
+
+	public void testJsonMissingField() {
+		IContext context = context(JSON, ContentType.JSON, "UTF-8");
+		try {
+			jsonReader.parseDiscriminatorValue(context, "head.missing");
+			fail();
+		} catch (IllegalStateException e) {
+		}
+		try {
+			//body是数组
+			jsonReader.parseDiscriminatorValue(context, "body.tranCode");
+			fail();
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	public void testJsonStreamEncodingAndClose() {
+		AtomicBoolean closed = new AtomicBoolean();
+		IContext context = streamContext("{\"head\":{\"tranCode\":\"转账\"}}", ContentType.JSON, "GBK", closed);
+		assertEquals("转账", jsonReader.parseDiscriminatorValue(context, "head.tranCode"));
+		assertTrue(closed.get());
+
+		closed.set(false);
+		context = streamContext("{\"head\":{\"tranCode\":\"转账\"}}", ContentType.JSON, "UTF-8", closed);
+		assertEquals("转账", jsonReader.parseDiscriminatorValue(context, "head.tranCode"));
+		assertTrue(closed.get());
+	}
+
+	private static IContext context(String payload, ContentType contentType, String encoding) {
+		return DefaultContext.Builder.newBuilder().payload(payload).contentType(contentType).encoding(encoding).build();
+	}
+
+	private static IContext streamContext(String payload, ContentType contentType, String encoding, AtomicBoolean closed) {
+		byte[] bytes = payload.getBytes(Charset.forName(encoding));
+		InputStreamSource source = () -> new ByteArrayInputStream(bytes) {
+			@Override
+			public void close() {
+				closed.set(true);
+			}
+		};
+		return DefaultContext.Builder.newBuilder().payload(source).contentType(contentType).encoding(encoding).build();
+	}
+}
@@ -0,0 +1,238 @@
+package com.baffalotech.integration.mvc.impl;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.baffalotech.integration.annotation.Connector;
+import com.baffalotech.integration.mvc.ContentType;
+import com.baffalotech.integration.mvc.HandlerMethod;
+import com.baffalotech.integration.mvc.IContext;
+import com.baffalotech.integration.mvc.IFilter;
+import com.baffalotech.integration.mvc.IFilterChain;
+import com.baffalotech.integration.mvc.annotation.DiscriminatorValue;
+import com.baffalotech.integration.mvc.annotation.IController;
+import com.baffalotech.integration.util.ApplicationContextUtil;
+
+import junit.framework.TestCase;
+
+/**
+ * 处理方法的注册、按discriminator查找和热加载，以及每个connector的过滤器链模板
+ * @author chijinhuang
+ *
+ */
+public class RequestMappingHandlerMappingTest extends TestCase {
+
+	private static final String CONNECTOR = "mapping-test";
+
+	private RequestMappingHandlerMapping handlerMapping;
+
+	@Override
+	protected void setUp() throws Exception {
+		handlerMapping = new RequestMappingHandlerMapping();
+	}
+
+	public void testLookup() throws Throwable {
+		TransferController controller = new TransferController("v1");
+		handlerMapping.registerHandler(controller);
+
+		assertEquals("code", handlerMapping.getDiscriminator(CONNECTOR));
+		HandlerMethod handlerMethod = handlerMapping.getHandlerMethod(CONNECTOR, "transfer");
+		assertSame(controller, handlerMethod.getBean());
+		assertSame(handlerMethod, handlerMapping.getHandlerMethod(CONNECTOR, (Object) request("transfer")));
+		assertNull(handlerMapping.getHandlerMethod(CONNECTOR, "unknown"));
+		assertNull(handlerMapping.getHandlerMethod("unknown", "transfer"));
+		assertNull(handlerMapping.getDiscriminator("unknown"));
+	}
+
+	public void testReloadReplacesSameController() throws Throwable {
+		handlerMapping.registerHandler(new TransferController("v1"));
+		TransferController reloaded = new TransferController("v2");
+		handlerMapping.registerHandler(reloaded);
+
+		HandlerMethod transfer = handlerMapping.getHandlerMethod(CONNECTOR, "transfer");
+		HandlerMethod query = handlerMapping.getHandlerMethod(CONNECTOR, (Object) request("query"));
+		assertSame(reloaded, transfer.getBean());
+		assertSame(reloaded, query.getBean());
+		assertEquals("v2-transfer", transfer.invoke(request("transfer")));
+		assertEquals("v2-query", query.invoke(request("query")));
+	}
+
+	public void testAmbiguousMethodOfOtherController() throws Throwable {
+		TransferController controller = new TransferController("v1");
+		handlerMapping.registerHandler(controller);
+		handlerMapping.registerHandler(new QueryController());
+
+		//其他controller的重复discriminator仍然保留先注册的方法
+		assertSame(controller, handlerMapping.getHandlerMethod(CONNECTOR, "query").getBean());
+		assertEquals("balance", handlerMapping.getHandlerMethod(CONNECTOR, "balance").invoke(request("balance")));
+
+		//热加载只替换同一个类的方法，其他controller的方法不受影响
+		TransferController reloaded = new TransferController("v2");
+		handlerMapping.registerHandler(reloaded);
+		assertSame(reloaded, handlerMapping.getHandlerMethod(CONNECTOR, "query").getBean());
+		assertEquals("balance", handlerMapping.getHandlerMethod(CONNECTOR, "balance").invoke(request("balance")));
+	}
+
+	public void testFilterChainTemplate() {
+		StaticApplicationContext applicationContext = newApplicationContext();
+		StringBuilder trace = new StringBuilder();
+		register(applicationContext, new LateFilter(trace, "late", 20));
+		register(applicationContext, new AllConnectorFilter(trace, "all", 10));
+		register(applicationContext, new OtherConnectorFilter(trace, "other", 0));
+		//没有@Connector的过滤器不使用
+		register(applicationContext, new TraceFilter(trace, "none", 0));
+		register(applicationContext, new EarlyFilter(trace, "early", 5));
+		handlerMapping.registerHandler(new TransferController("v1"));
+
+		IContext context = jsonContext("transfer");
+		handlerMapping.getFilterChain(context).doFilter(context);
+		assertEquals("early,all,late,", trace.toString());
+		assertEquals("\"v1-transfer\"", context.getPayload());
+	}
+
+	public void testConnectorConverter() {
+		StaticApplicationContext applicationContext = newApplicationContext();
+		handlerMapping.registerHandler(new TransferController("v1"));
+
+		//没有connector的转换器时按数据类型选择默认的转换器
+		IContext context = jsonContext("transfer");
+		handlerMapping.getFilterChain(context).doFilter(context);
+		assertEquals("\"v1-transfer\"", context.getPayload());
+
+		//模板生成后不再查找新的bean，刷新后重新生成
+		register(applicationContext, new ConnectorConverter());
+		context = jsonContext("query");
+		handlerMapping.getFilterChain(context).doFilter(context);
+		assertEquals("\"v1-query\"", context.getPayload());
+
+		handlerMapping.onApplicationEvent(new ContextRefreshedEvent(applicationContext));
+		context = jsonContext("query");
+		handlerMapping.getFilterChain(context).doFilter(context);
+		assertEquals("converted:\"v1-query\"", context.getPayload());
+	}
+
+	private StaticApplicationContext newApplicationContext() {
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		register(applicationContext, new DefaultJsonMessageConverter());
+		register(applicationContext, new DefaultXmlMessageConverter());
+		new ApplicationContextUtil().setApplicationContext(applicationContext);
+		return applicationContext;
+	}
+
+	private static void register(StaticApplicationContext applicationContext, Object bean) {
+		applicationContext.getBeanFactory().registerSingleton(bean.getClass().getName() + "#" + System.identityHashCode(bean), bean);
+	}
+
+	private static IContext jsonContext(String code) {
+		return DefaultContext.Builder.newBuilder().connectorName(CONNECTOR).contentType(ContentType.JSON)
+				.payload("{\"code\":\"" + code + "\"}").build();
+	}
+
+	private static Map<String, Object> request(String code) {
+		return Collections.<String, Object>singletonMap("code", code);
+	}
+
+	public static class TraceFilter implements IFilter {
+
+		private final StringBuilder trace;
+
+		private final String name;
+
+		private final int order;
+
+		TraceFilter(StringBuilder trace, String name, int order) {
+			this.trace = trace;
+			this.name = name;
+			this.order = order;
+		}
+
+		@Override
+		public int getOrder() {
+			return order;
+		}
+
+		@Override
+		public void doFilter(IContext context, IFilterChain chain) {
+			trace.append(name).append(',');
+			chain.doFilter(context);
+		}
+	}
+
+	@Connector(name = "*")
+	public static class AllConnectorFilter extends TraceFilter {
+
+		AllConnectorFilter(StringBuilder trace, String name, int order) {
+			super(trace, name, order);
+		}
+	}
+
+	@Connector(name = CONNECTOR)
+	public static class EarlyFilter extends TraceFilter {
+
+		EarlyFilter(StringBuilder trace, String name, int order) {
+			super(trace, name, order);
+		}
+	}
+
+	@Connector(name = CONNECTOR)
+	public static class LateFilter extends TraceFilter {
+
+		LateFilter(StringBuilder trace, String name, int order) {
+			super(trace, name, order);
+		}
+	}
+
+	@Connector(name = "other")
+	public static class OtherConnectorFilter extends TraceFilter {
+
+		OtherConnectorFilter(StringBuilder trace, String name, int order) {
+			super(trace, name, order);
+		}
+	}
+
+	@Connector(name = CONNECTOR)
+	public static class ConnectorConverter extends DefaultJsonMessageConverter {
+
+		@Override
+		public String encode(Object value) {
+			return "converted:" + super.encode(value);
+		}
+	}
+
+	@IController(name = CONNECTOR, discriminator = "code")
+	public static class TransferController {
+
+		private final String version;
+
+		public TransferController(String version) {
+			this.version = version;
+		}
+
+		@DiscriminatorValue("transfer")
+		public String transfer(Map<String, Object> request) {
+			return version + "-transfer";
+		}
+
+		@DiscriminatorValue("query")
+		public String query(Map<String, Object> request) {
+			return version + "-query";
+		}
+	}
+
+	@IController(name = CONNECTOR, discriminator = "code")
+	public static class QueryController {
+
+		@DiscriminatorValue("query")
+		public String query(Map<String, Object> request) {
+			return "other-query";
+		}
+
+		@DiscriminatorValue("balance")
+		public String balance(Map<String, Object> request) {
+			return "balance";
+		}
+	}
+}
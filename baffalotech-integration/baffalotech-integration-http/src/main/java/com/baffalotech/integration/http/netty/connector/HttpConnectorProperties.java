@@ -0,0 +1,288 @@
+package com.baffalotech.integration.http.netty.connector;
+
+import com.baffalotech.integration.configuration.ConnectorExecutorProperties;
+import com.baffalotech.integration.core.AdaptiveConcurrencyLimiter;
+
+/**
+ * 单个http connector的配置，不同的connector可以分别设置
+ * @author chijinhuang
+ *
+ */
+public class HttpConnectorProperties {
+
+	public static final int DEFAULT_MAX_CONTENT_LENGTH = 5 * 1024 * 1024;
+
+	public static final int DEFAULT_REQUEST_BODY_BUFFER_SIZE = 1024 * 1024;
+
+	public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+	public static final int DEFAULT_COMPRESSION_MIN_RESPONSE_SIZE = 2048;
+
+	public static final String[] DEFAULT_COMPRESSION_MIME_TYPES = { "text/html", "text/xml", "text/plain", "text/css",
+			"text/javascript", "application/javascript", "application/json", "application/xml" };
+
+	public static final int DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS = 100;
+
+	public static final int DEFAULT_HTTP2_INITIAL_WINDOW_SIZE = 65535;
+
+	/**
+	 * 是否先聚合完整的请求体再交给servlet，适合小报文的接口。
+	 * 设为false时请求体以流的方式边收边交给servlet，适合大文件
+	 */
+	private boolean aggregateRequestBody = true;
+
+	/**
+	 * 聚合模式下允许的最大请求体字节数。流式模式下只限制需要读入内存解析的表单请求体，超过时返回413
+	 */
+	private int maxContentLength = DEFAULT_MAX_CONTENT_LENGTH;
+
+	/**
+	 * 流式模式下每个请求最多缓存的请求体字节数，超过后暂停从连接读取，servlet读到一半以下时恢复
+	 */
+	private int requestBodyBufferSize = DEFAULT_REQUEST_BODY_BUFFER_SIZE;
+
+	/**
+	 * 是否按请求的Accept-Encoding用gzip或deflate压缩响应
+	 */
+	private boolean compression = false;
+
+	/**
+	 * 压缩级别，1最快，9压缩后最小
+	 */
+	private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+
+	/**
+	 * Content-Length小于这个字节数的响应不压缩
+	 */
+	private int compressionMinResponseSize = DEFAULT_COMPRESSION_MIN_RESPONSE_SIZE;
+
+	/**
+	 * 可以压缩的Content-Type，支持text/*这样的通配
+	 */
+	private String[] compressionMimeTypes = DEFAULT_COMPRESSION_MIME_TYPES;
+
+	/**
+	 * 是否支持http2。https通过ALPN协商h2，http支持直接发送h2c连接前言和Upgrade: h2c升级
+	 */
+	private boolean http2 = false;
+
+	/**
+	 * 每个连接上同时处理的最大流数量
+	 */
+	private int http2MaxConcurrentStreams = DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS;
+
+	/**
+	 * 每个流的初始接收窗口字节数，servlet读得慢时客户端最多多发这么多数据
+	 */
+	private int http2InitialWindowSize = DEFAULT_HTTP2_INITIAL_WINDOW_SIZE;
+
+	/**
+	 * 同一端口绑定的次数，大于1时用SO_REUSEPORT把新连接分散到多个boss线程，需要epoll或io_uring
+	 */
+	private int acceptors = 1;
+
+	/**
+	 * 是否开启TCP_QUICKACK，需要epoll或io_uring
+	 */
+	private boolean tcpQuickAck = false;
+
+	/**
+	 * TCP_FASTOPEN等待队列的长度，0表示不开启，需要epoll或io_uring
+	 */
+	private int tcpFastOpen = 0;
+
+	/**
+	 * 是否按处理耗时自动限制同时处理的请求数，超过上限的请求直接返回503
+	 */
+	private boolean concurrencyLimit = false;
+
+	/**
+	 * 并发上限的初始值
+	 */
+	private int concurrencyLimitInitial = AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT;
+
+	/**
+	 * 并发上限的最小值
+	 */
+	private int concurrencyLimitMin = AdaptiveConcurrencyLimiter.DEFAULT_MIN_LIMIT;
+
+	/**
+	 * 并发上限的最大值
+	 */
+	private int concurrencyLimitMax = AdaptiveConcurrencyLimiter.DEFAULT_MAX_LIMIT;
+
+	/**
+	 * 请求处理耗时超过这个毫秒数时减小并发上限，包括在线程池队列中等待的时间
+	 */
+	private long concurrencyLimitLatencyThreshold = AdaptiveConcurrencyLimiter.DEFAULT_LATENCY_THRESHOLD_MILLIS;
+
+	/**
+	 * 请求被拒绝时503响应中Retry-After的秒数，0表示不返回
+	 */
+	private int retryAfter = 1;
+
+	/**
+	 * 处理请求的执行器，默认和其他connector共享容器的线程池
+	 */
+	private ConnectorExecutorProperties executor = new ConnectorExecutorProperties();
+
+	public boolean isAggregateRequestBody() {
+		return aggregateRequestBody;
+	}
+
+	public void setAggregateRequestBody(boolean aggregateRequestBody) {
+		this.aggregateRequestBody = aggregateRequestBody;
+	}
+
+	public int getMaxContentLength() {
+		return maxContentLength;
+	}
+
+	public void setMaxContentLength(int maxContentLength) {
+		this.maxContentLength = maxContentLength;
+	}
+
+	public int getRequestBodyBufferSize() {
+		return requestBodyBufferSize;
+	}
+
+	public void setRequestBodyBufferSize(int requestBodyBufferSize) {
+		this.requestBodyBufferSize = requestBodyBufferSize;
+	}
+
+	public boolean isCompression() {
+		return compression;
+	}
+
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	public int getCompressionMinResponseSize() {
+		return compressionMinResponseSize;
+	}
+
+	public void setCompressionMinResponseSize(int compressionMinResponseSize) {
+		this.compressionMinResponseSize = compressionMinResponseSize;
+	}
+
+	public String[] getCompressionMimeTypes() {
+		return compressionMimeTypes;
+	}
+
+	public void setCompressionMimeTypes(String[] compressionMimeTypes) {
+		this.compressionMimeTypes = compressionMimeTypes;
+	}
+
+	public boolean isHttp2() {
+		return http2;
+	}
+
+	public void setHttp2(boolean http2) {
+		this.http2 = http2;
+	}
+
+	public int getHttp2MaxConcurrentStreams() {
+		return http2MaxConcurrentStreams;
+	}
+
+	public void setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+		this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+	}
+
+	public int getHttp2InitialWindowSize() {
+		return http2InitialWindowSize;
+	}
+
+	public void setHttp2InitialWindowSize(int http2InitialWindowSize) {
+		this.http2InitialWindowSize = http2InitialWindowSize;
+	}
+
+	public int getAcceptors() {
+		return acceptors;
+	}
+
+	public void setAcceptors(int acceptors) {
+		this.acceptors = acceptors;
+	}
+
+	public boolean isTcpQuickAck() {
+		return tcpQuickAck;
+	}
+
+	public void setTcpQuickAck(boolean tcpQuickAck) {
+		this.tcpQuickAck = tcpQuickAck;
+	}
+
+	public int getTcpFastOpen() {
+		return tcpFastOpen;
+	}
+
+	public void setTcpFastOpen(int tcpFastOpen) {
+		this.tcpFastOpen = tcpFastOpen;
+	}
+
+	public boolean isConcurrencyLimit() {
+		return concurrencyLimit;
+	}
+
+	public void setConcurrencyLimit(boolean concurrencyLimit) {
+		this.concurrencyLimit = concurrencyLimit;
+	}
+
+	public int getConcurrencyLimitInitial() {
+		return concurrencyLimitInitial;
+	}
+
+	public void setConcurrencyLimitInitial(int concurrencyLimitInitial) {
+		this.concurrencyLimitInitial = concurrencyLimitInitial;
+	}
+
+	public int getConcurrencyLimitMin() {
+		return concurrencyLimitMin;
+	}
+
+	public void setConcurrencyLimitMin(int concurrencyLimitMin) {
+		this.concurrencyLimitMin = concurrencyLimitMin;
+	}
+
+	public int getConcurrencyLimitMax() {
+		return concurrencyLimitMax;
+	}
+
+	public void setConcurrencyLimitMax(int concurrencyLimitMax) {
+		this.concurrencyLimitMax = concurrencyLimitMax;
+	}
+
+	public long getConcurrencyLimitLatencyThreshold() {
+		return concurrencyLimitLatencyThreshold;
+	}
+
+	public void setConcurrencyLimitLatencyThreshold(long concurrencyLimitLatencyThreshold) {
+		this.concurrencyLimitLatencyThreshold = concurrencyLimitLatencyThreshold;
+	}
+
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	public void setRetryAfter(int retryAfter) {
+		this.retryAfter = retryAfter;
+	}
+
+	public ConnectorExecutorProperties getExecutor() {
+		return executor;
+	}
+
+	public void setExecutor(ConnectorExecutorProperties executor) {
+		this.executor = executor;
+	}
+}
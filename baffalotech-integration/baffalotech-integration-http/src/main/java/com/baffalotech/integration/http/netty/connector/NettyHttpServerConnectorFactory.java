@@ -16,6 +16,7 @@ import org.springframework.util.ClassUtils;
 
 import com.baffalotech.integration.api.Container;
 import com.baffalotech.integration.configuration.IntegrationServerProperties;
+import com.baffalotech.integration.core.AdaptiveConcurrencyLimiter;
 import com.baffalotech.integration.core.ServerConstanst;
 import com.baffalotech.integration.http.netty.servlet.NettyDefaultHttpServlet;
 import com.baffalotech.integration.http.netty.servlet.NettyServletContext;
@@ -35,6 +36,18 @@ public class NettyHttpServerConnectorFactory implements ResourceLoaderAware{
 	private Container container;
 	
 	public NettyHttpServerConnector createNettyHttpServerConnector(String name,int port)
+	{
+		return createNettyHttpServerConnector(name, port, new HttpConnectorProperties());
+	}
+
+	/**
+	 * 创建http connector
+	 * @param name
+	 * @param port
+	 * @param connectorProperties 当前connector单独的配置
+	 * @return
+	 */
+	public NettyHttpServerConnector createNettyHttpServerConnector(String name,int port,HttpConnectorProperties connectorProperties)
 	{
 		try {
             //临时目录
@@ -45,10 +58,31 @@ public class NettyHttpServerConnectorFactory implements ResourceLoaderAware{
             ClassLoader classLoader = resourceLoader != null ? resourceLoader.getClassLoader() : ClassUtils.getDefaultClassLoader();
             
             NettyHttpServerConnector serverConnector = new NettyHttpServerConnector(container);
+            serverConnector.setName(name);
             serverConnector.setPort(port);
+            serverConnector.setExecutorProperties(connectorProperties.getExecutor());
+            serverConnector.setAcceptors(connectorProperties.getAcceptors());
+            serverConnector.setTcpQuickAck(connectorProperties.isTcpQuickAck());
+            serverConnector.setTcpFastOpen(connectorProperties.getTcpFastOpen());
             NettyServletContext servletContext = new NettyServletContext(serverAddress,classLoader,docBase.getAbsolutePath());
+            servletContext.setScheduledExecutorSupplier(container::getScheduledExecutor);
+            //静态文件只从配置的documentRoot返回, docBase是工作目录
+            File documentRoot = servletWebServerFactory.getDocumentRoot();
+            if (documentRoot != null && documentRoot.isDirectory()) {
+                servletContext.setStaticResourceRoot(documentRoot);
+            }
 
-            serverConnector.addProtocolsRegister(new HttpServletProtocolsRegisterSpringAdapter(integrationProperties,servletContext,container.getServerExecutor(),servletWebServerFactory));
+            HttpServletProtocolsRegisterSpringAdapter protocolsRegister = new HttpServletProtocolsRegisterSpringAdapter(integrationProperties,servletContext,serverConnector.getDispatchExecutor(),servletWebServerFactory);
+            protocolsRegister.setConnectorProperties(connectorProperties);
+            if(connectorProperties.isConcurrencyLimit()) {
+            	//每个connector单独的并发上限
+            	AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(
+            			connectorProperties.getConcurrencyLimitInitial(), connectorProperties.getConcurrencyLimitMin(),
+            			connectorProperties.getConcurrencyLimitMax(), connectorProperties.getConcurrencyLimitLatencyThreshold());
+            	serverConnector.setConcurrencyLimiter(concurrencyLimiter);
+            	protocolsRegister.setConcurrencyLimiter(concurrencyLimiter);
+            }
+            serverConnector.addProtocolsRegister(protocolsRegister);
 
             //默认 servlet
             if (servletWebServerFactory.isRegisterDefaultServlet()) {
@@ -59,7 +93,6 @@ public class NettyHttpServerConnectorFactory implements ResourceLoaderAware{
                 	servletRegistration.addMapping("/");
                 }
             }
-            serverConnector.setName(name);
             serverConnector.setSchema(ServerConstanst.HTTP_SCHEMA_TYPE);
             servletContext.setServletContextName(serverConnector.getName());
             serverConnector.setServletContext(servletContext);
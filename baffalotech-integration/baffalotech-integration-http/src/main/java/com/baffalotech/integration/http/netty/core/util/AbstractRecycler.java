@@ -1,50 +1,81 @@
 package com.baffalotech.integration.http.netty.core.util;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.concurrent.FastThreadLocal;
 
 /**
  * 回收者 (可以控制实例数量, 保证实例平稳, 不爆增,不爆减. 减少gc次数)
  *
+ * 参考netty的Recycler, 每个线程有自己的实例栈, 获取和同线程回收都不加锁。
+ * 实例记住创建它的线程, 在其他线程回收时放入创建线程的待归还链表(无锁), 创建线程下次获取时再取回。
+ * 每个线程的实例栈和待归还链表都有容量上限, 超出的实例直接丢弃交给gc。
+ *
+ * 被回收的对象需要实现{@link Handled}保存自己的句柄, 句柄上记录了实例是否已经回收,
+ * 重复回收和不是由当前回收者创建的实例(例如直接new出来的子类)都不会放入池中, 保证同一个实例不会同时交给两个请求
+ *
  * 因为回收对象会频繁修改或清空内容, 建议加注解 @sun.misc.Contended.防止出现伪共享,刷新其他线程缓存, 该注解需设置 : -XX:-RestrictContended
- * 
- * 备注：这里共享对象有bug，在高并发条件下面有可能出现两个线程公用一个对象。导致读写异常，需要待优化
  *
  * @author 84215
  */
 @sun.misc.Contended
 public abstract class AbstractRecycler<T>   {
 
+    private static final Logger logger = LoggerFactory.getLogger(AbstractRecycler.class);
+
+    /**
+     * 每个线程每种实例最多缓存的数量, 小于等于0时不缓存
+     */
+    public static final int DEFAULT_MAX_CAPACITY_PER_THREAD = SystemPropertyUtil.getInt("baffalotech.recycler.maxCapacityPerThread", 256);
+
     /**
      * 系统中所有的回收者列表
      */
-    private static final List<AbstractRecycler> RECYCLER_LIST = new LinkedList<>();
+    private static final List<AbstractRecycler> RECYCLER_LIST = new CopyOnWriteArrayList<>();
     /**
-     * 当前对象的实例队列
+     * 当前线程的实例栈
      */
-    private Queue<T> queue;
+    private final FastThreadLocal<Stack<T>> threadLocal = new FastThreadLocal<Stack<T>>() {
+        @Override
+        protected Stack<T> initialValue() {
+            return new Stack<>(AbstractRecycler.this, Thread.currentThread(), maxCapacityPerThread);
+        }
+    };
+    private final int maxCapacityPerThread;
     /**
      * 系统中所有的回收者列表(为了断点时候方便看)
      */
     private List<AbstractRecycler> recyclerList;
 
-    public static final AtomicInteger TOTAL_COUNT = new AtomicInteger();
-    public static final AtomicInteger HIT_COUNT = new AtomicInteger();
+    /**
+     * 获取实例的次数
+     */
+    public static final LongAdder TOTAL_COUNT = new LongAdder();
+    /**
+     * 从池中取到实例的次数
+     */
+    public static final LongAdder HIT_COUNT = new LongAdder();
 
     public AbstractRecycler() {
-        this(15);
+        this(DEFAULT_MAX_CAPACITY_PER_THREAD);
     }
 
-    public AbstractRecycler(int instanceCount) {
-        this.queue = new Queue<>();
+    /**
+     * @param maxCapacityPerThread 每个线程最多缓存的实例数量
+     */
+    public AbstractRecycler(int maxCapacityPerThread) {
+        this.maxCapacityPerThread = Math.max(0, maxCapacityPerThread);
         RECYCLER_LIST.add(this);
         recyclerList = RECYCLER_LIST;
-
-        for(int i=0; i< instanceCount; i++) {
-            recycleInstance(newInstance());
-        }
     }
 
     /**
@@ -66,38 +97,170 @@ public abstract class AbstractRecycler<T>   {
      * @return
      */
     public T getInstance() {
-        return newInstance();
-//        TOTAL_COUNT.incrementAndGet();
-//        T value = queue.pop();
-//        if(value == null){
-//            value = newInstance();
-//        }else {
-//            HIT_COUNT.incrementAndGet();
-//        }
-//        return value;
+        TOTAL_COUNT.increment();
+        if(maxCapacityPerThread == 0){
+            return newInstance();
+        }
+        Stack<T> stack = threadLocal.get();
+        T value = stack.pop();
+        if(value == null){
+            value = newInstance();
+            if(value instanceof Handled) {
+                ((Handled) value).setRecyclerHandle(new Handle(stack, value));
+            }
+        }else {
+            HIT_COUNT.increment();
+        }
+        return value;
     }
 
     /**
-     * 回收实例
+     * 回收实例, 可以在任意线程调用
      * @param value
      */
     public void recycleInstance(T value) {
-//        queue.push(value);
+        if(!(value instanceof Handled)){
+            return;
+        }
+        Handle handle = ((Handled) value).getRecyclerHandle();
+        //不是由当前回收者创建的实例, 不放入池中
+        if(handle == null || handle.stack.recycler != this){
+            return;
+        }
+        if(!handle.compareAndSetState(Handle.STATE_IN_USE, Handle.STATE_RECYCLED)){
+            logger.warn("实例重复回收, 忽略本次回收 : {}", value.getClass().getName());
+            return;
+        }
+        Stack<?> stack = handle.stack;
+        if(stack.thread == Thread.currentThread()){
+            stack.push(handle);
+        }else {
+            stack.pushLater(handle);
+        }
+    }
+
+    /**
+     * 当前线程池中缓存的实例数量(不包括其他线程待归还的)
+     * @return
+     */
+    public int threadLocalSize() {
+        return threadLocal.isSet() ? threadLocal.get().size : 0;
+    }
+
+    /**
+     * 由回收者创建的实例需要保存自己的句柄, 回收时通过句柄找到创建它的线程
+     */
+    public interface Handled {
+
+        Handle getRecyclerHandle();
+
+        void setRecyclerHandle(Handle handle);
     }
 
     /**
-     * 实例的队列
-     * @param <E>
+     * 实例的句柄, 同时作为待归还链表的节点
      */
-    private class Queue<E> extends ConcurrentLinkedDeque<E> {
-         @Override
-         public void push(E e) {
-             super.push(e);
-         }
-
-         @Override
-         public E pop() {
-             return super.pollFirst();
-         }
-     }
+    public static final class Handle {
+        private static final int STATE_IN_USE = 0;
+        private static final int STATE_RECYCLED = 1;
+        private static final AtomicIntegerFieldUpdater<Handle> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Handle.class, "state");
+
+        private final Stack<?> stack;
+        private final Object value;
+        private volatile int state = STATE_IN_USE;
+        private Handle next;
+
+        private Handle(Stack<?> stack, Object value) {
+            this.stack = stack;
+            this.value = value;
+        }
+
+        private boolean compareAndSetState(int expect, int update) {
+            return STATE_UPDATER.compareAndSet(this, expect, update);
+        }
+    }
+
+    /**
+     * 线程的实例栈, 只有所属线程读写elements, 其他线程回收的实例通过foreignHead归还
+     * @param <T>
+     */
+    private static final class Stack<T> {
+        private final AbstractRecycler<T> recycler;
+        private final Thread thread;
+        private final int maxCapacity;
+        private Handle[] elements;
+        private int size;
+        /**
+         * 其他线程回收的实例链表, 多个线程CAS写入, 所属线程一次取走
+         */
+        private final AtomicReference<Handle> foreignHead = new AtomicReference<>();
+        private final AtomicInteger foreignCount = new AtomicInteger();
+
+        private Stack(AbstractRecycler<T> recycler, Thread thread, int maxCapacity) {
+            this.recycler = recycler;
+            this.thread = thread;
+            this.maxCapacity = maxCapacity;
+            this.elements = new Handle[Math.min(16, maxCapacity)];
+        }
+
+        @SuppressWarnings("unchecked")
+        private T pop() {
+            if(size == 0 && !scavenge()){
+                return null;
+            }
+            Handle handle = elements[--size];
+            elements[size] = null;
+            handle.state = Handle.STATE_IN_USE;
+            return (T) handle.value;
+        }
+
+        private void push(Handle handle) {
+            if(size >= maxCapacity){
+                //超过上限, 丢弃
+                return;
+            }
+            if(size == elements.length){
+                elements = Arrays.copyOf(elements, Math.min(size << 1, maxCapacity));
+            }
+            elements[size++] = handle;
+        }
+
+        /**
+         * 其他线程回收
+         * @param handle
+         */
+        private void pushLater(Handle handle) {
+            if(foreignCount.incrementAndGet() > maxCapacity){
+                //所属线程取走之前积压太多(或者所属线程已经结束), 丢弃
+                foreignCount.decrementAndGet();
+                return;
+            }
+            Handle head;
+            do {
+                head = foreignHead.get();
+                handle.next = head;
+            }while (!foreignHead.compareAndSet(head, handle));
+        }
+
+        /**
+         * 取回其他线程回收的实例
+         * @return 是否取到了实例
+         */
+        private boolean scavenge() {
+            Handle handle = foreignHead.getAndSet(null);
+            if(handle == null){
+                return false;
+            }
+            int count = 0;
+            while (handle != null){
+                Handle next = handle.next;
+                handle.next = null;
+                push(handle);
+                handle = next;
+                count++;
+            }
+            foreignCount.addAndGet(-count);
+            return size > 0;
+        }
+    }
 }
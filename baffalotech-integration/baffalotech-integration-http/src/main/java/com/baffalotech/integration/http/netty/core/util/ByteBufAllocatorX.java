@@ -144,7 +144,7 @@ public class ByteBufAllocatorX implements ByteBufAllocator {
         return PooledChannelHandlerContext.newInstance(ctx);
     }
 
-    private static class PooledChannelHandlerContext implements ChannelHandlerContext,Wrapper<ChannelHandlerContext>,Recyclable {
+    private static class PooledChannelHandlerContext implements ChannelHandlerContext,Wrapper<ChannelHandlerContext>,Recyclable,AbstractRecycler.Handled {
         private ChannelHandlerContext source;
         private static final AbstractRecycler<PooledChannelHandlerContext> RECYCLER = new AbstractRecycler<PooledChannelHandlerContext>() {
             @Override
@@ -152,6 +152,7 @@ public class ByteBufAllocatorX implements ByteBufAllocator {
                 return new PooledChannelHandlerContext();
             }
         };
+        private AbstractRecycler.Handle recyclerHandle;
 
         private PooledChannelHandlerContext() {}
 
@@ -385,6 +386,16 @@ public class ByteBufAllocatorX implements ByteBufAllocator {
             return source.channel().attr(key);
         }
 
+        @Override
+        public AbstractRecycler.Handle getRecyclerHandle() {
+            return recyclerHandle;
+        }
+
+        @Override
+        public void setRecyclerHandle(AbstractRecycler.Handle recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+
         @Override
         public void recycle() {
             this.source = null;
@@ -1,28 +1,32 @@
 package com.baffalotech.integration.http.netty.mvc;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.http.HttpStatus;
+import org.springframework.util.StreamUtils;
 
 import com.baffalotech.integration.mvc.ContentType;
 import com.baffalotech.integration.mvc.IContext;
 import com.baffalotech.integration.mvc.IFilterChain;
 import com.baffalotech.integration.mvc.impl.DefaultContext;
 import com.baffalotech.integration.mvc.impl.RequestMappingHandlerMapping;
+import com.baffalotech.integration.http.netty.servlet.NettyServletInputStream;
 import com.baffalotech.integration.util.ApplicationContextUtil;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+
 /**
- * MVC中央控制器
+ * MVC中央控制器，请求报文直接从netty的接收缓冲区解析，响应报文直接写入输出流
  * @author chijinhuang
  *
  */
@@ -45,33 +49,46 @@ public class IDispatchServlet extends HttpServlet {
 	@Override
 	protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 		// TODO Auto-generated method stub
-		InputStream inputStream = req.getInputStream();
-		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-		byte[] buf = new byte[1024];
-		int len = -1;
-		while((len=inputStream.read(buf)) != -1)
-		{
-			byteArrayOutputStream.write(buf, 0, len);
-		}
-		inputStream.close();
-		byteArrayOutputStream.close();
-		
 		IContext context = DefaultContext.Builder.newBuilder()
 				.connectorName(req.getServletContext().getServletContextName())
-				.payload(byteArrayOutputStream.toByteArray())
+				.payload(bindPayload(req))
 				.encoding(encoding)
 				.contentType(contentType)
+				.outputStream(resp.getOutputStream())
 				.build();
 		try {
 			RequestMappingHandlerMapping requestMappingHandlerMapping = ApplicationContextUtil.getBean(RequestMappingHandlerMapping.class);
 			IFilterChain filterChain = requestMappingHandlerMapping.getFilterChain(context);
 			filterChain.doFilter(context);
-			OutputStream outputStream = resp.getOutputStream();
-			outputStream.write(context.getPayloadString().getBytes(encoding));
 		} catch (Exception e) {
 			// TODO: handle exception
 			LOGGER.error("dispatch error,clause {}",e);
+			//丢弃已经写入的部分响应
+			if(!resp.isCommitted())
+			{
+				resp.resetBuffer();
+			}
 			resp.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
 		}
 	}
+	
+	/**
+	 * 报文体由请求对象持有，请求结束时释放。每次读取时在缓冲区上创建新的流，不复制报文
+	 * @param req
+	 * @return
+	 * @throws IOException
+	 */
+	private Object bindPayload(HttpServletRequest req) throws IOException
+	{
+		ServletInputStream inputStream = req.getInputStream();
+		if(inputStream instanceof NettyServletInputStream)
+		{
+			ByteBuf content = ((NettyServletInputStream)inputStream).unwrap();
+			if(content != null)
+			{
+				return (InputStreamSource)() -> new ByteBufInputStream(content.duplicate());
+			}
+		}
+		return StreamUtils.copyToByteArray(inputStream);
+	}
 }
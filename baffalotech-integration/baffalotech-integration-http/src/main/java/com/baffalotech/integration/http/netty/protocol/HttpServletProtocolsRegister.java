@@ -1,33 +1,61 @@
 package com.baffalotech.integration.http.netty.protocol;
 
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
 import javax.servlet.Filter;
 import javax.servlet.Servlet;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.baffalotech.integration.configuration.IntegrationServerProperties;
-import com.baffalotech.integration.core.StandardThreadExecutor;
+import com.baffalotech.integration.core.AdaptiveConcurrencyLimiter;
+import com.baffalotech.integration.http.netty.connector.HttpConnectorProperties;
 import com.baffalotech.integration.http.netty.core.ProtocolsRegister;
 import com.baffalotech.integration.http.netty.core.util.IOUtil;
 import com.baffalotech.integration.http.netty.servlet.NettyServletContext;
 import com.baffalotech.integration.http.netty.servlet.NettyServletFilterRegistration;
 import com.baffalotech.integration.http.netty.servlet.NettyServletRegistration;
 import com.baffalotech.integration.http.netty.servlet.handler.NettyServletChannelHandler;
+import com.baffalotech.integration.http.netty.servlet.handler.NettyServletContentCompressor;
+import com.baffalotech.integration.http.netty.servlet.handler.NettyServletHttp2FrameHandler;
+import com.baffalotech.integration.http.netty.servlet.handler.NettyServletRequestStreamHandler;
 import com.baffalotech.integration.http.netty.servlet.support.ServletEventListenerManager;
+import com.baffalotech.integration.http.netty.session.CompositeSessionServiceImpl;
+import com.baffalotech.integration.http.netty.session.SessionService;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.handler.codec.http.HttpConstants;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2MultiplexCodec;
+import io.netty.handler.codec.http2.Http2MultiplexCodecBuilder;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.AsciiString;
+import io.netty.util.ReferenceCountUtil;
 
 /**
  * httpServlet协议注册器
@@ -36,11 +64,22 @@ import io.netty.handler.ssl.SslHandler;
  */
 public class HttpServletProtocolsRegister implements ProtocolsRegister {
     public static final int ORDER = 100;
+    private static final int SSL_RECORD_HEADER_LENGTH = 5;
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpServletProtocolsRegister.class);
 
     public static final String HANDLER_SSL = "SSL";
     public static final String HANDLER_AGGREGATOR = "Aggregator";
+    public static final String HANDLER_REQUEST_STREAM = "RequestStream";
+    public static final String HANDLER_CONTENT_COMPRESSOR = "ContentCompressor";
     public static final String HANDLER_SERVLET = "Servlet";
     public static final String HANDLER_HTTP_CODEC = "HttpCodec";
+    public static final String HANDLER_CHUNKED_WRITE = "ChunkedWrite";
+    public static final String HANDLER_PROTOCOL_NEGOTIATION = "ProtocolNegotiation";
+    public static final String HANDLER_HTTP2_CLEARTEXT = "Http2Cleartext";
+    public static final String HANDLER_HTTP2_CODEC = "Http2Codec";
+    public static final String HANDLER_HTTP2_STREAM_CODEC = "Http2StreamCodec";
+    public static final String HANDLER_HTTP2 = "Http2";
 
     /**
      * servlet上下文
@@ -51,9 +90,28 @@ public class HttpServletProtocolsRegister implements ProtocolsRegister {
      */
     private SslContext sslContext;
     private SslContextBuilder sslContextBuilder;
-    private ChannelHandler servletHandler;
+    /**
+     * SSL上下文是否启用了ALPN, 没有启用时https只支持http1.1
+     */
+    private boolean alpnEnabled;
+    private NettyServletChannelHandler servletHandler;
+    /**
+     * 初始化http2的每个流
+     */
+    private final ChannelHandler http2StreamInitializer = new ChannelInitializer<Channel>() {
+        @Override
+        protected void initChannel(Channel ch) throws Exception {
+            ch.pipeline().addLast(HANDLER_HTTP2_STREAM_CODEC, new Http2StreamFrameToHttpObjectCodec(true));
+            ch.pipeline().addLast(HANDLER_HTTP2, new NettyServletHttp2FrameHandler());
+            addRequestHandlers(ch.pipeline());
+        }
+    };
+    /**
+     * 当前connector的配置
+     */
+    private HttpConnectorProperties connectorProperties = new HttpConnectorProperties();
 
-    public HttpServletProtocolsRegister(IntegrationServerProperties properties, NettyServletContext servletContext,StandardThreadExecutor serverExecutor, SslContextBuilder sslContextBuilder){
+    public HttpServletProtocolsRegister(IntegrationServerProperties properties, NettyServletContext servletContext,Executor serverExecutor, SslContextBuilder sslContextBuilder){
         this.servletContext = servletContext;
         this.servletHandler = new NettyServletChannelHandler(servletContext,properties,serverExecutor);
         this.sslContextBuilder = sslContextBuilder;
@@ -68,6 +126,12 @@ public class HttpServletProtocolsRegister implements ProtocolsRegister {
 
         initFilter(servletContext);
         initServlet(servletContext);
+
+        //容器重启后调度线程是新创建的, 重新开始session过期检查
+        SessionService sessionService = servletContext.getSessionService();
+        if(sessionService instanceof CompositeSessionServiceImpl){
+            ((CompositeSessionServiceImpl) sessionService).start();
+        }
     }
 
     @Override
@@ -79,6 +143,11 @@ public class HttpServletProtocolsRegister implements ProtocolsRegister {
 
         destroyFilter();
         destroyServlet();
+
+        SessionService sessionService = servletContext.getSessionService();
+        if(sessionService instanceof CompositeSessionServiceImpl){
+            ((CompositeSessionServiceImpl) sessionService).stop();
+        }
     }
 
     /**
@@ -90,6 +159,7 @@ public class HttpServletProtocolsRegister implements ProtocolsRegister {
         for(Map.Entry<String,NettyServletFilterRegistration> entry : servletFilterRegistrationMap.entrySet()){
             NettyServletFilterRegistration registration = entry.getValue();
             registration.getFilter().init(registration.getFilterConfig());
+            registration.initLatencyRecorders();
             registration.setInitParameter("_init","true");
         }
     }
@@ -145,6 +215,10 @@ public class HttpServletProtocolsRegister implements ProtocolsRegister {
 
     @Override
     public boolean canSupport(ByteBuf msg) {
+        //https的第一个包是握手, 看不到请求行
+        if(sslContextBuilder != null && msg.readableBytes() >= SSL_RECORD_HEADER_LENGTH && SslHandler.isEncrypted(msg)){
+            return true;
+        }
         int protocolEndIndex = IOUtil.indexOf(msg, HttpConstants.LF);
         if(protocolEndIndex < 9){
             return false;
@@ -162,30 +236,132 @@ public class HttpServletProtocolsRegister implements ProtocolsRegister {
     @Override
     public void register(Channel ch) throws Exception {
         ChannelPipeline pipeline = ch.pipeline();
+        boolean http2 = connectorProperties.isHttp2();
 
         //初始化SSL
         if (sslContextBuilder != null) {
             if(sslContext == null) {
-                sslContext = sslContextBuilder.build();
+                sslContext = newSslContext();
             }
             SSLEngine engine = sslContext.newEngine(ch.alloc());
-            pipeline.addLast(HANDLER_SSL, new SslHandler(engine,true));
+            //startTls为true时第一个响应不加密, https的客户端无法解析
+            pipeline.addLast(HANDLER_SSL, new SslHandler(engine));
+
+            if(http2 && alpnEnabled) {
+                //握手完成后按ALPN协商的结果选择http2或者http1.1
+                pipeline.addLast(HANDLER_PROTOCOL_NEGOTIATION, new ApplicationProtocolNegotiationHandler(ApplicationProtocolNames.HTTP_1_1) {
+                    @Override
+                    protected void configurePipeline(ChannelHandlerContext ctx, String protocol) throws Exception {
+                        if(ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                            ctx.pipeline().addLast(HANDLER_HTTP2_CODEC, newHttp2Codec());
+                            ctx.pipeline().addLast(HANDLER_HTTP2, new NettyServletHttp2FrameHandler());
+                        }else {
+                            ctx.pipeline().addLast(HANDLER_HTTP_CODEC, newHttpServerCodec());
+                            addRequestHandlers(ctx.pipeline());
+                        }
+                    }
+                });
+                return;
+            }
+        }
+
+        if(http2 && sslContextBuilder == null) {
+            //h2c: 收到连接前言直接切换到http2, 收到Upgrade: h2c的请求时升级, 其他请求还是按http1.1处理
+            HttpServerCodec httpServerCodec = newHttpServerCodec();
+            HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(httpServerCodec, protocol -> {
+                if(AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) {
+                    return new Http2ServerUpgradeCodec(newHttp2Codec());
+                }
+                return null;
+            }, connectorProperties.getMaxContentLength());
+            pipeline.addLast(HANDLER_HTTP2_CLEARTEXT, new CleartextHttp2ServerUpgradeHandler(httpServerCodec, upgradeHandler, newHttp2Codec()));
+            pipeline.addLast(HANDLER_HTTP2, new NettyServletHttp2FrameHandler());
+            addRequestHandlers(pipeline);
+            return;
         }
 
         //HTTP编码解码
-        pipeline.addLast(HANDLER_HTTP_CODEC, new HttpServerCodec(4096, 8192, 5 * 1024 * 1024, false));
+        pipeline.addLast(HANDLER_HTTP_CODEC, newHttpServerCodec());
+        addRequestHandlers(pipeline);
+    }
+
+    /**
+     * 添加编解码之后的处理器, http1.1的连接和http2的每个流共用
+     * @param pipeline
+     */
+    protected void addRequestHandlers(ChannelPipeline pipeline) {
+        if(connectorProperties.isAggregateRequestBody()) {
+            //HTTP请求聚合，默认最大消息值为 5M
+            pipeline.addLast(HANDLER_AGGREGATOR, new HttpObjectAggregator(connectorProperties.getMaxContentLength()));
+        }else {
+            //请求体不聚合, 边收边交给servlet
+            pipeline.addLast(HANDLER_REQUEST_STREAM, new NettyServletRequestStreamHandler(connectorProperties.getRequestBodyBufferSize(),
+                    connectorProperties.getMaxContentLength()));
+        }
 
-        //HTTP请求聚合，设置最大消息值为 5M
-        pipeline.addLast(HANDLER_AGGREGATOR, new HttpObjectAggregator(5 * 1024 * 1024));
+        //响应内容压缩
+        if(connectorProperties.isCompression()) {
+            pipeline.addLast(HANDLER_CONTENT_COMPRESSOR, new NettyServletContentCompressor(connectorProperties.getCompressionLevel(),
+                    connectorProperties.getCompressionMinResponseSize(), connectorProperties.getCompressionMimeTypes()));
+        }
 
-        //内容压缩
-//        pipeline.addLast("ContentCompressor", new HttpContentCompressor());
-//        pipeline.addLast("ContentDecompressor", new HttpContentDecompressor());
+        //分段写入, 用于流传输, 防止响应数据过大. 放在压缩前面, 分段的内容也会被压缩
+        pipeline.addLast(HANDLER_CHUNKED_WRITE, new ChunkedWriteHandler());
 
         //业务调度器, 让对应的Servlet处理请求
         pipeline.addLast(HANDLER_SERVLET, servletHandler);
     }
 
+    protected HttpServerCodec newHttpServerCodec() {
+        return new HttpServerCodec(4096, 8192, 5 * 1024 * 1024, false);
+    }
+
+    /**
+     * 新建http2编解码器, 每个流是一个子channel, 在子channel里转换成http1.1的对象交给servlet.
+     * 子channel的可写状态跟着流的发送窗口变化, 分段输出流据此等待; 请求体不聚合时关闭子channel的autoRead就不再归还接收窗口
+     * @return
+     */
+    protected Http2MultiplexCodec newHttp2Codec() {
+        Http2Settings settings = Http2Settings.defaultSettings()
+                .maxConcurrentStreams(connectorProperties.getHttp2MaxConcurrentStreams())
+                .initialWindowSize(connectorProperties.getHttp2InitialWindowSize());
+        return Http2MultiplexCodecBuilder.forServer(http2StreamInitializer)
+                .initialSettings(settings)
+                .build();
+    }
+
+    /**
+     * 新建SSL上下文, 支持http2时通过ALPN声明h2.
+     * 当前的SSL实现不支持ALPN时(例如旧版本jdk8的JDK provider)退回http1.1, 不影响https
+     * @return
+     * @throws SSLException
+     */
+    protected SslContext newSslContext() throws SSLException {
+        alpnEnabled = false;
+        if(connectorProperties.isHttp2()) {
+            ApplicationProtocolConfig protocolConfig = new ApplicationProtocolConfig(
+                    ApplicationProtocolConfig.Protocol.ALPN,
+                    // NO_ADVERTISE is currently the only mode supported by both OpenSsl and JDK providers.
+                    ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                    // ACCEPT is currently the only mode supported by both OpenSsl and JDK providers.
+                    ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                    ApplicationProtocolNames.HTTP_2,
+                    ApplicationProtocolNames.HTTP_1_1);
+            sslContextBuilder.applicationProtocolConfig(protocolConfig);
+            SslContext context = sslContextBuilder.build();
+            try {
+                //不支持ALPN时创建SSLEngine才会报错
+                ReferenceCountUtil.release(context.newEngine(ByteBufAllocator.DEFAULT));
+                alpnEnabled = true;
+                return context;
+            }catch (RuntimeException e){
+                logger.warn("SSL实现不支持ALPN, https只使用http1.1 : {}", e.getMessage());
+                sslContextBuilder.applicationProtocolConfig(null);
+            }
+        }
+        return sslContextBuilder.build();
+    }
+
     @Override
     public int order() {
         return ORDER;
@@ -197,6 +373,9 @@ public class HttpServletProtocolsRegister implements ProtocolsRegister {
         if(sslContextBuilder != null){
             name = name.concat("/https");
         }
+        if(connectorProperties.isHttp2()){
+            name = name.concat(sslContextBuilder != null? "/h2" : "/h2c");
+        }
         return name;
     }
 
@@ -207,4 +386,21 @@ public class HttpServletProtocolsRegister implements ProtocolsRegister {
     public SslContextBuilder getSslContextBuilder() {
         return sslContextBuilder;
     }
+
+    public HttpConnectorProperties getConnectorProperties() {
+        return connectorProperties;
+    }
+
+    public void setConnectorProperties(HttpConnectorProperties connectorProperties) {
+        this.connectorProperties = connectorProperties;
+        this.servletHandler.setRetryAfter(connectorProperties.getRetryAfter());
+    }
+
+    /**
+     * 设置connector的并发上限, 为null时不限制
+     * @param concurrencyLimiter
+     */
+    public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.servletHandler.setConcurrencyLimiter(concurrencyLimiter);
+    }
 }
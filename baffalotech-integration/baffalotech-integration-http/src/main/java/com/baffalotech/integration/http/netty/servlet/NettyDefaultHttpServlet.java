@@ -1,15 +1,25 @@
 package com.baffalotech.integration.http.netty.servlet;
 
 import javax.servlet.AsyncContext;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+
+import com.baffalotech.integration.http.netty.servlet.support.ResourceManager;
+
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.Locale;
 
 /**
  * 一个默认的servlet
  *
+ * 请求路径对应静态文件根目录下的文件时直接返回文件, 客户端接受gzip并且存在比原文件新的.gz文件时返回.gz文件.
+ * 静态文件的根目录与docBase分开, docBase下有session等内部数据, 不能返回
  * @author acer01
  *  2018/7/15/015
  */
@@ -17,8 +27,16 @@ public class NettyDefaultHttpServlet extends HttpServlet {
 
 	private static final long serialVersionUID = 7528926083421604250L;
 
+    /**
+     * 即使静态文件的根目录配置成了docBase, 这些目录下的文件也不返回
+     */
+    private static final String[] PROTECTED_PATHS = {"/session", "/web-inf", "/meta-inf"};
+
 	@Override
     protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if(serveFile(request, response)) {
+            return;
+        }
         AsyncContext context = request.startAsync();
         context.start(()->{
             try {
@@ -29,4 +47,89 @@ public class NettyDefaultHttpServlet extends HttpServlet {
             }
         });
     }
+
+    /**
+     * 返回静态文件
+     * @return false=没有对应的文件
+     */
+    private boolean serveFile(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String method = request.getMethod();
+        if(!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+        ServletContext servletContext = request.getServletContext();
+        if(!(servletContext instanceof NettyServletContext)) {
+            return false;
+        }
+        String path = getResourcePath(request);
+        if(path == null) {
+            return false;
+        }
+        ResourceManager resourceManager = ((NettyServletContext) servletContext).getStaticResourceManager();
+        if(resourceManager == null) {
+            return false;
+        }
+        File file = resourceManager.getFile(path);
+        if(file == null) {
+            return false;
+        }
+
+        String mimeType = servletContext.getMimeType(file.getName());
+        if(mimeType != null) {
+            response.setContentType(mimeType);
+        }
+        File gzipFile = resourceManager.getPrecompressedFile(path);
+        if(gzipFile != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+            if(isAcceptGzip(request)) {
+                //已经设置了Content-Encoding, 连接上的压缩处理器不会再压缩
+                response.setHeader("Content-Encoding", "gzip");
+                file = gzipFile;
+            }
+        }
+        response.setContentLengthLong(file.length());
+        response.setDateHeader("Last-Modified", file.lastModified());
+        if(!"HEAD".equals(method)) {
+            Files.copy(file.toPath(), response.getOutputStream());
+        }
+        return true;
+    }
+
+    /**
+     * 去掉contextPath后的路径, 含有..、//、/./的路径和内部数据的目录不处理
+     */
+    private String getResourcePath(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        String contextPath = request.getContextPath();
+        if(path == null) {
+            return null;
+        }
+        if(contextPath != null && !contextPath.isEmpty() && path.startsWith(contextPath)) {
+            path = path.substring(contextPath.length());
+        }
+        if(path.isEmpty() || path.endsWith("/") || path.contains("..") || path.indexOf('\\') >= 0
+                || path.contains("//") || path.contains("/./")) {
+            return null;
+        }
+        String lowerCasePath = path.toLowerCase(Locale.ENGLISH);
+        for(String protectedPath : PROTECTED_PATHS) {
+            if(lowerCasePath.equals(protectedPath) || lowerCasePath.startsWith(protectedPath.concat("/"))) {
+                return null;
+            }
+        }
+        return path;
+    }
+
+    private boolean isAcceptGzip(HttpServletRequest request) {
+        Enumeration<String> values = request.getHeaders("Accept-Encoding");
+        while (values != null && values.hasMoreElements()) {
+            for(String encoding : values.nextElement().split(",")) {
+                String value = encoding.trim().toLowerCase(Locale.ENGLISH);
+                if(value.equals("gzip") || (value.startsWith("gzip;") && !value.replace(" ", "").endsWith("q=0"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 }
@@ -10,6 +10,7 @@ import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -49,6 +50,7 @@ import com.baffalotech.integration.http.netty.core.util.AbstractRecycler;
 import com.baffalotech.integration.http.netty.core.util.HttpHeaderUtil;
 import com.baffalotech.integration.http.netty.core.util.Recyclable;
 import com.baffalotech.integration.http.netty.core.util.StringUtil;
+import com.baffalotech.integration.http.netty.servlet.handler.NettyServletRequestStreamHandler.StreamingHttpRequest;
 import com.baffalotech.integration.http.netty.servlet.pathmap.MappedResource;
 import com.baffalotech.integration.http.netty.servlet.support.HttpServletObject;
 import com.baffalotech.integration.http.netty.servlet.support.ServletEventListenerManager;
@@ -57,8 +59,12 @@ import com.baffalotech.integration.http.netty.servlet.util.SnowflakeIdWorker;
 import com.baffalotech.integration.http.netty.session.Session;
 import com.baffalotech.integration.http.netty.session.SessionService;
 
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http2.HttpConversionUtil;
 
 /**
  * servlet请求
@@ -68,12 +74,14 @@ import io.netty.handler.codec.http.HttpHeaders;
  * @author acer01 2018/7/15/015
  */
 @sun.misc.Contended
-public class NettyHttpServletRequest implements javax.servlet.http.HttpServletRequest, Recyclable {
+public class NettyHttpServletRequest implements javax.servlet.http.HttpServletRequest, Recyclable, AbstractRecycler.Handled {
 
 	private static final AbstractRecycler<NettyHttpServletRequest> RECYCLER=new AbstractRecycler<NettyHttpServletRequest>(){@Override protected NettyHttpServletRequest newInstance(){return new NettyHttpServletRequest();}};
+	private AbstractRecycler.Handle recyclerHandle;
 
 	private static final SnowflakeIdWorker SNOWFLAKE_ID_WORKER = new SnowflakeIdWorker();
 	private static final Locale[] DEFAULT_LOCALS = { Locale.getDefault() };
+	private static final String HTTP2_PROTOCOL = "HTTP/2.0";
 
 	private HttpServletObject httpServletObject;
 	private NettyServletAsyncContext asyncContext;
@@ -97,7 +105,9 @@ public class NettyHttpServletRequest implements javax.servlet.http.HttpServletRe
 
 	private BufferedReader reader;
 	private NettyHttpRequest nettyRequest = new NettyHttpRequest();
-	private NettyServletInputStream inputStream = new NettyServletInputStream();
+	//聚合模式的输入流随请求对象一起回收, 流式模式每个请求使用新的输入流
+	private final NettyServletInputStream aggregatedInputStream = new NettyServletInputStream();
+	private NettyServletInputStream inputStream = aggregatedInputStream;
 	private Map<String, Object> attributeMap = new ConcurrentHashMap<>(16);
 	private Map<String, String[]> parameterMap;
 	private List<Part> parts;
@@ -115,7 +125,11 @@ public class NettyHttpServletRequest implements javax.servlet.http.HttpServletRe
 		NettyHttpServletRequest instance = RECYCLER.getInstance();
 		instance.httpServletObject = httpServletObject;
 		instance.nettyRequest.wrap(fullHttpRequest);
-		instance.inputStream.wrap(fullHttpRequest.content());
+		if (fullHttpRequest instanceof StreamingHttpRequest) {
+			instance.inputStream = ((StreamingHttpRequest) fullHttpRequest).getInputStream();
+		} else {
+			instance.inputStream.wrap(fullHttpRequest.content());
+		}
 		return instance;
 	}
 
@@ -210,12 +224,41 @@ public class NettyHttpServletRequest implements javax.servlet.http.HttpServletRe
 
 		if (HttpConstants.POST.equalsIgnoreCase(getMethod()) && getContentLength() > 0
 				&& HttpHeaderUtil.isFormUrlEncoder(getContentType())) {
-			ServletUtil.decodeByBody(parameterMap, nettyRequest, charset);
+			if (inputStream.isStreaming()) {
+				//流式模式下先读出表单内容, 表单请求体一般很小
+				try {
+					FullHttpRequest formRequest = new DefaultFullHttpRequest(nettyRequest.protocolVersion(),
+							nettyRequest.method(), nettyRequest.uri(), Unpooled.wrappedBuffer(readFormBody()),
+							nettyRequest.headers(), EmptyHttpHeaders.INSTANCE);
+					ServletUtil.decodeByBody(parameterMap, formRequest, charset);
+				} catch (IOException e) {
+					throw new IllegalStateException(e.getMessage(), e);
+				}
+			} else {
+				ServletUtil.decodeByBody(parameterMap, nettyRequest, charset);
+			}
 			this.decodeParameterByBodyFlag = true;
 		}
 		this.parameterMap = Collections.unmodifiableMap(parameterMap);
 	}
 
+	/**
+	 * 只读取请求头中的长度, NettyServletRequestStreamHandler已经对超过maxContentLength的表单返回了413
+	 */
+	private byte[] readFormBody() throws IOException {
+		long contentLength = getContentLengthLong();
+		if (contentLength > Integer.MAX_VALUE) {
+			throw new IOException("form content too large: " + contentLength);
+		}
+		byte[] body = new byte[(int) contentLength];
+		int length = 0;
+		int read;
+		while (length < body.length && (read = inputStream.read(body, length, body.length - length)) != -1) {
+			length += read;
+		}
+		return length == body.length ? body : Arrays.copyOf(body, length);
+	}
+
 	/**
 	 * 处理multipart-form的数据，即文件上传
 	 */
@@ -554,7 +597,8 @@ public class NettyHttpServletRequest implements javax.servlet.http.HttpServletRe
 	public NettyHttpServletSession getSession(boolean create) {
 		NettyHttpServletSession httpSession = httpServletObject.getSession();
 		if (httpSession != null && httpSession.isValid()) {
-			return httpSession;
+			// 长连接上的后续请求也算一次访问, 过期时间从最后访问时间开始计算
+			return httpSession.access();
 		}
 
 		if (!create) {
@@ -743,7 +787,12 @@ public class NettyHttpServletRequest implements javax.servlet.http.HttpServletRe
 	@Override
 	public String getProtocol() {
 		if (protocol == null) {
-			protocol = nettyRequest.protocolVersion().toString();
+			//http2的流转换成http1.1的请求后, 带有流id的扩展头
+			if (getNettyHeaders().contains(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text())) {
+				protocol = HTTP2_PROTOCOL;
+			} else {
+				protocol = nettyRequest.protocolVersion().toString();
+			}
 		}
 		return protocol;
 	}
@@ -1063,9 +1112,20 @@ public class NettyHttpServletRequest implements javax.servlet.http.HttpServletRe
 		}
 	}
 
+	@Override
+	public AbstractRecycler.Handle getRecyclerHandle() {
+		return recyclerHandle;
+	}
+
+	@Override
+	public void setRecyclerHandle(AbstractRecycler.Handle recyclerHandle) {
+		this.recyclerHandle = recyclerHandle;
+	}
+
 	@Override
 	public void recycle() {
 		this.inputStream.recycle();
+		this.inputStream = aggregatedInputStream;
 		this.nettyRequest.recycle();
 
 		this.decodeParameterByUrlFlag = false;
@@ -28,7 +28,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  *  2018/7/15/015
  */
 @sun.misc.Contended
-public class NettyHttpServletResponse implements javax.servlet.http.HttpServletResponse,Recyclable {
+public class NettyHttpServletResponse implements javax.servlet.http.HttpServletResponse,Recyclable,AbstractRecycler.Handled {
 
     private static final AbstractRecycler<NettyHttpServletResponse> RECYCLER = new AbstractRecycler<NettyHttpServletResponse>() {
         @Override
@@ -36,6 +36,7 @@ public class NettyHttpServletResponse implements javax.servlet.http.HttpServletR
             return new NettyHttpServletResponse();
         }
     };
+    private AbstractRecycler.Handle recyclerHandle;
 
     private HttpServletObject httpServletObject;
     private NettyHttpResponse nettyResponse = new NettyHttpResponse();
@@ -186,6 +187,8 @@ public class NettyHttpServletResponse implements javax.servlet.http.HttpServletR
 
             NettyServletOutputStream newOut = new NettyServletOutputChunkedStream();
             newOut.setHttpServletObject(httpServletObject);
+            //和newInstance一样标记为使用中, 回收时才会关闭流发出最后一段
+            newOut.isEmpty.compareAndSet(true,false);
             if (oldOut == null) {
                 outWrapper.wrap(newOut);
                 return;
@@ -498,9 +501,27 @@ public class NettyHttpServletResponse implements javax.servlet.http.HttpServletR
         return null == locale ? Locale.getDefault() : locale;
     }
 
+    @Override
+    public AbstractRecycler.Handle getRecyclerHandle() {
+        return recyclerHandle;
+    }
+
+    @Override
+    public void setRecyclerHandle(AbstractRecycler.Handle recyclerHandle) {
+        this.recyclerHandle = recyclerHandle;
+    }
+
     @Override
     public void recycle() {
         //回收顺序 -> 1.先关闭输出流, 2.(通过回调 CloseListener)回收netty响应 3.回收servlet响应
+        //servlet没有获取过输出流时也要发出响应 (http2靠结束标记结束流), 否则客户端一直等待, 响应也不会被回收
+        if(outWrapper.unwrap() == null && httpServletObject != null){
+            try {
+                getOutputStream();
+            } catch (IOException e) {
+                ExceptionUtil.printRootCauseStackTrace(e);
+            }
+        }
         outWrapper.recycle();
     }
 
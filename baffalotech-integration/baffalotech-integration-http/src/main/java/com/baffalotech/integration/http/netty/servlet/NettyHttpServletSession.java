@@ -241,7 +241,8 @@ public class NettyHttpServletSession implements HttpSession,Wrapper<Session>{
      * @return true 有效, false无效
      */
     public boolean isValid() {
-        return id != null && System.currentTimeMillis() < (creationTime + (maxInactiveInterval * 1000));
+        //从最后访问时间开始计算, 小于等于0时不过期
+        return id != null && (maxInactiveInterval <= 0 || System.currentTimeMillis() < lastAccessedTime + maxInactiveInterval * 1000L);
     }
 
     public void setNewSessionFlag(boolean newSessionFlag) {
@@ -259,6 +260,10 @@ public class NettyHttpServletSession implements HttpSession,Wrapper<Session>{
         currAccessedTime = System.currentTimeMillis();
         lastAccessedTime = currAccessedTime;
         accessCount.incrementAndGet();
+        //同步到保存的session, 过期检查按保存的session的最后访问时间
+        if(source != null){
+            source.setLastAccessedTime(lastAccessedTime);
+        }
         return this;
     }
 
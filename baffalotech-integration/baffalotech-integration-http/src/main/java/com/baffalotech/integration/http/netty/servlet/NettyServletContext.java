@@ -1,5 +1,6 @@
 package com.baffalotech.integration.http.netty.servlet;
 
+import java.io.File;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
@@ -16,6 +17,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterRegistration;
@@ -40,6 +43,7 @@ import com.baffalotech.integration.core.StandardThreadExecutor;
 import com.baffalotech.integration.http.netty.core.constants.HttpConstants;
 import com.baffalotech.integration.http.netty.core.util.HostUtil;
 import com.baffalotech.integration.http.netty.core.util.SystemPropertyUtil;
+import com.baffalotech.integration.http.netty.core.util.ThreadPoolX;
 import com.baffalotech.integration.http.netty.core.util.TypeCastUtil;
 import com.baffalotech.integration.http.netty.servlet.pathmap.MappedResource;
 import com.baffalotech.integration.http.netty.servlet.support.NettyServletErrorPageManager;
@@ -49,6 +53,8 @@ import com.baffalotech.integration.http.netty.servlet.util.MimeMappingsX;
 import com.baffalotech.integration.http.netty.servlet.util.ServletUtil;
 import com.baffalotech.integration.http.netty.servlet.util.UrlMapper;
 import com.baffalotech.integration.http.netty.session.SessionService;
+import com.baffalotech.integration.metrics.LatencyRecorder;
+import com.baffalotech.integration.metrics.LatencyRegistry;
 
 /**
  * servlet上下文 (生命周期同服务器)
@@ -77,9 +83,14 @@ public class NettyServletContext implements javax.servlet.ServletContext {
     private UrlMapper<NettyServletFilterRegistration> filterUrlMapper = new UrlMapper<NettyServletFilterRegistration>(false);
 
     private ResourceManager resourceManager;
+    private ResourceManager staticResourceManager;
+    private File sessionStoreDirectory;
     private ExecutorService asyncExecutorService;
+    private Supplier<ScheduledExecutorService> scheduledExecutorSupplier;
     private SessionService sessionService;
     private Set<SessionTrackingMode> sessionTrackingModeSet;
+    //servlet之前所有filter的耗时
+    private volatile LatencyRecorder filterChainLatencyRecorder;
 
     private String serverHeader;
     private String contextPath;
@@ -93,6 +104,9 @@ public class NettyServletContext implements javax.servlet.ServletContext {
         String workspace = '/' + (HostUtil.isLocalhost(socketAddress.getHostName())? "localhost":socketAddress.getHostName());
         this.resourceManager = new ResourceManager(docBase,workspace,classLoader);
         this.resourceManager.mkdirs("/");
+        //默认放在docBase旁边, 不在返回文件的目录下
+        File docBaseDirectory = new File(docBase).getAbsoluteFile();
+        this.sessionStoreDirectory = new File(docBaseDirectory.getParentFile(), docBaseDirectory.getName() + "-session");
     }
 
     public ExecutorService getAsyncExecutorService() {
@@ -106,6 +120,19 @@ public class NettyServletContext implements javax.servlet.ServletContext {
         return asyncExecutorService;
     }
 
+    /**
+     * 第一次使用时创建, 这时connector的名字已经确定
+     * @return
+     */
+    public LatencyRecorder getFilterChainLatencyRecorder() {
+        LatencyRecorder recorder = filterChainLatencyRecorder;
+        if(recorder == null) {
+            recorder = LatencyRegistry.getDefaultInstance().recorder(LatencyRegistry.FILTER_CHAIN, LatencyRegistry.TAG_CONNECTOR, servletContextName);
+            filterChainLatencyRecorder = recorder;
+        }
+        return recorder;
+    }
+
     public MimeMappingsX getMimeMappings() {
         return mimeMappings;
     }
@@ -114,6 +141,34 @@ public class NettyServletContext implements javax.servlet.ServletContext {
         return resourceManager;
     }
 
+    /**
+     * 默认servlet返回静态文件的根目录, 不能是docBase, docBase下还有session等内部数据
+     * @param staticResourceRoot 为null时不返回静态文件
+     */
+    public void setStaticResourceRoot(File staticResourceRoot) {
+        this.staticResourceManager = staticResourceRoot == null ? null
+                : new ResourceManager(staticResourceRoot.getAbsolutePath(), "", resourceManager.getClassLoader());
+    }
+
+    /**
+     * @return 没有设置静态文件的根目录时返回null
+     */
+    public ResourceManager getStaticResourceManager() {
+        return staticResourceManager;
+    }
+
+    /**
+     * 本地文件会话的段文件目录
+     * @return
+     */
+    public File getSessionStoreDirectory() {
+        return sessionStoreDirectory;
+    }
+
+    public void setSessionStoreDirectory(File sessionStoreDirectory) {
+        this.sessionStoreDirectory = Objects.requireNonNull(sessionStoreDirectory).getAbsoluteFile();
+    }
+
     public NettyServletErrorPageManager getErrorPageManager() {
         return servletErrorPageManager;
     }
@@ -162,6 +217,30 @@ public class NettyServletContext implements javax.servlet.ServletContext {
         return sessionService;
     }
 
+    public void setScheduledExecutor(ScheduledExecutorService scheduledExecutor) {
+        this.scheduledExecutorSupplier = scheduledExecutor == null ? null : () -> scheduledExecutor;
+    }
+
+    /**
+     * 容器的调度线程停止后会重新创建, 每次使用时再获取
+     * @param scheduledExecutorSupplier
+     */
+    public void setScheduledExecutorSupplier(Supplier<ScheduledExecutorService> scheduledExecutorSupplier) {
+        this.scheduledExecutorSupplier = scheduledExecutorSupplier;
+    }
+
+    /**
+     * 定时任务(session过期等)使用的调度线程, 没有设置时使用默认的线程池
+     * @return
+     */
+    public ScheduledExecutorService getScheduledExecutor() {
+        Supplier<ScheduledExecutorService> supplier = scheduledExecutorSupplier;
+        if(supplier == null){
+            return ThreadPoolX.getDefaultInstance();
+        }
+        return supplier.get();
+    }
+
     public int getSessionTimeout() {
         return sessionTimeout;
     }
@@ -8,10 +8,7 @@ import com.baffalotech.integration.http.netty.servlet.support.ServletEventListen
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * servlet过滤链
@@ -20,7 +17,7 @@ import java.util.concurrent.atomic.AtomicLong;
  * @author 84215
  */
 @sun.misc.Contended
-public class NettyServletFilterChain implements FilterChain,Recyclable {
+public class NettyServletFilterChain implements FilterChain,Recyclable,AbstractRecycler.Handled {
 
     /**
      * 考虑到每个请求只有一个线程处理，而且ServletContext在每次请求时都会new 一个SimpleFilterChain对象
@@ -31,10 +28,10 @@ public class NettyServletFilterChain implements FilterChain,Recyclable {
     private NettyServletContext servletContext;
     private int pos;
 
-    public static final Set<Filter> FILTER_SET = new HashSet<>();
-    public static final AtomicLong SERVLET_TIME = new AtomicLong();
-    public static final AtomicLong FILTER_TIME = new AtomicLong();
+    //System.nanoTime()
     private long beginTime;
+    //最近一次返回的下一层(filter或者servlet)的耗时, 上一层的filter减去它得到自身的耗时
+    private long nextNanos;
 
     private static final AbstractRecycler<NettyServletFilterChain> RECYCLER = new AbstractRecycler<NettyServletFilterChain>() {
         @Override
@@ -42,6 +39,7 @@ public class NettyServletFilterChain implements FilterChain,Recyclable {
             return new NettyServletFilterChain();
         }
     };
+    private AbstractRecycler.Handle recyclerHandle;
 
     protected NettyServletFilterChain(){}
 
@@ -49,7 +47,7 @@ public class NettyServletFilterChain implements FilterChain,Recyclable {
         NettyServletFilterChain instance = RECYCLER.getInstance();
         instance.servletContext = servletContext;
         instance.servletRegistration = servletRegistration;
-        instance.beginTime = System.currentTimeMillis();
+        instance.beginTime = System.nanoTime();
         return instance;
     }
 
@@ -68,31 +66,44 @@ public class NettyServletFilterChain implements FilterChain,Recyclable {
             }
         }
 
-        if(pos < filterRegistrationList.size()){
-            NettyServletFilterRegistration filterRegistration = filterRegistrationList.get(pos);
-            pos++;
-            Filter filter = filterRegistration.getFilter();
-            filter.doFilter(request, response, this);
-
-            FILTER_SET.add(filter);
-        }else {
-            try {
-                long filterEndTime = System.currentTimeMillis();
-                FILTER_TIME.addAndGet(filterEndTime - beginTime);
-
-                servletRegistration.getServlet().service(request, response);
-
-                SERVLET_TIME.addAndGet(System.currentTimeMillis() - filterEndTime);
-            }finally {
-                if(listenerManager.hasServletRequestListener()) {
-                    listenerManager.onServletRequestDestroyed(new ServletRequestEvent(servletContext,request));
+        //最外层返回时才回收, 外层的filter返回时还要记录耗时
+        boolean outermost = pos == 0;
+        try {
+            if(pos < filterRegistrationList.size()){
+                NettyServletFilterRegistration filterRegistration = filterRegistrationList.get(pos);
+                pos++;
+                Filter filter = filterRegistration.getFilter();
+                long filterBeginTime = System.nanoTime();
+                nextNanos = 0;
+                try {
+                    filter.doFilter(request, response, this);
+                }finally {
+                    //没有调用chain.doFilter时nextNanos为0, 全部算作自身的耗时
+                    long totalNanos = System.nanoTime() - filterBeginTime;
+                    filterRegistration.recordTime(totalNanos, totalNanos - nextNanos);
+                    nextNanos = totalNanos;
                 }
-
-                //回收异步请求
-                if(request instanceof NettyHttpServletAsyncRequest){
-                    ((NettyHttpServletAsyncRequest)request).getAsyncContext().recycle();
+            }else {
+                long filterEndTime = System.nanoTime();
+                servletContext.getFilterChainLatencyRecorder().record(filterEndTime - beginTime);
+                try {
+                    servletRegistration.getServlet().service(request, response);
+                }finally {
+                    nextNanos = System.nanoTime() - filterEndTime;
+                    servletRegistration.getLatencyRecorder().record(nextNanos);
+
+                    if(listenerManager.hasServletRequestListener()) {
+                        listenerManager.onServletRequestDestroyed(new ServletRequestEvent(servletContext,request));
+                    }
+
+                    //结束异步请求, 主线程也已经结束时才会回收, 否则由主线程回收
+                    if(request instanceof NettyHttpServletAsyncRequest){
+                        ((NettyHttpServletAsyncRequest)request).getAsyncContext().complete();
+                    }
                 }
-
+            }
+        }finally {
+            if(outermost) {
                 //回收自身
                 recycle();
             }
@@ -107,9 +118,20 @@ public class NettyServletFilterChain implements FilterChain,Recyclable {
         return filterRegistrationList;
     }
 
+    @Override
+    public AbstractRecycler.Handle getRecyclerHandle() {
+        return recyclerHandle;
+    }
+
+    @Override
+    public void setRecyclerHandle(AbstractRecycler.Handle recyclerHandle) {
+        this.recyclerHandle = recyclerHandle;
+    }
+
     @Override
     public void recycle() {
         pos = 0;
+        nextNanos = 0;
         servletContext = null;
         filterRegistrationList.clear();
         servletRegistration = null;
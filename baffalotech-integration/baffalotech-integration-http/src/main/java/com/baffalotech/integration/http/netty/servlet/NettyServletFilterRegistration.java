@@ -8,6 +8,8 @@ import javax.servlet.FilterRegistration;
 import org.apache.commons.lang3.StringUtils;
 
 import com.baffalotech.integration.http.netty.servlet.util.UrlMapper;
+import com.baffalotech.integration.metrics.LatencyRecorder;
+import com.baffalotech.integration.metrics.LatencyRegistry;
 
 import java.util.*;
 
@@ -28,6 +30,9 @@ public class NettyServletFilterRegistration implements FilterRegistration,Filter
     private Set<String> servletNameMappingSet;
     private boolean asyncSupported;
     private UrlMapper<NettyServletFilterRegistration> urlMapper;
+    //包括后面的filter和servlet的耗时, 以及只算这个filter自身的耗时
+    private volatile LatencyRecorder totalLatencyRecorder;
+    private volatile LatencyRecorder selfLatencyRecorder;
 
     public NettyServletFilterRegistration(String filterName, Filter servlet,NettyServletContext servletContext,UrlMapper<NettyServletFilterRegistration> urlMapper) {
         this.filterName = filterName;
@@ -72,6 +77,41 @@ public class NettyServletFilterRegistration implements FilterRegistration,Filter
         return filter;
     }
 
+    /**
+     * 初始化filter时注册耗时统计, 这时connector的名字已经确定
+     */
+    public void initLatencyRecorders() {
+        String connectorName = servletContext.getServletContextName();
+        selfLatencyRecorder = LatencyRegistry.getDefaultInstance().recorder(LatencyRegistry.FILTER_SELF,
+                LatencyRegistry.TAG_CONNECTOR, connectorName, LatencyRegistry.TAG_FILTER, filterName);
+        totalLatencyRecorder = LatencyRegistry.getDefaultInstance().recorder(LatencyRegistry.FILTER,
+                LatencyRegistry.TAG_CONNECTOR, connectorName, LatencyRegistry.TAG_FILTER, filterName);
+    }
+
+    /**
+     * 记录一次调用的耗时
+     * @param totalNanos 包括后面的filter和servlet
+     * @param selfNanos 只算这个filter自身
+     */
+    public void recordTime(long totalNanos, long selfNanos) {
+        LatencyRecorder total = totalLatencyRecorder;
+        if(total == null) {
+            //没有经过initFilter注册的filter
+            initLatencyRecorders();
+            total = totalLatencyRecorder;
+        }
+        total.record(totalNanos);
+        selfLatencyRecorder.record(selfNanos);
+    }
+
+    public LatencyRecorder getTotalLatencyRecorder() {
+        return totalLatencyRecorder;
+    }
+
+    public LatencyRecorder getSelfLatencyRecorder() {
+        return selfLatencyRecorder;
+    }
+
     public boolean isAsyncSupported() {
         return asyncSupported;
     }
@@ -1,6 +1,9 @@
 package com.baffalotech.integration.http.netty.servlet;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.util.ReferenceCountUtil;
 
 import javax.servlet.ReadListener;
@@ -9,12 +12,19 @@ import com.baffalotech.integration.http.netty.core.util.Recyclable;
 import com.baffalotech.integration.http.netty.core.util.Wrapper;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * servlet 输入流
  *
+ * 有两种模式: 1.聚合模式, 包装聚合后的完整请求体. 2.流式模式, io线程收到的HttpContent直接放入流中,
+ * servlet线程边收边读, 缓存的数据超过上限时关闭连接的autoRead, 读到下限以下再打开
+ *
  * 频繁更改, 需要cpu对齐. 防止伪共享, 需设置 : -XX:-RestrictContended
  * @author acer01
  *  2018/7/15/015
@@ -24,7 +34,22 @@ public class NettyServletInputStream extends javax.servlet.ServletInputStream im
 
     private AtomicBoolean closed = new AtomicBoolean(false); //输入流是否已经关闭，保证线程安全
     private ByteBuf source;
-    private int contentLength;
+    private long contentLength;
+
+    /**
+     * 流式模式下io线程放入, 读取线程取出的分段, 以下字段都用lock加锁.
+     * 不用monitor: 虚拟线程在synchronized中等待时会占住载体线程
+     */
+    private ArrayDeque<ByteBuf> chunks;
+    private ReentrantLock lock;
+    private Condition chunkArrived;
+    private Channel channel;
+    private boolean streaming;
+    private boolean lastChunkReceived;
+    private boolean autoReadSuspended;
+    private int bufferedBytes;
+    private int highWaterMark;
+    private IOException streamException;
 
     public NettyServletInputStream() {
     }
@@ -33,10 +58,30 @@ public class NettyServletInputStream extends javax.servlet.ServletInputStream im
         wrap(source);
     }
 
-    public int getContentLength() {
+    /**
+     * 流式模式
+     * @param channel 连接, 用于控制autoRead
+     * @param contentLength 请求头中的长度, 没有时为-1
+     * @param highWaterMark 缓存超过这个字节数时暂停读取, 低于一半时恢复
+     */
+    public NettyServletInputStream(Channel channel, long contentLength, int highWaterMark) {
+        this.channel = Objects.requireNonNull(channel);
+        this.contentLength = contentLength;
+        this.highWaterMark = Math.max(1, highWaterMark);
+        this.chunks = new ArrayDeque<>();
+        this.lock = new ReentrantLock();
+        this.chunkArrived = lock.newCondition();
+        this.streaming = true;
+    }
+
+    public long getContentLength() {
         return contentLength;
     }
 
+    public boolean isStreaming() {
+        return streaming;
+    }
+
     @Override
     public int readLine(byte[] b, int off, int len) throws IOException {
         checkClosed();
@@ -52,6 +97,14 @@ public class NettyServletInputStream extends javax.servlet.ServletInputStream im
         if(closed.get()){
             return true;
         }
+        if(streaming){
+            lock.lock();
+            try {
+                return lastChunkReceived && chunks.isEmpty() && (source == null || source.readableBytes() == 0);
+            } finally {
+                lock.unlock();
+            }
+        }
         return source.readableBytes() == 0;
     }
 
@@ -60,10 +113,18 @@ public class NettyServletInputStream extends javax.servlet.ServletInputStream im
      */
     @Override
     public boolean isReady() {
-        if(source == null){
+        if(source != null && source.readableBytes() > 0){
             return true;
         }
-        return source.readableBytes() > 0;
+        if(streaming){
+            lock.lock();
+            try {
+                return !chunks.isEmpty() || lastChunkReceived || streamException != null;
+            } finally {
+                lock.unlock();
+            }
+        }
+        return source == null;
     }
 
     @Override
@@ -77,8 +138,12 @@ public class NettyServletInputStream extends javax.servlet.ServletInputStream im
     @Override
     public long skip(long n) throws IOException {
         checkClosed();
-        long skipLen = Math.min(source.readableBytes(), n); //实际可以跳过的字节数
-        source.skipBytes((int) skipLen);
+        long skipLen = 0;
+        while (skipLen < n && ensureReadable()) {
+            int len = (int) Math.min(source.readableBytes(), n - skipLen); //实际可以跳过的字节数
+            source.skipBytes(len);
+            skipLen += len;
+        }
         return skipLen;
     }
 
@@ -96,7 +161,17 @@ public class NettyServletInputStream extends javax.servlet.ServletInputStream im
         if (closed.compareAndSet(false,true)) {
             if(source != null && source.refCnt() > 0){
                 ReferenceCountUtil.safeRelease(source);
-                source = null;
+            }
+            source = null;
+            if(streaming){
+                //没读完的分段直接丢弃, 恢复读取, 让连接上剩余的请求体读完后继续处理下一个请求
+                lock.lock();
+                try {
+                    releaseChunks();
+                    resumeAutoRead();
+                } finally {
+                    lock.unlock();
+                }
             }
         }
     }
@@ -111,7 +186,7 @@ public class NettyServletInputStream extends javax.servlet.ServletInputStream im
         if (0 == len) {
             return 0;
         }
-        if (isFinished()) {
+        if (!ensureReadable()) {
             return -1;
         }
 
@@ -131,10 +206,10 @@ public class NettyServletInputStream extends javax.servlet.ServletInputStream im
     @Override
     public int read() throws IOException {
         checkClosed();
-        if (isFinished()) {
+        if (!ensureReadable()) {
             return -1;
         }
-        return source.readByte();
+        return source.readByte() & 0xFF;
     }
 
     /**
@@ -148,6 +223,114 @@ public class NettyServletInputStream extends javax.servlet.ServletInputStream im
         }
     }
 
+    /**
+     * 保证source中有可读的数据, 流式模式下当前分段读完后等待下一个分段
+     * @return false=已经读取完毕
+     * @throws IOException
+     */
+    private boolean ensureReadable() throws IOException {
+        if(source != null && source.readableBytes() > 0){
+            return true;
+        }
+        if(!streaming){
+            return false;
+        }
+        if(source != null){
+            ReferenceCountUtil.safeRelease(source);
+            source = null;
+        }
+        ByteBuf next;
+        lock.lock();
+        try {
+            while (chunks.isEmpty() && !lastChunkReceived && streamException == null && !closed.get()) {
+                if(channel.eventLoop().inEventLoop()){
+                    throw new IllegalStateException("流式请求体不能在io线程中阻塞读取");
+                }
+                try {
+                    chunkArrived.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("读取请求体时被中断");
+                }
+            }
+            checkClosed();
+            next = chunks.poll();
+            if(next == null){
+                if(streamException != null){
+                    throw streamException;
+                }
+                return false;
+            }
+            bufferedBytes -= next.readableBytes();
+            if(bufferedBytes <= highWaterMark >>> 1){
+                resumeAutoRead();
+            }
+        } finally {
+            lock.unlock();
+        }
+        source = next;
+        return source.readableBytes() > 0 || ensureReadable();
+    }
+
+    /**
+     * io线程放入一个分段
+     * @param content
+     */
+    public void offer(HttpContent content) {
+        ByteBuf buf = content.content();
+        lock.lock();
+        try {
+            if(closed.get() || lastChunkReceived){
+                //已经关闭的流直接丢弃
+            }else if(buf.isReadable()){
+                chunks.add(buf.retain());
+                bufferedBytes += buf.readableBytes();
+                if(bufferedBytes >= highWaterMark && !autoReadSuspended){
+                    autoReadSuspended = true;
+                    channel.config().setAutoRead(false);
+                }
+            }
+            if(content instanceof LastHttpContent){
+                lastChunkReceived = true;
+            }
+            chunkArrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 连接在请求体接收完之前断开
+     * @param cause
+     */
+    public void abort(IOException cause) {
+        lock.lock();
+        try {
+            if(!lastChunkReceived && streamException == null){
+                streamException = cause;
+                chunkArrived.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void resumeAutoRead() {
+        if(autoReadSuspended){
+            autoReadSuspended = false;
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    private void releaseChunks() {
+        ByteBuf buf;
+        while ((buf = chunks.poll()) != null) {
+            ReferenceCountUtil.safeRelease(buf);
+        }
+        bufferedBytes = 0;
+        chunkArrived.signalAll();
+    }
+
     private void checkClosed() throws IOException {
         if (closed.get()) {
             throw new IOException("Stream closed");
@@ -167,9 +350,12 @@ public class NettyServletInputStream extends javax.servlet.ServletInputStream im
         this.contentLength = source.capacity();
     }
 
+    /**
+     * 流式模式下请求体还没有全部收到, 返回null
+     */
     @Override
     public ByteBuf unwrap() {
-        return source;
+        return streaming ? null : source;
     }
 
     @Override
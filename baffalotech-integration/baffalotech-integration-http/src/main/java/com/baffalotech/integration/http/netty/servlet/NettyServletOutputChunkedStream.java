@@ -2,14 +2,22 @@ package com.baffalotech.integration.http.netty.servlet;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultHttpContent;
 import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.stream.ChunkedInput;
+import io.netty.util.ReferenceCountUtil;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.baffalotech.integration.http.netty.core.NettyHttpResponse;
 import com.baffalotech.integration.http.netty.core.util.HttpHeaderUtil;
@@ -18,6 +26,9 @@ import com.baffalotech.integration.http.netty.core.util.IOUtil;
 /**
  * servlet 输出流 (分段传输)
  *
+ * 每次flush的内容排队交给ChunkedWriteHandler, 它只在channel可写时取出. 排队的字节超过channel的写高水位时,
+ * flush会阻塞到数据发出去为止, 所以servlet写得比客户端(或者http2流的发送窗口)快时不会无限占用内存
+ *
  * 频繁更改, 需要cpu对齐. 防止伪共享, 需设置 : -XX:-RestrictContended
  * @author 84215
  */
@@ -41,7 +52,6 @@ public class NettyServletOutputChunkedStream extends NettyServletOutputStream {
     @Override
     public void close() throws IOException {
         if(super.isClosed.compareAndSet(false,true)){
-            chunkedInput.setCloseInputFlag(true);
             flush0(getCloseListener());
         }
     }
@@ -55,12 +65,16 @@ public class NettyServletOutputChunkedStream extends NettyServletOutputStream {
         try {
             ByteBuf content = lockBuffer();
             if (content != null) {
-                this.chunkedInput.setChunkByteBuf(content);
+                this.chunkedInput.addChunk(content);
                 setBuffer(null);
             }
         }finally {
             unlockBuffer();
         }
+        //最后一段放进队列之后才能标记结束, 否则io线程可能先发出结束标记
+        if(isClosed()){
+            chunkedInput.setCloseInputFlag(true);
+        }
 
         if (super.isSendResponseHeader.compareAndSet(false,true)) {
             NettyHttpResponse nettyResponse = getHttpServletObject().getHttpServletResponse().getNettyResponse();
@@ -81,11 +95,17 @@ public class NettyServletOutputChunkedStream extends NettyServletOutputStream {
 //                        new File("C:\\Users\\acer01\\Desktop\\开发工具1\\gz.sql"))),promise);
                 channel.writeAndFlush(chunkedInput,promise);
             });
+            if(listener == null) {
+                chunkedInput.awaitWritable(getHttpServletObject().getChannelHandlerContext().channel());
+            }
             return;
         }
 
-        getHttpServletObject().getChannelHandlerContext().flush();
-        if(listener != null){
+        ChannelHandlerContext channel = getHttpServletObject().getChannelHandlerContext();
+        channel.flush();
+        if(listener == null){
+            chunkedInput.awaitWritable(channel.channel());
+        }else {
             try{
                 listener.operationComplete(null);
             } catch (Exception e) {
@@ -98,10 +118,17 @@ public class NettyServletOutputChunkedStream extends NettyServletOutputStream {
      * 字节块输入
      */
     class ByteChunkedInput implements ChunkedInput<Object>{
-        private boolean closeInputFlag = false;
+        private volatile boolean closeInputFlag = false;
         private boolean sendLastChunkFlag = false;
         private AtomicInteger readLength = new AtomicInteger();
-        private ByteBuf chunkByteBuf;
+        /**
+         * 还没有被取走的分段, 以下字段都用lock加锁. servlet线程可能是虚拟线程, 不在synchronized中等待
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition chunkTaken = lock.newCondition();
+        private final ArrayDeque<ByteBuf> chunks = new ArrayDeque<>();
+        private long pendingBytes;
+        private boolean inputClosed;
         private LastHttpContent lastHttpContent;
 
         public ByteChunkedInput() {
@@ -135,7 +162,18 @@ public class NettyServletOutputChunkedStream extends NettyServletOutputStream {
 
         @Override
         public void close() throws Exception {
-            chunkByteBuf = null;
+            lock.lock();
+            try {
+                inputClosed = true;
+                ByteBuf buf;
+                while ((buf = chunks.poll()) != null) {
+                    ReferenceCountUtil.safeRelease(buf);
+                }
+                pendingBytes = 0;
+                chunkTaken.signalAll();
+            } finally {
+                lock.unlock();
+            }
             readLength = null;
         }
 
@@ -147,24 +185,53 @@ public class NettyServletOutputChunkedStream extends NettyServletOutputStream {
 
         @Override
         public Object readChunk(ByteBufAllocator allocator) throws Exception {
-            if (closeInputFlag) {
-                if (sendLastChunkFlag) {
-                    return null;
-                } else {
-                    // Send last chunk for this input
-                    sendLastChunkFlag = true;
-                    //移除头部不支持拖挂的字段
-                    HttpHeaderUtil.removeHeaderUnSupportTrailer(lastHttpContent);
-                    return lastHttpContent;
-                }
-            }else {
-                if (chunkByteBuf == null) {
-                    return null;
+            ByteBuf byteBuf;
+            lock.lock();
+            try {
+                byteBuf = chunks.poll();
+                if (byteBuf != null) {
+                    pendingBytes -= byteBuf.readableBytes();
+                    chunkTaken.signalAll();
                 }
-                ByteBuf byteBuf = chunkByteBuf;
-                chunkByteBuf = null;
+            } finally {
+                lock.unlock();
+            }
+            if (byteBuf != null) {
                 readLength.addAndGet(byteBuf.capacity());
-                return byteBuf;
+                //包装成HttpContent, 让压缩和http2的编码器也能处理
+                return new DefaultHttpContent(byteBuf);
+            }
+            if (closeInputFlag && !sendLastChunkFlag) {
+                // Send last chunk for this input
+                sendLastChunkFlag = true;
+                //移除头部不支持拖挂的字段
+                HttpHeaderUtil.removeHeaderUnSupportTrailer(lastHttpContent);
+                return lastHttpContent;
+            }
+            return null;
+        }
+
+        /**
+         * 等待排队的数据降到channel的写高水位以下 (io线程中不等待)
+         * @param channel
+         * @throws IOException
+         */
+        public void awaitWritable(Channel channel) throws IOException {
+            if (channel.eventLoop().inEventLoop()) {
+                return;
+            }
+            int highWaterMark = channel.config().getWriteBufferHighWaterMark();
+            lock.lock();
+            try {
+                while (pendingBytes > highWaterMark && !inputClosed && channel.isActive()) {
+                    //连接断开时没有人唤醒, 定时检查
+                    chunkTaken.await(1, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待响应数据发送时被中断");
+            } finally {
+                lock.unlock();
             }
         }
 
@@ -176,10 +243,21 @@ public class NettyServletOutputChunkedStream extends NettyServletOutputStream {
             this.closeInputFlag = isCloseInput;
         }
 
-        public void setChunkByteBuf(ByteBuf chunkByteBuf) {
+        public void addChunk(ByteBuf chunkByteBuf) {
             //切换读模式
             IOUtil.writerModeToReadMode(chunkByteBuf);
-            this.chunkByteBuf = chunkByteBuf;
+            lock.lock();
+            try {
+                if (inputClosed) {
+                    //连接已经断开, 直接丢弃
+                    ReferenceCountUtil.safeRelease(chunkByteBuf);
+                    return;
+                }
+                chunks.add(chunkByteBuf);
+                pendingBytes += chunkByteBuf.readableBytes();
+            } finally {
+                lock.unlock();
+            }
         }
     }
 }
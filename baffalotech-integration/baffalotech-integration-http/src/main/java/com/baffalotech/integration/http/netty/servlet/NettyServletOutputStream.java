@@ -33,6 +33,7 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.LastHttpContent;
@@ -45,7 +46,7 @@ import io.netty.util.ReferenceCountUtil;
  * @author 84215
  */
 @sun.misc.Contended
-public class NettyServletOutputStream extends javax.servlet.ServletOutputStream implements Recyclable  {
+public class NettyServletOutputStream extends javax.servlet.ServletOutputStream implements Recyclable,AbstractRecycler.Handled  {
 
     protected AtomicBoolean isEmpty = new AtomicBoolean(true);
     protected AtomicBoolean isClosed = new AtomicBoolean(false);
@@ -64,6 +65,7 @@ public class NettyServletOutputStream extends javax.servlet.ServletOutputStream
             return new NettyServletOutputStream();
         }
     };
+    private AbstractRecycler.Handle recyclerHandle;
 
     protected NettyServletOutputStream() {}
 
@@ -367,11 +369,18 @@ public class NettyServletOutputStream extends javax.servlet.ServletOutputStream
 
         ByteBuf content = nettyResponse.content();
         if(content == null) {
-            channel.writeAndFlush(nettyResponse, promise);
+            if(nettyResponse.isTransferEncodingChunked()) {
+                //分段传输, 内容和结束标记由ChunkedInput写出
+                channel.writeAndFlush(nettyResponse, promise);
+            }else {
+                //没有内容也要写结束标记, http2靠它结束流
+                channel.write(nettyResponse, channel.voidPromise());
+                channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT, promise);
+            }
         }else {
+            //内容包装成HttpContent, 压缩和http2的编码器只处理HttpObject
             channel.write(nettyResponse,channel.voidPromise());
-            channel.write(content,channel.voidPromise());
-            channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT, promise);
+            channel.writeAndFlush(new DefaultLastHttpContent(content), promise);
         }
     }
 
@@ -471,6 +480,16 @@ public class NettyServletOutputStream extends javax.servlet.ServletOutputStream
         }
     }
 
+    @Override
+    public AbstractRecycler.Handle getRecyclerHandle() {
+        return recyclerHandle;
+    }
+
+    @Override
+    public void setRecyclerHandle(AbstractRecycler.Handle recyclerHandle) {
+        this.recyclerHandle = recyclerHandle;
+    }
+
     @Override
     public void recycle() {
         try {
@@ -508,7 +527,7 @@ public class NettyServletOutputStream extends javax.servlet.ServletOutputStream
     /**
      * 优化lambda实例数量, 减少gc次数
      */
-    private static class FlushListener implements ChannelFutureListener,Recyclable {
+    private static class FlushListener implements ChannelFutureListener,Recyclable,AbstractRecycler.Handled {
         private boolean isCloseChannel;
         private ChannelFutureListener finishListener;
 
@@ -518,6 +537,7 @@ public class NettyServletOutputStream extends javax.servlet.ServletOutputStream
                 return new FlushListener();
             }
         };
+        private AbstractRecycler.Handle recyclerHandle;
 
         private static FlushListener newInstance(boolean isCloseChannel, ChannelFutureListener finishListener) {
             FlushListener instance = RECYCLER.getInstance();
@@ -526,6 +546,16 @@ public class NettyServletOutputStream extends javax.servlet.ServletOutputStream
             return instance;
         }
 
+        @Override
+        public AbstractRecycler.Handle getRecyclerHandle() {
+            return recyclerHandle;
+        }
+
+        @Override
+        public void setRecyclerHandle(AbstractRecycler.Handle recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+
         @Override
         public void recycle() {
             finishListener = null;
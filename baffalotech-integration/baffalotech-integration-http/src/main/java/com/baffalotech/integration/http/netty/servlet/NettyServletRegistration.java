@@ -8,6 +8,8 @@ import javax.servlet.ServletSecurityElement;
 import org.apache.commons.lang3.StringUtils;
 
 import com.baffalotech.integration.http.netty.servlet.util.UrlMapper;
+import com.baffalotech.integration.metrics.LatencyRecorder;
+import com.baffalotech.integration.metrics.LatencyRegistry;
 
 import java.util.*;
 
@@ -30,6 +32,8 @@ public class NettyServletRegistration
 	private UrlMapper<NettyServletRegistration> urlMapper;
 	private MultipartConfigElement multipartConfigElement;
 	private ServletSecurityElement servletSecurityElement;
+	// service方法的耗时, 第一次请求时创建
+	private volatile LatencyRecorder latencyRecorder;
 
 	public NettyServletRegistration(String servletName, Servlet servlet, NettyServletContext servletContext,
 			UrlMapper<NettyServletRegistration> urlMapper) {
@@ -72,6 +76,16 @@ public class NettyServletRegistration
 		return servlet;
 	}
 
+	public LatencyRecorder getLatencyRecorder() {
+		LatencyRecorder recorder = latencyRecorder;
+		if (recorder == null) {
+			recorder = LatencyRegistry.getDefaultInstance().recorder(LatencyRegistry.SERVLET, LatencyRegistry.TAG_CONNECTOR,
+					servletContext.getServletContextName(), LatencyRegistry.TAG_SERVLET, servletName);
+			latencyRecorder = recorder;
+		}
+		return recorder;
+	}
+
 	public Boolean isAsyncSupported() {
 		return asyncSupported;
 	}
@@ -16,7 +16,7 @@ import java.io.IOException;
  * @author acer01
  *  2018/7/14/014
  */
-public class NettyServletRequestDispatcher implements RequestDispatcher,Recyclable {
+public class NettyServletRequestDispatcher implements RequestDispatcher,Recyclable,AbstractRecycler.Handled {
 
     /**
      * 调度路径 (与name字段互斥)
@@ -37,6 +37,7 @@ public class NettyServletRequestDispatcher implements RequestDispatcher,Recyclab
             return new NettyServletRequestDispatcher();
         }
     };
+    private AbstractRecycler.Handle recyclerHandle;
 
     private NettyServletRequestDispatcher() {}
 
@@ -237,6 +238,16 @@ public class NettyServletRequestDispatcher implements RequestDispatcher,Recyclab
         return filterChain.getServletRegistration().getName();
     }
    
+    @Override
+    public AbstractRecycler.Handle getRecyclerHandle() {
+        return recyclerHandle;
+    }
+
+    @Override
+    public void setRecyclerHandle(AbstractRecycler.Handle recyclerHandle) {
+        this.recyclerHandle = recyclerHandle;
+    }
+
     @Override
     public void recycle() {
         path = null;
@@ -1,7 +1,7 @@
 package com.baffalotech.integration.http.netty.servlet.handler;
 
-import java.util.Date;
-import java.util.concurrent.atomic.AtomicLong;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
@@ -14,8 +14,10 @@ import com.baffalotech.integration.accesslog.AccessLogReceiver;
 import com.baffalotech.integration.configuration.IntegrationServerProperties;
 import com.baffalotech.integration.http.netty.accesslog.NettyHttpAccessLogVistor;
 import com.baffalotech.integration.http.netty.core.MessageToRunnable;
+import com.baffalotech.integration.http.netty.core.constants.HttpHeaderConstants;
 import com.baffalotech.integration.http.netty.core.util.AbstractRecycler;
 import com.baffalotech.integration.http.netty.core.util.ByteBufAllocatorX;
+import com.baffalotech.integration.http.netty.core.util.ExceptionUtil;
 import com.baffalotech.integration.http.netty.core.util.Recyclable;
 import com.baffalotech.integration.http.netty.servlet.NettyHttpServletRequest;
 import com.baffalotech.integration.http.netty.servlet.NettyHttpServletResponse;
@@ -25,14 +27,12 @@ import com.baffalotech.integration.http.netty.servlet.NettyServletRequestDispatc
 import com.baffalotech.integration.http.netty.servlet.support.HttpServletObject;
 import com.baffalotech.integration.http.netty.servlet.support.NettyServletErrorPage;
 import com.baffalotech.integration.http.netty.servlet.support.NettyServletErrorPageManager;
+import com.baffalotech.integration.metrics.LatencyRecorder;
+import com.baffalotech.integration.metrics.LatencyRegistry;
 import com.baffalotech.integration.util.ApplicationContextUtil;
 
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelPipeline;
 import io.netty.handler.codec.http.FullHttpRequest;
-import io.netty.handler.codec.http.HttpRequestDecoder;
-import io.netty.handler.codec.http.HttpServerCodec;
-import io.netty.handler.stream.ChunkedWriteHandler;
 
 /**
  * http任务
@@ -40,10 +40,14 @@ import io.netty.handler.stream.ChunkedWriteHandler;
  */
 public class HttpMessageToServletRunnable implements MessageToRunnable {
 
-    public static final AtomicLong SERVLET_AND_FILTER_TIME = new AtomicLong();
-    public static final AtomicLong SERVLET_QUERY_COUNT = new AtomicLong();
     private NettyServletContext servletContext;
     private IntegrationServerProperties config;
+    //access log的pattern只解析一次，未开启access log时为null
+    private AccessLogGenerator accessLogGenerator;
+    private volatile AccessLogReceiver accessLogReceiver;
+    //connector的名字在创建之后才设置, 第一个请求时获取
+    private volatile LatencyRecorder queueRecorder;
+    private volatile LatencyRecorder serviceRecorder;
 
     private static final AbstractRecycler<HttpRunnable> RECYCLER = new AbstractRecycler<HttpRunnable>() {
         @Override
@@ -55,6 +59,9 @@ public class HttpMessageToServletRunnable implements MessageToRunnable {
     public HttpMessageToServletRunnable(NettyServletContext servletContext, IntegrationServerProperties config) {
         this.servletContext = servletContext;
         this.config = config;
+        if(config.getAccesslog().isEnabled()) {
+            this.accessLogGenerator = AccessLogGenerator.getInstance(config.getAccesslog().getPattern());
+        }
     }
 
     @Override
@@ -70,30 +77,45 @@ public class HttpMessageToServletRunnable implements MessageToRunnable {
                 ByteBufAllocatorX.forceDirectAllocator(context),
                 (FullHttpRequest) msg);;
         instance.properties = config;
-
-        if(instance.httpServletObject.isHttpKeepAlive()){
-            //分段写入, 用于流传输, 防止响应数据过大
-            ChannelPipeline pipeline = context.channel().pipeline();
-            if(pipeline.get(ChunkedWriteHandler.class) == null) {
-                ChannelHandlerContext httpContext = pipeline.context(HttpServerCodec.class);
-                if(httpContext == null){
-                    httpContext = pipeline.context(HttpRequestDecoder.class);
-                }
-                if(httpContext != null) {
-                    pipeline.addAfter(
-                            httpContext.name(), "ChunkedWrite",new ChunkedWriteHandler());
-                }
-            }
+        instance.accessLogGenerator = accessLogGenerator;
+        instance.accessLogReceiver = accessLogGenerator == null ? null : getAccessLogReceiver();
+        if(queueRecorder == null) {
+            String connectorName = servletContext.getServletContextName();
+            serviceRecorder = LatencyRegistry.getDefaultInstance().recorder(LatencyRegistry.CONNECTOR_SERVICE, LatencyRegistry.TAG_CONNECTOR, connectorName);
+            queueRecorder = LatencyRegistry.getDefaultInstance().recorder(LatencyRegistry.CONNECTOR_QUEUE, LatencyRegistry.TAG_CONNECTOR, connectorName);
         }
+        instance.queueRecorder = queueRecorder;
+        instance.serviceRecorder = serviceRecorder;
+        instance.createTime = System.nanoTime();
         return instance;
     }
 
+    /**
+     * receiver在第一个请求时从spring中获取，之后缓存起来
+     * @return
+     */
+    private AccessLogReceiver getAccessLogReceiver() {
+        AccessLogReceiver receiver = accessLogReceiver;
+        if(receiver == null) {
+            receiver = ApplicationContextUtil.getBean(AccessLogReceiver.class);
+            accessLogReceiver = receiver;
+        }
+        return receiver;
+    }
+
     /**
      * http任务
      */
-    public static class HttpRunnable implements Runnable,Recyclable {
+    public static class HttpRunnable implements Runnable,Recyclable,AbstractRecycler.Handled {
         private HttpServletObject httpServletObject;
         private IntegrationServerProperties properties;
+        private AccessLogGenerator accessLogGenerator;
+        private AccessLogReceiver accessLogReceiver;
+        private LatencyRecorder queueRecorder;
+        private LatencyRecorder serviceRecorder;
+        //创建任务时的System.nanoTime(), 到开始执行之间是在线程池队列中等待的时间
+        private long createTime;
+        private AbstractRecycler.Handle recyclerHandle;
 
         @Override
         public void run() {
@@ -101,7 +123,8 @@ public class HttpMessageToServletRunnable implements MessageToRunnable {
             NettyHttpServletResponse httpServletResponse = httpServletObject.getHttpServletResponse();
             Throwable realThrowable = null;
 
-            long beginTime = System.currentTimeMillis();
+            long beginTime = System.nanoTime();
+            queueRecorder.record(beginTime - createTime);
             try {
                 NettyServletRequestDispatcher dispatcher = httpServletRequest.getRequestDispatcher(httpServletRequest.getRequestURI());
                 if (dispatcher == null) {
@@ -116,9 +139,6 @@ public class HttpMessageToServletRunnable implements MessageToRunnable {
                     realThrowable = ((ServletException) throwable).getRootCause();
                 }
             }finally {
-                long totalTime = System.currentTimeMillis() - beginTime;
-                SERVLET_AND_FILTER_TIME.addAndGet(totalTime);
-
                 /*
                  * 错误页的获取依据有两种 1.依据异常类型 2.依据状态码
                  */
@@ -146,11 +166,11 @@ public class HttpMessageToServletRunnable implements MessageToRunnable {
                 if(errorPage != null){
                     errorPageManager.handleErrorPage(errorPage,realThrowable,httpServletRequest,httpServletResponse);
                 }
-                if(properties.getAccesslog().isEnabled()) {
-                	  AccessLogReceiver accessLogReceiver = ApplicationContextUtil.getBean(AccessLogReceiver.class);
-                      AccessLogGenerator accessLogGenerator = new AccessLogGenerator(properties.getAccesslog().getPattern());
-                      long finishTime = System.currentTimeMillis()-beginTime;
-                      String logMessage = accessLogGenerator.generateLog(new Date(), finishTime, new NettyHttpAccessLogVistor(httpServletRequest, httpServletResponse));
+                long serviceTime = System.nanoTime() - beginTime;
+                serviceRecorder.record(serviceTime);
+                if(accessLogGenerator != null) {
+                      long finishTime = TimeUnit.NANOSECONDS.toMillis(serviceTime);
+                      String logMessage = accessLogGenerator.generateLog(finishTime, new NettyHttpAccessLogVistor(httpServletRequest, httpServletResponse));
                       accessLogReceiver.logMessage(logMessage);
                 }
               
@@ -165,25 +185,64 @@ public class HttpMessageToServletRunnable implements MessageToRunnable {
                  */
                 if(httpServletRequest.isAsync()){
                     NettyServletAsyncContext asyncContext = httpServletRequest.getAsyncContext();
-                    //如果异步执行完成, 进行回收
+                    //先标记主线程已经执行结束, 再检查异步是否完成. complete()先改状态再检查这个标记,
+                    //两边至少有一边会触发回收, asyncContext.recycle()保证只回收一次
+                    asyncContext.markIoThreadOverFlag();
                     if(asyncContext.isComplete()){
-                        httpServletObject.recycle();
-                    }else {
-                        //标记主线程已经执行结束
-                        httpServletRequest.getAsyncContext().markIoThreadOverFlag();
+                        asyncContext.recycle();
                     }
                 }else {
                     //不是异步直接回收
                     httpServletObject.recycle();
                 }
                 recycle();
-                SERVLET_QUERY_COUNT.incrementAndGet();
             }
         }
 
+        /**
+         * 请求被拒绝(超过并发上限或者线程池已满), 不执行servlet, 在IO线程中直接返回503并回收
+         * @param retryAfter Retry-After秒数, 小于等于0时不设置
+         */
+        public void reject(int retryAfter) {
+            NettyHttpServletRequest httpServletRequest = httpServletObject.getHttpServletRequest();
+            NettyHttpServletResponse httpServletResponse = httpServletObject.getHttpServletResponse();
+            httpServletResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            httpServletResponse.setContentLength(0);
+            if(retryAfter > 0) {
+                httpServletResponse.setHeader(HttpHeaderConstants.RETRY_AFTER.toString(), String.valueOf(retryAfter));
+            }
+            if(accessLogGenerator != null) {
+                String logMessage = accessLogGenerator.generateLog(0, new NettyHttpAccessLogVistor(httpServletRequest, httpServletResponse));
+                accessLogReceiver.logMessage(logMessage);
+            }
+            try {
+                //输出流是用到时才创建的, 没有输出流回收时不会写出响应
+                httpServletResponse.getOutputStream();
+            } catch (IOException e) {
+                ExceptionUtil.printRootCauseStackTrace(e);
+            }
+            //回收时关闭输出流, 写出响应
+            httpServletObject.recycle();
+            recycle();
+        }
+
+        @Override
+        public AbstractRecycler.Handle getRecyclerHandle() {
+            return recyclerHandle;
+        }
+
+        @Override
+        public void setRecyclerHandle(AbstractRecycler.Handle recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+
         @Override
         public void recycle() {
             httpServletObject = null;
+            accessLogGenerator = null;
+            accessLogReceiver = null;
+            queueRecorder = null;
+            serviceRecorder = null;
             RECYCLER.recycleInstance(HttpRunnable.this);
         }
 
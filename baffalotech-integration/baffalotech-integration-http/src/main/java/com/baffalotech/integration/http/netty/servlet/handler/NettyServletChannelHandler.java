@@ -1,11 +1,13 @@
 package com.baffalotech.integration.http.netty.servlet.handler;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.baffalotech.integration.configuration.IntegrationServerProperties;
+import com.baffalotech.integration.core.AdaptiveConcurrencyLimiter;
 import com.baffalotech.integration.http.netty.core.AbstractChannelHandler;
 import com.baffalotech.integration.http.netty.core.MessageToRunnable;
 import com.baffalotech.integration.http.netty.servlet.NettyHttpServletSession;
@@ -29,6 +31,10 @@ public class NettyServletChannelHandler extends AbstractChannelHandler<Object> {
 
     private Executor dispatcherExecutor;
     private HttpMessageToServletRunnable httpMessageToServletRunnable;
+    //connector的并发上限, 为null时不限制
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    //拒绝请求时返回的Retry-After秒数
+    private int retryAfter;
     public static final AttributeKey<MessageToRunnable> CHANNEL_ATTR_KEY_MESSAGE_TO_RUNNABLE = AttributeKey.valueOf(MessageToRunnable.class + "#Handler-MessageToRunnable");
 
     public NettyServletChannelHandler(NettyServletContext servletContext, IntegrationServerProperties properties,Executor dispatcherExecutor) {
@@ -46,13 +52,81 @@ public class NettyServletChannelHandler extends AbstractChannelHandler<Object> {
         }
 
         Runnable task = messageToRunnable.newRunnable(context,msg);
-        if(dispatcherExecutor != null){
+        AdaptiveConcurrencyLimiter limiter = concurrencyLimiter;
+        if(limiter == null){
+            if(!dispatch(task)){
+                reject(task);
+            }
+            return;
+        }
+        if(!limiter.tryAcquire()){
+            logger.debug("concurrency limit exceeded, reject, limiter={}",limiter);
+            reject(task);
+            return;
+        }
+        //处理耗时包括在线程池队列中等待的时间
+        long acquireTime = System.nanoTime();
+        boolean dispatched = dispatch(() -> {
+            try {
+                task.run();
+            }finally {
+                limiter.release(System.nanoTime() - acquireTime);
+            }
+        });
+        if(!dispatched){
+            limiter.releaseDropped();
+            reject(task);
+        }
+    }
+
+    /**
+     * 交给线程池执行, 没有线程池时在IO线程中执行
+     * @param task
+     * @return false=线程池拒绝
+     */
+    private boolean dispatch(Runnable task) {
+        if(dispatcherExecutor == null){
+            task.run();
+            return true;
+        }
+        try {
             dispatcherExecutor.execute(task);
+            return true;
+        }catch (RejectedExecutionException e){
+            //toString包含线程池或者虚拟线程执行器当前的状态
+            logger.warn("process executor is full, reject, executor={}",dispatcherExecutor);
+            return false;
+        }
+    }
+
+    /**
+     * 拒绝请求, servlet任务直接返回503
+     * @param task
+     */
+    protected void reject(Runnable task) {
+        if(task instanceof HttpMessageToServletRunnable.HttpRunnable){
+            ((HttpMessageToServletRunnable.HttpRunnable) task).reject(retryAfter);
         }else {
-            task.run();
+            throw new RejectedExecutionException("request rejected");
         }
     }
 
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(int retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         saveAndClearSession(ctx);
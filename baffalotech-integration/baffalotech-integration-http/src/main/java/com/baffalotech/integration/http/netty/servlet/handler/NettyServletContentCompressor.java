@@ -0,0 +1,82 @@
+package com.baffalotech.integration.http.netty.servlet.handler;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+
+/**
+ * 响应压缩 (每个连接一个实例)
+ *
+ * 根据请求的Accept-Encoding选择gzip或deflate, 只压缩白名单中的Content-Type,
+ * Content-Length小于阈值的响应和已经设置了Content-Encoding的响应(例如预先压缩的.gz文件)不压缩
+ * @author chijinhuang
+ *
+ */
+public class NettyServletContentCompressor extends HttpContentCompressor {
+
+    private final int minResponseSize;
+    private final Set<String> mimeTypes;
+    //以/*结尾的类型, 例如text/*
+    private final List<String> mimeTypePrefixes;
+
+    /**
+     * @param compressionLevel 压缩级别 1(最快)~9(最小)
+     * @param minResponseSize 小于这个字节数的响应不压缩, 没有Content-Length的响应都压缩
+     * @param mimeTypes 可以压缩的Content-Type
+     */
+    public NettyServletContentCompressor(int compressionLevel, int minResponseSize, String[] mimeTypes) {
+        super(compressionLevel);
+        this.minResponseSize = minResponseSize;
+        this.mimeTypes = new HashSet<>();
+        this.mimeTypePrefixes = new ArrayList<>();
+        for(String mimeType : mimeTypes) {
+            String type = mimeType.trim().toLowerCase(Locale.ENGLISH);
+            if(type.endsWith("/*")) {
+                mimeTypePrefixes.add(type.substring(0, type.length() - 1));
+            }else {
+                this.mimeTypes.add(type);
+            }
+        }
+    }
+
+    @Override
+    protected Result beginEncode(HttpResponse response, String acceptEncoding) throws Exception {
+        HttpHeaders headers = response.headers();
+        if(headers.contains(HttpHeaderNames.CONTENT_ENCODING)) {
+            return null;
+        }
+        long contentLength = HttpUtil.getContentLength(response, -1L);
+        if(contentLength >= 0 && contentLength < minResponseSize) {
+            return null;
+        }
+        if(!isCompressible(headers.get(HttpHeaderNames.CONTENT_TYPE))) {
+            return null;
+        }
+        return super.beginEncode(response, acceptEncoding);
+    }
+
+    private boolean isCompressible(String contentType) {
+        if(contentType == null) {
+            return false;
+        }
+        int end = contentType.indexOf(';');
+        String type = (end < 0 ? contentType : contentType.substring(0, end)).trim().toLowerCase(Locale.ENGLISH);
+        if(mimeTypes.contains(type)) {
+            return true;
+        }
+        for(String prefix : mimeTypePrefixes) {
+            if(type.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,65 @@
+package com.baffalotech.integration.http.netty.servlet.handler;
+
+import java.util.List;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * http2帧过滤 (每个连接和每个流各一个实例)
+ *
+ * 放在Http2MultiplexCodec后面时, 连接上只剩下settings,ping,goaway这些连接级的帧;
+ * 放在流的Http2StreamFrameToHttpObjectCodec后面时, 还会收到window_update,rst_stream这些没有转换成http对象的帧.
+ * 这些帧servlet都不需要, 直接丢弃. h2c升级或者收到h2c连接前言后, 把连接上为http1.1准备的处理器删掉
+ * @author chijinhuang
+ *
+ */
+public class NettyServletHttp2FrameHandler extends ChannelInboundHandlerAdapter {
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if(msg instanceof HttpObject){
+            //流上转换后的请求, 或者还没有升级的http1.1请求
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        ReferenceCountUtil.release(msg);
+    }
+
+    /**
+     * 连接恢复可写时, http2编解码器先flush再把流控挂起的数据写出去, 这部分数据没有flush,
+     * 流的写操作一直不完成, 分段输出就停住了. 这里在它写完之后再flush一次
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if(ctx.channel().isWritable()){
+            ctx.flush();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if(evt instanceof HttpServerUpgradeHandler.UpgradeEvent
+                || evt instanceof CleartextHttp2ServerUpgradeHandler.PriorKnowledgeUpgradeEvent){
+            removeHttp1Handlers(ctx);
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    private void removeHttp1Handlers(ChannelHandlerContext ctx) {
+        ChannelPipeline pipeline = ctx.pipeline();
+        List<String> names = pipeline.names();
+        for(int i = names.indexOf(ctx.name()) + 1; i < names.size(); i++){
+            //已经被删除的跳过
+            if(pipeline.context(names.get(i)) != null){
+                pipeline.remove(names.get(i));
+            }
+        }
+    }
+}
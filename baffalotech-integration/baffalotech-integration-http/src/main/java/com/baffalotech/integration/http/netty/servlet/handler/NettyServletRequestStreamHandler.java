@@ -0,0 +1,131 @@
+package com.baffalotech.integration.http.netty.servlet.handler;
+
+import java.io.IOException;
+
+import com.baffalotech.integration.http.netty.core.util.HttpHeaderUtil;
+import com.baffalotech.integration.http.netty.servlet.NettyServletInputStream;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+
+/**
+ * 请求体流式处理器 (代替HttpObjectAggregator, 每个连接一个实例)
+ *
+ * 收到请求头时就交给servlet处理, 之后收到的HttpContent直接放入请求的输入流,
+ * 不在内存中聚合整个请求体. 输入流缓存过多时会关闭连接的autoRead, 由servlet的读取速度控制接收速度.
+ * 表单请求体在解析参数时会整个读入内存, 长度超过maxFormContentLength时和HttpObjectAggregator一样返回413
+ * @author chijinhuang
+ *
+ */
+public class NettyServletRequestStreamHandler extends ChannelInboundHandlerAdapter {
+
+    private final int highWaterMark;
+    private final int maxFormContentLength;
+    /**
+     * 当前正在接收请求体的输入流
+     */
+    private NettyServletInputStream current;
+    /**
+     * 请求体过大已经返回413, 丢弃之后的内容直到连接关闭
+     */
+    private boolean discarding;
+
+    /**
+     * @param highWaterMark 每个请求最多缓存的请求体字节数
+     * @param maxFormContentLength 表单请求体的最大字节数
+     */
+    public NettyServletRequestStreamHandler(int highWaterMark, int maxFormContentLength) {
+        this.highWaterMark = highWaterMark;
+        this.maxFormContentLength = maxFormContentLength;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if(msg instanceof HttpRequest && !(msg instanceof FullHttpRequest)){
+            HttpRequest request = (HttpRequest) msg;
+            if(isFormTooLarge(request)){
+                //先于100-continue检查, 客户端不用再发送请求体
+                discarding = true;
+                FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, Unpooled.EMPTY_BUFFER);
+                response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+                response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+                ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+                return;
+            }
+            //HttpObjectAggregator会自动回复100-continue, 流式模式下自己回复
+            if(HttpUtil.is100ContinueExpected(request)){
+                ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE, Unpooled.EMPTY_BUFFER));
+                request.headers().remove(HttpHeaderNames.EXPECT);
+            }
+            current = new NettyServletInputStream(ctx.channel(), HttpUtil.getContentLength(request, -1L), highWaterMark);
+            ctx.fireChannelRead(new StreamingHttpRequest(request, current));
+            return;
+        }
+        if(msg instanceof HttpContent){
+            HttpContent content = (HttpContent) msg;
+            try {
+                if(current != null && !discarding){
+                    current.offer(content);
+                }
+            }finally {
+                content.release();
+            }
+            if(msg instanceof LastHttpContent){
+                current = null;
+            }
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    /**
+     * 解析参数时表单请求体要整个读入内存, 按请求头中的长度检查, 解码器保证请求体不会超过这个长度
+     */
+    private boolean isFormTooLarge(HttpRequest request) {
+        return HttpMethod.POST.equals(request.method())
+                && HttpHeaderUtil.isFormUrlEncoder(request.headers().get(HttpHeaderNames.CONTENT_TYPE))
+                && HttpUtil.getContentLength(request, -1L) > maxFormContentLength;
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if(current != null){
+            current.abort(new IOException("连接已断开, 请求体不完整"));
+            current = null;
+        }
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * 请求体通过输入流读取的请求, content为空
+     */
+    public static class StreamingHttpRequest extends DefaultFullHttpRequest {
+        private final NettyServletInputStream inputStream;
+
+        private StreamingHttpRequest(HttpRequest request, NettyServletInputStream inputStream) {
+            super(request.protocolVersion(), request.method(), request.uri(), Unpooled.EMPTY_BUFFER, request.headers(), EmptyHttpHeaders.INSTANCE);
+            setDecoderResult(request.decoderResult());
+            this.inputStream = inputStream;
+        }
+
+        public NettyServletInputStream getInputStream() {
+            return inputStream;
+        }
+    }
+}
@@ -23,7 +23,7 @@ import io.netty.util.AttributeKey;
  * @author acer01
  *  2018/8/1/001
  */
-public class HttpServletObject implements Recyclable{
+public class HttpServletObject implements Recyclable,AbstractRecycler.Handled{
 
     private static final AbstractRecycler<HttpServletObject> RECYCLER = new AbstractRecycler<HttpServletObject>() {
         @Override
@@ -31,6 +31,8 @@ public class HttpServletObject implements Recyclable{
             return new HttpServletObject();
         }
     };
+    private AbstractRecycler.Handle recyclerHandle;
+
     private static final AttributeKey<NettyHttpServletSession> CHANNEL_ATTR_KEY_SESSION = AttributeKey.valueOf(NettyHttpServletSession.class + "#ServletHttpSession");
 
     private NettyHttpServletRequest httpServletRequest;
@@ -150,6 +152,16 @@ public class HttpServletObject implements Recyclable{
         return config;
     }
 
+    @Override
+    public AbstractRecycler.Handle getRecyclerHandle() {
+        return recyclerHandle;
+    }
+
+    @Override
+    public void setRecyclerHandle(AbstractRecycler.Handle recyclerHandle) {
+        this.recyclerHandle = recyclerHandle;
+    }
+
     /**
      * 回收servlet对象
      */
@@ -185,6 +185,36 @@ public class ResourceManager {
         return null;
     }
 
+    /**
+     * 获取文件
+     * @param path 相对路径
+     * @return 文件, 不存在或者是目录时返回null
+     */
+    public File getFile(String path) {
+        if (path.isEmpty() || path.charAt(0) != '/') {
+            return null;
+        }
+        File file = new File(getRealPath(path));
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * 获取预先压缩好的gzip文件 (原文件路径加.gz)
+     * @param path 原文件的相对路径
+     * @return gzip文件, 不存在或者比原文件旧时返回null
+     */
+    public File getPrecompressedFile(String path) {
+        File file = getFile(path);
+        if (file == null) {
+            return null;
+        }
+        File gzipFile = new File(file.getPath().concat(".gz"));
+        if (!gzipFile.isFile() || gzipFile.lastModified() < file.lastModified()) {
+            return null;
+        }
+        return gzipFile;
+    }
+
     /**
      * 获取数据输入流
      * @param path 路径
@@ -1,12 +1,16 @@
 package com.baffalotech.integration.http.netty.session;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.baffalotech.integration.http.netty.core.util.NamespaceUtil;
-import com.baffalotech.integration.http.netty.servlet.support.ResourceManager;
+import com.baffalotech.integration.http.netty.core.util.ThreadPoolX;
 
 /**
  *  组合会话服务
@@ -17,19 +21,40 @@ public class CompositeSessionServiceImpl implements SessionService {
     private static final Logger logger = LoggerFactory.getLogger(CompositeSessionServiceImpl.class);
     private String name = NamespaceUtil.newIdName(getClass());
 
-    private SessionService sessionService;
+    private volatile SessionService sessionService;
+    private Supplier<ScheduledExecutorService> schedulerSupplier;
 
     public CompositeSessionServiceImpl() {
+        this(ThreadPoolX::getDefaultInstance);
+    }
+
+    public CompositeSessionServiceImpl(ScheduledExecutorService scheduler) {
+        this(() -> scheduler);
+    }
+
+    /**
+     * @param schedulerSupplier 本地会话执行过期检查的调度线程, 容器重启后重新获取
+     */
+    public CompositeSessionServiceImpl(Supplier<ScheduledExecutorService> schedulerSupplier) {
+        this.schedulerSupplier = schedulerSupplier;
     }
 
     public void enableLocalMemorySession(){
         removeSessionService();
-        this.sessionService = new LocalMemorySessionServiceImpl();
+        this.sessionService = new LocalMemorySessionServiceImpl(schedulerSupplier);
     }
 
-    public void enableLocalFileSession(ResourceManager resourceManager){
+    /**
+     * 使用本地文件会话
+     * @param directory 段文件所在的目录, 不能在返回静态文件的目录下
+     */
+    public void enableLocalFileSession(File directory){
         removeSessionService();
-        this.sessionService = new LocalFileSessionServiceImpl(resourceManager);
+        try {
+            this.sessionService = new MappedFileSessionServiceImpl(directory, schedulerSupplier.get());
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
     }
 
     public void removeSessionService(){
@@ -38,7 +63,9 @@ public class CompositeSessionServiceImpl implements SessionService {
         }
         try {
             if (sessionService instanceof LocalMemorySessionServiceImpl) {
-                ((LocalMemorySessionServiceImpl) sessionService).getSessionInvalidThread().interrupt();
+                ((LocalMemorySessionServiceImpl) sessionService).shutdown();
+            } else if (sessionService instanceof MappedFileSessionServiceImpl) {
+                ((MappedFileSessionServiceImpl) sessionService).shutdown();
             } else if (sessionService instanceof LocalFileSessionServiceImpl) {
                 ((LocalFileSessionServiceImpl) sessionService).getSessionInvalidThread().interrupt();
             }
@@ -48,6 +75,30 @@ public class CompositeSessionServiceImpl implements SessionService {
         sessionService = null;
     }
 
+    /**
+     * 服务启动时在当前的调度线程上重新开始过期检查
+     */
+    public void start(){
+        SessionService current = sessionService;
+        if (current instanceof LocalMemorySessionServiceImpl) {
+            ((LocalMemorySessionServiceImpl) current).start();
+        } else if (current instanceof MappedFileSessionServiceImpl) {
+            ((MappedFileSessionServiceImpl) current).start(schedulerSupplier.get());
+        }
+    }
+
+    /**
+     * 服务停止时停止过期检查, 容器的调度线程随后关闭, session保留到再次启动
+     */
+    public void stop(){
+        SessionService current = sessionService;
+        if (current instanceof LocalMemorySessionServiceImpl) {
+            ((LocalMemorySessionServiceImpl) current).shutdown();
+        } else if (current instanceof MappedFileSessionServiceImpl) {
+            ((MappedFileSessionServiceImpl) current).shutdown();
+        }
+    }
+
     @Override
     public void saveSession(Session session) {
         try {
@@ -25,7 +25,9 @@ import com.baffalotech.integration.http.netty.servlet.support.ResourceManager;
  * 本地文件会话服务
  * @author acer01
  * 2018/8/19/019
+ * @deprecated 每个session一个文件, 过期检查要读取所有文件, 使用{@link MappedFileSessionServiceImpl}
  */
+@Deprecated
 public class LocalFileSessionServiceImpl implements SessionService {
 
     private String name = NamespaceUtil.newIdName(getClass());
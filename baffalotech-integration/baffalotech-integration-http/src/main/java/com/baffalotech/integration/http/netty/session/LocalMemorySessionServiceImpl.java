@@ -4,11 +4,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.RandomAccess;
 import java.util.concurrent.ConcurrentHashMap;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
 
 import com.baffalotech.integration.http.netty.core.util.NamespaceUtil;
+import com.baffalotech.integration.http.netty.core.util.ThreadPoolX;
 
 /**
  * 本地内存会话服务
@@ -19,17 +19,36 @@ public class LocalMemorySessionServiceImpl implements SessionService {
 
     private String name = NamespaceUtil.newIdName(getClass());
     private Map<String,Session> sessionMap;
-    private SessionInvalidThread sessionInvalidThread;
+    private SessionExpiryWheel expiryWheel;
+    private Supplier<ScheduledExecutorService> schedulerSupplier;
 
     public LocalMemorySessionServiceImpl() {
-        this(new ConcurrentHashMap<>(256));
+        this(ThreadPoolX::getDefaultInstance);
+    }
+
+    public LocalMemorySessionServiceImpl(ScheduledExecutorService scheduler) {
+        this(new ConcurrentHashMap<>(256), scheduler);
+    }
+
+    public LocalMemorySessionServiceImpl(Supplier<ScheduledExecutorService> schedulerSupplier) {
+        this(new ConcurrentHashMap<>(256), schedulerSupplier);
+    }
+
+    public LocalMemorySessionServiceImpl(Map<String, Session> sessionMap, ScheduledExecutorService scheduler) {
+        this(sessionMap, () -> scheduler);
     }
 
-    public LocalMemorySessionServiceImpl(Map<String, Session> sessionMap) {
+    /**
+     * @param sessionMap 保存session的map
+     * @param schedulerSupplier 执行过期检查的调度线程, 使用容器共用的调度线程, 不再单独创建线程.
+     *        容器重启后调度线程是新的, start时重新获取
+     */
+    public LocalMemorySessionServiceImpl(Map<String, Session> sessionMap, Supplier<ScheduledExecutorService> schedulerSupplier) {
         this.sessionMap = sessionMap;
-        //20秒检查一次过期session
-        this.sessionInvalidThread = new SessionInvalidThread(20 * 1000);
-        this.sessionInvalidThread.start();
+        this.schedulerSupplier = schedulerSupplier;
+        //按最后访问时间过期, 每秒只检查到期的格子, 不再遍历所有session
+        this.expiryWheel = new SessionExpiryWheel(sessionMap);
+        start();
     }
 
     @Override
@@ -38,6 +57,7 @@ public class LocalMemorySessionServiceImpl implements SessionService {
             return;
         }
         sessionMap.put(session.getId(),session);
+        expiryWheel.schedule(session);
     }
 
     @Override
@@ -69,9 +89,12 @@ public class LocalMemorySessionServiceImpl implements SessionService {
     public Session getSession(String sessionId) {
         Session session = sessionMap.get(sessionId);
         if(session != null && session.isValid()){
+            session.setLastAccessedTime(System.currentTimeMillis());
             return session;
         }
-        sessionMap.remove(sessionId);
+        if(session != null) {
+            sessionMap.remove(sessionId, session);
+        }
         return null;
     }
 
@@ -79,7 +102,9 @@ public class LocalMemorySessionServiceImpl implements SessionService {
     public void changeSessionId(String oldSessionId, String newSessionId) {
         Session session = sessionMap.remove(oldSessionId);
         if(session != null && session.isValid()){
+            session.setId(newSessionId);
             sessionMap.put(newSessionId,session);
+            expiryWheel.schedule(session);
         }
     }
 
@@ -94,43 +119,16 @@ public class LocalMemorySessionServiceImpl implements SessionService {
     }
 
     /**
-     * session过期检测线程
-     * @return
+     * 在当前的调度线程上开始过期检查, 已经开始时先停止原来的任务
      */
-    public SessionInvalidThread getSessionInvalidThread() {
-        return sessionInvalidThread;
+    public void start() {
+        expiryWheel.start(schedulerSupplier.get());
     }
 
     /**
-     * 超时的Session无效化，定期执行
+     * 停止过期检查, 保留已有的session, 可以再次start
      */
-    class SessionInvalidThread extends Thread {
-        private final Logger logger = LoggerFactory.getLogger(SessionInvalidThread.class);
-        private final long sessionLifeCheckInter;
-
-        private SessionInvalidThread(long sessionLifeCheckInter) {
-            super("NettyX-" + NamespaceUtil.newIdName(SessionInvalidThread.class));
-            this.sessionLifeCheckInter = sessionLifeCheckInter;
-        }
-
-        @Override
-        public void run() {
-            logger.info("LocalMemorySession CheckInvalidSessionThread has been started...");
-            while(true){
-                try {
-                    Thread.sleep(sessionLifeCheckInter);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                    return;
-                }
-                for(Session session : sessionMap.values()){
-                    if(!session.isValid()){
-                        String id = session.getId();
-                        logger.info("NettyX - Session(ID="+id+") is invalidated by Session Manager");
-                        sessionMap.remove(id);
-                    }
-                }
-            }
-        }
+    public void shutdown() {
+        expiryWheel.stop();
     }
 }
@@ -0,0 +1,642 @@
+package com.baffalotech.integration.http.netty.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baffalotech.integration.http.netty.core.util.NamespaceUtil;
+
+/**
+ * <pre>
+ * 本地文件会话服务, 所有session追加写到内存映射的段文件中
+ *
+ * 内存中保存 id -> (段文件, 位置, 过期时间) 的索引:
+ *     保存 : 序列化后追加到当前段文件, 更新索引
+ *     读取 : 按索引直接从映射的内存中反序列化
+ *     删除 : 追加一条删除记录, 重启时不会恢复已经删除的session
+ *     过期 : 每个session一个按过期时间排序的检查, 只检查到期的, 期间访问过的按新的过期时间放回
+ * 后台定期压缩无效数据超过一半的段文件, 把有效的记录复制到当前段文件后删除旧文件.
+ * 旧文件解除映射并且删除成功后才从列表中去掉, 在此之前后面的段文件中的删除记录仍然保留, 删除失败时下次再删除.
+ * 启动时按顺序扫描所有段文件重建索引, 只读取记录头, 不反序列化session的内容.
+ *
+ * 写入内存映射后进程退出不会丢数据, 操作系统崩溃或者断电时可能丢失最后写入的记录,
+ * 恢复时通过校验码丢弃写了一半的记录
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+public class MappedFileSessionServiceImpl implements SessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedFileSessionServiceImpl.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    /** 过期检查和压缩的间隔 */
+    public static final long DEFAULT_MAINTAIN_INTERVAL_MILLIS = 10 * 1000;
+    /** 无效数据超过这个比例时压缩 */
+    private static final double COMPACT_RATIO = 0.5;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private String name = NamespaceUtil.newIdName(getClass());
+    private final File directory;
+    private final int segmentSize;
+    private final Map<String, IndexEntry> index = new ConcurrentHashMap<>(256);
+    // 追加记录、切换段文件、修改索引的位置和过期检查时加锁, 读取不加锁
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // 按到期时间排序的过期检查, 每个session一个, 重新保存时转给新的索引
+    private final PriorityQueue<ExpiryTicket> expiryQueue = new PriorityQueue<>(256, Comparator.comparingLong(ticket -> ticket.dueTime));
+    // 按顺序排列, 最后一个是当前写入的段文件
+    private final List<SessionLogSegment> segments = new ArrayList<>();
+    private SessionLogSegment activeSegment;
+    private volatile ScheduledFuture<?> maintainFuture;
+
+    /**
+     * @param directory 段文件所在的目录, 不能在返回静态文件的目录下
+     * @param scheduler 执行过期检查和压缩的调度线程
+     * @throws IOException
+     */
+    public MappedFileSessionServiceImpl(File directory, ScheduledExecutorService scheduler) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, scheduler);
+    }
+
+    /**
+     * @param directory 段文件所在的目录
+     * @param segmentSize 每个段文件的大小, 一个session序列化后不能超过这个大小
+     * @param scheduler 执行过期检查和压缩的调度线程
+     * @throws IOException
+     */
+    public MappedFileSessionServiceImpl(File directory, int segmentSize, ScheduledExecutorService scheduler) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can not create session directory " + directory);
+        }
+        recover();
+        if (scheduler != null) {
+            start(scheduler);
+        }
+    }
+
+    /**
+     * 在调度线程上定期执行过期检查和压缩, 已经开始时先停止原来的任务
+     * @param scheduler
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        cancelMaintain();
+        this.maintainFuture = scheduler.scheduleWithFixedDelay(this::maintain, DEFAULT_MAINTAIN_INTERVAL_MILLIS,
+                DEFAULT_MAINTAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void cancelMaintain() {
+        ScheduledFuture<?> future = maintainFuture;
+        if (future != null) {
+            future.cancel(false);
+            maintainFuture = null;
+        }
+    }
+
+    @Override
+    public void saveSession(Session session) {
+        if (session == null) {
+            return;
+        }
+        try {
+            // 序列化不加锁
+            byte[] record = encode(session);
+            writeLock.lock();
+            try {
+                put(session.getId(), append(record));
+            } finally {
+                writeLock.unlock();
+            }
+        } catch (IOException e) {
+            logger.warn("saveSession error {}. case:{}", session, e.toString());
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void removeSession(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            IndexEntry old = index.remove(sessionId);
+            if (old == null) {
+                // 不在索引中的session已经过期或者删除, 文件中的记录重启时也不会恢复
+                return;
+            }
+            old.segment.addDeadBytes(old.length);
+            IndexEntry tombstone = append(encodeRemove(sessionId));
+            // 删除记录只用来覆盖前面的段文件中的记录, 本身不算有效数据
+            tombstone.segment.addDeadBytes(tombstone.length);
+        } catch (IOException e) {
+            logger.warn("removeSession error id={}. case:{}", sessionId, e.toString());
+            throw new RuntimeException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeSessionBatch(List<String> sessionIdList) {
+        if(sessionIdList == null || sessionIdList.isEmpty()){
+            return;
+        }
+
+        //减少创建迭代器
+        if(sessionIdList instanceof RandomAccess){
+            int size = sessionIdList.size();
+            for(int i=0; i<size; i++){
+                removeSession(sessionIdList.get(i));
+            }
+        }else {
+            for(String id : sessionIdList){
+                removeSession(id);
+            }
+        }
+    }
+
+    @Override
+    public Session getSession(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        IndexEntry entry;
+        byte[] record;
+        do {
+            entry = index.get(sessionId);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiryTime <= now) {
+                expire(sessionId, entry);
+                return null;
+            }
+            // 段文件压缩后已经关闭时, 记录已经移到后面的段文件, 重新读取索引
+            record = entry.segment.copy(entry.offset, entry.length);
+        } while (record == null);
+        Session session;
+        try {
+            session = decode(record);
+        } catch (IOException e) {
+            logger.warn("getSession error id={}. case:{}", sessionId, e.toString());
+            throw new RuntimeException(e);
+        }
+        // 按最后访问时间过期, 只修改内存中的过期时间, 下次保存时写入文件
+        session.setLastAccessedTime(now);
+        if (session.getMaxInactiveInterval() > 0) {
+            entry.expiryTime = session.getExpiryTime();
+        }
+        return session;
+    }
+
+    @Override
+    public void changeSessionId(String oldSessionId, String newSessionId) {
+        Session session = getSession(oldSessionId);
+        if (session == null) {
+            return;
+        }
+        session.setId(newSessionId);
+        saveSession(session);
+        removeSession(oldSessionId);
+    }
+
+    @Override
+    public int count() {
+        return index.size();
+    }
+
+    /**
+     * 还没有删除的段文件, 按顺序排列
+     */
+    List<SessionLogSegment> getSegments() {
+        writeLock.lock();
+        try {
+            return new ArrayList<>(segments);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 停止后台任务, 把映射的内存写到磁盘
+     */
+    public void shutdown() {
+        cancelMaintain();
+        writeLock.lock();
+        try {
+            for (SessionLogSegment segment : segments) {
+                segment.force();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 删除过期的索引, 压缩段文件
+     */
+    public void maintain() {
+        try {
+            int expired = expireDue(System.currentTimeMillis());
+            if (expired > 0 && logger.isDebugEnabled()) {
+                logger.debug("{} sessions expired, remaining {}", expired, index.size());
+            }
+            compact();
+        } catch (Throwable e) {
+            // 不能抛出异常, 否则调度器不再执行
+            logger.warn("session maintain error case:{}", e.toString());
+        }
+    }
+
+    /**
+     * 只检查到期的session, 期间访问过的按新的过期时间放回
+     * @param now
+     * @return 删除的session数
+     */
+    private int expireDue(long now) {
+        int expired = 0;
+        for (;;) {
+            writeLock.lock();
+            try {
+                ExpiryTicket ticket = expiryQueue.peek();
+                if (ticket == null || ticket.dueTime > now) {
+                    return expired;
+                }
+                expiryQueue.poll();
+                IndexEntry entry = index.get(ticket.id);
+                if (entry == null || entry.ticket != ticket) {
+                    // 已经删除, 或者删除后重新保存时有了新的检查
+                    continue;
+                }
+                if (entry.expiryTime <= now) {
+                    if (expire(ticket.id, entry)) {
+                        expired++;
+                    }
+                } else if (entry.expiryTime == Long.MAX_VALUE) {
+                    // 改成不过期
+                    entry.ticket = null;
+                } else {
+                    ticket.dueTime = entry.expiryTime;
+                    expiryQueue.add(ticket);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 更新索引, 原来的记录算作无效数据, 过期检查转给新的索引, 调用方加锁
+     */
+    private void put(String sessionId, IndexEntry entry) {
+        IndexEntry old = index.put(sessionId, entry);
+        if (old != null) {
+            old.segment.addDeadBytes(old.length);
+            entry.ticket = old.ticket;
+        }
+        if (entry.ticket == null && entry.expiryTime != Long.MAX_VALUE) {
+            entry.ticket = new ExpiryTicket(sessionId, entry.expiryTime);
+            expiryQueue.add(entry.ticket);
+        }
+    }
+
+    private boolean expire(String sessionId, IndexEntry entry) {
+        // 过期不需要写删除记录, 文件中记录的过期时间不会晚于内存中的
+        if (index.remove(sessionId, entry)) {
+            entry.segment.addDeadBytes(entry.length);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 无效数据超过一半的段文件, 把有效的记录复制到当前段文件后删除, 之前没有删除成功的再删除一次
+     * @throws IOException
+     */
+    void compact() throws IOException {
+        List<SessionLogSegment> candidates = new ArrayList<>();
+        writeLock.lock();
+        try {
+            for (SessionLogSegment segment : segments) {
+                if (segment != activeSegment && (segment.isCompacted()
+                        || segment.getDeadBytes() >= segment.getWritePosition() * COMPACT_RATIO)) {
+                    candidates.add(segment);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        for (SessionLogSegment segment : candidates) {
+            if (!segment.isCompacted()) {
+                compact(segment);
+            }
+            delete(segment);
+        }
+    }
+
+    /**
+     * 解除映射后删除文件, 删除成功后才从列表中去掉. 还有线程在读取或者删除失败时保留, 下次再删除
+     */
+    private void delete(SessionLogSegment segment) {
+        segment.close();
+        if (!segment.isUnmapped()) {
+            return;
+        }
+        if (!segment.delete()) {
+            logger.warn("can not delete session segment {}, retry later", segment.getFile());
+            return;
+        }
+        writeLock.lock();
+        try {
+            segments.remove(segment);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void compact(SessionLogSegment segment) throws IOException {
+        long now = System.currentTimeMillis();
+        int[] moved = new int[1];
+        segment.scan((source, offset, length) -> {
+            String id = source.getId(offset);
+            if (source.getType(offset) == SessionLogSegment.TYPE_REMOVE) {
+                copyTombstone(source, id, offset, length);
+                return;
+            }
+            IndexEntry entry = index.get(id);
+            if (entry == null || entry.segment != source || entry.offset != offset) {
+                return;
+            }
+            if (entry.expiryTime <= now) {
+                expire(id, entry);
+                return;
+            }
+            writeLock.lock();
+            try {
+                if (index.get(id) != entry) {
+                    return;
+                }
+                byte[] record = source.copy(offset, length);
+                // 过期时间按内存中的更新
+                ByteBuffer.wrap(record).putLong(SessionLogSegment.EXPIRY_OFFSET, entry.expiryTime);
+                SessionLogSegment.seal(record);
+                IndexEntry copy = append(record);
+                copy.expiryTime = entry.expiryTime;
+                put(id, copy);
+                moved[0]++;
+            } finally {
+                writeLock.unlock();
+            }
+        });
+        segment.setCompacted(true);
+        if (logger.isDebugEnabled()) {
+            logger.debug("compacted {}, moved {} sessions", segment, moved[0]);
+        }
+    }
+
+    /**
+     * 删除记录只在前面还有段文件时需要保留, 这些段文件中可能还有这个session
+     */
+    private void copyTombstone(SessionLogSegment source, String id, int offset, int length) {
+        writeLock.lock();
+        try {
+            if (segments.isEmpty() || segments.get(0) == source || index.containsKey(id)) {
+                // 最早的段文件, 或者已经重新保存过, 新的记录会覆盖前面的
+                return;
+            }
+            IndexEntry tombstone = append(source.copy(offset, length));
+            tombstone.segment.addDeadBytes(tombstone.length);
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 追加到当前段文件, 空间不够时新建段文件, 调用方加锁
+     */
+    private IndexEntry append(byte[] record) throws IOException {
+        if (record.length > segmentSize) {
+            throw new IOException("session record too large : " + record.length + " > " + segmentSize);
+        }
+        int offset = activeSegment.append(record);
+        if (offset < 0) {
+            activeSegment = newSegment(activeSegment.getSequence() + 1);
+            offset = activeSegment.append(record);
+        }
+        IndexEntry entry = new IndexEntry(activeSegment, offset, record.length);
+        entry.expiryTime = ByteBuffer.wrap(record).getLong(SessionLogSegment.EXPIRY_OFFSET);
+        return entry;
+    }
+
+    private SessionLogSegment newSegment(long sequence) throws IOException {
+        File file = new File(directory, SEGMENT_PREFIX + String.format("%016x", sequence) + SEGMENT_SUFFIX);
+        SessionLogSegment segment = new SessionLogSegment(file, sequence, segmentSize);
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * 按顺序扫描所有段文件重建索引, 后面的记录覆盖前面的
+     * @throws IOException
+     */
+    private void recover() throws IOException {
+        long begin = System.currentTimeMillis();
+        File[] files = directory.listFiles((dir, fileName) -> fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files);
+        long now = System.currentTimeMillis();
+        SessionLogSegment.RecordVisitor visitor = (segment, offset, length) -> {
+            String id = segment.getId(offset);
+            if (segment.getType(offset) == SessionLogSegment.TYPE_REMOVE) {
+                segment.addDeadBytes(length);
+                IndexEntry old = index.remove(id);
+                if (old != null) {
+                    old.segment.addDeadBytes(old.length);
+                }
+                return;
+            }
+            long expiryTime = segment.getExpiryTime(offset);
+            if (expiryTime <= now) {
+                segment.addDeadBytes(length);
+                IndexEntry old = index.remove(id);
+                if (old != null) {
+                    old.segment.addDeadBytes(old.length);
+                }
+                return;
+            }
+            IndexEntry entry = new IndexEntry(segment, offset, length);
+            entry.expiryTime = expiryTime;
+            put(id, entry);
+        };
+        for (File file : files) {
+            String fileName = file.getName();
+            long sequence = Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()), 16);
+            SessionLogSegment segment = new SessionLogSegment(file, sequence, segmentSize);
+            if (segment.scan(visitor)) {
+                logger.warn("session segment {} is truncated at {}", fileName, segment.getWritePosition());
+            }
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            activeSegment = newSegment(0);
+        } else {
+            activeSegment = segments.get(segments.size() - 1);
+        }
+        logger.info("recovered {} sessions from {} segments in {}ms", index.size(), segments.size(),
+                System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 序列化session, 格式见{@link SessionLogSegment}
+     */
+    static byte[] encode(Session session) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(0);
+        out.writeByte(SessionLogSegment.TYPE_PUT);
+        // 不过期的session记录最大值
+        out.writeLong(session.getMaxInactiveInterval() <= 0 ? Long.MAX_VALUE : session.getExpiryTime());
+        out.writeUTF(session.getId());
+        out.writeLong(session.getCreationTime());
+        out.writeLong(session.getLastAccessedTime());
+        out.writeInt(session.getMaxInactiveInterval());
+        out.writeInt(session.getAccessCount());
+
+        Map<String,Object> attributeMap = session.getAttributeMap();
+        int attributeSize = 0;
+        if(attributeMap != null) {
+            for (Object value : attributeMap.values()) {
+                if (value instanceof Serializable) {
+                    attributeSize++;
+                }
+            }
+        }
+        out.writeInt(attributeSize);
+        if(attributeSize > 0) {
+            ObjectOutputStream objectOutputStream = new ObjectOutputStream(out);
+            for (Map.Entry<String,Object> entry : attributeMap.entrySet()){
+                Object value = entry.getValue();
+                if (value instanceof Serializable) {
+                    objectOutputStream.writeUTF(entry.getKey());
+                    objectOutputStream.writeObject(value);
+                }
+            }
+            objectOutputStream.flush();
+        }
+        out.flush();
+        byte[] record = bytes.toByteArray();
+        SessionLogSegment.seal(record);
+        return record;
+    }
+
+    static byte[] encodeRemove(String sessionId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(0);
+        out.writeByte(SessionLogSegment.TYPE_REMOVE);
+        out.writeLong(0);
+        out.writeUTF(sessionId);
+        out.flush();
+        byte[] record = bytes.toByteArray();
+        SessionLogSegment.seal(record);
+        return record;
+    }
+
+    static Session decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, SessionLogSegment.ID_OFFSET,
+                record.length - SessionLogSegment.ID_OFFSET));
+        Session session = new Session();
+        session.setId(in.readUTF());
+        session.setCreationTime(in.readLong());
+        session.setLastAccessedTime(in.readLong());
+        session.setMaxInactiveInterval(in.readInt());
+        session.setAccessCount(in.readInt());
+
+        int attributeSize = in.readInt();
+        if(attributeSize > 0) {
+            ObjectInputStream ois = new ObjectInputStream(in);
+            Map<String, Object> attributeMap = new ConcurrentHashMap<>(6);
+            for(int i = 0; i< attributeSize; i++){
+                String key = ois.readUTF();
+                Object value = null;
+                try {
+                    value = ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    logger.warn("getSession readObject error {}. case:{}",session,e.toString());
+                }
+                if (value != null) {
+                    attributeMap.put(key,value);
+                }
+            }
+            session.setAttributeMap(attributeMap);
+        }
+        return session;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * 索引, 位置不变, 过期时间随访问更新
+     */
+    private static final class IndexEntry {
+        final SessionLogSegment segment;
+        final int offset;
+        final int length;
+        volatile long expiryTime;
+        // 加锁时读写
+        ExpiryTicket ticket;
+
+        IndexEntry(SessionLogSegment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * 过期检查, 只在不在队列中时修改到期时间
+     */
+    private static final class ExpiryTicket {
+        final String id;
+        long dueTime;
+
+        ExpiryTicket(String id, long dueTime) {
+            this.id = id;
+            this.dueTime = dueTime;
+        }
+    }
+}
@@ -22,6 +22,15 @@ public class Session implements Serializable{
     private int maxInactiveInterval;
     private int accessCount;
 
+    /**
+     * 过期时间轮中的下一个节点, 由SessionExpiryWheel维护
+     */
+    transient Session expiryNext;
+    /**
+     * 1=已经在过期时间轮中
+     */
+    transient volatile int expiryScheduled;
+
     public Session() {
     }
 
@@ -30,11 +39,19 @@ public class Session implements Serializable{
     }
 
     /**
-     * 是否有效
+     * 是否有效, 从最后访问时间开始计算, maxInactiveInterval小于等于0时不过期
      * @return true 有效, false无效
      */
     public boolean isValid() {
-        return System.currentTimeMillis() < (creationTime + (maxInactiveInterval * 1000));
+        return maxInactiveInterval <= 0 || System.currentTimeMillis() < getExpiryTime();
+    }
+
+    /**
+     * 过期的时间点 (毫秒)
+     * @return
+     */
+    public long getExpiryTime() {
+        return lastAccessedTime + maxInactiveInterval * 1000L;
     }
 
     public String getId() {
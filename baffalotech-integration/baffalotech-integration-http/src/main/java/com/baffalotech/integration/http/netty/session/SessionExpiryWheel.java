@@ -0,0 +1,182 @@
+package com.baffalotech.integration.http.netty.session;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <pre>
+ * session过期的时间轮, 按最后访问时间过期
+ *
+ * 每个格子是一个无锁的单向链表, 链表节点就是Session本身(Session.expiryNext), 不额外创建对象.
+ * 访问session时只更新最后访问时间, 不移动位置; 格子到期时逐个检查：
+ *         已经从map中删除或者被替换 : 丢弃
+ *         已经过期 : 从map中删除
+ *         还没有过期(期间被访问过) : 按新的过期时间放回对应的格子
+ * 每个session在一次过期前最多被检查 (空闲时间 / 时间轮一圈的时间 + 访问后的重新放入) 次, 均摊O(1)
+ *
+ * 格子只在调度线程中取出, 放入可以在任意线程. 放入的同时这个格子刚好被取出时要等下一圈才检查,
+ * 只会晚删除, getSession时仍然会检查是否过期
+ *
+ * 丢弃时先清除标记再检查一次map, 检查之前保存的session在这里重新放入, 之后保存的由schedule放入
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+public class SessionExpiryWheel implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionExpiryWheel.class);
+
+    public static final long DEFAULT_TICK_MILLIS = 1000;
+    // 1秒一格时一圈68分钟, 超过一圈的session先放到最后一格, 到时再放回去
+    public static final int DEFAULT_WHEEL_SIZE = 4096;
+
+    private static final AtomicIntegerFieldUpdater<Session> SCHEDULED_UPDATER = AtomicIntegerFieldUpdater
+            .newUpdater(Session.class, "expiryScheduled");
+
+    private final Map<String, Session> sessionMap;
+    private final long tickMillis;
+    private final int mask;
+    private final AtomicReferenceArray<Session> buckets;
+    // 已经处理完的格子(绝对值, 不取模)
+    private volatile long processedTick;
+    private volatile ScheduledFuture<?> future;
+
+    public SessionExpiryWheel(Map<String, Session> sessionMap) {
+        this(sessionMap, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param sessionMap 过期时从这个map中删除
+     * @param tickMillis 每格的毫秒数, 也是过期的精度
+     * @param wheelSize 格子数, 2的幂
+     */
+    public SessionExpiryWheel(Map<String, Session> sessionMap, long tickMillis, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of 2 : " + wheelSize);
+        }
+        this.sessionMap = sessionMap;
+        this.tickMillis = tickMillis;
+        this.mask = wheelSize - 1;
+        this.buckets = new AtomicReferenceArray<Session>(wheelSize);
+        this.processedTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    /**
+     * 在调度器上每格执行一次
+     * @param scheduler 容器共用的调度线程
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        stop();
+        future = scheduler.scheduleWithFixedDelay(this, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        ScheduledFuture<?> current = future;
+        if (current != null) {
+            current.cancel(false);
+            future = null;
+        }
+    }
+
+    /**
+     * 保存session时调用, 已经在时间轮中的session不会重复放入
+     * @param session
+     */
+    public void schedule(Session session) {
+        if (session.getMaxInactiveInterval() <= 0) {
+            // 不过期
+            return;
+        }
+        if (SCHEDULED_UPDATER.compareAndSet(session, 0, 1)) {
+            push(session);
+        }
+    }
+
+    private void push(Session session) {
+        long deadlineTick = (session.getExpiryTime() + tickMillis - 1) / tickMillis;
+        long current = processedTick;
+        // 已经到期的放到下一格, 超过一圈的放到最后一格
+        long tick = Math.min(Math.max(deadlineTick, current + 1), current + mask);
+        int index = (int) (tick & mask);
+        Session head;
+        do {
+            head = buckets.get(index);
+            session.expiryNext = head;
+        } while (!buckets.compareAndSet(index, head, session));
+    }
+
+    @Override
+    public void run() {
+        try {
+            long now = System.currentTimeMillis();
+            long nowTick = now / tickMillis;
+            long tick = processedTick;
+            // 落后超过一圈时每个格子处理一次就够了
+            if (nowTick - tick > mask + 1) {
+                tick = nowTick - mask - 1;
+            }
+            int expired = 0;
+            while (tick < nowTick) {
+                tick++;
+                processedTick = tick;
+                expired += expire(buckets.getAndSet((int) (tick & mask), null), now);
+            }
+            if (expired > 0 && LOGGER.isDebugEnabled()) {
+                LOGGER.debug("{} sessions expired, remaining {}", expired, sessionMap.size());
+            }
+        } catch (Throwable e) {
+            // 不能抛出异常, 否则调度器不再执行
+            LOGGER.error("session expiry failed", e);
+        }
+    }
+
+    private int expire(Session session, long now) {
+        int expired = 0;
+        while (session != null) {
+            Session next = session.expiryNext;
+            session.expiryNext = null;
+            String id = session.getId();
+            if (id == null || sessionMap.get(id) != session || session.getMaxInactiveInterval() <= 0) {
+                // 已经删除、被替换或者改成不过期
+                unschedule(session);
+            } else if (session.getExpiryTime() <= now) {
+                if (sessionMap.remove(id, session)) {
+                    expired++;
+                }
+                unschedule(session);
+            } else {
+                push(session);
+            }
+            session = next;
+        }
+        return expired;
+    }
+
+    /**
+     * 从时间轮中丢弃. 先清除标记再检查map, 否则在检查之后、清除之前保存的session不会再放入, 永远不会过期
+     * @param session
+     */
+    private void unschedule(Session session) {
+        SCHEDULED_UPDATER.compareAndSet(session, 1, 0);
+        String id = session.getId();
+        if (id != null && sessionMap.get(id) == session) {
+            schedule(session);
+        }
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public int getWheelSize() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,308 @@
+package com.baffalotech.integration.http.netty.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import com.baffalotech.integration.util.MappedBufferUtil;
+
+/**
+ * <pre>
+ * session日志的一个段文件, 整个文件映射到内存, 只在尾部追加
+ *
+ * 每条记录:
+ *     int 长度(不包括长度和校验码) | int CRC32 | byte 类型 | long 过期时间 | UTF id | 内容
+ * 先写内容再写长度, 写到一半时进程退出长度还是0, 恢复时读到长度为0或者校验码不对就认为是结尾
+ *
+ * 追加由调用方加锁, 读取不加锁, 每次读取使用独立的ByteBuffer.
+ * 压缩后关闭, 没有线程在读取时才解除映射, 解除映射后才删除文件
+ * </pre>
+ *
+ * @author chijinhuang
+ *
+ */
+class SessionLogSegment {
+
+    /** 长度 + 校验码 */
+    static final int HEADER_LENGTH = 8;
+    /** 类型在记录中的位置 */
+    static final int TYPE_OFFSET = HEADER_LENGTH;
+    /** 过期时间在记录中的位置 */
+    static final int EXPIRY_OFFSET = TYPE_OFFSET + 1;
+    /** id在记录中的位置 */
+    static final int ID_OFFSET = EXPIRY_OFFSET + 8;
+
+    static final byte TYPE_PUT = 1;
+    static final byte TYPE_REMOVE = 2;
+
+    private static final int CLOSED = Integer.MIN_VALUE;
+
+    private final long sequence;
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    // 只在加锁时修改, 压缩线程不加锁读取
+    private volatile int writePosition;
+    // 被覆盖、删除和过期的记录的字节数, 超过一定比例时压缩
+    private final AtomicLong deadBytes = new AtomicLong();
+    // 正在读取的线程数, 最高位表示已经关闭, 关闭后最后一个读取的线程解除映射
+    private final AtomicInteger references = new AtomicInteger();
+    private volatile boolean unmapped;
+    // 有效的记录已经复制到后面的段文件, 等待删除
+    private volatile boolean compacted;
+
+    SessionLogSegment(File file, long sequence, int capacity) throws IOException {
+        this.file = file;
+        this.sequence = sequence;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            if (randomAccessFile.length() < capacity) {
+                randomAccessFile.setLength(capacity);
+            }
+            this.capacity = (int) Math.min(randomAccessFile.length(), Integer.MAX_VALUE);
+            // 关闭文件后映射仍然有效, 不需要一直打开文件
+            this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+        }
+    }
+
+    /**
+     * 追加一条完整的记录(包括长度和校验码), 调用方加锁
+     * @param record
+     * @return 记录的位置, 空间不够时返回-1
+     */
+    int append(byte[] record) {
+        if (record.length > capacity - writePosition) {
+            return -1;
+        }
+        int offset = writePosition;
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset + 4);
+        duplicate.put(record, 4, record.length - 4);
+        // 最后写长度
+        buffer.putInt(offset, record.length - HEADER_LENGTH);
+        writePosition = offset + record.length;
+        return offset;
+    }
+
+    /**
+     * 复制整条记录
+     * @param offset 记录的位置
+     * @param length 记录的总长度
+     * @return 已经关闭时返回null
+     */
+    byte[] copy(int offset, int length) {
+        if (!retain()) {
+            return null;
+        }
+        try {
+            byte[] record = new byte[length];
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset);
+            duplicate.get(record);
+            return record;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 从头扫描记录, 遇到结尾或者损坏的记录停止, 写入位置设置到停止的位置
+     * @param visitor
+     * @return 是否因为记录损坏停止
+     */
+    boolean scan(RecordVisitor visitor) throws IOException {
+        int offset = 0;
+        boolean corrupted = false;
+        CRC32 crc = new CRC32();
+        while (capacity - offset >= HEADER_LENGTH) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || length > capacity - offset - HEADER_LENGTH) {
+                corrupted = true;
+                break;
+            }
+            ByteBuffer body = buffer.duplicate();
+            body.limit(offset + HEADER_LENGTH + length).position(offset + HEADER_LENGTH);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                corrupted = true;
+                break;
+            }
+            visitor.visit(this, offset, HEADER_LENGTH + length);
+            offset += HEADER_LENGTH + length;
+        }
+        if (corrupted) {
+            // 清掉后面写了一半的数据, 以后追加的记录后面不会再读到旧数据
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset);
+            while (duplicate.remaining() >= 8) {
+                duplicate.putLong(0);
+            }
+            while (duplicate.hasRemaining()) {
+                duplicate.put((byte) 0);
+            }
+        }
+        writePosition = offset;
+        return corrupted;
+    }
+
+    byte getType(int offset) {
+        return buffer.get(offset + TYPE_OFFSET);
+    }
+
+    long getExpiryTime(int offset) {
+        return buffer.getLong(offset + EXPIRY_OFFSET);
+    }
+
+    /**
+     * 读取记录中的id, 不读取内容
+     */
+    String getId(int offset) throws IOException {
+        int idLength = buffer.getShort(offset + ID_OFFSET) & 0xFFFF;
+        byte[] bytes = new byte[idLength];
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset + ID_OFFSET + 2);
+        duplicate.get(bytes);
+        for (byte b : bytes) {
+            if (b < 0) {
+                // 不是ASCII的id按DataInput的格式读取
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(copy(offset + ID_OFFSET, 2 + idLength)));
+                return in.readUTF();
+            }
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 计算记录的校验码并写入, 记录的长度部分由append写入
+     * @param record
+     */
+    static void seal(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, HEADER_LENGTH, record.length - HEADER_LENGTH);
+        ByteBuffer.wrap(record).putInt(0, record.length - HEADER_LENGTH).putInt(4, (int) crc.getValue());
+    }
+
+    void force() {
+        if (!retain()) {
+            return;
+        }
+        try {
+            buffer.force();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 开始读取, 读取期间不会解除映射
+     * @return 已经关闭时返回false
+     */
+    boolean retain() {
+        for (;;) {
+            int current = references.get();
+            if (current < 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (references.decrementAndGet() == CLOSED) {
+            unmap();
+        }
+    }
+
+    /**
+     * 不再读写, 没有线程在读取时立即解除映射, 否则由最后一个读取的线程解除
+     */
+    void close() {
+        for (;;) {
+            int current = references.get();
+            if (current < 0) {
+                return;
+            }
+            if (references.compareAndSet(current, current | CLOSED)) {
+                if (current == 0) {
+                    unmap();
+                }
+                return;
+            }
+        }
+    }
+
+    private void unmap() {
+        MappedBufferUtil.unmap(buffer);
+        unmapped = true;
+    }
+
+    /**
+     * 删除文件, 还没有解除映射时不删除
+     * @return 文件是否已经删除
+     */
+    boolean delete() {
+        if (!unmapped) {
+            return false;
+        }
+        return file.delete() || !file.exists();
+    }
+
+    boolean isUnmapped() {
+        return unmapped;
+    }
+
+    boolean isCompacted() {
+        return compacted;
+    }
+
+    void setCompacted(boolean compacted) {
+        this.compacted = compacted;
+    }
+
+    void addDeadBytes(int bytes) {
+        deadBytes.addAndGet(bytes);
+    }
+
+    long getDeadBytes() {
+        return deadBytes.get();
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + "[write=" + writePosition + ", dead=" + deadBytes.get() + "]";
+    }
+
+    interface RecordVisitor {
+        void visit(SessionLogSegment segment, int offset, int length) throws IOException;
+    }
+}
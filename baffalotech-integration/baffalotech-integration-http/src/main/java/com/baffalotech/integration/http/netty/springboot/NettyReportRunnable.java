@@ -1,19 +1,21 @@
 package com.baffalotech.integration.http.netty.springboot;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.StringJoiner;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.servlet.Filter;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.baffalotech.integration.http.netty.core.util.AbstractRecycler;
 import com.baffalotech.integration.http.netty.core.util.ThreadPoolX;
-import com.baffalotech.integration.http.netty.servlet.NettyServletFilterChain;
-import com.baffalotech.integration.http.netty.servlet.handler.HttpMessageToServletRunnable;
+import com.baffalotech.integration.metrics.LatencyRecorder;
+import com.baffalotech.integration.metrics.LatencyRegistry;
+import com.baffalotech.integration.metrics.LatencySnapshot;
 
 /**
  * 统计服务器信息的任务
@@ -35,34 +37,27 @@ public class NettyReportRunnable implements Runnable{
           
             long totalTime = System.currentTimeMillis() - beginTime;
 
-            long servletQueryCount = HttpMessageToServletRunnable.SERVLET_QUERY_COUNT.get();
-            long servletAndFilterTime = HttpMessageToServletRunnable.SERVLET_AND_FILTER_TIME.get();
-            long servletTime = NettyServletFilterChain.SERVLET_TIME.get();
-            long filterTime = NettyServletFilterChain.FILTER_TIME.get();
-
-            double servletAndFilterAvgRuntime = servletQueryCount == 0? 0:(double)servletAndFilterTime/(double)servletQueryCount;
-            double servletAvgRuntime = servletQueryCount ==0? 0:(double)servletTime/(double)servletQueryCount;
-            double filterAvgRuntime = servletQueryCount ==0? 0:(double)filterTime/(double)servletQueryCount;
-
-            StringJoiner filterJoin = new StringJoiner(", ");
-            for(Filter filter : NettyServletFilterChain.FILTER_SET){
-//                    double filterAvgTime = (double)e.getValue().get() / (double)servletQueryCount;
-                filterJoin.add(
-                        filter.getClass().getSimpleName()
-                );
-            }
-
             StringJoiner joiner = new StringJoiner(", ");
             joiner.add("\r\n第"+reportCount.incrementAndGet()+"次统计 ");
             joiner.add("时间="+(totalTime/60000)+"分"+((totalTime % 60000 ) / 1000)+"秒 ");
-            joiner.add("servlet执行次数="+ servletQueryCount);
-            joiner.add("servlet+filter平均时间="+ formatRate(servletAndFilterAvgRuntime,4)+"ms,");
-            joiner.add("servlet平均时间="+ formatRate(servletAvgRuntime,4)+"ms, ");
-            joiner.add("filter平均时间="+ formatRate(filterAvgRuntime,4)+"ms, ");
-//            joiner.add("\r\n "+filterJoin.toString());
+            //每个connector、filter、servlet、mvc处理方法一行, 按名字排序, 百分位和最大值是最近时间窗口的
+            List<LatencyRecorder> recorders = new ArrayList<>(LatencyRegistry.getDefaultInstance().getRecorders());
+            recorders.sort(Comparator.comparing(LatencyRecorder::toString));
+            for(LatencyRecorder recorder : recorders){
+                LatencySnapshot snapshot = recorder.snapshot();
+                if(snapshot.getCount() == 0){
+                    continue;
+                }
+                joiner.add("\r\n"+recorder+" 次数="+ snapshot.getCount()
+                        +" 平均="+ formatRate(snapshot.getTotalTime(TimeUnit.MILLISECONDS)/snapshot.getCount(),4)+"ms"
+                        +" p50="+ formatRate(snapshot.getValueAtPercentile(50,TimeUnit.MILLISECONDS),4)+"ms"
+                        +" p99="+ formatRate(snapshot.getValueAtPercentile(99,TimeUnit.MILLISECONDS),4)+"ms"
+                        +" p999="+ formatRate(snapshot.getValueAtPercentile(99.9,TimeUnit.MILLISECONDS),4)+"ms"
+                        +" max="+ formatRate(snapshot.getMax(TimeUnit.MILLISECONDS),4)+"ms");
+            }
 
-            int recyclerTotal = AbstractRecycler.TOTAL_COUNT.get();
-            int recyclerHit = AbstractRecycler.HIT_COUNT.get();
+            long recyclerTotal = AbstractRecycler.TOTAL_COUNT.sum();
+            long recyclerHit = AbstractRecycler.HIT_COUNT.sum();
             double hitRate = (double) recyclerHit/(double) recyclerTotal;
             joiner.add("\r\n获取实例次数="+ recyclerTotal+"次");
             joiner.add("实例命中="+ recyclerHit+"次");
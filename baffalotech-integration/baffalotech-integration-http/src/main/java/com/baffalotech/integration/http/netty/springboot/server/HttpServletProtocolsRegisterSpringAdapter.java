@@ -3,6 +3,7 @@ package com.baffalotech.integration.http.netty.springboot.server;
 import java.net.URL;
 import java.security.KeyStore;
 import java.util.Arrays;
+import java.util.concurrent.Executor;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.TrustManagerFactory;
@@ -12,18 +13,16 @@ import org.springframework.boot.web.server.MimeMappings;
 import org.springframework.boot.web.server.Ssl;
 import org.springframework.boot.web.server.SslStoreProvider;
 import org.springframework.boot.web.servlet.server.AbstractServletWebServerFactory;
+import org.springframework.boot.web.servlet.server.Session;
 import org.springframework.util.ResourceUtils;
 
 import com.baffalotech.integration.configuration.IntegrationServerProperties;
-import com.baffalotech.integration.core.StandardThreadExecutor;
 import com.baffalotech.integration.http.netty.protocol.HttpServletProtocolsRegister;
 import com.baffalotech.integration.http.netty.servlet.NettyServletContext;
 import com.baffalotech.integration.http.netty.servlet.support.NettyServletErrorPage;
 import com.baffalotech.integration.http.netty.session.CompositeSessionServiceImpl;
 import com.baffalotech.integration.http.netty.session.SessionService;
 
-import io.netty.handler.ssl.ApplicationProtocolConfig;
-import io.netty.handler.ssl.ApplicationProtocolNames;
 import io.netty.handler.ssl.ClientAuth;
 import io.netty.handler.ssl.SslContextBuilder;
 
@@ -36,7 +35,7 @@ import io.netty.handler.ssl.SslContextBuilder;
 public class HttpServletProtocolsRegisterSpringAdapter extends HttpServletProtocolsRegister {
 
     public HttpServletProtocolsRegisterSpringAdapter(IntegrationServerProperties properties, NettyServletContext servletContext,
-    		StandardThreadExecutor serverExecutor,AbstractServletWebServerFactory configurableWebServer) throws Exception {
+    		Executor serverExecutor,AbstractServletWebServerFactory configurableWebServer) throws Exception {
         super(properties,
                 servletContext,
                 serverExecutor,
@@ -59,7 +58,16 @@ public class HttpServletProtocolsRegisterSpringAdapter extends HttpServletProtoc
 
         //session超时时间
         servletContext.setSessionTimeout((int) configurableWebServer.getSession().getTimeout().getSeconds());
-        servletContext.setSessionService(newSessionService(properties,servletContext));
+        //持久化的session保存到配置的store-dir, 没有配置时保存到docBase旁边的目录
+        Session session = configurableWebServer.getSession();
+        if(session.getStoreDir() != null) {
+            servletContext.setSessionStoreDirectory(session.getStoreDir());
+        }
+        SessionService sessionService = newSessionService(properties,servletContext);
+        if(session.isPersistent() && sessionService instanceof CompositeSessionServiceImpl) {
+            ((CompositeSessionServiceImpl) sessionService).enableLocalFileSession(servletContext.getSessionStoreDirectory());
+        }
+        servletContext.setSessionService(sessionService);
         for (MimeMappings.Mapping mapping :configurableWebServer.getMimeMappings()) {
             servletContext.getMimeMappings().add(mapping.getExtension(),mapping.getMimeType());
         }
@@ -78,7 +86,7 @@ public class HttpServletProtocolsRegisterSpringAdapter extends HttpServletProtoc
      */
     protected SessionService newSessionService(IntegrationServerProperties properties,NettyServletContext servletContext){
         //组合会话 (默认本地存储)
-        CompositeSessionServiceImpl compositeSessionService = new CompositeSessionServiceImpl();
+        CompositeSessionServiceImpl compositeSessionService = new CompositeSessionServiceImpl(servletContext::getScheduledExecutor);
         return compositeSessionService;
     }
 
@@ -106,17 +114,7 @@ public class HttpServletProtocolsRegisterSpringAdapter extends HttpServletProtoc
         else if (ssl.getClientAuth() == Ssl.ClientAuth.WANT) {
             builder.clientAuth(ClientAuth.OPTIONAL);
         }
-
-        ApplicationProtocolConfig protocolConfig = new ApplicationProtocolConfig(
-                ApplicationProtocolConfig.Protocol.ALPN,
-                // NO_ADVERTISE is currently the only mode supported by both OpenSsl and JDK providers.
-                ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
-                // ACCEPT is currently the only mode supported by both OpenSsl and JDK providers.
-                ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
-                ApplicationProtocolNames.HTTP_2,
-                ApplicationProtocolNames.HTTP_1_1);
-        builder.applicationProtocolConfig(protocolConfig);
-
+        //ALPN在创建SslContext时按connector是否支持http2设置
         return builder;
     }
 
@@ -0,0 +1,175 @@
+package com.baffalotech.integration.http.netty.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+/**
+ * AbstractRecycler的压力测试: 模拟io线程获取实例、业务线程回收的场景,
+ * 每个实例被借出时标记占用, 同一个实例同时被借出两次即失败
+ * @author chijinhuang
+ *
+ */
+public class AbstractRecyclerTest extends TestCase {
+
+    private static final int PRODUCERS = 4;
+    private static final int CONSUMERS = 4;
+    private static final int OPERATIONS_PER_PRODUCER = 200000;
+
+    public void testNeverHandedOutTwice() throws Exception {
+        AbstractRecycler<PooledObject> recycler = newRecycler(64);
+        AtomicLong conflicts = new AtomicLong();
+        AtomicLong hits = new AtomicLong();
+        BlockingQueue<PooledObject> queue = new ArrayBlockingQueue<>(1024);
+        CountDownLatch producersDone = new CountDownLatch(PRODUCERS);
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < PRODUCERS; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int j = 0; j < OPERATIONS_PER_PRODUCER; j++) {
+                        PooledObject value = recycler.getInstance();
+                        if (!value.inUse.compareAndSet(false, true)) {
+                            conflicts.incrementAndGet();
+                            continue;
+                        }
+                        if (value.useCount++ > 0) {
+                            hits.incrementAndGet();
+                        }
+                        if (random.nextInt(4) == 0) {
+                            //同线程回收, 偶尔重复回收一次
+                            value.inUse.set(false);
+                            recycler.recycleInstance(value);
+                            if (random.nextInt(8) == 0) {
+                                recycler.recycleInstance(value);
+                            }
+                        } else {
+                            //交给其他线程回收
+                            queue.put(value);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    producersDone.countDown();
+                }
+            }, "producer-" + i));
+        }
+        for (int i = 0; i < CONSUMERS; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (!stop.get() || !queue.isEmpty()) {
+                        PooledObject value = queue.poll(10, TimeUnit.MILLISECONDS);
+                        if (value == null) {
+                            continue;
+                        }
+                        value.useCount++;
+                        value.inUse.set(false);
+                        recycler.recycleInstance(value);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "consumer-" + i));
+        }
+
+        long total = AbstractRecycler.TOTAL_COUNT.sum();
+        long hit = AbstractRecycler.HIT_COUNT.sum();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        assertTrue(producersDone.await(60, TimeUnit.SECONDS));
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        assertEquals(0, conflicts.get());
+        assertTrue("no instance was reused", hits.get() > 0);
+        assertEquals(PRODUCERS * OPERATIONS_PER_PRODUCER, AbstractRecycler.TOTAL_COUNT.sum() - total);
+        assertTrue(AbstractRecycler.HIT_COUNT.sum() - hit >= hits.get());
+    }
+
+    public void testCapacityPerThreadIsBounded() throws Exception {
+        AbstractRecycler<PooledObject> recycler = newRecycler(4);
+        List<PooledObject> values = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            values.add(recycler.getInstance());
+        }
+        for (PooledObject value : values) {
+            recycler.recycleInstance(value);
+        }
+        assertEquals(4, recycler.threadLocalSize());
+
+        //其他线程回收的实例也有上限, 多出的丢弃
+        for (int i = 0; i < 4; i++) {
+            recycler.getInstance();
+        }
+        List<PooledObject> borrowed = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            borrowed.add(recycler.getInstance());
+        }
+        Thread thread = new Thread(() -> borrowed.forEach(recycler::recycleInstance));
+        thread.start();
+        thread.join();
+        int reused = 0;
+        for (int i = 0; i < 10; i++) {
+            if (borrowed.contains(recycler.getInstance())) {
+                reused++;
+            }
+        }
+        assertEquals(4, reused);
+    }
+
+    public void testRejectsForeignAndRepeatedRecycle() {
+        AbstractRecycler<PooledObject> recycler = newRecycler(16);
+        //不是由回收者创建的实例不放入池中
+        recycler.recycleInstance(new PooledObject());
+        assertEquals(0, recycler.threadLocalSize());
+        //其他回收者创建的实例也不放入池中
+        recycler.recycleInstance(newRecycler(16).getInstance());
+        assertEquals(0, recycler.threadLocalSize());
+
+        PooledObject value = recycler.getInstance();
+        recycler.recycleInstance(value);
+        recycler.recycleInstance(value);
+        assertEquals(1, recycler.threadLocalSize());
+        assertSame(value, recycler.getInstance());
+        assertNotSame(value, recycler.getInstance());
+    }
+
+    private static AbstractRecycler<PooledObject> newRecycler(int maxCapacityPerThread) {
+        return new AbstractRecycler<PooledObject>(maxCapacityPerThread) {
+            @Override
+            protected PooledObject newInstance() {
+                return new PooledObject();
+            }
+        };
+    }
+
+    private static class PooledObject implements AbstractRecycler.Handled {
+        private final AtomicBoolean inUse = new AtomicBoolean();
+        private int useCount;
+        private AbstractRecycler.Handle recyclerHandle;
+
+        @Override
+        public AbstractRecycler.Handle getRecyclerHandle() {
+            return recyclerHandle;
+        }
+
+        @Override
+        public void setRecyclerHandle(AbstractRecycler.Handle recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+    }
+}
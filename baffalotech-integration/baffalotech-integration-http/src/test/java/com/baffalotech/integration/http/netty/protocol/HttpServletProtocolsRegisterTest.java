@@ -0,0 +1,285 @@
+package com.baffalotech.integration.http.netty.protocol;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.util.StreamUtils;
+
+import com.baffalotech.integration.configuration.IntegrationServerProperties;
+import com.baffalotech.integration.core.AdaptiveConcurrencyLimiter;
+import com.baffalotech.integration.http.netty.connector.HttpConnectorProperties;
+import com.baffalotech.integration.http.netty.servlet.NettyServletContext;
+import com.baffalotech.integration.http.netty.session.LocalMemorySessionServiceImpl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.Http2MultiplexCodecBuilder;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.util.ReferenceCountUtil;
+import junit.framework.TestCase;
+
+/**
+ * h2c连接前言直接进入http2, 每个流按http1.1的处理器交给servlet
+ * @author chijinhuang
+ *
+ */
+public class HttpServletProtocolsRegisterTest extends TestCase {
+
+    private static final int LARGE_BODY_LENGTH = 200 * 1024;
+
+    private static final int STREAMING_BODY_LENGTH = 48 * 1024;
+
+    private NettyServletContext servletContext;
+
+    private EmbeddedChannel server;
+
+    private EmbeddedChannel client;
+
+    private final LinkedBlockingQueue<FullHttpResponse> responses = new LinkedBlockingQueue<>();
+
+    /**
+     * 流式请求体不能在io线程中阻塞读取, 先把servlet任务放进队列, 请求体收完后在测试线程中执行
+     */
+    private final LinkedBlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        servletContext = new NettyServletContext(new InetSocketAddress("localhost", 8080), getClass().getClassLoader(),
+                Files.createTempDirectory("h2c").toFile().getAbsolutePath());
+        servletContext.setServletContextName("default");
+        servletContext.setSessionService(new LocalMemorySessionServiceImpl());
+        servletContext.addServlet("echo", new EchoServlet()).addMapping("/*");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if(client != null) {
+            client.finishAndReleaseAll();
+        }
+        if(server != null) {
+            server.finishAndReleaseAll();
+        }
+        ((LocalMemorySessionServiceImpl) servletContext.getSessionService()).shutdown();
+        FullHttpResponse response;
+        while ((response = responses.poll()) != null) {
+            response.release();
+        }
+    }
+
+    public void testProtocolName() {
+        HttpServletProtocolsRegister register = newRegister(true, true);
+        assertEquals("http/h2c", register.getProtocolName());
+        assertEquals("http", newRegister(false, true).getProtocolName());
+    }
+
+    public void testHttp1Pipeline() throws Exception {
+        server = new EmbeddedChannel();
+        newRegister(false, true).register(server);
+        assertNotNull(server.pipeline().get(HttpServletProtocolsRegister.HANDLER_HTTP_CODEC));
+        assertNull(server.pipeline().get(HttpServletProtocolsRegister.HANDLER_HTTP2));
+    }
+
+    public void testPriorKnowledgeGet() throws Exception {
+        connect(true);
+        FullHttpResponse response = exchange(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/hello?size=5"));
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertEquals("HTTP/2.0 GET 5", response.headers().get("X-Protocol"));
+        assertEquals("aaaaa", response.content().toString(StandardCharsets.US_ASCII));
+        //升级后http1.1的处理器都删除了, 只剩下http2的编解码器
+        assertNull(server.pipeline().get(HttpServletProtocolsRegister.HANDLER_SERVLET));
+        assertNotNull(server.pipeline().get(HttpServletProtocolsRegister.HANDLER_HTTP2));
+    }
+
+    public void testStreamingPost() throws Exception {
+        connect(false);
+        //不超过流的初始接收窗口和请求体缓存的上限
+        byte[] body = new byte[STREAMING_BODY_LENGTH];
+        Arrays.fill(body, (byte) 'b');
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/upload",
+                Unpooled.wrappedBuffer(body));
+        request.headers().set(HttpHeaderNames.CONTENT_LENGTH, body.length);
+        FullHttpResponse response = exchange(request);
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertEquals("HTTP/2.0 POST " + STREAMING_BODY_LENGTH, response.headers().get("X-Protocol"));
+    }
+
+    public void testLargeChunkedResponse() throws Exception {
+        //超过流的初始发送窗口, 需要客户端归还窗口后才能发完
+        connect(true);
+        FullHttpResponse response = exchange(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+                "/large?size=" + LARGE_BODY_LENGTH + "&flush=true"));
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertEquals(LARGE_BODY_LENGTH, response.content().readableBytes());
+    }
+
+    public void testConcurrentStreams() throws Exception {
+        connect(true);
+        Http2StreamChannel first = openStream();
+        Http2StreamChannel second = openStream();
+        first.writeAndFlush(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/a?size=3"));
+        second.writeAndFlush(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/b?size=4"));
+        pump();
+        FullHttpResponse a = responses.poll();
+        FullHttpResponse b = responses.poll();
+        assertNotNull(a);
+        assertNotNull(b);
+        assertEquals(7, a.content().readableBytes() + b.content().readableBytes());
+        a.release();
+        b.release();
+    }
+
+    public void testConcurrencyLimitExceeded() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1000);
+        //唯一的名额已经被占用
+        assertTrue(limiter.tryAcquire());
+        HttpServletProtocolsRegister register = newRegister(true, true);
+        register.setConcurrencyLimiter(limiter);
+        connect(register);
+
+        FullHttpResponse response = exchange(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/hello?size=5"));
+        assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, response.status());
+        assertEquals("1", response.headers().get(HttpHeaderNames.RETRY_AFTER));
+        assertEquals(0, response.content().readableBytes());
+        assertEquals(1, limiter.getRejectedCount());
+
+        //名额释放后同一个连接上的请求正常处理
+        limiter.release(0);
+        responses.poll().release();
+        response = exchange(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/hello?size=5"));
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertEquals(0, limiter.getInflight());
+    }
+
+    private HttpServletProtocolsRegister newRegister(boolean http2, boolean aggregate) {
+        HttpConnectorProperties properties = new HttpConnectorProperties();
+        properties.setHttp2(http2);
+        properties.setAggregateRequestBody(aggregate);
+        properties.setRequestBodyBufferSize(STREAMING_BODY_LENGTH * 2);
+        HttpServletProtocolsRegister register = new HttpServletProtocolsRegister(new IntegrationServerProperties(),
+                servletContext, aggregate ? null : tasks::add, null);
+        register.setConnectorProperties(properties);
+        return register;
+    }
+
+    private void connect(boolean aggregate) throws Exception {
+        connect(newRegister(true, aggregate));
+    }
+
+    private void connect(HttpServletProtocolsRegister register) throws Exception {
+        server = new EmbeddedChannel();
+        register.register(server);
+        //客户端不接受服务端推送的流
+        client = new EmbeddedChannel(Http2MultiplexCodecBuilder.forClient(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                ch.close();
+            }
+        }).build());
+    }
+
+    private Http2StreamChannel openStream() {
+        return new Http2StreamChannelBootstrap(client).handler(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(false));
+                ch.pipeline().addLast(new HttpObjectAggregator(1024 * 1024));
+                ch.pipeline().addLast(new SimpleChannelInboundHandler<FullHttpResponse>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse msg) {
+                        responses.add(msg.retain());
+                    }
+                });
+            }
+        }).open().syncUninterruptibly().getNow();
+    }
+
+    private FullHttpResponse exchange(FullHttpRequest request) {
+        openStream().writeAndFlush(request);
+        pump();
+        FullHttpResponse response = responses.poll();
+        assertNotNull("no response", response);
+        responses.add(response);
+        return response;
+    }
+
+    /**
+     * 在两个channel之间转发数据, 直到没有新的数据
+     */
+    private void pump() {
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+                moved = true;
+            }
+            client.runPendingTasks();
+            server.runPendingTasks();
+            Object msg;
+            while ((msg = client.readOutbound()) != null) {
+                moved |= transfer((ByteBuf) msg, server);
+            }
+            while ((msg = server.readOutbound()) != null) {
+                moved |= transfer((ByteBuf) msg, client);
+            }
+        }
+    }
+
+    private static boolean transfer(ByteBuf msg, EmbeddedChannel to) {
+        if(!msg.isReadable()) {
+            ReferenceCountUtil.release(msg);
+            return false;
+        }
+        to.writeInbound(msg);
+        to.flushOutbound();
+        return true;
+    }
+
+    public static class EchoServlet extends HttpServlet {
+
+        @Override
+        protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            int received = StreamUtils.copyToByteArray(req.getInputStream()).length;
+            String size = req.getParameter("size");
+            int length = "POST".equals(req.getMethod()) ? received : Integer.parseInt(size);
+            resp.setHeader("X-Protocol", req.getProtocol() + " " + req.getMethod() + " " + length);
+            if("POST".equals(req.getMethod())) {
+                return;
+            }
+            byte[] chunk = new byte[Math.min(length, 8192)];
+            Arrays.fill(chunk, (byte) 'a');
+            ServletOutputStream out = resp.getOutputStream();
+            for (int written = 0; written < length; written += chunk.length) {
+                out.write(chunk, 0, Math.min(chunk.length, length - written));
+                if(req.getParameter("flush") != null) {
+                    out.flush();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.baffalotech.integration.http.netty.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.baffalotech.integration.http.netty.session.CompositeSessionServiceImpl;
+import com.baffalotech.integration.http.netty.session.Session;
+
+import junit.framework.TestCase;
+
+/**
+ * 默认servlet只从静态文件的根目录返回文件, docBase下的session等内部数据不能返回
+ * @author chijinhuang
+ *
+ */
+public class NettyDefaultHttpServletTest extends TestCase {
+
+    private static final String SESSION_FILE = "/session/segment-0000000000000000.log";
+
+    private File docBase;
+    private File staticRoot;
+    private NettyServletContext servletContext;
+    private NettyDefaultHttpServlet servlet = new NettyDefaultHttpServlet();
+
+    @Override
+    protected void setUp() throws Exception {
+        docBase = Files.createTempDirectory("default-servlet").toFile();
+        staticRoot = Files.createTempDirectory("default-servlet-static").toFile();
+        servletContext = new NettyServletContext(new InetSocketAddress("localhost", 8080), getClass().getClassLoader(),
+                docBase.getAbsolutePath());
+        write(new File(servletContext.getResourceManager().getRealPath(SESSION_FILE)), "session-data");
+        write(new File(servletContext.getResourceManager().getRealPath("/WEB-INF/web.xml")), "web-xml");
+        write(new File(servletContext.getResourceManager().getRealPath("/work.txt")), "work");
+        write(new File(staticRoot, "app.js"), "static-app");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(docBase);
+        delete(staticRoot);
+    }
+
+    public void testNoStaticRoot() throws Exception {
+        //没有配置静态文件的根目录时不返回任何文件
+        assertNotServed(SESSION_FILE);
+        assertNotServed("/work.txt");
+        assertNotServed("/app.js");
+    }
+
+    public void testStaticRoot() throws Exception {
+        servletContext.setStaticResourceRoot(staticRoot);
+        assertEquals("static-app", get("/app.js"));
+        //docBase下的文件都不返回
+        assertNotServed(SESSION_FILE);
+        assertNotServed("/work.txt");
+        assertNotServed("/../" + docBase.getName() + "/localhost/work.txt");
+    }
+
+    public void testProtectedPathsUnderStaticRoot() throws Exception {
+        //根目录配置成了docBase的工作目录时, 内部数据的目录仍然不返回
+        servletContext.setStaticResourceRoot(new File(servletContext.getResourceManager().getRealPath("/")));
+        assertEquals("work", get("/work.txt"));
+        assertNotServed(SESSION_FILE);
+        assertNotServed("/SESSION/segment-0000000000000000.log");
+        assertNotServed("//session/segment-0000000000000000.log");
+        assertNotServed("/./session/segment-0000000000000000.log");
+        assertNotServed("/WEB-INF/web.xml");
+        assertNotServed("/meta-inf/MANIFEST.MF");
+    }
+
+    public void testLocalFileSessionOutsideDocBase() throws Exception {
+        File storeDirectory = servletContext.getSessionStoreDirectory();
+        assertFalse(storeDirectory.toPath().startsWith(docBase.getAbsoluteFile().toPath()));
+        CompositeSessionServiceImpl sessionService = new CompositeSessionServiceImpl((ScheduledExecutorService) null);
+        try {
+            sessionService.enableLocalFileSession(storeDirectory);
+            Session session = new Session("stored");
+            session.setLastAccessedTime(System.currentTimeMillis());
+            session.setMaxInactiveInterval(1200);
+            sessionService.saveSession(session);
+            assertNotNull(sessionService.getSession("stored"));
+            assertTrue(storeDirectory.list().length > 0);
+        } finally {
+            sessionService.removeSessionService();
+            delete(storeDirectory);
+        }
+    }
+
+    private void assertNotServed(String uri) throws Exception {
+        assertNull(uri, get(uri));
+    }
+
+    /**
+     * @return 返回的文件内容, 没有返回文件(按原来的方式异步处理)时返回null
+     */
+    private String get(String uri) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        boolean[] async = new boolean[1];
+        AsyncContext asyncContext = (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { AsyncContext.class }, (proxy, method, args) -> null);
+        HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getMethod":
+                        return "GET";
+                    case "getRequestURI":
+                        return uri;
+                    case "getContextPath":
+                        return "";
+                    case "getServletContext":
+                        return servletContext;
+                    case "getHeaders":
+                        return Collections.emptyEnumeration();
+                    case "startAsync":
+                        async[0] = true;
+                        return asyncContext;
+                    default:
+                        return null;
+                    }
+                });
+        ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                body.write(b, off, len);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class },
+                (proxy, method, args) -> "getOutputStream".equals(method.getName()) ? out : null);
+        servlet.service(request, response);
+        return async[0] ? null : new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,177 @@
+package com.baffalotech.integration.http.netty.servlet;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.GenericServlet;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import com.baffalotech.integration.metrics.LatencyRecorder;
+
+import junit.framework.TestCase;
+
+/**
+ * 每个filter包括后续调用的耗时和自身的耗时, servlet的耗时, 以及最外层返回时回收过滤链
+ * @author chijinhuang
+ *
+ */
+public class NettyServletFilterChainTest extends TestCase {
+
+    private static final long SLEEP_MILLIS = 30;
+
+    private NettyServletContext servletContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        servletContext = new NettyServletContext(new InetSocketAddress("localhost", 8080), getClass().getClassLoader(),
+                Files.createTempDirectory("filter-chain").toFile().getAbsolutePath());
+        //每个测试用不同的名字, 不和其他测试共用recorder
+        servletContext.setServletContextName("filter-chain-" + getName());
+    }
+
+    public void testFilterTimes() throws Exception {
+        NettyServletRegistration servlet = servletContext.addServlet("sleepy", new SleepServlet(false));
+        NettyServletFilterRegistration outer = servletContext.addFilter("outer", new SleepFilter(true));
+        NettyServletFilterRegistration inner = servletContext.addFilter("inner", new SleepFilter(false));
+        newChain(servlet, outer, inner).doFilter(null, null);
+
+        //outer : 自身sleep一次, 后面的inner和servlet又sleep一次
+        assertTime(outer.getTotalLatencyRecorder(), 2 * SLEEP_MILLIS);
+        assertTime(outer.getSelfLatencyRecorder(), SLEEP_MILLIS);
+        assertTime(inner.getTotalLatencyRecorder(), SLEEP_MILLIS);
+        assertTime(servlet.getLatencyRecorder(), SLEEP_MILLIS);
+        //自身的耗时 = 总耗时 - 下一层的总耗时
+        assertEquals(nanos(outer.getTotalLatencyRecorder()) - nanos(inner.getTotalLatencyRecorder()),
+                nanos(outer.getSelfLatencyRecorder()));
+        assertEquals(nanos(inner.getTotalLatencyRecorder()) - nanos(servlet.getLatencyRecorder()),
+                nanos(inner.getSelfLatencyRecorder()));
+        assertEquals(1, inner.getSelfLatencyRecorder().getCount());
+        LatencyRecorder filterChain = servletContext.getFilterChainLatencyRecorder();
+        assertEquals(1, filterChain.getCount());
+        assertTrue(filterChain.getTotalTime(TimeUnit.MILLISECONDS) >= SLEEP_MILLIS);
+    }
+
+    public void testFilterNotCallingChain() throws Exception {
+        NettyServletRegistration servlet = servletContext.addServlet("sleepy", new SleepServlet(false));
+        NettyServletFilterRegistration blocking = servletContext.addFilter("blocking", new BlockingFilter());
+        NettyServletFilterChain chain = newChain(servlet, blocking);
+        chain.doFilter(null, null);
+
+        //没有调用chain.doFilter, 全部算作自身的耗时
+        assertTime(blocking.getTotalLatencyRecorder(), SLEEP_MILLIS);
+        assertEquals(nanos(blocking.getTotalLatencyRecorder()), nanos(blocking.getSelfLatencyRecorder()));
+        assertEquals(0, servlet.getLatencyRecorder().getCount());
+        //最外层返回时已经回收
+        assertTrue(chain.getFilterRegistrationList().isEmpty());
+        assertNull(chain.getServletRegistration());
+    }
+
+    public void testServletException() throws Exception {
+        NettyServletRegistration servlet = servletContext.addServlet("failing", new SleepServlet(true));
+        NettyServletFilterRegistration outer = servletContext.addFilter("outer", new SleepFilter(false));
+        NettyServletFilterChain chain = newChain(servlet, outer);
+        try {
+            chain.doFilter(null, null);
+            fail();
+        } catch (ServletException e) {
+        }
+        assertEquals(1, outer.getTotalLatencyRecorder().getCount());
+        assertEquals(1, servlet.getLatencyRecorder().getCount());
+        assertTrue(chain.getFilterRegistrationList().isEmpty());
+    }
+
+    private NettyServletFilterChain newChain(NettyServletRegistration servlet, NettyServletFilterRegistration... filters) {
+        NettyServletFilterChain chain = NettyServletFilterChain.newInstance(servletContext, servlet);
+        for (NettyServletFilterRegistration filter : filters) {
+            chain.getFilterRegistrationList().add(filter);
+        }
+        return chain;
+    }
+
+    private static void assertTime(LatencyRecorder recorder, long minMillis) {
+        assertEquals(1, recorder.getCount());
+        double millis = recorder.getTotalTime(TimeUnit.MILLISECONDS);
+        assertTrue(recorder + " " + millis, millis >= minMillis);
+    }
+
+    private static long nanos(LatencyRecorder recorder) {
+        return (long) recorder.getTotalTime(TimeUnit.NANOSECONDS);
+    }
+
+    private static void sleep() throws ServletException {
+        try {
+            Thread.sleep(SLEEP_MILLIS);
+        } catch (InterruptedException e) {
+            throw new ServletException(e);
+        }
+    }
+
+    private static class SleepServlet extends GenericServlet {
+
+        private final boolean fail;
+
+        SleepServlet(boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override
+        public void service(ServletRequest req, ServletResponse res) throws ServletException {
+            if (fail) {
+                throw new ServletException("failed");
+            }
+            sleep();
+        }
+    }
+
+    private static class SleepFilter implements Filter {
+
+        private final boolean sleep;
+
+        SleepFilter(boolean sleep) {
+            this.sleep = sleep;
+        }
+
+        @Override
+        public void init(FilterConfig filterConfig) {
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            if (sleep) {
+                sleep();
+            }
+            chain.doFilter(request, response);
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    /**
+     * 直接返回, 不调用后面的filter和servlet
+     */
+    private static class BlockingFilter implements Filter {
+
+        @Override
+        public void init(FilterConfig filterConfig) {
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws ServletException {
+            sleep();
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.baffalotech.integration.http.netty.servlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.StreamUtils;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.local.LocalChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import junit.framework.TestCase;
+
+/**
+ * 流式模式下io线程放入分段, 读取线程等待分段、按水位控制autoRead, 以及断开和关闭时唤醒读取线程
+ * @author chijinhuang
+ *
+ */
+public class NettyServletInputStreamTest extends TestCase {
+
+    private DefaultEventLoopGroup group;
+
+    private LocalChannel channel;
+
+    private ExecutorService reader;
+
+    @Override
+    protected void setUp() throws Exception {
+        group = new DefaultEventLoopGroup(1);
+        channel = new LocalChannel();
+        group.register(channel).sync();
+        reader = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        reader.shutdownNow();
+        channel.close();
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+    }
+
+    public void testReadAcrossThreads() throws Exception {
+        NettyServletInputStream in = new NettyServletInputStream(channel, -1, 1024);
+        Future<String> body = reader.submit(() -> StreamUtils.copyToString(in, StandardCharsets.US_ASCII));
+        in.offer(content("hello "));
+        in.offer(new DefaultHttpContent(Unpooled.EMPTY_BUFFER));
+        in.offer(last("world"));
+        assertEquals("hello world", body.get(5, TimeUnit.SECONDS));
+        assertTrue(in.isFinished());
+    }
+
+    public void testAutoReadByHighWaterMark() throws Exception {
+        NettyServletInputStream in = new NettyServletInputStream(channel, 8, 4);
+        in.offer(content("abcd"));
+        //缓存达到水位后暂停读取
+        assertFalse(channel.config().isAutoRead());
+        in.offer(last("efgh"));
+
+        byte[] bytes = new byte[8];
+        assertEquals(4, reader.submit(() -> in.read(bytes, 0, 8)).get(5, TimeUnit.SECONDS).intValue());
+        assertFalse(channel.config().isAutoRead());
+        assertEquals(4, reader.submit(() -> in.read(bytes, 4, 4)).get(5, TimeUnit.SECONDS).intValue());
+        //低于一半时恢复
+        assertTrue(channel.config().isAutoRead());
+        assertEquals("abcdefgh", new String(bytes, StandardCharsets.US_ASCII));
+        assertEquals(-1, reader.submit(() -> in.read()).get(5, TimeUnit.SECONDS).intValue());
+    }
+
+    public void testAbortWakesReader() throws Exception {
+        NettyServletInputStream in = new NettyServletInputStream(channel, 100, 1024);
+        in.offer(content("abc"));
+        CountDownLatch waiting = new CountDownLatch(1);
+        Future<String> body = reader.submit(() -> {
+            waiting.countDown();
+            return StreamUtils.copyToString(in, StandardCharsets.US_ASCII);
+        });
+        assertTrue(waiting.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        IOException cause = new IOException("connection reset");
+        in.abort(cause);
+        try {
+            body.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    public void testCloseWakesReaderAndReleasesChunks() throws Exception {
+        NettyServletInputStream in = new NettyServletInputStream(channel, -1, 1);
+        ByteBuf buf = Unpooled.copiedBuffer("abc", StandardCharsets.US_ASCII);
+        in.offer(new DefaultHttpContent(buf));
+        assertFalse(channel.config().isAutoRead());
+        in.close();
+        //没读完的分段释放, 恢复读取
+        assertEquals(1, buf.refCnt());
+        assertTrue(channel.config().isAutoRead());
+        try {
+            in.read();
+            fail();
+        } catch (IOException e) {
+        }
+
+        NettyServletInputStream waiting = new NettyServletInputStream(channel, -1, 1024);
+        Future<Integer> read = reader.submit(() -> waiting.read());
+        Thread.sleep(50);
+        waiting.close();
+        try {
+            read.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        buf.release();
+    }
+
+    public void testBlockingReadInEventLoop() throws Exception {
+        NettyServletInputStream in = new NettyServletInputStream(channel, -1, 1024);
+        Future<Throwable> result = channel.eventLoop().submit(() -> {
+            try {
+                in.read();
+                return null;
+            } catch (Throwable e) {
+                return e;
+            }
+        });
+        assertTrue(result.get(5, TimeUnit.SECONDS) instanceof IllegalStateException);
+    }
+
+    private static DefaultHttpContent content(String text) {
+        return new DefaultHttpContent(Unpooled.copiedBuffer(text, StandardCharsets.US_ASCII));
+    }
+
+    private static LastHttpContent last(String text) {
+        return new DefaultLastHttpContent(Unpooled.copiedBuffer(text, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,175 @@
+package com.baffalotech.integration.http.netty.servlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.baffalotech.integration.http.netty.servlet.NettyServletOutputChunkedStream.ByteChunkedInput;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import junit.framework.TestCase;
+
+/**
+ * 分段输出的排队, 结束标记, 以及排队的数据超过写高水位时servlet线程的等待
+ * @author chijinhuang
+ *
+ */
+public class NettyServletOutputChunkedStreamTest extends TestCase {
+
+    private static final int HIGH_WATER_MARK = 16;
+
+    private ByteChunkedInput input;
+
+    private DefaultEventLoopGroup group;
+
+    private Channel server;
+
+    private Channel channel;
+
+    private ExecutorService servletThread;
+
+    @Override
+    protected void setUp() throws Exception {
+        input = new NettyServletOutputChunkedStream().new ByteChunkedInput();
+        servletThread = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        servletThread.shutdownNow();
+        if(channel != null) {
+            channel.close().sync();
+            server.close().sync();
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    public void testChunksAndLastContent() throws Exception {
+        LastHttpContent last = new DefaultLastHttpContent();
+        last.trailingHeaders().set("X-Trailer", "1");
+        input.setLastHttpContent(last);
+        input.addChunk(chunk("abc"));
+        input.addChunk(chunk("de"));
+        assertEquals(-1, input.length());
+
+        assertEquals("abc", read());
+        assertEquals("de", read());
+        //没有关闭时队列空了返回null, 等待下一段
+        assertNull(input.readChunk(ByteBufAllocator.DEFAULT));
+        assertFalse(input.isEndOfInput());
+
+        input.setCloseInputFlag(true);
+        assertSame(last, input.readChunk(ByteBufAllocator.DEFAULT));
+        assertTrue(input.isEndOfInput());
+        assertNull(input.readChunk(ByteBufAllocator.DEFAULT));
+    }
+
+    public void testCloseReleasesChunks() throws Exception {
+        ByteBuf queued = chunk("queued");
+        input.addChunk(queued);
+        input.close();
+        assertEquals(0, queued.refCnt());
+
+        //连接断开后再放入的直接释放
+        ByteBuf late = chunk("late");
+        input.addChunk(late);
+        assertEquals(0, late.refCnt());
+    }
+
+    public void testAwaitWritable() throws Exception {
+        connect();
+        input.addChunk(chunk("0123456789"));
+        //没有超过高水位不等待
+        servletThread.submit(() -> {
+            input.awaitWritable(channel);
+            return null;
+        }).get(5, TimeUnit.SECONDS);
+
+        input.addChunk(chunk("0123456789"));
+        Future<?> waiting = servletThread.submit(() -> {
+            input.awaitWritable(channel);
+            return null;
+        });
+        assertBlocked(waiting);
+
+        //io线程取走一段后低于高水位, servlet线程继续
+        read();
+        waiting.get(5, TimeUnit.SECONDS);
+    }
+
+    public void testAwaitWritableWakesOnClose() throws Exception {
+        connect();
+        input.addChunk(chunk("01234567890123456789"));
+        Future<?> waiting = servletThread.submit(() -> {
+            input.awaitWritable(channel);
+            return null;
+        });
+        assertBlocked(waiting);
+        input.close();
+        waiting.get(5, TimeUnit.SECONDS);
+    }
+
+    public void testAwaitWritableInEventLoop() throws Exception {
+        connect();
+        input.addChunk(chunk("01234567890123456789"));
+        //io线程中不能等待, 直接返回
+        channel.eventLoop().submit(() -> {
+            input.awaitWritable(channel);
+            return null;
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    private void connect() throws Exception {
+        group = new DefaultEventLoopGroup(1);
+        LocalAddress address = new LocalAddress("chunked-" + getName());
+        server = new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+                .childHandler(new ChannelInboundHandlerAdapter()).bind(address).sync().channel();
+        channel = new Bootstrap().group(group).channel(LocalChannel.class).handler(new ChannelInboundHandlerAdapter())
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(HIGH_WATER_MARK / 2, HIGH_WATER_MARK))
+                .connect(address).sync().channel();
+    }
+
+    private static void assertBlocked(Future<?> future) throws Exception {
+        try {
+            future.get(200, TimeUnit.MILLISECONDS);
+            fail("should wait");
+        } catch (TimeoutException e) {
+        }
+    }
+
+    private String read() throws Exception {
+        HttpContent content = (HttpContent) input.readChunk(ByteBufAllocator.DEFAULT);
+        try {
+            return content.content().toString(StandardCharsets.US_ASCII);
+        } finally {
+            content.release();
+        }
+    }
+
+    /**
+     * 和输出流中的缓冲区一样, 写入后还是写模式
+     */
+    private static ByteBuf chunk(String value) {
+        ByteBuf buf = Unpooled.buffer(value.length());
+        buf.writeBytes(value.getBytes(StandardCharsets.US_ASCII));
+        return buf;
+    }
+}
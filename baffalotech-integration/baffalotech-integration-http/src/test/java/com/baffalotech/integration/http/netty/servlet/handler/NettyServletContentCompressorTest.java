@@ -0,0 +1,130 @@
+package com.baffalotech.integration.http.netty.servlet.handler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.util.StreamUtils;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import junit.framework.TestCase;
+
+/**
+ * 按Content-Type白名单、Content-Length阈值和已有的Content-Encoding决定是否压缩响应
+ * @author chijinhuang
+ *
+ */
+public class NettyServletContentCompressorTest extends TestCase {
+
+    private static final byte[] BODY = newBody(4096);
+
+    private EmbeddedChannel channel;
+
+    @Override
+    protected void setUp() throws Exception {
+        channel = new EmbeddedChannel(new NettyServletContentCompressor(1, 1024, new String[] { "application/json", " TEXT/* " }));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        channel.finishAndReleaseAll();
+    }
+
+    public void testCompressAllowedType() throws Exception {
+        Result result = exchange("gzip, deflate", "application/json;charset=UTF-8", BODY.length, null);
+        assertEquals("gzip", result.contentEncoding);
+        assertTrue(result.body.length < BODY.length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(result.body))) {
+            assertEquals(new String(BODY, StandardCharsets.UTF_8), StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    public void testWildcardType() throws Exception {
+        assertEquals("deflate", exchange("deflate", "text/html", BODY.length, null).contentEncoding);
+    }
+
+    public void testTypeNotAllowed() throws Exception {
+        Result result = exchange("gzip", "image/png", BODY.length, null);
+        assertNull(result.contentEncoding);
+        assertEquals(BODY.length, result.body.length);
+    }
+
+    public void testBelowMinResponseSize() throws Exception {
+        assertNull(exchange("gzip", "application/json", 512, null).contentEncoding);
+        //没有Content-Length时不知道大小, 都压缩
+        assertEquals("gzip", exchange("gzip", "application/json", -1, null).contentEncoding);
+    }
+
+    public void testAlreadyEncoded() throws Exception {
+        //例如预先压缩的.gz文件
+        Result result = exchange("gzip", "application/json", BODY.length, "gzip");
+        assertEquals("gzip", result.contentEncoding);
+        assertEquals(BODY.length, result.body.length);
+    }
+
+    public void testNotAccepted() throws Exception {
+        assertNull(exchange(null, "application/json", BODY.length, null).contentEncoding);
+    }
+
+    private Result exchange(String acceptEncoding, String contentType, int contentLength, String contentEncoding) throws Exception {
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+        if (acceptEncoding != null) {
+            request.headers().set(HttpHeaderNames.ACCEPT_ENCODING, acceptEncoding);
+        }
+        channel.writeInbound(request);
+        ReferenceCountUtil.release(channel.readInbound());
+
+        //和NettyServletOutputStream一样, 先写响应头, 再写内容
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+        if (contentLength >= 0) {
+            response.headers().set(HttpHeaderNames.CONTENT_LENGTH, contentLength);
+        }
+        if (contentEncoding != null) {
+            response.headers().set(HttpHeaderNames.CONTENT_ENCODING, contentEncoding);
+        }
+        channel.writeOutbound(response, new DefaultHttpContent(Unpooled.wrappedBuffer(BODY)), LastHttpContent.EMPTY_LAST_CONTENT);
+
+        Result result = new Result();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            if (msg instanceof HttpResponse) {
+                result.contentEncoding = ((HttpResponse) msg).headers().get(HttpHeaderNames.CONTENT_ENCODING);
+            }
+            if (msg instanceof HttpContent) {
+                HttpContent content = (HttpContent) msg;
+                content.content().readBytes(body, content.content().readableBytes());
+            }
+            ReferenceCountUtil.release(msg);
+        }
+        result.body = body.toByteArray();
+        return result;
+    }
+
+    private static byte[] newBody(int length) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; sb.length() < length; i++) {
+            sb.append("{\"tranCode\":\"1002").append(i % 100).append("\",\"currency\":\"CNY\"},");
+        }
+        return sb.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class Result {
+        private String contentEncoding;
+        private byte[] body;
+    }
+}
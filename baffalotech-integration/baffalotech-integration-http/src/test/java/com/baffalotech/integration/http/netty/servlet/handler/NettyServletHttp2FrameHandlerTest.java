@@ -0,0 +1,101 @@
+package com.baffalotech.integration.http.netty.servlet.handler;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.DefaultHttp2PingFrame;
+import io.netty.handler.codec.http2.DefaultHttp2UnknownFrame;
+import io.netty.handler.codec.http2.DefaultHttp2WindowUpdateFrame;
+import io.netty.handler.codec.http2.Http2Flags;
+import junit.framework.TestCase;
+
+/**
+ * http2帧的过滤, 升级后删除http1.1的处理器, 恢复可写时flush
+ * @author chijinhuang
+ *
+ */
+public class NettyServletHttp2FrameHandlerTest extends TestCase {
+
+    private final AtomicInteger flushes = new AtomicInteger();
+
+    private EmbeddedChannel channel;
+
+    @Override
+    protected void setUp() throws Exception {
+        channel = new EmbeddedChannel();
+        channel.pipeline().addLast("before", new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void flush(ChannelHandlerContext ctx) throws Exception {
+                flushes.incrementAndGet();
+                super.flush(ctx);
+            }
+        });
+        channel.pipeline().addLast("frame", new NettyServletHttp2FrameHandler());
+        channel.pipeline().addLast("aggregator", new ChannelInboundHandlerAdapter());
+        channel.pipeline().addLast("servlet", new ChannelInboundHandlerAdapter());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        channel.finishAndReleaseAll();
+    }
+
+    public void testHttpObjectPassed() {
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+        channel.writeInbound(request);
+        assertSame(request, channel.readInbound());
+        request.release();
+    }
+
+    public void testFramesDropped() {
+        ByteBuf payload = Unpooled.buffer(4).writeInt(1);
+        channel.writeInbound(new DefaultHttp2PingFrame(1L));
+        channel.writeInbound(new DefaultHttp2WindowUpdateFrame(1024));
+        channel.writeInbound(new DefaultHttp2UnknownFrame((byte) 0x20, new Http2Flags(), payload));
+        assertNull(channel.readInbound());
+        //丢弃的帧已经释放
+        assertEquals(0, payload.refCnt());
+    }
+
+    public void testUpgradeRemovesHttp1Handlers() throws Exception {
+        //事件实例不公开, 和CleartextHttp2ServerUpgradeHandler收到连接前言时发出的是同一个
+        Field instance = CleartextHttp2ServerUpgradeHandler.PriorKnowledgeUpgradeEvent.class.getDeclaredField("INSTANCE");
+        instance.setAccessible(true);
+        channel.pipeline().fireUserEventTriggered(instance.get(null));
+        assertNotNull(channel.pipeline().get("before"));
+        assertNotNull(channel.pipeline().get("frame"));
+        assertNull(channel.pipeline().get("aggregator"));
+        assertNull(channel.pipeline().get("servlet"));
+    }
+
+    public void testOtherEventKeepsHandlers() {
+        channel.pipeline().fireUserEventTriggered("other");
+        assertNotNull(channel.pipeline().get("servlet"));
+    }
+
+    public void testFlushWhenWritable() {
+        int before = flushes.get();
+        channel.pipeline().fireChannelWritabilityChanged();
+        assertEquals(before + 1, flushes.get());
+
+        //不可写时不flush
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1, 2));
+        channel.unsafe().outboundBuffer().addMessage(Unpooled.buffer(16).writeZero(16), 16, channel.newPromise());
+        assertFalse(channel.isWritable());
+        before = flushes.get();
+        channel.pipeline().fireChannelWritabilityChanged();
+        assertEquals(before, flushes.get());
+    }
+}
@@ -0,0 +1,100 @@
+package com.baffalotech.integration.http.netty.servlet.handler;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.util.StreamUtils;
+
+import com.baffalotech.integration.http.netty.servlet.handler.NettyServletRequestStreamHandler.StreamingHttpRequest;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import junit.framework.TestCase;
+
+/**
+ * 流式模式下请求的转发, 以及超过maxFormContentLength的表单请求返回413
+ * @author chijinhuang
+ *
+ */
+public class NettyServletRequestStreamHandlerTest extends TestCase {
+
+    private static final int MAX_FORM_CONTENT_LENGTH = 16;
+
+    private EmbeddedChannel channel;
+
+    @Override
+    protected void setUp() throws Exception {
+        channel = new EmbeddedChannel(new NettyServletRequestStreamHandler(1024, MAX_FORM_CONTENT_LENGTH));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        channel.finishAndReleaseAll();
+    }
+
+    public void testFormTooLarge() {
+        channel.writeInbound(newRequest(HttpHeaderValues.APPLICATION_X_WWW_FORM_URLENCODED.toString(), 100, false));
+        assertTooLarge();
+    }
+
+    public void testFormTooLargeBeforeContinue() {
+        channel.writeInbound(newRequest(HttpHeaderValues.APPLICATION_X_WWW_FORM_URLENCODED.toString(), 100, true));
+        //不回复100-continue
+        assertTooLarge();
+        assertNull(channel.readOutbound());
+    }
+
+    public void testSmallForm() throws Exception {
+        channel.writeInbound(newRequest(HttpHeaderValues.APPLICATION_X_WWW_FORM_URLENCODED.toString(), 7, false));
+        StreamingHttpRequest request = channel.readInbound();
+        assertNotNull(request);
+
+        channel.writeInbound(new DefaultHttpContent(Unpooled.copiedBuffer("a=1", StandardCharsets.US_ASCII)));
+        channel.writeInbound(new DefaultLastHttpContent(Unpooled.copiedBuffer("&b=2", StandardCharsets.US_ASCII)));
+        assertEquals("a=1&b=2", StreamUtils.copyToString(request.getInputStream(), StandardCharsets.US_ASCII));
+        assertNull(channel.readOutbound());
+        assertTrue(channel.isOpen());
+    }
+
+    public void testLargeBodyNotLimited() throws Exception {
+        //只有表单会整个读入内存, 其他请求体不限制
+        channel.writeInbound(newRequest(HttpHeaderValues.APPLICATION_OCTET_STREAM.toString(), 100, false));
+        StreamingHttpRequest request = channel.readInbound();
+        assertNotNull(request);
+
+        channel.writeInbound(new DefaultLastHttpContent(Unpooled.copiedBuffer(new byte[100])));
+        assertEquals(100, StreamUtils.copyToByteArray(request.getInputStream()).length);
+        assertTrue(channel.isOpen());
+    }
+
+    private void assertTooLarge() {
+        FullHttpResponse response = channel.readOutbound();
+        try {
+            assertEquals(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, response.status());
+            assertEquals("0", response.headers().get(HttpHeaderNames.CONTENT_LENGTH));
+        } finally {
+            response.release();
+        }
+        assertNull(channel.readInbound());
+        assertFalse(channel.isOpen());
+    }
+
+    private static HttpRequest newRequest(String contentType, int contentLength, boolean expectContinue) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/upload");
+        request.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+        request.headers().set(HttpHeaderNames.CONTENT_LENGTH, contentLength);
+        if (expectContinue) {
+            request.headers().set(HttpHeaderNames.EXPECT, HttpHeaderValues.CONTINUE);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,72 @@
+package com.baffalotech.integration.http.netty.servlet.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+/**
+ * 静态文件和预先压缩的.gz文件的查找
+ * @author chijinhuang
+ *
+ */
+public class ResourceManagerTest extends TestCase {
+
+    private File root;
+
+    private ResourceManager resourceManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        root = Files.createTempDirectory("resource-manager").toFile();
+        resourceManager = new ResourceManager(root.getAbsolutePath(), "", null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(root);
+    }
+
+    public void testGetFile() throws Exception {
+        File file = write("static/app.js");
+        assertEquals(file.getCanonicalFile(), resourceManager.getFile("/static/app.js").getCanonicalFile());
+        assertNull(resourceManager.getFile("/static/missing.js"));
+        //目录和不以/开头的路径不返回
+        assertNull(resourceManager.getFile("/static"));
+        assertNull(resourceManager.getFile("static/app.js"));
+        assertNull(resourceManager.getFile(""));
+    }
+
+    public void testPrecompressedFile() throws Exception {
+        File file = write("static/app.js");
+        assertNull(resourceManager.getPrecompressedFile("/static/app.js"));
+
+        File gzipFile = write("static/app.js.gz");
+        assertTrue(gzipFile.setLastModified(file.lastModified()));
+        assertEquals(gzipFile.getCanonicalFile(), resourceManager.getPrecompressedFile("/static/app.js").getCanonicalFile());
+
+        //原文件更新后旧的.gz文件不再使用
+        assertTrue(file.setLastModified(gzipFile.lastModified() + 2000));
+        assertNull(resourceManager.getPrecompressedFile("/static/app.js"));
+        //只有.gz文件时也不返回
+        assertNull(resourceManager.getPrecompressedFile("/static/other.js"));
+    }
+
+    private File write(String path) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), path.getBytes("UTF-8"));
+        return file;
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,102 @@
+package com.baffalotech.integration.http.netty.session;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+ * 本地内存会话的保存、过期, 以及容器重启后在新的调度线程上继续过期检查
+ * @author chijinhuang
+ *
+ */
+public class LocalMemorySessionServiceImplTest extends TestCase {
+
+    private AtomicReference<ScheduledThreadPoolExecutor> scheduler = new AtomicReference<ScheduledThreadPoolExecutor>();
+    private LocalMemorySessionServiceImpl sessionService;
+
+    @Override
+    protected void setUp() throws Exception {
+        scheduler.set(newScheduler());
+        sessionService = new LocalMemorySessionServiceImpl(scheduler::get);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        sessionService.shutdown();
+        scheduler.get().shutdownNow();
+    }
+
+    public void testSaveAndRemove() {
+        long now = System.currentTimeMillis();
+        sessionService.saveSession(newSession("a", now, 1200));
+        sessionService.saveSession(newSession("b", now, 1200));
+        sessionService.saveSession(newSession("c", now, 1200));
+        assertEquals(3, sessionService.count());
+        assertEquals("a", sessionService.getSession("a").getId());
+
+        sessionService.removeSession("a");
+        sessionService.removeSessionBatch(Arrays.asList("b", "c"));
+        assertNull(sessionService.getSession("a"));
+        assertEquals(0, sessionService.count());
+    }
+
+    public void testGetUpdatesLastAccessedTime() {
+        long lastAccessedTime = System.currentTimeMillis() - 1000;
+        sessionService.saveSession(newSession("a", lastAccessedTime, 1200));
+        assertTrue(sessionService.getSession("a").getLastAccessedTime() > lastAccessedTime);
+
+        //过期的session读取时删除
+        sessionService.saveSession(newSession("expired", System.currentTimeMillis() - 2000, 1));
+        assertNull(sessionService.getSession("expired"));
+        assertEquals(1, sessionService.count());
+    }
+
+    public void testChangeSessionId() {
+        Session session = newSession("old", System.currentTimeMillis(), 1200);
+        sessionService.saveSession(session);
+        sessionService.changeSessionId("old", "new");
+        assertNull(sessionService.getSession("old"));
+        assertSame(session, sessionService.getSession("new"));
+        assertEquals("new", session.getId());
+    }
+
+    public void testRestartOnNewScheduler() throws Exception {
+        ScheduledThreadPoolExecutor first = scheduler.get();
+        assertEquals(1, first.getQueue().size());
+
+        //容器停止时先停止过期检查, 再关闭调度线程, session保留
+        sessionService.saveSession(newSession("kept", System.currentTimeMillis(), 1200));
+        sessionService.shutdown();
+        assertEquals(0, first.getQueue().size());
+        first.shutdownNow();
+
+        ScheduledThreadPoolExecutor second = newScheduler();
+        scheduler.set(second);
+        sessionService.start();
+        assertEquals(1, second.getQueue().size());
+        assertNotNull(sessionService.getSession("kept"));
+
+        sessionService.saveSession(newSession("expired", System.currentTimeMillis() - 2000, 1));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sessionService.count() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, sessionService.count());
+    }
+
+    private static ScheduledThreadPoolExecutor newScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static Session newSession(String id, long lastAccessedTime, int maxInactiveInterval) {
+        Session session = new Session(id);
+        session.setCreationTime(lastAccessedTime);
+        session.setLastAccessedTime(lastAccessedTime);
+        session.setMaxInactiveInterval(maxInactiveInterval);
+        return session;
+    }
+}
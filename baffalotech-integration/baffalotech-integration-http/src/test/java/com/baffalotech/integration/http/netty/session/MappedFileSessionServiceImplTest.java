@@ -0,0 +1,186 @@
+package com.baffalotech.integration.http.netty.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import junit.framework.TestCase;
+
+/**
+ * 段文件会话的保存、删除和重启恢复, 压缩时删除记录的保留和段文件的删除, 以及写了一半的记录
+ * @author chijinhuang
+ *
+ */
+public class MappedFileSessionServiceImplTest extends TestCase {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private File directory;
+    private List<MappedFileSessionServiceImpl> services = new ArrayList<MappedFileSessionServiceImpl>();
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("session-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (MappedFileSessionServiceImpl service : services) {
+            service.shutdown();
+        }
+        delete(directory);
+    }
+
+    public void testSaveRemoveRestart() throws Exception {
+        MappedFileSessionServiceImpl service = open();
+        service.saveSession(newSession("a", System.currentTimeMillis(), 1200));
+        service.saveSession(newSession("b", System.currentTimeMillis(), 1200));
+        service.saveSession(newSession("c", System.currentTimeMillis(), 1200));
+        service.removeSession("b");
+        assertEquals(2, service.count());
+        assertEquals("user-a", service.getSession("a").getAttributeMap().get("userName"));
+        assertNull(service.getSession("b"));
+
+        //不调用shutdown, 按进程退出后重启恢复
+        MappedFileSessionServiceImpl recovered = open();
+        assertEquals(2, recovered.count());
+        Session session = recovered.getSession("a");
+        assertEquals("user-a", session.getAttributeMap().get("userName"));
+        assertEquals(1200, session.getMaxInactiveInterval());
+        assertNull(recovered.getSession("b"));
+        assertNotNull(recovered.getSession("c"));
+    }
+
+    public void testExpiry() throws Exception {
+        MappedFileSessionServiceImpl service = open();
+        long now = System.currentTimeMillis();
+        service.saveSession(newSession("expired", now - 2000, 1));
+        service.saveSession(newSession("accessed", now - 500, 1));
+        service.saveSession(newSession("never", now - 2000, 0));
+        service.maintain();
+        assertEquals(2, service.count());
+        assertNull(service.getSession("expired"));
+
+        //过期的记录重启时不恢复
+        MappedFileSessionServiceImpl recovered = open();
+        assertEquals(2, recovered.count());
+        assertNull(recovered.getSession("expired"));
+
+        //访问后按新的过期时间放回
+        assertNotNull(service.getSession("accessed"));
+        Thread.sleep(600);
+        service.maintain();
+        assertEquals(2, service.count());
+        assertNotNull(service.getSession("never"));
+    }
+
+    public void testCompactKeepsTombstoneUntilDeleted() throws Exception {
+        MappedFileSessionServiceImpl service = open();
+        long now = System.currentTimeMillis();
+        service.saveSession(newSession("kept", now, 1200));
+        service.saveSession(newSession("removed", now, 1200));
+        while (service.getSegments().size() < 2) {
+            service.saveSession(newSession("updated", now, 1200));
+        }
+        //删除记录在第二个段文件中
+        service.removeSession("removed");
+        while (service.getSegments().size() < 3) {
+            service.saveSession(newSession("updated", now, 1200));
+        }
+        List<SessionLogSegment> segments = service.getSegments();
+        SessionLogSegment first = segments.get(0);
+        SessionLogSegment second = segments.get(1);
+
+        //还有线程在读取第一个段文件, 不解除映射也不删除
+        assertTrue(first.retain());
+        service.compact();
+        assertTrue(first.isCompacted());
+        assertFalse(first.isUnmapped());
+        assertTrue(first.getFile().exists());
+        assertSame(first, service.getSegments().get(0));
+        //第二个段文件已经删除, 前面还有段文件, 删除记录复制到后面
+        assertFalse(second.getFile().exists());
+        assertFalse(service.getSegments().contains(second));
+        assertEquals("user-kept", service.getSession("kept").getAttributeMap().get("userName"));
+
+        //这时重启, 第一个段文件中删除的session不会恢复
+        MappedFileSessionServiceImpl recovered = open();
+        assertNull(recovered.getSession("removed"));
+        assertNotNull(recovered.getSession("kept"));
+        assertNotNull(recovered.getSession("updated"));
+
+        //读取结束后解除映射, 下次压缩时删除
+        first.release();
+        assertTrue(first.isUnmapped());
+        assertNull(first.copy(0, 1));
+        service.compact();
+        assertFalse(first.getFile().exists());
+        assertFalse(service.getSegments().contains(first));
+
+        recovered = open();
+        assertEquals(2, recovered.count());
+        assertNull(recovered.getSession("removed"));
+        assertNotNull(recovered.getSession("kept"));
+    }
+
+    public void testTruncatedTail() throws Exception {
+        MappedFileSessionServiceImpl service = open();
+        long now = System.currentTimeMillis();
+        service.saveSession(newSession("a", now, 1200));
+        SessionLogSegment segment = service.getSegments().get(0);
+        int tail = segment.getWritePosition();
+        service.saveSession(newSession("b", now, 1200));
+        int end = segment.getWritePosition();
+        service.shutdown();
+
+        //最后一条记录只有一部分写到磁盘
+        try (RandomAccessFile file = new RandomAccessFile(segment.getFile(), "rw")) {
+            file.seek(end - 4);
+            file.writeInt(0x5a5a5a5a);
+        }
+        MappedFileSessionServiceImpl recovered = open();
+        assertEquals(1, recovered.count());
+        assertNotNull(recovered.getSession("a"));
+        assertNull(recovered.getSession("b"));
+        assertEquals(tail, recovered.getSegments().get(0).getWritePosition());
+
+        //从损坏的位置继续写, 重启后不会读到原来的数据
+        recovered.saveSession(newSession("c", now, 1200));
+        recovered = open();
+        assertEquals(2, recovered.count());
+        assertNotNull(recovered.getSession("a"));
+        assertNotNull(recovered.getSession("c"));
+    }
+
+    private MappedFileSessionServiceImpl open() throws IOException {
+        MappedFileSessionServiceImpl service = new MappedFileSessionServiceImpl(directory, SEGMENT_SIZE, null);
+        services.add(service);
+        return service;
+    }
+
+    private static Session newSession(String id, long lastAccessedTime, int maxInactiveInterval) {
+        Session session = new Session(id);
+        session.setCreationTime(lastAccessedTime);
+        session.setLastAccessedTime(lastAccessedTime);
+        session.setMaxInactiveInterval(maxInactiveInterval);
+        Map<String, Object> attributeMap = new ConcurrentHashMap<String, Object>(6);
+        attributeMap.put("userName", "user-" + id);
+        session.setAttributeMap(attributeMap);
+        return session;
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
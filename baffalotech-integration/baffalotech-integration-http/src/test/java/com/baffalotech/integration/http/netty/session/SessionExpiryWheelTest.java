@@ -0,0 +1,138 @@
+package com.baffalotech.integration.http.netty.session;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import junit.framework.TestCase;
+
+/**
+ * 时间轮按最后访问时间过期, 访问过的session放回, 删除或替换的session丢弃
+ * @author chijinhuang
+ *
+ */
+public class SessionExpiryWheelTest extends TestCase {
+
+    private static final long TICK_MILLIS = 10;
+
+    private Map<String, Session> sessionMap;
+    private SessionExpiryWheel wheel;
+
+    @Override
+    protected void setUp() throws Exception {
+        sessionMap = new ConcurrentHashMap<String, Session>();
+        wheel = new SessionExpiryWheel(sessionMap, TICK_MILLIS, 8);
+    }
+
+    public void testExpired() throws Exception {
+        Session session = save("expired", System.currentTimeMillis() - 2000, 1);
+        assertEquals(1, session.expiryScheduled);
+        //重复保存不会重复放入
+        wheel.schedule(session);
+
+        runTicks(2);
+        assertFalse(sessionMap.containsKey("expired"));
+        assertEquals(0, session.expiryScheduled);
+        assertNull(session.expiryNext);
+    }
+
+    public void testAccessedSessionReinserted() throws Exception {
+        //过期时间超过一圈, 先放到最后一格, 到时再放回去
+        Session session = save("accessed", System.currentTimeMillis(), 1);
+        runTicks(10);
+        assertSame(session, sessionMap.get("accessed"));
+        assertEquals(1, session.expiryScheduled);
+
+        session.setLastAccessedTime(System.currentTimeMillis() - 2000);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sessionMap.containsKey("accessed") && System.currentTimeMillis() < deadline) {
+            runTicks(1);
+        }
+        assertFalse(sessionMap.containsKey("accessed"));
+    }
+
+    public void testRemovedSessionDropped() throws Exception {
+        Session session = save("removed", System.currentTimeMillis(), 1);
+        sessionMap.remove("removed");
+        runTicks(10);
+        assertEquals(0, session.expiryScheduled);
+
+        //再次保存时重新放入
+        sessionMap.put("removed", session);
+        wheel.schedule(session);
+        assertEquals(1, session.expiryScheduled);
+    }
+
+    public void testSavedWhileDropping() throws Exception {
+        final Session session = new Session("raced");
+        session.setLastAccessedTime(System.currentTimeMillis() - 2000);
+        session.setMaxInactiveInterval(1);
+        sessionMap = new ConcurrentHashMap<String, Session>() {
+            private static final long serialVersionUID = 1L;
+            private boolean raced;
+
+            @Override
+            public Session get(Object key) {
+                Session value = super.get(key);
+                if (!raced) {
+                    //时间轮检查map之后, 其他线程重新保存
+                    raced = true;
+                    session.setLastAccessedTime(System.currentTimeMillis());
+                    put(session.getId(), session);
+                    wheel.schedule(session);
+                }
+                return value;
+            }
+        };
+        wheel = new SessionExpiryWheel(sessionMap, TICK_MILLIS, 8);
+        //已经从map中删除, 还在时间轮中
+        wheel.schedule(session);
+
+        runTicks(2);
+        //清除标记后再检查一次map, 重新放入时间轮
+        assertSame(session, sessionMap.get("raced"));
+        assertEquals(1, session.expiryScheduled);
+
+        session.setLastAccessedTime(System.currentTimeMillis() - 2000);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sessionMap.containsKey("raced") && System.currentTimeMillis() < deadline) {
+            runTicks(1);
+        }
+        assertFalse(sessionMap.containsKey("raced"));
+    }
+
+    public void testNeverExpire() throws Exception {
+        Session session = save("never", System.currentTimeMillis() - 2000, 0);
+        assertEquals(0, session.expiryScheduled);
+
+        //放入之后改成不过期
+        session.setMaxInactiveInterval(1);
+        wheel.schedule(session);
+        session.setMaxInactiveInterval(-1);
+        runTicks(2);
+        assertSame(session, sessionMap.get("never"));
+        assertEquals(0, session.expiryScheduled);
+    }
+
+    public void testWheelSizePowerOfTwo() {
+        try {
+            new SessionExpiryWheel(sessionMap, TICK_MILLIS, 10);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    private Session save(String id, long lastAccessedTime, int maxInactiveInterval) {
+        Session session = new Session(id);
+        session.setCreationTime(lastAccessedTime);
+        session.setLastAccessedTime(lastAccessedTime);
+        session.setMaxInactiveInterval(maxInactiveInterval);
+        sessionMap.put(id, session);
+        wheel.schedule(session);
+        return session;
+    }
+
+    private void runTicks(int ticks) throws InterruptedException {
+        Thread.sleep(TICK_MILLIS * ticks + 1);
+        wheel.run();
+    }
+}
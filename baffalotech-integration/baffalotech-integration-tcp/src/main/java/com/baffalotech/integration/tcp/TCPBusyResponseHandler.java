@@ -0,0 +1,17 @@
+package com.baffalotech.integration.tcp;
+
+/**
+ * 请求超过connector的并发上限或者被线程池拒绝时生成繁忙响应，
+ * 在IO线程中调用，不能有阻塞操作。没有设置时直接关闭连接
+ * @author chijinhuang
+ *
+ */
+public interface TCPBusyResponseHandler {
+
+	/**
+	 * 生成繁忙响应
+	 * @param tcpRequest 被拒绝的请求，只有报文头，报文体可能已经释放
+	 * @param tcpResponse 繁忙响应，报文头已经从请求中复制，需要设置data
+	 */
+	public void handle(TCPRequest tcpRequest,TCPResponse tcpResponse);
+}
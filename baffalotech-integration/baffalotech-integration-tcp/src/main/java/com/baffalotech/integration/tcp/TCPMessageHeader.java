@@ -0,0 +1,51 @@
+package com.baffalotech.integration.tcp;
+
+/**
+ * 单个报文解析出来的header值，每个报文一个，不在channel之间共享
+ * @author chijinhuang
+ *
+ */
+public class TCPMessageHeader {
+
+	private final TCPProtocalSchema schema;
+
+	//和schema中字段一一对应，长度字段的位置为null
+	private final String[] values;
+
+	private final int dataLength;
+
+	TCPMessageHeader(TCPProtocalSchema schema,String[] values,int dataLength)
+	{
+		this.schema = schema;
+		this.values = values;
+		this.dataLength = dataLength;
+	}
+
+	public TCPProtocalSchema getSchema() {
+		return schema;
+	}
+
+	public int getDataLength() {
+		return dataLength;
+	}
+
+	public String getValue(int index)
+	{
+		return values[index];
+	}
+
+	/**
+	 * 把除长度字段外的header值放到请求中
+	 * @param request
+	 */
+	public void copyTo(TCPRequest request)
+	{
+		for(int i=0;i<values.length;i++)
+		{
+			if(!schema.isLengthField(i))
+			{
+				request.setHeader(schema.getName(i), values[i]);
+			}
+		}
+	}
+}
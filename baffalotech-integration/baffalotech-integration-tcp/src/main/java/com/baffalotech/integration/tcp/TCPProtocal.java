@@ -1,6 +1,7 @@
 package com.baffalotech.integration.tcp;
 
 import java.io.FileOutputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -60,7 +61,25 @@ public class TCPProtocal {
 		}
 	}
 	
-	//解析，主要是从header里面取出值，然后塞到协议里面
+	/**
+	 * 编译成不可变的协议结构，连接器启动时调用一次，之后所有channel共享
+	 * @return
+	 */
+	public TCPProtocalSchema compile()
+	{
+		return compile(Charset.defaultCharset());
+	}
+	
+	public TCPProtocalSchema compile(Charset charset)
+	{
+		return new TCPProtocalSchema(new ArrayList<AbstractField>(this.fieldList), charset);
+	}
+	
+	/**
+	 * 解析，主要是从header里面取出值，然后塞到协议里面。
+	 * 解析结果写在字段对象上，多个连接共用时会互相覆盖，请使用compile()之后的TCPProtocalSchema
+	 */
+	@Deprecated
 	public void parse(String header)
 	{
 		int pos = 0;
@@ -0,0 +1,193 @@
+package com.baffalotech.integration.tcp;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * 预编译的协议结构，由TCPProtocal.compile()生成，字段偏移量只计算一次。
+ * 本身不可变，解析结果放在每个报文自己的TCPMessageHeader中，可以被所有channel共享
+ * @author chijinhuang
+ *
+ */
+public final class TCPProtocalSchema {
+
+	private final String[] names;
+	private final int[] offsets;
+	private final int[] lengths;
+	private final byte[] fillBytes;
+	private final char[] fillChars;
+	private final FillDirection[] fillDirections;
+	//编码时header中没有值则使用定义协议时的值
+	private final String[] defaultValues;
+	//长度字段的位置，-1表示没有长度字段
+	private final int lengthFieldIndex;
+	private final int headerLength;
+	private final Charset charset;
+
+	TCPProtocalSchema(List<AbstractField> fieldList, Charset charset) {
+		int size = fieldList.size();
+		this.names = new String[size];
+		this.offsets = new int[size];
+		this.lengths = new int[size];
+		this.fillBytes = new byte[size];
+		this.fillChars = new char[size];
+		this.fillDirections = new FillDirection[size];
+		this.defaultValues = new String[size];
+		this.charset = charset;
+		int lengthIndex = -1;
+		int pos = 0;
+		for (int i = 0; i < size; i++) {
+			AbstractField field = fieldList.get(i);
+			names[i] = field.getName();
+			offsets[i] = pos;
+			lengths[i] = field.getLength();
+			fillChars[i] = field.getFillChar();
+			fillBytes[i] = (byte) field.getFillChar();
+			fillDirections[i] = field.getFillDirection();
+			if (field instanceof LengthField) {
+				if (lengthIndex == -1) {
+					lengthIndex = i;
+				}
+			} else {
+				defaultValues[i] = field.getValue();
+			}
+			pos += field.getLength();
+		}
+		this.lengthFieldIndex = lengthIndex;
+		this.headerLength = pos;
+	}
+
+	public int getHeaderLength() {
+		return headerLength;
+	}
+
+	public int getFieldCount() {
+		return names.length;
+	}
+
+	public String getName(int index) {
+		return names[index];
+	}
+
+	public boolean isLengthField(int index) {
+		return index == lengthFieldIndex;
+	}
+
+	/**
+	 * 直接从ByteBuf的index位置解析header，不改变readerIndex，也不生成中间的header字符串
+	 * @param in
+	 * @param index
+	 * @return
+	 */
+	public TCPMessageHeader parse(ByteBuf in, int index) {
+		String[] values = new String[names.length];
+		int dataLength = 0;
+		for (int i = 0; i < names.length; i++) {
+			int begin = index + offsets[i];
+			int end = begin + lengths[i];
+			int start = begin;
+			if (fillDirections[i] == FillDirection.LEFT) {
+				while (start < end && in.getByte(start) == fillBytes[i]) {
+					start++;
+				}
+			} else {
+				while (end > start && in.getByte(end - 1) == fillBytes[i]) {
+					end--;
+				}
+			}
+			if (i == lengthFieldIndex) {
+				dataLength = parseLength(in, start, end);
+			} else {
+				values[i] = in.toString(start, end - start, charset);
+			}
+		}
+		return new TCPMessageHeader(this, values, dataLength);
+	}
+
+	/**
+	 * 从header字符串中解析
+	 * @param header
+	 * @return
+	 */
+	public TCPMessageHeader parse(String header) {
+		String[] values = new String[names.length];
+		int dataLength = 0;
+		for (int i = 0; i < names.length; i++) {
+			int start = offsets[i];
+			int end = start + lengths[i];
+			if (fillDirections[i] == FillDirection.LEFT) {
+				while (start < end && header.charAt(start) == fillChars[i]) {
+					start++;
+				}
+			} else {
+				while (end > start && header.charAt(end - 1) == fillChars[i]) {
+					end--;
+				}
+			}
+			if (i == lengthFieldIndex) {
+				//用'0'填充的长度为0时整个字段都是填充字符
+				dataLength = start == end && fillChars[i] == '0' ? 0 : Integer.parseInt(header.substring(start, end));
+			} else {
+				values[i] = header.substring(start, end);
+			}
+		}
+		return new TCPMessageHeader(this, values, dataLength);
+	}
+
+	//直接从字节解析长度
+	private int parseLength(ByteBuf in, int start, int end) {
+		String name = names[lengthFieldIndex];
+		if (start == end) {
+			if (fillBytes[lengthFieldIndex] == '0') {
+				return 0;
+			}
+			throw new CorruptedFrameException("length field " + name + " is empty");
+		}
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = in.getByte(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new CorruptedFrameException("length field " + name + " is not a number");
+			}
+			value = value * 10 + digit;
+			if (value < 0) {
+				throw new CorruptedFrameException("length field " + name + " is too large");
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * 把header写到out中，长度字段的值为dataLength，其他字段的值从headers中获取
+	 * @param headers
+	 * @param dataLength
+	 * @param out
+	 */
+	public void encode(Map<String, String> headers, int dataLength, ByteBuf out) {
+		for (int i = 0; i < names.length; i++) {
+			String value;
+			if (i == lengthFieldIndex) {
+				value = String.valueOf(dataLength);
+			} else {
+				value = headers.get(names[i]);
+				if (value == null) {
+					value = defaultValues[i] == null ? "" : defaultValues[i];
+				}
+			}
+			//与AbstractField.toFieldText()的输出保持一致：不论填充方向，填充字符都在值的前面，
+			//填充个数按字符数计算，超长的值不截断
+			writeFill(out, fillBytes[i], lengths[i] - value.length());
+			out.writeBytes(value.getBytes(charset));
+		}
+	}
+
+	private static void writeFill(ByteBuf out, byte fill, int length) {
+		for (int i = 0; i < length; i++) {
+			out.writeByte(fill);
+		}
+	}
+}
@@ -5,6 +5,10 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.ReferenceCountUtil;
+
 /**
  * 封装的TCP请求对象
  * @author chijinhuang
@@ -16,6 +20,8 @@ public class TCPRequest {
 	private Map<String, String> headerMap = new HashMap<String, String>();
 	private TCPProtocal inTcpProtocal;
 	private byte[] data;
+	//零拷贝模式下的报文体，为入站ByteBuf的retained slice，处理完毕后需要release
+	private ByteBuf content;
 	private String remoteAddress;
 	private String remoteHost;
 	private int remotePort;
@@ -31,7 +37,15 @@ public class TCPRequest {
 		this.attributeMap = attributeMap;
 	}
 	
+	/**
+	 * 获取报文体，零拷贝模式下第一次调用时才从content复制出来
+	 * @return
+	 */
 	public byte[] getData() {
+		if(data == null && content != null)
+		{
+			data = ByteBufUtil.getBytes(content);
+		}
 		return data;
 	}
 	
@@ -39,6 +53,29 @@ public class TCPRequest {
 		this.data = data;
 	}
 	
+	/**
+	 * 零拷贝模式下的报文体，请求处理完毕后由连接器释放
+	 * @return
+	 */
+	public ByteBuf getContent() {
+		return content;
+	}
+	
+	public void setContent(ByteBuf content) {
+		this.content = content;
+	}
+	
+	/**
+	 * 释放报文体占用的ByteBuf
+	 */
+	public void release() {
+		if(content != null)
+		{
+			ReferenceCountUtil.safeRelease(content);
+			content = null;
+		}
+	}
+	
 	public void setAttribute(String name,Object value)
 	{
 		this.attributeMap.put(name,value);
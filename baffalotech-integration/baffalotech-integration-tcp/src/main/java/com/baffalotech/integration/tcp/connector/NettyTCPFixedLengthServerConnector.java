@@ -1,20 +1,40 @@
 package com.baffalotech.integration.tcp.connector;
 
+import java.util.concurrent.TimeUnit;
+
+import com.baffalotech.integration.accesslog.AccessLogGenerator;
+import com.baffalotech.integration.accesslog.AccessLogReceiver;
 import com.baffalotech.integration.api.AbstractNettyConnector;
 import com.baffalotech.integration.api.Container;
+import com.baffalotech.integration.configuration.IntegrationServerProperties;
+import com.baffalotech.integration.tcp.TCPBusyResponseHandler;
 import com.baffalotech.integration.tcp.TCPProtocal;
+import com.baffalotech.integration.tcp.TCPProtocalSchema;
 import com.baffalotech.integration.tcp.TCPRequestHanlder;
+import com.baffalotech.integration.tcp.handler.TCPHandlerChainFactory;
+import com.baffalotech.integration.util.ApplicationContextUtil;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.timeout.IdleStateHandler;
 
 public class NettyTCPFixedLengthServerConnector extends AbstractNettyConnector {
 
     private TCPProtocal inTcpProtocal;
     private TCPProtocal ouTcpProtocal;
     private TCPRequestHanlder tcpRequestHanlder;
+    //是否使用零拷贝的方式解析报文
+    private boolean zeroCopyDecode = false;
+    //长连接模式，处理完请求后不关闭连接，同一连接上的多个请求按顺序返回
+    private boolean keepAlive = false;
+    //长连接空闲超时时间，单位秒，0表示不超时
+    private int idleTimeout = 60;
+    //长连接模式下每个连接最多同时处理的请求数
+    private int maxPipelinedRequests = 16;
+    //超过并发上限或者线程池拒绝时生成繁忙响应，为null时直接关闭连接
+    private TCPBusyResponseHandler busyResponseHandler;
     
     public NettyTCPFixedLengthServerConnector(Container container)
     {
@@ -44,16 +64,79 @@ public class NettyTCPFixedLengthServerConnector extends AbstractNettyConnector {
 	public void setTcpRequestHanlder(TCPRequestHanlder tcpRequestHanlder) {
 		this.tcpRequestHanlder = tcpRequestHanlder;
 	}
+	
+	public boolean isZeroCopyDecode() {
+		return zeroCopyDecode;
+	}
+	
+	public void setZeroCopyDecode(boolean zeroCopyDecode) {
+		this.zeroCopyDecode = zeroCopyDecode;
+	}
+	
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+	
+	public void setKeepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+	
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+	
+	public void setIdleTimeout(int idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+	
+	public int getMaxPipelinedRequests() {
+		return maxPipelinedRequests;
+	}
+	
+	public void setMaxPipelinedRequests(int maxPipelinedRequests) {
+		this.maxPipelinedRequests = maxPipelinedRequests;
+	}
+	
+	public TCPBusyResponseHandler getBusyResponseHandler() {
+		return busyResponseHandler;
+	}
+	
+	public void setBusyResponseHandler(TCPBusyResponseHandler busyResponseHandler) {
+		this.busyResponseHandler = busyResponseHandler;
+	}
 
 	@Override
 	protected ChannelInitializer<? extends Channel> newInitializerChannelHandler() {
 		// TODO Auto-generated method stub
+		//协议只在启动时编译一次，channel之间共享不可变的schema，每个报文的值单独存放
+		TCPProtocal outTcpProtocal = ouTcpProtocal == null ? inTcpProtocal : ouTcpProtocal;
+		TCPProtocalSchema inSchema = inTcpProtocal.compile();
+		TCPProtocalSchema outSchema = outTcpProtocal == inTcpProtocal ? inSchema : outTcpProtocal.compile();
+		//处理器链路也只在启动时准备一次
+		TCPHandlerChainFactory handlerChainFactory = ApplicationContextUtil.getBean(TCPHandlerChainFactory.class);
+		handlerChainFactory.prepare(getName());
+		//access log的pattern也只解析一次
+		IntegrationServerProperties properties = ApplicationContextUtil.getBean(IntegrationServerProperties.class);
+		boolean accessLogEnabled = properties.getAccesslog().isEnabled();
+		AccessLogGenerator accessLogGenerator = accessLogEnabled ? AccessLogGenerator.getInstance(properties.getAccesslog().getPattern()) : null;
+		AccessLogReceiver accessLogReceiver = accessLogEnabled ? ApplicationContextUtil.getBean(AccessLogReceiver.class) : null;
 		return new ChannelInitializer<SocketChannel>() {
             @Override
             public void initChannel(SocketChannel ch) throws Exception {
                 ChannelPipeline p = ch.pipeline();
-                p.addLast("decode",new TCPFixedLengthDecoder(inTcpProtocal));
-                p.addLast(new TCPFixedLengthHandler(NettyTCPFixedLengthServerConnector.this,tcpRequestHanlder, ouTcpProtocal));
+                if(keepAlive && idleTimeout > 0)
+                {
+                	p.addLast("idle",new IdleStateHandler(0, 0, idleTimeout, TimeUnit.SECONDS));
+                }
+                p.addLast("decode",new TCPFixedLengthDecoder(inSchema, zeroCopyDecode));
+                TCPFixedLengthHandler handler = new TCPFixedLengthHandler(NettyTCPFixedLengthServerConnector.this,tcpRequestHanlder, outTcpProtocal, outSchema);
+                handler.setHandlerChainFactory(handlerChainFactory);
+                handler.setKeepAlive(keepAlive);
+                handler.setMaxPipelinedRequests(maxPipelinedRequests);
+                handler.setAccessLogGenerator(accessLogGenerator);
+                handler.setAccessLogReceiver(accessLogReceiver);
+                handler.setBusyResponseHandler(busyResponseHandler);
+                p.addLast(handler);
             }
         };
 	}	
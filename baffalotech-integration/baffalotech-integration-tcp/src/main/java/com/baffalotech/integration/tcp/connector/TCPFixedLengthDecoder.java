@@ -5,8 +5,9 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.baffalotech.integration.tcp.LengthField;
+import com.baffalotech.integration.tcp.TCPMessageHeader;
 import com.baffalotech.integration.tcp.TCPProtocal;
+import com.baffalotech.integration.tcp.TCPProtocalSchema;
 import com.baffalotech.integration.tcp.TCPRequest;
 
 import io.netty.buffer.ByteBuf;
@@ -14,57 +15,76 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 
 public class TCPFixedLengthDecoder extends ByteToMessageDecoder  {
-	
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(TCPFixedLengthDecoder.class);
-	
-	private TCPProtocal inputProtocal;
-	
-	private boolean flag = false;
-	
+
+	//预编译的协议结构，所有channel共享，不可变
+	private TCPProtocalSchema inputSchema;
+
+	//零拷贝模式，直接在ByteBuf上解析header，报文体使用retained slice
+	private boolean zeroCopy = false;
+
+	//当前报文已经解析出的header，decoder是每个channel一个，所以不存在并发
+	private TCPMessageHeader header;
+
 	public TCPFixedLengthDecoder(TCPProtocal inputProtocal)
-	{ 
-		this.inputProtocal = inputProtocal;
+	{
+		this(inputProtocal.compile(), false);
+	}
+
+	public TCPFixedLengthDecoder(TCPProtocal inputProtocal,boolean zeroCopy)
+	{
+		this(inputProtocal.compile(), zeroCopy);
+	}
+
+	public TCPFixedLengthDecoder(TCPProtocalSchema inputSchema,boolean zeroCopy)
+	{
+		this.inputSchema = inputSchema;
+		this.zeroCopy = zeroCopy;
 	}
+
 	@Override
 	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
 		// TODO Auto-generated method stub
-		if(!flag)
+		if(header == null)
 		{
-			int headerLength = inputProtocal.getHeaderLength();
+			int headerLength = inputSchema.getHeaderLength();
 			if(!in.isReadable(headerLength))
 			{
 				//wait
 				return;
 			}
-			byte[] headerBytes = new byte[headerLength];
-			in.readBytes(headerBytes);
-			inputProtocal.parse(new String(headerBytes));
-			flag = true;
-		}else {
-			int dataLength = inputProtocal.getDataLength();
-			if(in.isReadable(dataLength))
+			if(zeroCopy)
 			{
-				byte[] data = new byte[dataLength];
-				in.readBytes(data);
-				TCPRequest tcpRequest = new TCPRequest();
-				setTcpRequest(data,tcpRequest);
-				out.add(tcpRequest);
-				flag = false;
-				//读取完毕
+				//直接在ByteBuf上定位字段并去掉填充字符，不生成中间的header字符串
+				header = inputSchema.parse(in, in.readerIndex());
+				in.skipBytes(headerLength);
+			}else {
+				byte[] headerBytes = new byte[headerLength];
+				in.readBytes(headerBytes);
+				header = inputSchema.parse(new String(headerBytes));
 			}
 		}
-	}
-	
-	protected void setTcpRequest(byte[] data,TCPRequest request) {
-		request.setData(data);
-		inputProtocal.getFieldList().forEach(field -> {
-			if(!(field instanceof LengthField))
+		int dataLength = header.getDataLength();
+		if(in.isReadable(dataLength))
+		{
+			TCPRequest tcpRequest = new TCPRequest();
+			if(zeroCopy)
 			{
-				request.setHeader(field.getName(), field.getValue());
+				//报文体使用retained slice，由TCPFixedLengthHandler处理完毕后释放
+				tcpRequest.setContent(in.readRetainedSlice(dataLength));
+			}else {
+				byte[] data = new byte[dataLength];
+				in.readBytes(data);
+				tcpRequest.setData(data);
 			}
-		});
+			header.copyTo(tcpRequest);
+			out.add(tcpRequest);
+			header = null;
+			//读取完毕
+		}
 	}
-	
+
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
 		// TODO Auto-generated method stub
@@ -1,7 +1,12 @@
 package com.baffalotech.integration.tcp.connector;
 
-import java.util.Date;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,11 +14,12 @@ import org.slf4j.LoggerFactory;
 import com.baffalotech.integration.accesslog.AccessLogGenerator;
 import com.baffalotech.integration.accesslog.AccessLogReceiver;
 import com.baffalotech.integration.api.AbstractNettyConnector;
-import com.baffalotech.integration.configuration.IntegrationServerProperties;
-import com.baffalotech.integration.core.StandardThreadExecutor;
-import com.baffalotech.integration.tcp.FixedLengthField;
-import com.baffalotech.integration.tcp.LengthField;
+import com.baffalotech.integration.core.AdaptiveConcurrencyLimiter;
+import com.baffalotech.integration.metrics.LatencyRecorder;
+import com.baffalotech.integration.metrics.LatencyRegistry;
+import com.baffalotech.integration.tcp.TCPBusyResponseHandler;
 import com.baffalotech.integration.tcp.TCPProtocal;
+import com.baffalotech.integration.tcp.TCPProtocalSchema;
 import com.baffalotech.integration.tcp.TCPRequest;
 import com.baffalotech.integration.tcp.TCPRequestHanlder;
 import com.baffalotech.integration.tcp.TCPResponse;
@@ -23,8 +29,10 @@ import com.baffalotech.integration.tcp.handler.TCPHandlerChainFactory;
 import com.baffalotech.integration.util.ApplicationContextUtil;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.timeout.IdleStateEvent;
 
 public class TCPFixedLengthHandler extends SimpleChannelInboundHandler<TCPRequest> {
 
@@ -32,85 +40,310 @@ public class TCPFixedLengthHandler extends SimpleChannelInboundHandler<TCPReques
 
 	private TCPRequestHanlder tcpRequestHanlder;
 	private TCPProtocal outTcpProtocal;
+	//预编译的输出协议，所有channel共享，不可变
+	private TCPProtocalSchema outSchema;
 	private AbstractNettyConnector nettyConnector;
+	//connector启动时查找一次，避免每个请求都从spring中获取
+	private TCPHandlerChainFactory handlerChainFactory;
+
+	//长连接模式，一个连接上可以连续发送多个请求，响应按请求顺序返回
+	private boolean keepAlive = false;
+	//长连接模式下每个连接最多同时处理的请求数，达到后暂停读取，已经解码的请求排队等待
+	private int maxPipelinedRequests = 16;
+	//所有channel共享的access log生成器，未开启access log时为null
+	private AccessLogGenerator accessLogGenerator;
+	private AccessLogReceiver accessLogReceiver;
+	//请求被拒绝时生成繁忙响应，为null时直接关闭连接
+	private TCPBusyResponseHandler busyResponseHandler;
+	//在线程池队列中等待的时间和处理时间
+	private LatencyRecorder queueRecorder;
+	private LatencyRecorder serviceRecorder;
+
+	//以下状态只在channel的eventLoop中访问
+	//下一个请求的序号
+	private long nextRequestSeq = 0;
+	//下一个要写出的响应序号
+	private long nextWriteSeq = 0;
+	//已经处理完、但前面还有请求没处理完的响应，null表示处理失败
+	private Map<Long, ByteBuf> pendingResponses = new HashMap<Long, ByteBuf>();
+	//达到maxPipelinedRequests后解码出来的请求，暂停读取前已经在decoder缓冲区中的报文仍然会被解码
+	private Queue<TCPRequest> waitingRequests = new ArrayDeque<TCPRequest>();
 
 	public TCPFixedLengthHandler(AbstractNettyConnector nettyConnector, TCPRequestHanlder tcpRequestHanlder,
 			TCPProtocal outTcpProtocal) {
+		this(nettyConnector, tcpRequestHanlder, outTcpProtocal, outTcpProtocal.compile());
+	}
+
+	public TCPFixedLengthHandler(AbstractNettyConnector nettyConnector, TCPRequestHanlder tcpRequestHanlder,
+			TCPProtocal outTcpProtocal, TCPProtocalSchema outSchema) {
 		this.tcpRequestHanlder = tcpRequestHanlder;
 		this.outTcpProtocal = outTcpProtocal;
+		this.outSchema = outSchema;
 		this.nettyConnector = nettyConnector;
+		this.queueRecorder = LatencyRegistry.getDefaultInstance().recorder(LatencyRegistry.CONNECTOR_QUEUE,
+				LatencyRegistry.TAG_CONNECTOR, nettyConnector.getName());
+		this.serviceRecorder = LatencyRegistry.getDefaultInstance().recorder(LatencyRegistry.CONNECTOR_SERVICE,
+				LatencyRegistry.TAG_CONNECTOR, nettyConnector.getName());
+	}
+
+	public TCPHandlerChainFactory getHandlerChainFactory() {
+		return handlerChainFactory;
+	}
+
+	public void setHandlerChainFactory(TCPHandlerChainFactory handlerChainFactory) {
+		this.handlerChainFactory = handlerChainFactory;
+	}
+
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	public void setKeepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	public int getMaxPipelinedRequests() {
+		return maxPipelinedRequests;
+	}
+
+	public void setMaxPipelinedRequests(int maxPipelinedRequests) {
+		this.maxPipelinedRequests = maxPipelinedRequests;
+	}
+
+	public AccessLogGenerator getAccessLogGenerator() {
+		return accessLogGenerator;
+	}
+
+	public void setAccessLogGenerator(AccessLogGenerator accessLogGenerator) {
+		this.accessLogGenerator = accessLogGenerator;
+	}
+
+	public AccessLogReceiver getAccessLogReceiver() {
+		return accessLogReceiver;
+	}
+
+	public void setAccessLogReceiver(AccessLogReceiver accessLogReceiver) {
+		this.accessLogReceiver = accessLogReceiver;
+	}
+
+	public TCPBusyResponseHandler getBusyResponseHandler() {
+		return busyResponseHandler;
+	}
+
+	public void setBusyResponseHandler(TCPBusyResponseHandler busyResponseHandler) {
+		this.busyResponseHandler = busyResponseHandler;
 	}
 
 	@Override
 	protected void channelRead0(ChannelHandlerContext ctx, TCPRequest msg) throws Exception {
 		// TODO Auto-generated method stub
-		TCPResponse tcpResponse = new TCPResponse();
-		if (outTcpProtocal == null) {
-			this.outTcpProtocal = msg.getInTcpProtocal();
+		if (keepAlive && (!waitingRequests.isEmpty() || nextRequestSeq - nextWriteSeq >= maxPipelinedRequests)) {
+			// 已经暂停读取，但同一次读取的数据中还有报文，等前面的响应写出后再处理
+			waitingRequests.add(msg);
+			return;
 		}
+		dispatchRequest(ctx, msg);
+	}
+
+	/**
+	 * 分配序号并提交到线程池处理，只在eventLoop中调用
+	 */
+	private void dispatchRequest(ChannelHandlerContext ctx, TCPRequest msg) {
+		TCPResponse tcpResponse = new TCPResponse();
 		tcpResponse.setOutTcpProtocal(outTcpProtocal);
 		// copy request attribute to response
 		tcpResponse.getHeaderMap().putAll(msg.getHeaderMap());
-		StandardThreadExecutor serverExecutor = nettyConnector.getContainer().getServerExecutor();
+		long seq = nextRequestSeq++;
+		if (keepAlive && nextRequestSeq - nextWriteSeq >= maxPipelinedRequests) {
+			// 未返回的请求太多，暂停读取，等响应写出后再恢复
+			ctx.channel().config().setAutoRead(false);
+		}
+		AdaptiveConcurrencyLimiter limiter = nettyConnector.getConcurrencyLimiter();
+		if (limiter != null && !limiter.tryAcquire()) {
+			LOGGER.debug("concurrency limit exceeded, reject, limiter={}", limiter);
+			rejectRequest(ctx, msg, tcpResponse, seq);
+			return;
+		}
+		// 并发上限的处理耗时包括在线程池队列中等待的时间
+		long acquireTime = System.nanoTime();
+		ExecutorService serverExecutor = nettyConnector.getServerExecutor();
 		try {
 			serverExecutor.execute(new Runnable() {
 
 				@Override
 				public void run() {
 					// TODO Auto-generated method stub
-					processRequest(ctx, msg, tcpResponse);
+					queueRecorder.recordSince(acquireTime);
+					try {
+						processRequest(ctx, msg, tcpResponse, seq);
+					} finally {
+						if (limiter != null) {
+							limiter.release(System.nanoTime() - acquireTime);
+						}
+					}
 				}
 			});
 		} catch (RejectedExecutionException rejectException) {
 			// TODO: handle exception
-			LOGGER.warn(
-					"process thread pool is full, reject, active={} poolSize={} corePoolSize={} maxPoolSize={} taskCount={}",
-					serverExecutor.getActiveCount(), serverExecutor.getPoolSize(), serverExecutor.getCorePoolSize(),
-					serverExecutor.getMaximumPoolSize(), serverExecutor.getTaskCount());
-			ctx.close();
+			if (limiter != null) {
+				limiter.releaseDropped();
+			}
+			// toString包含线程池或者虚拟线程执行器当前的状态
+			LOGGER.warn("process executor is full, reject, executor={}", serverExecutor);
+			rejectRequest(ctx, msg, tcpResponse, seq);
+		}
+	}
+
+	/**
+	 * 请求被拒绝，在IO线程中返回繁忙响应，没有设置busyResponseHandler时关闭连接
+	 */
+	protected void rejectRequest(ChannelHandlerContext ctx, TCPRequest tcpRequest, TCPResponse tcpResponse,
+			long seq) {
+		ByteBuf out = null;
+		try {
+			if (busyResponseHandler != null) {
+				busyResponseHandler.handle(tcpRequest, tcpResponse);
+				byte[] data = tcpResponse.getData();
+				out = ctx.alloc().buffer(outSchema.getHeaderLength() + data.length);
+				outSchema.encode(tcpResponse.getHeaderMap(), data.length, out);
+				out.writeBytes(data);
+			}
+		} catch (Exception e) {
+			LOGGER.error("failed to create busy response", e);
+			if (out != null) {
+				out.release();
+				out = null;
+			}
+		} finally {
+			tcpRequest.release();
 		}
+		writeResponse(ctx, seq, out);
 	}
 
 	protected void processRequest(ChannelHandlerContext ctx, TCPRequest tcpRequest, TCPResponse tcpResponse) {
-		long beginTime = System.currentTimeMillis();
+		processRequest(ctx, tcpRequest, tcpResponse, -1);
+	}
+
+	protected void processRequest(ChannelHandlerContext ctx, TCPRequest tcpRequest, TCPResponse tcpResponse,
+			long seq) {
+		ByteBuf out = null;
+		long beginTime = System.nanoTime();
 		try {
-			TCPHandlerChainFactory factory = ApplicationContextUtil.getBean(TCPHandlerChainFactory.class);
+			TCPHandlerChainFactory factory = handlerChainFactory;
+			if (factory == null) {
+				factory = ApplicationContextUtil.getBean(TCPHandlerChainFactory.class);
+			}
 			TCPHandlerChain chain = factory.create(nettyConnector.getName());
 			chain.handle(ctx, tcpRequest, tcpResponse);
-			// copy response attribute to out tcp protocal
-			outTcpProtocal.getFieldList().forEach(field -> {
-				if (field instanceof LengthField) {
-					((LengthField) field).setValue(tcpResponse.getData().length);
-				} else {
-					String name = field.getName();
-					String value = tcpResponse.getHeader(name);
-					((FixedLengthField) field).setValue(value);
-				}
-			});
+			byte[] data = tcpResponse.getData();
 			// write reponse to channel
-			ByteBuf out = ctx.alloc().buffer();
-			// write header
-			outTcpProtocal.getFieldList().forEach(field -> {
-				out.writeBytes(field.toFieldText().getBytes());
-			});
+			out = ctx.alloc().buffer(outSchema.getHeaderLength() + data.length);
+			// write header, length field is taken from data, others from response header
+			outSchema.encode(tcpResponse.getHeaderMap(), data.length, out);
 			// write data
-			out.writeBytes(tcpResponse.getData());
-			ctx.writeAndFlush(out);
-			ctx.close();
+			out.writeBytes(data);
 		}catch (Exception e) {
 			// TODO: handle exception
 			LOGGER.error("{}",e);
-			ctx.close();
+			if (out != null) {
+				out.release();
+				out = null;
+			}
 		} finally {
 			// TODO: handle finally clause
-			IntegrationServerProperties properties = ApplicationContextUtil.getBean(IntegrationServerProperties.class);
-			if(properties.getAccesslog().isEnabled()) {
-          	  AccessLogReceiver accessLogReceiver = ApplicationContextUtil.getBean(AccessLogReceiver.class);
-                AccessLogGenerator accessLogGenerator = new AccessLogGenerator(properties.getAccesslog().getPattern());
-                long finishTime = System.currentTimeMillis()-beginTime;
-                String logMessage = accessLogGenerator.generateLog(new Date(), finishTime, new TCPAccesslogVistor(ctx,tcpRequest,tcpResponse));
+			long serviceTime = System.nanoTime() - beginTime;
+			serviceRecorder.record(serviceTime);
+			//generator和receiver在connector启动时确定，未开启access log时为null
+			if(accessLogGenerator != null && accessLogReceiver != null) {
+                long finishTime = TimeUnit.NANOSECONDS.toMillis(serviceTime);
+                String logMessage = accessLogGenerator.generateLog(finishTime, new TCPAccesslogVistor(ctx,tcpRequest,tcpResponse));
                 accessLogReceiver.logMessage(logMessage);
           }
+			//零拷贝模式下释放报文体
+			tcpRequest.release();
+		}
+		writeResponse(ctx, seq, out);
+	}
+
+	/**
+	 * 写出响应，out为null表示处理失败，直接关闭连接。
+	 * 长连接模式下响应切换到eventLoop中按请求顺序写出，否则写完即关闭连接
+	 */
+	protected void writeResponse(ChannelHandlerContext ctx, long seq, ByteBuf out) {
+		if (!keepAlive || seq < 0) {
+			if (out != null) {
+				ctx.writeAndFlush(out).addListener(ChannelFutureListener.CLOSE);
+			} else {
+				ctx.close();
+			}
+			return;
+		}
+		if (!ctx.executor().inEventLoop()) {
+			ctx.executor().execute(() -> writeResponse(ctx, seq, out));
+			return;
 		}
+		if (!ctx.channel().isActive()) {
+			if (out != null) {
+				out.release();
+			}
+			return;
+		}
+		pendingResponses.put(seq, out);
+		boolean written = false;
+		while (pendingResponses.containsKey(nextWriteSeq)) {
+			ByteBuf response = pendingResponses.remove(nextWriteSeq++);
+			if (response == null) {
+				// 协议没有错误报文，出错后后面的响应顺序无法保证，直接关闭
+				if (written) {
+					ctx.flush();
+				}
+				releasePendingResponses();
+				ctx.close();
+				return;
+			}
+			ctx.write(response, ctx.voidPromise());
+			written = true;
+		}
+		if (written) {
+			ctx.flush();
+		}
+		while (!waitingRequests.isEmpty() && nextRequestSeq - nextWriteSeq < maxPipelinedRequests) {
+			dispatchRequest(ctx, waitingRequests.poll());
+		}
+		if (!ctx.channel().config().isAutoRead() && waitingRequests.isEmpty()
+				&& nextRequestSeq - nextWriteSeq < maxPipelinedRequests) {
+			ctx.channel().config().setAutoRead(true);
+		}
+	}
+
+	private void releasePendingResponses() {
+		pendingResponses.values().forEach(response -> {
+			if (response != null) {
+				response.release();
+			}
+		});
+		pendingResponses.clear();
+		TCPRequest request;
+		while ((request = waitingRequests.poll()) != null) {
+			request.release();
+		}
+	}
+
+	@Override
+	public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+		// 空闲超时并且没有正在处理的请求时关闭连接
+		if (evt instanceof IdleStateEvent) {
+			if (nextRequestSeq == nextWriteSeq) {
+				ctx.close();
+			}
+			return;
+		}
+		super.userEventTriggered(ctx, evt);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		releasePendingResponses();
+		super.channelInactive(ctx);
 	}
 }
@@ -8,4 +8,12 @@ public interface TCPHandlerChainFactory {
 	 * @return
 	 */
 	public TCPHandlerChain create(String name);
+	
+	/**
+	 * connector启动时调用，提前准备好该connector的执行器链路
+	 * @param name
+	 */
+	public default void prepare(String name) {
+		
+	}
 }
@@ -1,6 +1,5 @@
 package com.baffalotech.integration.tcp.handler.impl;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import com.baffalotech.integration.tcp.TCPRequest;
@@ -12,26 +11,33 @@ import io.netty.channel.ChannelHandlerContext;
 
 public class DefaultTCPHandlerChain implements TCPHandlerChain {
 	
-	private List<TCPHandler> tcpHandlerList = new ArrayList<TCPHandler>();
+	//排好序的处理器，同一个connector的所有请求共享，不能修改
+	private final TCPHandler[] tcpHandlers;
 	
-	private TCPHandler.TCPRootHandler rootHandler = null;
+	private final TCPHandler.TCPRootHandler rootHandler;
 	
+	//当前执行到的位置，每个请求一个链路对象
 	private int i = 0;
 	
 	public DefaultTCPHandlerChain(List<TCPHandler> tcpHandlerList,TCPHandler.TCPRootHandler rootHandler)
 	{
-		this.tcpHandlerList = tcpHandlerList;
+		this(tcpHandlerList.toArray(new TCPHandler[tcpHandlerList.size()]), rootHandler);
+	}
+	
+	public DefaultTCPHandlerChain(TCPHandler[] tcpHandlers,TCPHandler.TCPRootHandler rootHandler)
+	{
+		this.tcpHandlers = tcpHandlers;
 		this.rootHandler = rootHandler;
 	}
 
 	@Override
 	public void handle(ChannelHandlerContext ctx, TCPRequest tcpRequest, TCPResponse tcpResponse) {
 		// TODO Auto-generated method stub
-		if(i<tcpHandlerList.size())
+		if(i<tcpHandlers.length)
 		{
-			tcpHandlerList.get(i++).handle(ctx, tcpRequest, tcpResponse, this);
+			tcpHandlers[i++].handle(ctx, tcpRequest, tcpResponse, this);
 		}
-		if(i++ == tcpHandlerList.size() && rootHandler != null)
+		if(i++ == tcpHandlers.length && rootHandler != null)
 		{
 			rootHandler.hanle(tcpRequest, tcpResponse);
 		}
@@ -5,11 +5,15 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 
 import com.baffalotech.integration.annotation.Connector;
 import com.baffalotech.integration.tcp.handler.TCPHandler;
@@ -17,19 +21,48 @@ import com.baffalotech.integration.tcp.handler.TCPHandlerChain;
 import com.baffalotech.integration.tcp.handler.TCPHandlerChainFactory;
 import com.baffalotech.integration.tcp.handler.TCPHandler.TCPRootHandler;
 
-public class SpringTCPHandlerChainFactory implements TCPHandlerChainFactory,ApplicationContextAware {
-	
+/**
+ * 每个connector的处理器只在第一次使用时从spring中查找并排序，之后缓存起来，
+ * 每个请求只创建一个轻量的DefaultTCPHandlerChain。spring容器刷新时清空缓存
+ * @author chijinhuang
+ *
+ */
+public class SpringTCPHandlerChainFactory implements TCPHandlerChainFactory,ApplicationContextAware,ApplicationListener<ContextRefreshedEvent> {
+
 	private ApplicationContext applicationContext;
-	
+
+	//connector name -> 排好序的处理器和根处理器
+	private final ConcurrentMap<String, ChainTemplate> chainTemplates = new ConcurrentHashMap<String, ChainTemplate>();
+
 	@Override
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
 		// TODO Auto-generated method stub
 		this.applicationContext = applicationContext;
 	}
 
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		//bean可能发生变化，重新查找
+		chainTemplates.clear();
+	}
+
 	@Override
 	public TCPHandlerChain create(String name) {
 		// TODO Auto-generated method stub
+		ChainTemplate template = chainTemplates.get(name);
+		if(template == null)
+		{
+			template = chainTemplates.computeIfAbsent(name, this::buildChainTemplate);
+		}
+		return new DefaultTCPHandlerChain(template.handlers, template.rootHandler);
+	}
+
+	@Override
+	public void prepare(String name) {
+		chainTemplates.computeIfAbsent(name, this::buildChainTemplate);
+	}
+
+	private ChainTemplate buildChainTemplate(String name) {
 		Map<String, TCPHandler> handlersMap = applicationContext.getBeansOfType(TCPHandler.class);
 		List<TCPHandler> handlers = new ArrayList<TCPHandler>();
 		handlersMap.forEach((key,value)->{
@@ -39,19 +72,36 @@ public class SpringTCPHandlerChainFactory implements TCPHandlerChainFactory,Appl
 			}
 		});
 		Collections.sort(handlers, new TCPHandlerComparator());
-		
+
 		Map<String,TCPHandler.TCPRootHandler> rootHandlerMap = applicationContext.getBeansOfType(TCPRootHandler.class);
 		TCPRootHandler rootHandler = null;
 		for(TCPRootHandler tcpRootHandler : rootHandlerMap.values())
 		{
 			Connector connector = tcpRootHandler.getClass().getAnnotation(Connector.class);
+			if(connector == null)
+			{
+				continue;
+			}
 			if(StringUtils.equals("*", connector.name()) || StringUtils.equals(connector.name(), name))
 			{
 				rootHandler = tcpRootHandler;
 				break;
 			}
 		}
-		return new DefaultTCPHandlerChain(handlers, rootHandler);
+		return new ChainTemplate(handlers.toArray(new TCPHandler[handlers.size()]), rootHandler);
+	}
+
+	private static class ChainTemplate {
+
+		private final TCPHandler[] handlers;
+
+		private final TCPRootHandler rootHandler;
+
+		private ChainTemplate(TCPHandler[] handlers,TCPRootHandler rootHandler)
+		{
+			this.handlers = handlers;
+			this.rootHandler = rootHandler;
+		}
 	}
 
 	private static class TCPHandlerComparator implements Comparator<TCPHandler>{
@@ -59,10 +109,13 @@ public class SpringTCPHandlerChainFactory implements TCPHandlerChainFactory,Appl
 		@Override
 		public int compare(TCPHandler o1, TCPHandler o2) {
 			// TODO Auto-generated method stub
-			Connector c1 = o1.getClass().getAnnotation(Connector.class);
-			Connector c2 = o2.getClass().getAnnotation(Connector.class);
-			return c1.order() - c2.order();
+			return order(o1) - order(o2);
+		}
+
+		//没有@Connector注解的处理器默认为0
+		private static int order(TCPHandler handler) {
+			Connector connector = handler.getClass().getAnnotation(Connector.class);
+			return connector == null ? 0 : connector.order();
 		}
-		
 	}
 }
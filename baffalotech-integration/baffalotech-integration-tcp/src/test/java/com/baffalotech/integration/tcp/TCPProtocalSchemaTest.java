@@ -0,0 +1,92 @@
+package com.baffalotech.integration.tcp;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import junit.framework.TestCase;
+
+/**
+ * 编码结果必须和原来逐个字段调用toFieldText()的结果一致，解析结果和编码的值一致
+ * @author chijinhuang
+ *
+ */
+public class TCPProtocalSchemaTest extends TestCase {
+
+	public void testEncodeSameAsFieldText() {
+		assertEncode("100201", "123456", "ATM", 512);
+		//两种填充方向都在值前面填充
+		assertEncode("1", "1", "A", 0);
+		//刚好等于字段长度、超长和空值
+		assertEncode("10020100", "123456789012", "ATMPOS", 99999999);
+		assertEncode("100201000", "1234567890123", "ATMPOSX", 1);
+		assertEncode("", "", "", 7);
+	}
+
+	public void testMissingHeaderUsesDefaultValue() {
+		TCPProtocal protocal = new TCPProtocal();
+		protocal.addField(new FixedLengthField("tranCode", "000000", 8));
+		protocal.addField(new LengthField("length", 0, 4, '0', FillDirection.LEFT));
+		ByteBuf out = Unpooled.buffer();
+		protocal.compile().encode(new HashMap<String, String>(), 12, out);
+		assertEquals("  0000000012", out.toString(Charset.defaultCharset()));
+	}
+
+	public void testRoundTrip() {
+		TCPProtocalSchema schema = newProtocal().compile();
+		Map<String, String> headers = headers("100201", "123456", "ATM");
+		for (int dataLength : new int[] { 0, 1, 512, 99999999 }) {
+			ByteBuf out = Unpooled.buffer();
+			schema.encode(headers, dataLength, out);
+			assertEquals(schema.getHeaderLength(), out.readableBytes());
+
+			TCPMessageHeader fromBuffer = schema.parse(out, out.readerIndex());
+			TCPMessageHeader fromString = schema.parse(out.toString(Charset.defaultCharset()));
+			for (TCPMessageHeader header : new TCPMessageHeader[] { fromBuffer, fromString }) {
+				assertEquals(dataLength, header.getDataLength());
+				assertEquals("100201", header.getValue(0));
+				assertEquals("123456", header.getValue(1));
+				assertNull(header.getValue(3));
+			}
+			//RIGHT填充的字段编码时填充在前面，和原来的实现一样，只比较两种解析方式的结果
+			assertEquals(fromString.getValue(2), fromBuffer.getValue(2));
+		}
+	}
+
+	private static void assertEncode(String tranCode, String bankNo, String channel, int dataLength) {
+		TCPProtocal protocal = newProtocal();
+		ByteBuf out = Unpooled.buffer();
+		protocal.compile().encode(headers(tranCode, bankNo, channel), dataLength, out);
+
+		//原来TCPFixedLengthHandler的写法
+		((FixedLengthField) protocal.getFieldList().get(0)).setValue(tranCode);
+		((FixedLengthField) protocal.getFieldList().get(1)).setValue(bankNo);
+		((FixedLengthField) protocal.getFieldList().get(2)).setValue(channel);
+		((LengthField) protocal.getFieldList().get(3)).setValue(dataLength);
+		ByteBuf legacy = Unpooled.buffer();
+		for (AbstractField field : protocal.getFieldList()) {
+			legacy.writeBytes(field.toFieldText().getBytes());
+		}
+		assertEquals(ByteBufUtil.hexDump(legacy), ByteBufUtil.hexDump(out));
+	}
+
+	private static Map<String, String> headers(String tranCode, String bankNo, String channel) {
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put("tranCode", tranCode);
+		headers.put("bankNo", bankNo);
+		headers.put("channel", channel);
+		return headers;
+	}
+
+	private static TCPProtocal newProtocal() {
+		TCPProtocal protocal = new TCPProtocal();
+		protocal.addField(new FixedLengthField("tranCode", null, 8));
+		protocal.addField(new FixedLengthField("bankNo", null, 12, '0', FillDirection.LEFT));
+		protocal.addField(new FixedLengthField("channel", null, 6, ' ', FillDirection.RIGHT));
+		protocal.addField(new LengthField("length", 0, 8, '0', FillDirection.LEFT));
+		return protocal;
+	}
+}
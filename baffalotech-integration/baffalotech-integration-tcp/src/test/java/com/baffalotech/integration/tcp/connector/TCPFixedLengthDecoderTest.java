@@ -0,0 +1,117 @@
+package com.baffalotech.integration.tcp.connector;
+
+import java.nio.charset.StandardCharsets;
+
+import com.baffalotech.integration.tcp.FillDirection;
+import com.baffalotech.integration.tcp.FixedLengthField;
+import com.baffalotech.integration.tcp.LengthField;
+import com.baffalotech.integration.tcp.TCPProtocal;
+import com.baffalotech.integration.tcp.TCPRequest;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import junit.framework.TestCase;
+
+/**
+ * TCPFixedLengthDecoder两种解析方式的结果必须一致
+ * @author chijinhuang
+ *
+ */
+public class TCPFixedLengthDecoderTest extends TestCase {
+
+	private static final String BODY = "<body>transfer</body>";
+
+	public void testStringMode() {
+		TCPRequest request = decodeOne(false);
+		assertHeaders(request);
+		assertEquals(BODY, new String(request.getData(), StandardCharsets.US_ASCII));
+		assertNull(request.getContent());
+	}
+
+	public void testZeroCopyMode() {
+		TCPRequest request = decodeOne(true);
+		ByteBuf content = request.getContent();
+		assertHeaders(request);
+		assertEquals(BODY, content.toString(StandardCharsets.US_ASCII));
+		//报文体是接收缓冲区的retained slice，释放后缓冲区才被回收
+		request.release();
+		assertEquals(0, content.refCnt());
+	}
+
+	public void testSplitHeaderAndBody() {
+		for (boolean zeroCopy : new boolean[] { false, true }) {
+			EmbeddedChannel channel = new EmbeddedChannel(new TCPFixedLengthDecoder(newProtocal(), zeroCopy));
+			byte[] message = newMessage(BODY).getBytes(StandardCharsets.US_ASCII);
+			//header分两次到达，报文体再分两次
+			int[] splits = { 5, 34, 40, message.length };
+			int begin = 0;
+			for (int split : splits) {
+				assertNull(channel.readInbound());
+				channel.writeInbound(Unpooled.wrappedBuffer(message, begin, split - begin));
+				begin = split;
+			}
+			TCPRequest request = channel.readInbound();
+			assertHeaders(request);
+			assertEquals(BODY, body(request));
+			request.release();
+			assertNull(channel.readInbound());
+			assertFalse(channel.finish());
+		}
+	}
+
+	public void testMultipleMessagesInOneBuffer() {
+		for (boolean zeroCopy : new boolean[] { false, true }) {
+			EmbeddedChannel channel = new EmbeddedChannel(new TCPFixedLengthDecoder(newProtocal(), zeroCopy));
+			String message = newMessage(BODY) + newMessage("") + newMessage("second");
+			channel.writeInbound(Unpooled.copiedBuffer(message, StandardCharsets.US_ASCII));
+			String[] bodies = { BODY, "", "second" };
+			for (String body : bodies) {
+				TCPRequest request = channel.readInbound();
+				assertHeaders(request);
+				assertEquals(body, body(request));
+				request.release();
+			}
+			assertNull(channel.readInbound());
+			assertFalse(channel.finish());
+		}
+	}
+
+	private TCPRequest decodeOne(boolean zeroCopy) {
+		EmbeddedChannel channel = new EmbeddedChannel(new TCPFixedLengthDecoder(newProtocal(), zeroCopy));
+		assertTrue(channel.writeInbound(Unpooled.copiedBuffer(newMessage(BODY), StandardCharsets.US_ASCII)));
+		TCPRequest request = channel.readInbound();
+		assertFalse(channel.finish());
+		return request;
+	}
+
+	private static String body(TCPRequest request) {
+		ByteBuf content = request.getContent();
+		return content == null ? new String(request.getData(), StandardCharsets.US_ASCII)
+				: content.toString(StandardCharsets.US_ASCII);
+	}
+
+	private static void assertHeaders(TCPRequest request) {
+		assertEquals("100201", request.getHeader("tranCode"));
+		assertEquals("123456", request.getHeader("bankNo"));
+		assertEquals("ATM", request.getHeader("channel"));
+	}
+
+	static TCPProtocal newProtocal() {
+		TCPProtocal protocal = new TCPProtocal();
+		protocal.addField(new FixedLengthField("tranCode", null, 8));
+		protocal.addField(new FixedLengthField("bankNo", null, 12, '0', FillDirection.LEFT));
+		protocal.addField(new FixedLengthField("channel", null, 6, ' ', FillDirection.RIGHT));
+		protocal.addField(new LengthField("length", 0, 8, '0', FillDirection.LEFT));
+		return protocal;
+	}
+
+	static String newMessage(String body) {
+		String length = String.valueOf(body.length());
+		StringBuilder sb = new StringBuilder("  100201000000123456ATM   ");
+		for (int i = length.length(); i < 8; i++) {
+			sb.append('0');
+		}
+		return sb.append(length).append(body).toString();
+	}
+}
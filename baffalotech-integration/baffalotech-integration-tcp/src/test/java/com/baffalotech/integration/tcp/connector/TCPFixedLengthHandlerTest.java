@@ -0,0 +1,209 @@
+package com.baffalotech.integration.tcp.connector;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.baffalotech.integration.api.AbstractNettyConnector;
+import com.baffalotech.integration.core.AdaptiveConcurrencyLimiter;
+import com.baffalotech.integration.tcp.TCPMessageHeader;
+import com.baffalotech.integration.tcp.TCPProtocalSchema;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.embedded.EmbeddedChannel;
+import junit.framework.TestCase;
+
+/**
+ * 长连接模式下每个连接同时处理的请求数不超过maxPipelinedRequests，响应按请求顺序返回
+ * @author chijinhuang
+ *
+ */
+public class TCPFixedLengthHandlerTest extends TestCase {
+
+	private static final int MAX_PIPELINED_REQUESTS = 2;
+
+	private ManualExecutor executor;
+
+	private TestConnector connector;
+
+	private TCPFixedLengthHandler handler;
+
+	private EmbeddedChannel channel;
+
+	@Override
+	protected void setUp() throws Exception {
+		executor = new ManualExecutor();
+		connector = new TestConnector(executor);
+		handler = new TCPFixedLengthHandler(connector, null,
+				TCPFixedLengthDecoderTest.newProtocal());
+		//原样返回报文体
+		handler.setHandlerChainFactory(name -> (ctx, request, response) -> response.setData(request.getData()));
+		handler.setKeepAlive(true);
+		handler.setMaxPipelinedRequests(MAX_PIPELINED_REQUESTS);
+		channel = new EmbeddedChannel(new TCPFixedLengthDecoder(TCPFixedLengthDecoderTest.newProtocal(), true),
+				handler);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		channel.finishAndReleaseAll();
+	}
+
+	public void testRequestsInOneWriteDoNotExceedLimit() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 6; i++) {
+			sb.append(TCPFixedLengthDecoderTest.newMessage("request-" + i));
+		}
+		//一次写入6个报文，decoder会全部解码
+		channel.writeInbound(Unpooled.copiedBuffer(sb, StandardCharsets.US_ASCII));
+		assertEquals(MAX_PIPELINED_REQUESTS, executor.tasks.size());
+		assertFalse(channel.config().isAutoRead());
+
+		for (int i = 0; i < 6; i++) {
+			assertTrue(executor.tasks.size() <= MAX_PIPELINED_REQUESTS);
+			executor.runNext();
+			assertEquals("request-" + i, readResponse());
+			assertEquals(i < 5 ? Math.min(MAX_PIPELINED_REQUESTS, 5 - i) : 0, executor.tasks.size());
+			assertEquals(i >= 4, channel.config().isAutoRead());
+		}
+		assertNull(channel.readOutbound());
+	}
+
+	public void testResponsesInRequestOrder() {
+		channel.writeInbound(Unpooled.copiedBuffer(TCPFixedLengthDecoderTest.newMessage("first")
+				+ TCPFixedLengthDecoderTest.newMessage("second"), StandardCharsets.US_ASCII));
+		Runnable first = executor.tasks.poll();
+		//第二个请求先处理完，等第一个请求的响应写出后才写出
+		executor.runNext();
+		assertNull(channel.readOutbound());
+		first.run();
+		assertEquals("first", readResponse());
+		assertEquals("second", readResponse());
+		assertTrue(channel.config().isAutoRead());
+	}
+
+	public void testWaitingRequestsReleasedOnClose() {
+		ByteBuf buffer = Unpooled.copiedBuffer(TCPFixedLengthDecoderTest.newMessage("a")
+				+ TCPFixedLengthDecoderTest.newMessage("b") + TCPFixedLengthDecoderTest.newMessage("c"),
+				StandardCharsets.US_ASCII);
+		//零拷贝模式下每个请求的报文体都引用这个缓冲区
+		channel.writeInbound(buffer);
+		assertEquals(MAX_PIPELINED_REQUESTS, executor.tasks.size());
+		channel.close();
+		//两个请求还在线程池中，执行后释放报文体；排队的请求在连接关闭时释放
+		executor.runNext();
+		executor.runNext();
+		assertEquals(0, buffer.refCnt());
+	}
+
+	public void testBusyResponseInRequestOrder() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1000);
+		connector.setConcurrencyLimiter(limiter);
+		handler.setBusyResponseHandler((request, response) -> response.setData("busy".getBytes(StandardCharsets.US_ASCII)));
+		channel.writeInbound(Unpooled.copiedBuffer(TCPFixedLengthDecoderTest.newMessage("first")
+				+ TCPFixedLengthDecoderTest.newMessage("second"), StandardCharsets.US_ASCII));
+		//第二个请求超过上限，繁忙响应等第一个请求的响应写出后才写出
+		assertEquals(1, executor.tasks.size());
+		assertEquals(1, limiter.getRejectedCount());
+		assertNull(channel.readOutbound());
+		executor.runNext();
+		assertEquals("first", readResponse());
+		assertEquals("busy", readResponse());
+		assertEquals(0, limiter.getInflight());
+		assertTrue(channel.isOpen());
+	}
+
+	public void testCloseWithoutBusyResponseHandler() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1000);
+		assertTrue(limiter.tryAcquire());
+		connector.setConcurrencyLimiter(limiter);
+		ByteBuf buffer = Unpooled.copiedBuffer(TCPFixedLengthDecoderTest.newMessage("rejected"), StandardCharsets.US_ASCII);
+		channel.writeInbound(buffer);
+		assertTrue(executor.tasks.isEmpty());
+		assertFalse(channel.isOpen());
+		assertEquals(0, buffer.refCnt());
+	}
+
+	private String readResponse() {
+		ByteBuf response = channel.readOutbound();
+		assertNotNull(response);
+		try {
+			TCPProtocalSchema schema = TCPFixedLengthDecoderTest.newProtocal().compile();
+			TCPMessageHeader header = schema.parse(response, response.readerIndex());
+			return response.toString(response.readerIndex() + schema.getHeaderLength(), header.getDataLength(),
+					StandardCharsets.US_ASCII);
+		} finally {
+			response.release();
+		}
+	}
+
+	/**
+	 * 测试线程手动执行的线程池
+	 */
+	private static class ManualExecutor extends AbstractExecutorService {
+
+		private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+
+		void runNext() {
+			tasks.poll().run();
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		@Override
+		public void shutdown() {
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return false;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return false;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) {
+			return true;
+		}
+	}
+
+	private static class TestConnector extends AbstractNettyConnector {
+
+		private final ExecutorService executor;
+
+		TestConnector(ExecutorService executor) {
+			super(null);
+			this.executor = executor;
+			setName("pipelined");
+		}
+
+		@Override
+		public ExecutorService getServerExecutor() {
+			return executor;
+		}
+
+		@Override
+		protected ChannelInitializer<? extends Channel> newInitializerChannelHandler() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.baffalotech.integration.tcp.handler.impl;
+
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.baffalotech.integration.annotation.Connector;
+import com.baffalotech.integration.tcp.TCPRequest;
+import com.baffalotech.integration.tcp.TCPResponse;
+import com.baffalotech.integration.tcp.handler.TCPHandler;
+import com.baffalotech.integration.tcp.handler.TCPHandlerChain;
+
+import io.netty.channel.ChannelHandlerContext;
+import junit.framework.TestCase;
+
+/**
+ * 处理器按connector过滤、按order排序，缓存的链路在spring容器刷新后重新查找
+ * @author chijinhuang
+ *
+ */
+public class SpringTCPHandlerChainFactoryTest extends TestCase {
+
+	private StaticApplicationContext applicationContext;
+
+	private SpringTCPHandlerChainFactory factory;
+
+	@Override
+	protected void setUp() throws Exception {
+		applicationContext = newApplicationContext();
+		applicationContext.refresh();
+		factory = new SpringTCPHandlerChainFactory();
+		factory.setApplicationContext(applicationContext);
+	}
+
+	private static StaticApplicationContext newApplicationContext() {
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		applicationContext.registerSingleton("second", SecondHandler.class);
+		applicationContext.registerSingleton("first", FirstHandler.class);
+		applicationContext.registerSingleton("other", OtherHandler.class);
+		applicationContext.registerSingleton("plain", PlainHandler.class);
+		applicationContext.registerSingleton("plainRoot", PlainRootHandler.class);
+		applicationContext.registerSingleton("root", RootHandler.class);
+		return applicationContext;
+	}
+
+	public void testHandlersFilteredAndSorted() {
+		assertEquals("first,plain,second,root", handle("atm"));
+		assertEquals("first,other,plain,second,root", handle("pos"));
+	}
+
+	public void testEachRequestHasItsOwnChain() {
+		factory.prepare("atm");
+		for (int i = 0; i < 3; i++) {
+			assertEquals("first,plain,second,root", handle("atm"));
+		}
+	}
+
+	public void testTemplatesClearedOnRefresh() {
+		assertEquals("first,plain,second,root", handle("atm"));
+		StaticApplicationContext refreshed = newApplicationContext();
+		refreshed.registerSingleton("last", LastHandler.class);
+		refreshed.refresh();
+		factory.setApplicationContext(refreshed);
+		//缓存的链路不会看到新注册的处理器
+		assertEquals("first,plain,second,root", handle("atm"));
+		factory.onApplicationEvent(new ContextRefreshedEvent(refreshed));
+		assertEquals("first,plain,second,last,root", handle("atm"));
+	}
+
+	private String handle(String connector) {
+		TCPResponse response = new TCPResponse();
+		factory.create(connector).handle(null, new TCPRequest(), response);
+		return response.getHeader("trace");
+	}
+
+	private static void trace(TCPResponse response, String name) {
+		String trace = response.getHeader("trace");
+		response.setHeader("trace", trace == null ? name : trace + "," + name);
+	}
+
+	public abstract static class TraceHandler implements TCPHandler {
+
+		private String name = "*";
+
+		@Override
+		public void handle(ChannelHandlerContext ctx, TCPRequest tcpRequest, TCPResponse tcpResponse,
+				TCPHandlerChain chain) {
+			trace(tcpResponse, getClass().getSimpleName().replace("Handler", "").toLowerCase());
+			chain.handle(ctx, tcpRequest, tcpResponse);
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	@Connector(name = "*", order = -1)
+	public static class FirstHandler extends TraceHandler {
+	}
+
+	@Connector(name = "*", order = 1)
+	public static class SecondHandler extends TraceHandler {
+	}
+
+	@Connector(name = "*", order = 2)
+	public static class LastHandler extends TraceHandler {
+	}
+
+	@Connector(name = "pos")
+	public static class OtherHandler extends TraceHandler {
+
+		public OtherHandler() {
+			setName("pos");
+		}
+	}
+
+	//没有@Connector注解的处理器排在order为0的位置
+	public static class PlainHandler extends TraceHandler {
+	}
+
+	//没有@Connector注解的根处理器被忽略
+	public static class PlainRootHandler implements TCPHandler.TCPRootHandler {
+
+		@Override
+		public void hanle(TCPRequest tcpRequest, TCPResponse tcpResponse) {
+			trace(tcpResponse, "plainRoot");
+		}
+	}
+
+	@Connector(name = "*")
+	public static class RootHandler implements TCPHandler.TCPRootHandler {
+
+		@Override
+		public void hanle(TCPRequest tcpRequest, TCPResponse tcpResponse) {
+			trace(tcpResponse, "root");
+		}
+	}
+}